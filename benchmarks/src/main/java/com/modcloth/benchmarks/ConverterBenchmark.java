@@ -0,0 +1,118 @@
+package com.modcloth.benchmarks;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.modcloth.converters.PostgresTableConverter;
+import com.modcloth.converters.SqlTypeConverter;
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+
+/**
+ * Benchmarks the conversion of table definitions to PostgreSQL statements.
+ *
+ * Each invocation converts the next table of a synthetic schema, so the
+ * table count controls how much of the schema stays in cache between
+ * invocations. Run with '-prof gc' to report allocation rates.
+ *
+ * @author modcloth
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ConverterBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int tableCount;
+
+    /**
+     * narrow: 8 columns and 2 two-column indexes; wide: 100 columns and
+     * 20 three-column indexes.
+     */
+    @Param({"narrow", "wide"})
+    public String shape;
+
+    private static final int[] TYPES = toArray(SqlTypeConverter.typeMap.keySet());
+
+    private TableDefinition[] tables;
+    private PostgresTableConverter[] converters;
+    private int next;
+    private int nextType;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final boolean wide = "wide".equals(shape);
+        final SyntheticSchema schema = new SyntheticSchema(42, 100);
+        final List<TableDefinition> definitions = wide ? schema.generate(tableCount, 100, 20, 3) :
+                schema.generate(tableCount, 8, 2, 2);
+
+        tables = definitions.toArray(new TableDefinition[0]);
+        converters = new PostgresTableConverter[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            converters[i] = new PostgresTableConverter(tables[i]);
+        }
+    }
+
+    private int nextIndex() {
+        final int i = next;
+
+        next = i + 1 == tables.length ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public String convertToCreateTable() {
+        return converters[nextIndex()].convertToCreateTable();
+    }
+
+    @Benchmark
+    public List<String> convertToCreateIndex() {
+        return converters[nextIndex()].convertToCreateIndex();
+    }
+
+    @Benchmark
+    public Map<String, List<IndexDefinition>> getIndexesByName() {
+        return tables[nextIndex()].getIndexesByName();
+    }
+
+    @Benchmark
+    public String getSurrogateKeyName() {
+        return tables[nextIndex()].getSurrogateKeyName();
+    }
+
+    @Benchmark
+    public String typeToString() {
+        final int type = TYPES[nextType];
+
+        nextType = nextType + 1 == TYPES.length ? 0 : nextType + 1;
+        return SqlTypeConverter.typeToString(type);
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        final int[] array = new int[values.size()];
+        int i = 0;
+
+        for (Integer v : values) {
+            array[i++] = v;
+        }
+        return array;
+    }
+}
@@ -0,0 +1,273 @@
+package com.modcloth.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+
+/**
+ * Writes a range of a table's rows to a file in the default format of
+ * MySQL's 'LOAD DATA INFILE': tab separated fields, newline terminated
+ * rows and \N for NULL.
+ *
+ * The values of a range depend only on the seed, the table and the range,
+ * so files can be written in any order and on any number of threads and
+ * still be identical. Generated text never contains a tab, newline or
+ * backslash, so no value needs escaping. Rows are formatted straight into
+ * a byte buffer to keep the writer I/O bound.
+ *
+ * @author modcloth
+ *
+ */
+public class DataFileWriter implements Callable<Long> {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte[] NULL = {'\\', 'N'};
+
+    private final TableDefinition tableDefinition;
+    private final File file;
+    private final long firstRow;
+    private final long lastRow;
+    private final int lobSize;
+    private final boolean[] distinct;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private long state;
+
+    /**
+     * @param tableDefinition definition of the table whose rows are written
+     * @param file the file to which the rows are written
+     * @param firstRow the number of the first row written, starting at 1
+     * @param lastRow the number of the last row written
+     * @param lobSize the largest size of a LOB value, in bytes
+     * @param seed the seed of the random values
+     */
+    public DataFileWriter(TableDefinition tableDefinition, File file, long firstRow, long lastRow, int lobSize,
+            long seed) {
+        this.tableDefinition = tableDefinition;
+        this.file = file;
+        this.firstRow = firstRow;
+        this.lastRow = lastRow;
+        this.lobSize = Math.min(lobSize, BUFFER_SIZE / 4);
+        this.state = seed ^ (tableDefinition.getName().hashCode() * 0x9E3779B97F4A7C15L) ^ (firstRow * 0xBF58476D1CE4E5B9L);
+        this.distinct = findDistinctColumns(tableDefinition);
+    }
+
+    /**
+     * Writes the rows.
+     *
+     * @return the number of bytes written
+     * @throws IOException if the file cannot be written
+     */
+    public Long call() throws IOException {
+        final List<ColumnDefinition> columns = tableDefinition.getColumnDefinitions();
+        final OutputStream out = new FileOutputStream(file);
+        long written = 0;
+
+        try {
+            for (long row = firstRow; row <= lastRow; row++) {
+                for (int c = 0; c < columns.size(); c++) {
+                    if (c > 0) {
+                        buffer[position++] = '\t';
+                    }
+                    putValue(columns.get(c), distinct[c], row);
+                }
+                buffer[position++] = '\n';
+                if (position > BUFFER_SIZE / 2) {
+                    out.write(buffer, 0, position);
+                    written += position;
+                    position = 0;
+                }
+            }
+            out.write(buffer, 0, position);
+            written += position;
+            position = 0;
+        } finally {
+            out.close();
+        }
+        return written;
+    }
+
+    /**
+     * Finds the columns that must hold a distinct value in every row: the
+     * auto-increment key and the leading column of every unique index.
+     */
+    private static boolean[] findDistinctColumns(TableDefinition tableDefinition) {
+        final List<ColumnDefinition> columns = tableDefinition.getColumnDefinitions();
+        final boolean[] distinct = new boolean[columns.size()];
+
+        for (Map.Entry<String, List<IndexDefinition>> e : tableDefinition.getIndexesByName().entrySet()) {
+            final IndexDefinition first = tableDefinition.getIndexAsSortedMultiColumnIndex(e.getKey()).get(0);
+
+            if (first.getIsUnique()) {
+                for (int c = 0; c < columns.size(); c++) {
+                    distinct[c] |= columns.get(c).getName().equals(first.getColumnName());
+                }
+            }
+        }
+        for (int c = 0; c < columns.size(); c++) {
+            distinct[c] |= columns.get(c).getIsAutoIncrement();
+        }
+        return distinct;
+    }
+
+    private void putValue(ColumnDefinition column, boolean distinct, long row) {
+        if (distinct) {
+            if (column.getType() == Types.VARCHAR || column.getType() == Types.CHAR) {
+                buffer[position++] = 'u';
+            }
+            putLong(row);
+            return;
+        }
+        if (column.getIsNullable() && next(20) == 0) {
+            buffer[position++] = NULL[0];
+            buffer[position++] = NULL[1];
+            return;
+        }
+
+        switch (column.getType()) {
+        case Types.INTEGER:
+            putLong((int) nextLong());
+            break;
+        case Types.BIGINT:
+            putLong(nextLong());
+            break;
+        case Types.SMALLINT:
+            putLong(next(Short.MAX_VALUE));
+            break;
+        case Types.BIT:
+        case Types.BOOLEAN:
+            putLong(next(2));
+            break;
+        case Types.DECIMAL:
+            putDecimal(next(1000000000), column.getDecimalDigits(), column.getColumnSize());
+            break;
+        case Types.DOUBLE:
+            putDecimal(next(1000000000), 4, 18);
+            break;
+        case Types.DATE:
+            putDate();
+            break;
+        case Types.TIMESTAMP:
+            putDate();
+            buffer[position++] = ' ';
+            putTwoDigits(next(24));
+            buffer[position++] = ':';
+            putTwoDigits(next(60));
+            buffer[position++] = ':';
+            putTwoDigits(next(60));
+            break;
+        case Types.CHAR:
+        case Types.VARCHAR:
+            putText(1 + next(Math.min(column.getColumnSize(), 32)), 'a', 26);
+            break;
+        case Types.VARBINARY:
+            putText(1 + next(Math.min(column.getColumnSize(), 32)), '!', 59);
+            break;
+        case Types.LONGVARCHAR:
+            putText(next(lobSize + 1), 'a', 26);
+            break;
+        case Types.LONGVARBINARY:
+            putText(next(lobSize + 1), '!', 59);
+            break;
+        default:
+            buffer[position++] = NULL[0];
+            buffer[position++] = NULL[1];
+        }
+    }
+
+    private void putLong(long value) {
+        if (value < 0) {
+            buffer[position++] = '-';
+            if (value == Long.MIN_VALUE) {
+                value = Long.MAX_VALUE;
+            } else {
+                value = -value;
+            }
+        }
+
+        final int start = position;
+
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            final byte b = buffer[i];
+
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+    }
+
+    private void putDecimal(long unscaled, int scale, int precision) {
+        long limit = 1;
+
+        for (int i = 0; i < Math.min(precision, 18); i++) {
+            limit *= 10;
+        }
+        unscaled %= limit;
+
+        long divisor = 1;
+
+        for (int i = 0; i < scale; i++) {
+            divisor *= 10;
+        }
+        putLong(unscaled / divisor);
+        if (scale > 0) {
+            final long fraction = unscaled % divisor;
+
+            buffer[position++] = '.';
+            for (long d = divisor / 10; d > 0; d /= 10) {
+                buffer[position++] = (byte) ('0' + (fraction / d) % 10);
+            }
+        }
+    }
+
+    private void putDate() {
+        putLong(1990 + next(40));
+        buffer[position++] = '-';
+        putTwoDigits(1 + next(12));
+        buffer[position++] = '-';
+        putTwoDigits(1 + next(28));
+    }
+
+    private void putTwoDigits(int value) {
+        buffer[position++] = (byte) ('0' + value / 10);
+        buffer[position++] = (byte) ('0' + value % 10);
+    }
+
+    /**
+     * Puts random characters from the range first to first + range - 1,
+     * skipping the backslash so that values never need escaping.
+     */
+    private void putText(int length, char first, int range) {
+        for (int i = 0; i < length; i++) {
+            final byte b = (byte) (first + next(range));
+
+            buffer[position++] = b == '\\' ? (byte) '/' : b;
+        }
+    }
+
+    /**
+     * @return the next value of a SplitMix64 sequence
+     */
+    private long nextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private int next(int bound) {
+        return (int) ((nextLong() >>> 33) % bound);
+    }
+}
@@ -0,0 +1,182 @@
+package com.modcloth.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import com.modcloth.database.SnapshotWriter;
+import com.modcloth.database.TableDefinition;
+
+/**
+ * Generates a synthetic MySQL schema and bulk data files for load testing.
+ *
+ * The output directory receives the schema as MySQL DDL (schema.sql) and as
+ * a snapshot that schema-convert can read with --from-snapshot
+ * (schema.snapshot), one data file per table and range of rows (data/), and
+ * the 'LOAD DATA' statements that load them (load.sql). Table sizes follow
+ * a Zipf distribution, so a few tables hold most of the rows. Everything is
+ * derived from the seed; data files are written in parallel.
+ *
+ * @author modcloth
+ *
+ */
+public class LoadGenerator {
+    @Option(name="--output", usage="Directory to which the schema and data are written", metaVar="DIR", required=true)
+    private File output;
+
+    @Option(name="--tables", usage="Number of tables to generate", metaVar="N")
+    private int tables = 1000;
+
+    @Option(name="--rows", usage="Total number of rows in all tables", metaVar="N")
+    private long rows = 10000000;
+
+    @Option(name="--skew", usage="Zipf exponent of the table sizes; 0 gives equal sizes", metaVar="S")
+    private double skew = 1.0;
+
+    @Option(name="--max-columns", usage="Largest number of columns in a table", metaVar="N")
+    private int maxColumns = 60;
+
+    @Option(name="--lob-size", usage="Largest size of a LOB value, in bytes", metaVar="N")
+    private int lobSize = 4096;
+
+    @Option(name="--key-suffix", usage="Suffix of the surrogate key names, matched by --key-pattern", metaVar="SUFFIX")
+    private String keySuffix = "_sk";
+
+    @Option(name="--chunk-rows", usage="Largest number of rows in a data file", metaVar="N")
+    private long chunkRows = 1000000;
+
+    @Option(name="--threads", usage="Number of threads writing data files", metaVar="N")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name="--seed", usage="Seed of the generated schema and data", metaVar="N")
+    private long seed = 42;
+
+    /**
+     * Generator main
+     *
+     * @param args program arguments
+     */
+    public static void main(String[] args) {
+        final LoadGenerator generator = new LoadGenerator();
+        final CmdLineParser parser = new CmdLineParser(generator);
+
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println("Error: " + e.getMessage());
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+
+        try {
+            generator.generate();
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Writes the schema, data files and load script to the output directory.
+     *
+     * @throws Exception if a file cannot be written
+     */
+    public void generate() throws Exception {
+        final File dataDirectory = new File(output, "data");
+        final SyntheticSchema schema = new SyntheticSchema(seed, maxColumns);
+        final List<TableDefinition> tableDefinitions = new ArrayList<TableDefinition>(tables);
+
+        if (!dataDirectory.isDirectory() && !dataDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + dataDirectory);
+        }
+        for (int i = 0; i < tables; i++) {
+            tableDefinitions.add(schema.generateVariedTable("table_" + i, keySuffix));
+        }
+
+        final long[] tableRows = distributeRows(tables, rows, skew, seed);
+        final Writer schemaSql = new OutputStreamWriter(new FileOutputStream(new File(output, "schema.sql")), "UTF-8");
+        final Writer loadSql = new OutputStreamWriter(new FileOutputStream(new File(output, "load.sql")), "UTF-8");
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<Long>> files = new ArrayList<Future<Long>>();
+        final long start = System.nanoTime();
+
+        try {
+            for (int i = 0; i < tables; i++) {
+                final TableDefinition t = tableDefinitions.get(i);
+
+                schemaSql.write(t.toMysqlCreateSyntax() + ";\n");
+                for (long first = 1, part = 0; first <= tableRows[i]; first += chunkRows, part++) {
+                    final String name = t.getName() + "." + part + ".tsv";
+
+                    files.add(executor.submit(new DataFileWriter(t, new File(dataDirectory, name), first,
+                            Math.min(first + chunkRows - 1, tableRows[i]), lobSize, seed)));
+                    loadSql.write("LOAD DATA LOCAL INFILE 'data/" + name + "' INTO TABLE " + t.getName() + ";\n");
+                }
+            }
+        } finally {
+            schemaSql.close();
+            loadSql.close();
+            executor.shutdown();
+        }
+        new SnapshotWriter(new File(output, "schema.snapshot")).write(tableDefinitions);
+
+        long bytes = 0;
+
+        for (Future<Long> f : files) {
+            bytes += f.get();
+        }
+
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("Wrote %d tables, %d rows, %d data files, %.1f MB in %.1f s (%.1f MB/s)",
+                tables, rows, files.size(), bytes / 1e6, seconds, bytes / 1e6 / seconds));
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Splits the total number of rows between the tables following a Zipf
+     * distribution, with the sizes assigned to tables in a seeded random order.
+     *
+     * @param tableCount the number of tables
+     * @param totalRows the total number of rows
+     * @param skew the Zipf exponent; 0 gives every table the same size
+     * @param seed the seed of the order in which sizes are assigned
+     * @return the number of rows in each table
+     */
+    protected static long[] distributeRows(int tableCount, long totalRows, double skew, long seed) {
+        final long[] rows = new long[tableCount];
+        final List<Integer> order = new ArrayList<Integer>(tableCount);
+        double sum = 0;
+
+        for (int i = 0; i < tableCount; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(seed));
+
+        long assigned = 0;
+
+        for (int i = 0; i < tableCount; i++) {
+            rows[order.get(i)] = (long) (totalRows / Math.pow(i + 1, skew) / sum);
+            assigned += rows[order.get(i)];
+        }
+        if (tableCount > 0) {
+            rows[order.get(0)] += totalRows - assigned;
+        }
+        return rows;
+    }
+}
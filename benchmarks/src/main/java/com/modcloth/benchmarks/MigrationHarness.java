@@ -0,0 +1,270 @@
+package com.modcloth.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.modcloth.core.Main;
+import com.modcloth.core.OptionParser;
+import com.modcloth.core.RunReport;
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.managers.MysqlConnectionManager;
+import com.modcloth.database.managers.PostgresConnectionManager;
+import com.modcloth.metrics.MetricsRegistry;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+/**
+ * Times a complete run of schema-convert against local stand-ins for its
+ * databases: an in-memory H2 database in MySQL mode as the source and an
+ * embedded PostgreSQL server as the destination.
+ *
+ * A synthetic schema is generated and loaded into the source, then each
+ * phase of the run, including the copy of the rows if requested, is timed
+ * through the same static methods Main uses. The result is written as JSON,
+ * and can be compared with the result of an earlier run to show the effect
+ * of a change on every phase.
+ *
+ * @author modcloth
+ *
+ */
+public class MigrationHarness {
+    private static final String KEY_PATTERN = "(?i)" + SyntheticSchema.SURROGATE_KEY_PATTERN;
+
+    @Option(name="--tables", usage="Number of tables to generate", metaVar="N")
+    private int tables = 100;
+
+    @Option(name="--columns", usage="Number of columns in each table", metaVar="N")
+    private int columns = 12;
+
+    @Option(name="--indexes", usage="Number of secondary indexes on each table", metaVar="N")
+    private int indexes = 3;
+
+    @Option(name="--index-columns", usage="Number of columns in each secondary index", metaVar="N")
+    private int indexColumns = 2;
+
+    @Option(name="--rows", usage="Number of rows in each table", metaVar="N")
+    private int rows = 1000;
+
+    @Option(name="--seed", usage="Seed of the generated schema and data", metaVar="N")
+    private long seed = 42;
+
+    @Option(name="--copy-data", usage="Also time copying the rows into PostgreSQL")
+    private boolean copyData;
+
+    @Option(name="--copy-threads", usage="Number of tables copied at once", metaVar="N")
+    private int copyThreads = 4;
+
+    @Option(name="--label", usage="Label identifying the run in its report", metaVar="LABEL")
+    private String label = "run";
+
+    @Option(name="--output", usage="File to which the JSON report is written", metaVar="FILE")
+    private File output;
+
+    @Option(name="--baseline", usage="Earlier report with which the run is compared", metaVar="FILE")
+    private File baseline;
+
+    /**
+     * Harness main
+     *
+     * @param args program arguments
+     */
+    public static void main(String[] args) {
+        final MigrationHarness harness = new MigrationHarness();
+        final CmdLineParser parser = new CmdLineParser(harness);
+
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println("Error: " + e.getMessage());
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+
+        try {
+            final Result result = harness.run();
+            final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+            System.out.println(gson.toJson(result.phases));
+            if (harness.output != null) {
+                write(gson.toJson(result), harness.output);
+            }
+            if (harness.baseline != null) {
+                compare(gson.fromJson(read(harness.baseline), Result.class), result);
+            }
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Generates and loads the source database, then converts it into an
+     * embedded PostgreSQL server, timing each phase.
+     *
+     * @return the result of the run
+     * @throws IOException if the PostgreSQL server cannot be started
+     * @throws SQLException if the source database cannot be created
+     */
+    public Result run() throws IOException, SQLException {
+        final Result result = new Result();
+        final List<TableDefinition> schema = new SyntheticSchema(seed, columns).generate(tables, columns,
+                indexes, indexColumns);
+        final SourceDatabase source = new SourceDatabase("schema_convert_bench");
+        final EmbeddedPostgres postgres = EmbeddedPostgres.start();
+
+        result.label = label;
+        result.schema.put("tables", (long) tables);
+        result.schema.put("columns", (long) columns);
+        result.schema.put("indexes", (long) indexes);
+        result.schema.put("indexColumns", (long) indexColumns);
+        result.schema.put("rows", (long) rows);
+        result.schema.put("seed", seed);
+
+        try {
+            source.create(schema);
+            result.schema.put("loadedRows", source.load(schema, rows, seed));
+
+            final List<String> args = new LinkedList<String>();
+
+            args.add("--my-url");
+            args.add(source.getUrl());
+            args.add("--my-db");
+            args.add(source.getName());
+            args.add("--pg-url");
+            args.add(postgres.getJdbcUrl("postgres", "postgres"));
+            args.add("--key-pattern");
+            args.add(KEY_PATTERN);
+            for (TableDefinition t : schema) {
+                args.add(t.getName().toUpperCase());
+            }
+
+            final OptionParser optionParser = new OptionParser();
+
+            if (!optionParser.parse(args.toArray(new String[0]))) {
+                throw new IllegalStateException("Unable to parse arguments");
+            }
+            MetricsRegistry.getDefault().clear();
+
+            final RunReport report = new RunReport(optionParser.getConfiguration());
+            final PostgresConnectionManager pgConnectionManager =
+                    new PostgresConnectionManager(optionParser.getPostgresUrl());
+
+            long start = System.nanoTime();
+            final List<TableDefinition> tableDefinitions = Main.readTableDefinitions(optionParser, report);
+            result.phases.put("metadata", millisSince(start));
+
+            start = System.nanoTime();
+            final Set<String> failed = Main.createTables(pgConnectionManager, tableDefinitions, false,
+                    optionParser.getArguments(), report);
+            result.phases.put("tables", millisSince(start));
+
+            if (copyData) {
+                // H2 names its database as a catalog, so the rows are read unqualified
+                // from the default schema of the connection
+                start = System.nanoTime();
+                failed.addAll(Main.copyData(new MysqlConnectionManager(optionParser.getMysqlUrl()),
+                        pgConnectionManager, tableDefinitions, optionParser.getArguments(),
+                        Collections.singletonList((String) null), null, copyThreads, report));
+                result.phases.put("data", millisSince(start));
+            }
+
+            start = System.nanoTime();
+            failed.addAll(Main.createTableIndexes(pgConnectionManager, tableDefinitions,
+                    optionParser.getArguments(), report));
+            result.phases.put("indexes", millisSince(start));
+
+            report.finish(MetricsRegistry.getDefault());
+            result.failedTables = failed.size();
+            result.run = new JsonParser().parse(report.toJson());
+        } finally {
+            postgres.close();
+            source.close();
+        }
+        return result;
+    }
+
+    /**
+     * Prints the change in every phase's time between two runs.
+     *
+     * @param before the earlier run
+     * @param after the later run
+     */
+    protected static void compare(Result before, Result after) {
+        if (!before.schema.equals(after.schema)) {
+            System.out.println("Warning: the runs used different schemas");
+        }
+        for (Map.Entry<String, Long> e : after.phases.entrySet()) {
+            final Long previous = before.phases.get(e.getKey());
+
+            if (previous != null) {
+                System.out.println(String.format("%-10s %8d ms -> %8d ms (%+.1f%%)", e.getKey(), previous,
+                        e.getValue(), previous > 0 ? 100.0 * (e.getValue() - previous) / previous : 0.0));
+            }
+        }
+    }
+
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static String read(File file) throws IOException {
+        final Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        final StringBuilder contents = new StringBuilder();
+        final char[] buffer = new char[8192];
+
+        try {
+            for (int n = reader.read(buffer); n != -1; n = reader.read(buffer)) {
+                contents.append(buffer, 0, n);
+            }
+        } finally {
+            reader.close();
+        }
+        return contents.toString();
+    }
+
+    private static void write(String contents, File file) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * The outcome of a single harness run.
+     *
+     * @author modcloth
+     *
+     */
+    public static class Result {
+        private String label;
+        private final Map<String, Long> schema = new LinkedHashMap<String, Long>();
+        private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+        private int failedTables;
+        private JsonElement run;
+    }
+}
@@ -0,0 +1,258 @@
+package com.modcloth.benchmarks;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.modcloth.converters.SqlTypeConverter;
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+
+/**
+ * In-memory H2 database in MySQL compatibility mode, standing in for the
+ * MySQL source of a run.
+ *
+ * The database lives as long as the object holds its connection open, and
+ * is read by schema-convert through the same JDBC metadata calls it makes
+ * against MySQL.
+ *
+ * @author modcloth
+ *
+ */
+public class SourceDatabase {
+    private static final int BATCH_SIZE = 1000;
+
+    private final String name;
+    private final Connection connection;
+
+    /**
+     * @param name the name of the database
+     * @throws SQLException if the database cannot be created
+     */
+    public SourceDatabase(String name) throws SQLException {
+        this.name = name.toUpperCase();
+        this.connection = DriverManager.getConnection(getUrl());
+    }
+
+    /**
+     * @return the JDBC connection URL of the database
+     */
+    public String getUrl() {
+        return "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+
+    /**
+     * @return the name under which the database's tables are catalogued
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Creates the given tables and their indexes.
+     *
+     * @param tableDefinitions definitions of the tables to create
+     * @throws SQLException if a table or index cannot be created
+     */
+    public void create(List<TableDefinition> tableDefinitions) throws SQLException {
+        final Statement statement = connection.createStatement();
+
+        try {
+            for (TableDefinition t : tableDefinitions) {
+                statement.execute(toCreateTable(t));
+                for (Map.Entry<String, List<IndexDefinition>> i : t.getIndexesByName().entrySet()) {
+                    if (!i.getKey().equals("PRIMARY")) {
+                        statement.execute(toCreateIndex(t, i.getValue()));
+                    }
+                }
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Fills the given tables with random rows. Rows that would violate a
+     * unique index are dropped, so a table may hold slightly fewer rows than
+     * requested.
+     *
+     * @param tableDefinitions definitions of the tables to fill
+     * @param rows the number of rows to insert in each table
+     * @param seed the seed of the random values
+     * @return the number of rows inserted in all tables
+     * @throws SQLException if the rows cannot be inserted
+     */
+    public long load(List<TableDefinition> tableDefinitions, int rows, long seed) throws SQLException {
+        final Random random = new Random(seed);
+        long inserted = 0;
+
+        for (TableDefinition t : tableDefinitions) {
+            final List<ColumnDefinition> columns = new LinkedList<ColumnDefinition>();
+
+            for (ColumnDefinition c : t.getColumnDefinitions()) {
+                if (!c.getIsAutoIncrement()) {
+                    columns.add(c);
+                }
+            }
+
+            final PreparedStatement statement = connection.prepareStatement(toInsert(t, columns));
+
+            try {
+                for (int r = 1; r <= rows; r++) {
+                    int p = 1;
+
+                    for (ColumnDefinition c : columns) {
+                        setValue(statement, p++, c, random);
+                    }
+                    statement.addBatch();
+                    if (r % BATCH_SIZE == 0 || r == rows) {
+                        for (int count : statement.executeBatch()) {
+                            inserted += Math.max(count, 0);
+                        }
+                    }
+                }
+            } finally {
+                statement.close();
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Drops the database.
+     */
+    public void close() {
+        try {
+            connection.createStatement().execute("SHUTDOWN");
+            connection.close();
+        } catch (SQLException sqe) {
+            System.err.println("Error: " + sqe.getMessage());
+        }
+    }
+
+    private static String toCreateTable(TableDefinition tableDefinition) {
+        final List<String> columns = new LinkedList<String>();
+        final List<String> primaryKey = new LinkedList<String>();
+
+        for (ColumnDefinition c : tableDefinition.getColumnDefinitions()) {
+            final StringBuilder column = new StringBuilder(c.getName()).append(" ").append(toTypeName(c));
+
+            if (c.getIsAutoIncrement()) {
+                column.append(" NOT NULL AUTO_INCREMENT");
+            } else {
+                column.append(c.getIsNullable() ? "" : " NOT NULL");
+                column.append(c.getDefaultValue() == null ? "" : " DEFAULT " + c.getDefaultValue());
+            }
+            columns.add(column.toString());
+        }
+        for (IndexDefinition i : tableDefinition.getIndexAsSortedMultiColumnIndex("PRIMARY")) {
+            primaryKey.add(i.getColumnName());
+        }
+        if (!primaryKey.isEmpty()) {
+            columns.add("PRIMARY KEY (" + StringUtils.join(primaryKey, ", ") + ")");
+        }
+        return "CREATE TABLE " + tableDefinition.getName() + " (" + StringUtils.join(columns, ", ") + ")";
+    }
+
+    private static String toCreateIndex(TableDefinition tableDefinition, List<IndexDefinition> indexDefinitions) {
+        final List<String> columns = new LinkedList<String>();
+
+        for (IndexDefinition i : indexDefinitions) {
+            columns.add(i.getColumnName());
+        }
+        return "CREATE " + (indexDefinitions.get(0).getIsUnique() ? "UNIQUE " : "") + "INDEX " +
+                indexDefinitions.get(0).getName() + " ON " + tableDefinition.getName() +
+                " (" + StringUtils.join(columns, ", ") + ")";
+    }
+
+    private static String toInsert(TableDefinition tableDefinition, List<ColumnDefinition> columns) {
+        final List<String> names = new LinkedList<String>();
+
+        for (ColumnDefinition c : columns) {
+            names.add(c.getName());
+        }
+        return "INSERT IGNORE INTO " + tableDefinition.getName() + " (" + StringUtils.join(names, ", ") +
+                ") VALUES (" + StringUtils.repeat("?", ", ", names.size()) + ")";
+    }
+
+    private static String toTypeName(ColumnDefinition column) {
+        switch (column.getType()) {
+        case Types.CHAR:
+            return "CHAR(" + column.getColumnSize() + ")";
+        case Types.VARCHAR:
+            return "VARCHAR(" + column.getColumnSize() + ")";
+        case Types.LONGVARCHAR:
+            return "VARCHAR(4000)";
+        case Types.DECIMAL:
+            return "DECIMAL(" + column.getColumnSize() + ", " + column.getDecimalDigits() + ")";
+        case Types.BIT:
+            return "BOOLEAN";
+        default:
+            return SqlTypeConverter.typeToString(column.getType());
+        }
+    }
+
+    private static void setValue(PreparedStatement statement, int index, ColumnDefinition column, Random random)
+            throws SQLException {
+        if (column.getIsNullable() && random.nextInt(10) == 0) {
+            statement.setNull(index, column.getType());
+            return;
+        }
+
+        switch (column.getType()) {
+        case Types.INTEGER:
+            statement.setInt(index, random.nextInt());
+            break;
+        case Types.BIGINT:
+            statement.setLong(index, random.nextLong());
+            break;
+        case Types.SMALLINT:
+            statement.setShort(index, (short) random.nextInt(Short.MAX_VALUE));
+            break;
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+            statement.setString(index, randomString(random, Math.min(column.getColumnSize(), 64)));
+            break;
+        case Types.DECIMAL:
+            statement.setBigDecimal(index, BigDecimal.valueOf(random.nextInt(1000000), column.getDecimalDigits()));
+            break;
+        case Types.DOUBLE:
+            statement.setDouble(index, random.nextDouble());
+            break;
+        case Types.TIMESTAMP:
+            statement.setTimestamp(index, new Timestamp(1000L * random.nextInt(Integer.MAX_VALUE)));
+            break;
+        case Types.DATE:
+            statement.setDate(index, new Date(1000L * random.nextInt(Integer.MAX_VALUE)));
+            break;
+        case Types.BIT:
+            statement.setBoolean(index, random.nextBoolean());
+            break;
+        default:
+            statement.setNull(index, column.getType());
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        final char[] chars = new char[1 + random.nextInt(length)];
+
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+}
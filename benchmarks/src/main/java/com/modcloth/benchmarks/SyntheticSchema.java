@@ -0,0 +1,179 @@
+package com.modcloth.benchmarks;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+
+/**
+ * Generates synthetic table definitions for benchmarking, without a database.
+ *
+ * Every table has a surrogate key named after the table, a primary key on
+ * it, and a mix of column types drawn from a seeded random source, so the
+ * same arguments always produce the same schema. Column names are shared
+ * between tables to keep schemas of 100k tables within a modest heap. The
+ * generated definitions are valid in PostgreSQL: index names are unique
+ * within the schema and indexes never repeat a column.
+ *
+ * @author modcloth
+ *
+ */
+public class SyntheticSchema {
+    public static final String SURROGATE_KEY_PATTERN = ".*_sk$";
+
+    private static final int[] TYPES = {
+        Types.INTEGER, Types.BIGINT, Types.SMALLINT, Types.VARCHAR, Types.CHAR, Types.LONGVARCHAR,
+        Types.DECIMAL, Types.DOUBLE, Types.TIMESTAMP, Types.DATE, Types.BIT
+    };
+
+    private static final int[] VARIED_TYPES = {
+        Types.INTEGER, Types.INTEGER, Types.BIGINT, Types.SMALLINT, Types.BIT, Types.VARCHAR, Types.VARCHAR,
+        Types.CHAR, Types.DECIMAL, Types.DOUBLE, Types.TIMESTAMP, Types.DATE, Types.LONGVARCHAR,
+        Types.LONGVARBINARY, Types.VARBINARY
+    };
+
+    private final Random random;
+    private final String[] columnNames;
+
+    /**
+     * @param seed the seed of the random source
+     * @param maxColumns the largest number of columns any table will have
+     */
+    public SyntheticSchema(long seed, int maxColumns) {
+        this.random = new Random(seed);
+        this.columnNames = new String[maxColumns];
+        for (int i = 0; i < maxColumns; i++) {
+            columnNames[i] = "column_" + i;
+        }
+    }
+
+    /**
+     * Generates a schema of identically shaped tables.
+     *
+     * @param tableCount the number of tables
+     * @param columnCount the number of columns in each table, including the surrogate key
+     * @param indexCount the number of secondary indexes on each table
+     * @param columnsPerIndex the number of columns in each secondary index
+     * @return the table definitions
+     */
+    public List<TableDefinition> generate(int tableCount, int columnCount, int indexCount, int columnsPerIndex) {
+        final List<TableDefinition> tables = new ArrayList<TableDefinition>(tableCount);
+
+        for (int i = 0; i < tableCount; i++) {
+            tables.add(generateTable("table_" + i, columnCount, indexCount, columnsPerIndex));
+        }
+        return tables;
+    }
+
+    /**
+     * Generates a single table definition.
+     *
+     * @param name the name of the table
+     * @param columnCount the number of columns, including the surrogate key
+     * @param indexCount the number of secondary indexes
+     * @param columnsPerIndex the number of columns in each secondary index
+     * @return the table definition
+     */
+    public TableDefinition generateTable(String name, int columnCount, int indexCount, int columnsPerIndex) {
+        final TableDefinition table = new TableDefinition(name, SURROGATE_KEY_PATTERN);
+        final String keyName = name + "_sk";
+
+        table.addColumnDefinition(new ColumnDefinition(keyName, Types.INTEGER, "NO", 10, 0, null, "YES"));
+        for (int c = 1; c < columnCount; c++) {
+            final int type = TYPES[random.nextInt(TYPES.length)];
+            final boolean numeric = type == Types.INTEGER || type == Types.BIGINT || type == Types.SMALLINT;
+
+            table.addColumnDefinition(new ColumnDefinition(columnNames[c - 1], type,
+                    random.nextBoolean() ? "YES" : "NO",
+                    type == Types.DECIMAL ? 10 + random.nextInt(9) : 1 + random.nextInt(255),
+                    type == Types.DECIMAL ? random.nextInt(5) : 0,
+                    numeric && random.nextInt(4) == 0 ? "0" : null, "NO"));
+        }
+
+        table.addIndexDefinition(new IndexDefinition("PRIMARY", keyName, false, 1));
+        for (int i = 0; i < indexCount && columnCount > 1; i++) {
+            final boolean nonUnique = random.nextInt(5) != 0;
+            final int first = random.nextInt(columnCount - 1);
+
+            for (int s = 0; s < Math.min(columnsPerIndex, columnCount - 1); s++) {
+                table.addIndexDefinition(new IndexDefinition(name + "_index_" + i,
+                        columnNames[(first + s) % (columnCount - 1)], nonUnique, s + 1));
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Generates a table shaped like a real one: a skewed number of columns,
+     * LOB columns, nullable columns with defaults, an auto-increment key and
+     * composite and unique secondary indexes. LOB columns are never indexed,
+     * and every unique index starts with a column that can hold a distinct
+     * value for every row (an integer or a VARCHAR of 20 or more characters).
+     *
+     * @param name the name of the table
+     * @param keySuffix the suffix appended to the table name to name its auto-increment surrogate key
+     * @return the table definition
+     */
+    public TableDefinition generateVariedTable(String name, String keySuffix) {
+        final TableDefinition table = new TableDefinition(name, ".*" + Pattern.quote(keySuffix) + "$");
+        final String keyName = name + keySuffix;
+        final int columnCount = Math.min(columnNames.length, 2 + (int) (-Math.log(1 - random.nextDouble()) * 10));
+        final List<String> indexable = new ArrayList<String>();
+        final List<String> distinct = new ArrayList<String>();
+
+        table.addColumnDefinition(new ColumnDefinition(keyName, random.nextInt(4) == 0 ? Types.BIGINT : Types.INTEGER,
+                "NO", 19, 0, null, "YES"));
+        for (int c = 1; c < columnCount; c++) {
+            final int type = VARIED_TYPES[random.nextInt(VARIED_TYPES.length)];
+            final boolean nullable = random.nextInt(3) != 0;
+            final int size = type == Types.DECIMAL ? 10 + random.nextInt(9) :
+                    type == Types.CHAR ? 1 + random.nextInt(16) : 1 + random.nextInt(255);
+            final String columnName = columnNames[c - 1];
+            String defaultValue = null;
+
+            if (nullable && random.nextInt(3) == 0) {
+                if (type == Types.INTEGER || type == Types.BIGINT || type == Types.SMALLINT || type == Types.BIT) {
+                    defaultValue = "0";
+                } else if (type == Types.VARCHAR || type == Types.CHAR) {
+                    defaultValue = "n/a".substring(0, Math.min(3, size));
+                }
+            }
+            table.addColumnDefinition(new ColumnDefinition(columnName, type, nullable ? "YES" : "NO", size,
+                    type == Types.DECIMAL ? random.nextInt(5) : 0, defaultValue, "NO"));
+
+            if (type != Types.LONGVARCHAR && type != Types.LONGVARBINARY && type != Types.VARBINARY) {
+                indexable.add(columnName);
+            }
+            if (type == Types.INTEGER || type == Types.BIGINT || (type == Types.VARCHAR && size >= 20)) {
+                distinct.add(columnName);
+            }
+        }
+
+        table.addIndexDefinition(new IndexDefinition("PRIMARY", keyName, false, 1));
+        for (int i = 0, n = indexable.isEmpty() ? 0 : random.nextInt(6); i < n; i++) {
+            final boolean unique = !distinct.isEmpty() && random.nextInt(4) == 0;
+            final int width = Math.min(indexable.size(), 1 + random.nextInt(3));
+            final List<String> indexColumns = new ArrayList<String>();
+
+            if (unique) {
+                indexColumns.add(distinct.get(random.nextInt(distinct.size())));
+            }
+            for (int first = random.nextInt(indexable.size()), s = 0; indexColumns.size() < width; s++) {
+                final String column = indexable.get((first + s) % indexable.size());
+
+                if (!indexColumns.contains(column)) {
+                    indexColumns.add(column);
+                }
+            }
+            for (int s = 0; s < indexColumns.size(); s++) {
+                table.addIndexDefinition(new IndexDefinition(name + "_index_" + i, indexColumns.get(s), !unique, s + 1));
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,168 @@
+package com.modcloth.converters;
+
+import java.sql.Types;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+
+/**
+ * Uses a TableDefinition to generate a 'CREATE TABLE' statement for a MySQL
+ * database, with the table's primary key and indexes declared inline.
+ *
+ * Types are mapped to the MySQL types that the MySQL JDBC driver reports as
+ * the same standard SQL type, so a table created from the statement reads
+ * back as the definition it was created from. Definitions read from
+ * PostgreSQL may hold what MySQL cannot declare: text without a length
+ * becomes LONGTEXT, and is indexed by the prefix MySQL allows, types with
+ * no MySQL equivalent are kept as text, and defaults that are expressions
+ * rather than literals are left out.
+ *
+ * @author modcloth
+ *
+ */
+public class MysqlTableConverter {
+    protected static final int INDEX_PREFIX = 255;
+
+    private final TableDefinition tableDefinition;
+
+    /**
+     * @param tableDefinition the TableDefinition from which the 'CREATE TABLE'
+     * statement will be generated
+     */
+    public MysqlTableConverter(TableDefinition tableDefinition) {
+        this.tableDefinition = tableDefinition;
+    }
+
+    /**
+     * Converts the object's TableDefinition into the corresponding SQL
+     * statement used to create the given table structure and its indexes in MySQL.
+     *
+     * @return The SQL statement to create the table represented by the TableDefinition
+     */
+    public String convertToCreateTable() {
+        final StringBuilder statement = new StringBuilder();
+        final List<String> createStatements = new LinkedList<String>();
+        final Map<String, List<IndexDefinition>> indexes = tableDefinition.getIndexesByName();
+
+        statement.append("CREATE TABLE ").append(tableDefinition.getName()).append("(\n");
+        for (ColumnDefinition cd : tableDefinition.getColumnDefinitions()) {
+            createStatements.add(convertColumn(cd));
+        }
+        for (String i : indexes.keySet()) {
+            createStatements.add(convertIndex(i, indexes.get(i)));
+        }
+        statement.append(StringUtils.join(createStatements, ",\n"));
+        return statement.append(")\nENGINE=InnoDB DEFAULT CHARSET=utf8\n").toString();
+    }
+
+    /**
+     * Build the column definition of the given column.
+     *
+     * @param columnDefinition represents the schema definition of the column
+     * @return the column definition
+     */
+    private String convertColumn(ColumnDefinition columnDefinition) {
+        final StringBuilder definition = new StringBuilder(columnDefinition.getName());
+
+        definition.append(" ").append(typeToString(columnDefinition));
+        definition.append(columnDefinition.getIsNullable() ? "" : " NOT NULL");
+        if (columnDefinition.getIsAutoIncrement()) {
+            definition.append(" AUTO_INCREMENT");
+        } else if (columnDefinition.getDefaultValue() != null && !isExpression(columnDefinition.getDefaultValue())) {
+            definition.append(" DEFAULT '").append(columnDefinition.getDefaultValue().replace("'", "''")).append("'");
+        }
+        return definition.toString();
+    }
+
+    /**
+     * Build the inline definition of the given index.
+     *
+     * @param name the name of the index
+     * @param indexDefinitions the schema definitions of the index's columns
+     * @return the 'PRIMARY KEY', 'UNIQUE KEY' or 'KEY' clause of the index
+     */
+    private String convertIndex(String name, List<IndexDefinition> indexDefinitions) {
+        final List<String> columnNames = new LinkedList<String>();
+
+        for (IndexDefinition i : indexDefinitions) {
+            columnNames.add(isLong(i.getColumnName()) ? i.getColumnName() + "(" + INDEX_PREFIX + ")" :
+                    i.getColumnName());
+        }
+
+        final String columns = " (" + StringUtils.join(columnNames, ',') + ")";
+
+        if (name.equals("PRIMARY")) {
+            return "PRIMARY KEY" + columns;
+        }
+        return (indexDefinitions.get(0).getIsUnique() ? "UNIQUE KEY " : "KEY ") + name + columns;
+    }
+
+    /**
+     * Convert the type of the column to the name of the MySQL type the
+     * driver reports as the same standard type.
+     *
+     * @param columnDefinition represents the schema definition of the column
+     * @return the textual representation of the column's type
+     */
+    private String typeToString(ColumnDefinition columnDefinition) {
+        final int size = columnDefinition.getColumnSize();
+
+        switch (columnDefinition.getType()) {
+        case Types.BIT:
+        case Types.BOOLEAN:
+            return "TINYINT(1)";
+        case Types.INTEGER:
+            return "INT";
+        case Types.CHAR:
+            return size > 0 ? "CHAR(" + size + ")" : "LONGTEXT";
+        case Types.VARCHAR:
+            return size > 0 ? "VARCHAR(" + size + ")" : "LONGTEXT";
+        case Types.LONGVARCHAR:
+        case Types.CLOB:
+        case Types.OTHER:
+            return "LONGTEXT";
+        case Types.BINARY:
+            return size > 0 ? "BINARY(" + size + ")" : "LONGBLOB";
+        case Types.VARBINARY:
+            return size > 0 ? "VARBINARY(" + size + ")" : "LONGBLOB";
+        case Types.LONGVARBINARY:
+        case Types.BLOB:
+            return "LONGBLOB";
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return size > 0 ? "DECIMAL(" + size + "," + columnDefinition.getDecimalDigits() + ")" :
+                    "DECIMAL(65,30)";
+        case Types.TIMESTAMP:
+            return "DATETIME";
+        default:
+            return SqlTypeConverter.typeToString(columnDefinition.getType());
+        }
+    }
+
+    /**
+     * @param columnName the name of an indexed column
+     * @return true if the column is created as LONGTEXT or LONGBLOB, which MySQL only indexes by a prefix
+     */
+    private boolean isLong(String columnName) {
+        for (ColumnDefinition cd : tableDefinition.getColumnDefinitions()) {
+            if (cd.getName().equals(columnName)) {
+                return typeToString(cd).startsWith("LONG");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param defaultValue the default value of a column
+     * @return true if the default is a PostgreSQL expression, such as now() or a cast, rather than a literal
+     */
+    private static boolean isExpression(String defaultValue) {
+        return defaultValue.contains("(") || defaultValue.contains("::");
+    }
+}
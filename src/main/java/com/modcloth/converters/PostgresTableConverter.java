@@ -1,6 +1,7 @@
 package com.modcloth.converters;
 
 import java.sql.Types;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -9,6 +10,7 @@ import org.apache.commons.lang3.StringUtils;
 
 import com.modcloth.database.TableDefinition;
 import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
 import com.modcloth.database.TableDefinition.IndexDefinition;
 
 
@@ -59,19 +61,104 @@ public class PostgresTableConverter {
      * @return the SQL statements to create the indexes on the table
      */
     public List<String> convertToCreateIndex() {
-        final List<String> createStmts = new LinkedList<String>();
+        return new LinkedList<String>(convertToCreateIndexByName().values());
+    }
+
+    /**
+     * Converts the object's TableDefinition into the corresponding SQL
+     * statements used to create the indexes on the table in PostgreSQL,
+     * keyed by the name of the index each statement creates.
+     * 
+     * @return the SQL statements to create the indexes on the table, by index name
+     */
+    public Map<String, String> convertToCreateIndexByName() {
+        final Map<String, String> createStmts = new LinkedHashMap<String, String>();
         final Map<String, List<IndexDefinition>> indexes = tableDefinition.getIndexesByName();
 
         for (String i : indexes.keySet()) {
             if (i.equals("PRIMARY")) {
-                createStmts.add(createPrimaryKeyStatement(tableDefinition, indexes.get(i)));
+                createStmts.put(i, createPrimaryKeyStatement(tableDefinition, indexes.get(i)));
             } else {
+                createStmts.put(i, createIndexStatement(tableDefinition, indexes.get(i)));
+            }
+        }
+        return createStmts;
+    }
+
+    /**
+     * Converts the object's TableDefinition into the SQL statement used to
+     * add the primary key to the table in PostgreSQL.
+     * 
+     * @return the SQL statement to add the primary key, or null if the table has none
+     */
+    public String convertToCreatePrimaryKey() {
+        final List<IndexDefinition> primary = tableDefinition.getIndexesByName().get("PRIMARY");
+
+        return primary == null ? null : createPrimaryKeyStatement(tableDefinition, primary);
+    }
+
+    /**
+     * Converts the object's TableDefinition into the SQL statements used to
+     * create the indexes other than the primary key on the table in PostgreSQL.
+     * 
+     * @return the SQL statements to create the secondary indexes on the table
+     */
+    public List<String> convertToCreateSecondaryIndexes() {
+        final List<String> createStmts = new LinkedList<String>();
+        final Map<String, List<IndexDefinition>> indexes = tableDefinition.getIndexesByName();
+
+        for (String i : indexes.keySet()) {
+            if (!i.equals("PRIMARY")) {
                 createStmts.add(createIndexStatement(tableDefinition, indexes.get(i)));
             }
         }
         return createStmts;
     }
 
+    /**
+     * Converts the object's TableDefinition into the SQL statements used to
+     * add its foreign keys in PostgreSQL. The keys are added NOT VALID, so
+     * adding them does not check the existing rows; each must be validated
+     * separately.
+     *
+     * @return the SQL statements to add the foreign keys of the table, by constraint name
+     */
+    public Map<String, String> convertToAddForeignKeyByName() {
+        final Map<String, String> addStmts = new LinkedHashMap<String, String>();
+
+        for (Map.Entry<String, List<ForeignKeyDefinition>> fk : tableDefinition.getForeignKeysByName().entrySet()) {
+            addStmts.put(fk.getKey(), createForeignKeyStatement(tableDefinition, fk.getKey(), fk.getValue()));
+        }
+        return addStmts;
+    }
+
+    /**
+     * Build the syntactically-correct ALTER TABLE statement to add a FOREIGN KEY
+     * to the given table in PostgreSQL without validating it.
+     *
+     * @param tableDefinition represents the schema definition of the table
+     * @param name the name of the foreign key constraint
+     * @param foreignKeyDefinitions the columns of the foreign key, in key order
+     * @return the SQL statement to add the foreign key
+     */
+    private String createForeignKeyStatement(TableDefinition tableDefinition, String name,
+            List<ForeignKeyDefinition> foreignKeyDefinitions) {
+        StringBuilder stmt = new StringBuilder("ALTER TABLE ");
+        List<String> columnNames = new LinkedList<String>();
+        List<String> referencedColumnNames = new LinkedList<String>();
+
+        for (ForeignKeyDefinition fk : foreignKeyDefinitions) {
+            columnNames.add(fk.getColumnName());
+            referencedColumnNames.add(fk.getReferencedColumnName());
+        }
+        stmt.append(tableDefinition.getName()).append(" ADD CONSTRAINT ").append(name).append(" FOREIGN KEY (").
+                append(StringUtils.join(columnNames, ',')).append(") REFERENCES ").
+                append(foreignKeyDefinitions.get(0).getReferencedTableName()).append(" (").
+                append(StringUtils.join(referencedColumnNames, ',')).append(")").
+                append(foreignKeyDefinitions.get(0).toPostgresActions()).append(" NOT VALID");
+        return stmt.toString();
+    }
+
     /**
      * Build the syntactically-correct ALTER TABLE statement to add a PRIMARY KEY
      * to the given table in PostgreSQL.
@@ -138,7 +225,8 @@ public class PostgresTableConverter {
             final StringBuilder definition = new StringBuilder(columnDefinition.getName());
 
             if (columnDefinition.getIsAutoIncrement()) {
-                definition.append(" SERIAL");
+                definition.append(columnDefinition.getIsUnsigned() &&
+                        columnDefinition.getType() != Types.SMALLINT ? " BIGSERIAL" : " SERIAL");
             } else {
                 definition.append(" ").append(typeToString()).append(sizeToString());
                 definition.append(isNullableToString()).append(defaultToString());
@@ -148,18 +236,29 @@ public class PostgresTableConverter {
 
         /**
          * Convert the type of the column to it's textual representation.
+         * An UNSIGNED integer gets the next larger type, which holds all of
+         * its values; a BIGINT UNSIGNED becomes NUMERIC(20).
          * 
          * @return the textual representation of the column's type
          */
         private String typeToString() {
-            String typeName = SqlTypeConverter.typeToString(columnDefinition.getType());
+            final int type = columnDefinition.getType();
+            String typeName = SqlTypeConverter.typeToString(type);
 
-            if (typeName != null && (typeName.equals("BIT") || typeName.equals("TINYINT"))) {
+            if (columnDefinition.getIsUnsigned() && type == Types.SMALLINT) {
+                typeName = "INTEGER";
+            } else if (columnDefinition.getIsUnsigned() && type == Types.INTEGER) {
+                typeName = "BIGINT";
+            } else if (columnDefinition.getIsUnsigned() && type == Types.BIGINT) {
+                typeName = "NUMERIC(20)";
+            } else if (typeName != null && (typeName.equals("BIT") || typeName.equals("TINYINT"))) {
                 typeName = "BOOLEAN";
             } else if (typeName != null && typeName.equals("DOUBLE")) {
                 typeName = "FLOAT8";
-            } else if (typeName != null && typeName.equals("LONGVARCHAR")) {
+            } else if (typeName != null && (typeName.equals("LONGVARCHAR") || typeName.equals("CLOB"))) {
                 typeName = "TEXT";
+            } else if (typeName != null && (typeName.endsWith("BINARY") || typeName.equals("BLOB"))) {
+                typeName = "BYTEA";
             }
             return typeName;
         }
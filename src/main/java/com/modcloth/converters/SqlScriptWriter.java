@@ -0,0 +1,105 @@
+package com.modcloth.converters;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Writes SQL statements to a script file that can be applied with psql.
+ *
+ * Statements are encoded straight into a fixed-size buffer that is flushed to
+ * the file's channel whenever it fills, so the memory used does not depend on
+ * the number or size of the statements written.
+ *
+ * @author modcloth
+ *
+ */
+public class SqlScriptWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final CharBuffer TERMINATOR = CharBuffer.wrap(";\n");
+
+    private final FileOutputStream output;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder;
+
+    /**
+     * @param file the script file to create, replacing any existing file
+     * @throws IOException if the file cannot be opened
+     */
+    public SqlScriptWriter(File file) throws IOException {
+        this.output = new FileOutputStream(file);
+        this.channel = output.getChannel();
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.encoder = Charset.forName("UTF-8").newEncoder();
+    }
+
+    /**
+     * Appends a statement to the script, terminating it with a semicolon.
+     *
+     * @param statement the SQL statement to append
+     * @throws IOException if the statement cannot be written
+     */
+    public void writeStatement(String statement) throws IOException {
+        encode(CharBuffer.wrap(statement.trim()));
+        encode(TERMINATOR.duplicate());
+    }
+
+    /**
+     * Flushes any buffered statements and closes the script file.
+     *
+     * @throws IOException if the buffered statements cannot be written
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Encodes the given characters into the buffer, flushing it to the file
+     * each time it fills.
+     *
+     * @param chars the characters to encode
+     * @throws IOException if the buffer cannot be flushed
+     */
+    private void encode(CharBuffer chars) throws IOException {
+        encoder.reset();
+        while (true) {
+            final CoderResult result = encoder.encode(chars, buffer, true);
+
+            if (result.isOverflow()) {
+                flush();
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        if (encoder.flush(buffer).isOverflow()) {
+            flush();
+            encoder.flush(buffer);
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the file's channel.
+     *
+     * @throws IOException if the bytes cannot be written
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
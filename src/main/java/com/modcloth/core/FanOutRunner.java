@@ -0,0 +1,263 @@
+package com.modcloth.core;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.modcloth.database.IndexCardinalityReader;
+import com.modcloth.database.SchemaChecksumReader;
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+import com.modcloth.database.managers.MysqlConnectionManager;
+import com.modcloth.database.managers.PooledConnectionManager;
+import com.modcloth.database.managers.PostgresConnectionManager;
+import com.modcloth.metrics.MetricsRegistry;
+
+/**
+ * Runs the jobs of a job spec in one process, with a limit on the number of
+ * jobs running at a time and on the number of connections to each database
+ * server.
+ *
+ * Before reading a source database's table definitions, the runner reads a
+ * checksum of its structure. Databases with the same structure share one
+ * set of definitions, read by whichever job gets there first, and with them
+ * the PostgreSQL statements generated from the definitions.
+ *
+ * @author modcloth
+ *
+ */
+public class FanOutRunner {
+    private final JobSpec spec;
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+    private final ConcurrentMap<String, PooledConnectionManager> pools =
+            new ConcurrentHashMap<String, PooledConnectionManager>();
+    private final ConcurrentMap<String, FutureTask<List<TableDefinition>>> definitions =
+            new ConcurrentHashMap<String, FutureTask<List<TableDefinition>>>();
+
+    /**
+     * @param spec the jobs to run
+     */
+    public FanOutRunner(JobSpec spec) {
+        this.spec = spec;
+    }
+
+    /**
+     * Runs every job of the spec and waits for them to finish. Jobs whose
+     * options are invalid are reported and skipped.
+     *
+     * @return the report of every job that ran, by job name
+     */
+    public Map<String, RunReport> run() {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, spec.getConcurrency()));
+        final Map<String, Future<RunReport>> futures = new LinkedHashMap<String, Future<RunReport>>();
+        final Map<String, RunReport> reports = new LinkedHashMap<String, RunReport>();
+
+        for (final JobSpec.Job job : spec.getJobs()) {
+            final OptionParser optionParser = new OptionParser();
+
+            if (!optionParser.parse(spec.toArguments(job))) {
+                System.err.println("Error: unable to parse the options of job " + job.getName());
+                continue;
+            }
+            futures.put(job.getName(), executor.submit(new Callable<RunReport>() {
+                public RunReport call() {
+                    return runJob(job.getName(), optionParser);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        for (Map.Entry<String, Future<RunReport>> e : futures.entrySet()) {
+            try {
+                reports.put(e.getKey(), e.getValue().get());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ee) {
+                System.err.println("Error: job " + e.getKey() + " failed: " + ee.getCause());
+            }
+        }
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        for (PooledConnectionManager pool : pools.values()) {
+            pool.close();
+        }
+        return reports;
+    }
+
+    /**
+     * Runs a single job.
+     *
+     * @param name the name of the job
+     * @param optionParser the parsed options of the job
+     * @return the report of the job
+     */
+    private RunReport runJob(String name, OptionParser optionParser) {
+        final RunReport report = new RunReport(optionParser.getConfiguration());
+        final PooledConnectionManager myConnectionManager = pool(new MysqlConnectionManager(optionParser.getMysqlUrl()));
+        final ConnectionManager pgConnectionManager = optionParser.getPostgresUrl() == null ?
+                new PostgresConnectionManager(null) : pool(new PostgresConnectionManager(optionParser.getPostgresUrl()));
+        final long start = System.nanoTime();
+
+        System.out.println("Starting job " + name);
+        try {
+            final ConnectionManager myLimited = Main.adaptConcurrency(myConnectionManager, name + ".mysql",
+                    optionParser.getMysqlLatencyMillis(), optionParser.getMysqlMaxConnections());
+
+            Main.execute(optionParser, report, readTableDefinitions(optionParser, report, myLimited), myLimited,
+                    Main.adaptConcurrency(pgConnectionManager, name + ".postgres",
+                            optionParser.getPostgresLatencyMillis(), optionParser.getPostgresMaxConnections()));
+        } finally {
+            if (myConnectionManager != null) {
+                myConnectionManager.close();
+            }
+        }
+        report.finish(MetricsRegistry.getDefault());
+        if (optionParser.getReportFile() != null) {
+            report.write(optionParser.getReportFile());
+        }
+        System.out.println("Finished job " + name + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) +
+                " ms");
+        return report;
+    }
+
+    /**
+     * Returns the table definitions of the job's source database, reading
+     * them only if no database with the same structure has been read. Shared
+     * definitions are given the index cardinalities of the job's database,
+     * which depend on its rows rather than its structure.
+     *
+     * @param optionParser the parsed options of the job
+     * @param report the report of the job
+     * @param myConnectionManager manages connections to the job's MySQL database
+     * @return the table definitions
+     */
+    private List<TableDefinition> readTableDefinitions(final OptionParser optionParser, final RunReport report,
+            final ConnectionManager myConnectionManager) {
+        if (optionParser.getSnapshotInput() != null || myConnectionManager == null) {
+            return Main.readTableDefinitions(optionParser, report, myConnectionManager);
+        }
+
+        final String checksum = new SchemaChecksumReader(myConnectionManager, optionParser.getSourceDbName()).read();
+
+        if (checksum == null) {
+            return Main.readTableDefinitions(optionParser, report, myConnectionManager);
+        }
+
+        final FutureTask<List<TableDefinition>> read = new FutureTask<List<TableDefinition>>(
+                new Callable<List<TableDefinition>>() {
+                    public List<TableDefinition> call() {
+                        return Main.readTableDefinitions(optionParser, report, myConnectionManager);
+                    }
+                });
+        final FutureTask<List<TableDefinition>> existing =
+                definitions.putIfAbsent(checksum + " " + optionParser.getKeyPattern(), read);
+
+        if (existing == null) {
+            MetricsRegistry.getDefault().counter("metadata.cache.miss").increment();
+            read.run();
+        } else {
+            MetricsRegistry.getDefault().counter("metadata.cache.hit").increment();
+        }
+        try {
+            final List<TableDefinition> shared = (existing != null ? existing : read).get();
+
+            if (existing == null) {
+                return shared;
+            }
+
+            final Map<String, Map<String, Long>> cardinalities =
+                    new IndexCardinalityReader(myConnectionManager, optionParser.getSourceDbName()).read();
+
+            if (cardinalities == null) {
+                return Main.readTableDefinitions(optionParser, report, myConnectionManager);
+            }
+            return withCardinalities(shared, cardinalities);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ie);
+        } catch (ExecutionException ee) {
+            throw new IllegalStateException(ee.getCause());
+        }
+    }
+
+    /**
+     * @param tableDefinitions table definitions shared between databases of the same structure
+     * @param cardinalities the index cardinalities of one of the databases, by table name
+     * @return copies of the definitions with the database's cardinalities
+     */
+    protected static List<TableDefinition> withCardinalities(List<TableDefinition> tableDefinitions,
+            Map<String, Map<String, Long>> cardinalities) {
+        final List<TableDefinition> copies = new ArrayList<TableDefinition>(tableDefinitions.size());
+
+        for (TableDefinition t : tableDefinitions) {
+            final Map<String, Long> tableCardinalities = cardinalities.get(t.getName());
+
+            copies.add(t.withCardinalities(tableCardinalities == null ?
+                    Collections.<String, Long>emptyMap() : tableCardinalities));
+        }
+        return copies;
+    }
+
+    /**
+     * Returns the pool of connections to the database of the given manager,
+     * creating it on first use. Pools of databases on the same server share
+     * the server's connection limit.
+     *
+     * @param connectionManager a manager of connections to the database
+     * @return the pooled manager, or null if the manager has no URL
+     */
+    private PooledConnectionManager pool(ConnectionManager connectionManager) {
+        if (connectionManager.getConnectionUrl() == null) {
+            return null;
+        }
+
+        final String host = hostOf(connectionManager.getConnectionUrl());
+        Semaphore permits = hostPermits.get(host);
+
+        if (permits == null) {
+            hostPermits.putIfAbsent(host, new Semaphore(Math.max(1, spec.getHostConnections()), true));
+            permits = hostPermits.get(host);
+        }
+
+        final String key = connectionManager.getDriverName() + " " + connectionManager.getConnectionUrl();
+        final PooledConnectionManager pool = new PooledConnectionManager(connectionManager.getDriverName(),
+                connectionManager.getConnectionUrl(), permits);
+        final PooledConnectionManager existing = pools.putIfAbsent(key, pool);
+
+        return existing != null ? existing : pool;
+    }
+
+    /**
+     * @param connectionUrl a JDBC connection URL
+     * @return the host and port of the URL, or the whole URL if it has none
+     */
+    protected static String hostOf(String connectionUrl) {
+        try {
+            final URI uri = new URI(connectionUrl.startsWith("jdbc:") ? connectionUrl.substring(5) : connectionUrl);
+
+            if (uri.getHost() != null) {
+                return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+            }
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+        return connectionUrl;
+    }
+}
@@ -0,0 +1,149 @@
+package com.modcloth.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * A JSON file describing many conversions to run in one process, e.g. one
+ * per shard database:
+ *
+ * <pre>
+ * {
+ *   "concurrency": 16,
+ *   "hostConnections": 8,
+ *   "options": ["--key-pattern", ".*_sk$", "--delete-tables"],
+ *   "tables": ["orders", "order_items"],
+ *   "jobs": [
+ *     {"name": "shard_001", "myUrl": "jdbc:mysql://db1/...", "myDb": "shard_001", "pgUrl": "jdbc:postgresql://..."},
+ *     {"name": "shard_002", "myUrl": "jdbc:mysql://db1/...", "myDb": "shard_002", "pgUrl": "jdbc:postgresql://...",
+ *      "tables": ["orders"], "options": ["--tables-only"]}
+ *   ]
+ * }
+ * </pre>
+ *
+ * The top-level options and tables apply to every job that does not list
+ * its own; a job's options are added to the top-level ones.
+ *
+ * @author modcloth
+ *
+ */
+public class JobSpec {
+    private int concurrency = 4;
+    private int hostConnections = 8;
+    private List<String> options = new LinkedList<String>();
+    private List<String> tables = new LinkedList<String>();
+    private List<Job> jobs = new LinkedList<Job>();
+
+    /**
+     * Reads a job spec from a JSON file.
+     *
+     * @param file the file to read
+     * @return the job spec, or null if it could not be read
+     */
+    public static JobSpec read(File file) {
+        Reader reader = null;
+        JobSpec spec = null;
+
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            spec = new Gson().fromJson(reader, JobSpec.class);
+            if (spec == null || spec.jobs == null || spec.jobs.isEmpty()) {
+                System.err.println("Error: " + file + " lists no jobs");
+                spec = null;
+            }
+        } catch (IOException ioe) {
+            System.err.println("Error: " + ioe.getMessage());
+        } catch (JsonParseException jpe) {
+            System.err.println("Error: " + jpe.getMessage());
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (IOException ioe) {
+                System.err.println("Error: " + ioe.getMessage());
+            }
+        }
+        return spec;
+    }
+
+    /**
+     * @return the number of jobs run at the same time
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return the largest number of connections to each database server, over all jobs
+     */
+    public int getHostConnections() {
+        return hostConnections;
+    }
+
+    /**
+     * @return the jobs to run
+     */
+    public List<Job> getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Builds the program arguments of a job, as Main would receive them.
+     *
+     * @param job one of the spec's jobs
+     * @return the arguments of the job
+     */
+    public String[] toArguments(Job job) {
+        final List<String> args = new LinkedList<String>();
+
+        if (options != null) {
+            args.addAll(options);
+        }
+        if (job.options != null) {
+            args.addAll(job.options);
+        }
+        addOption(args, "--my-url", job.myUrl);
+        addOption(args, "--my-db", job.myDb);
+        addOption(args, "--pg-url", job.pgUrl);
+        args.addAll(job.tables != null && !job.tables.isEmpty() ? job.tables : tables);
+        return args.toArray(new String[args.size()]);
+    }
+
+    private static void addOption(List<String> args, String name, String value) {
+        if (value != null) {
+            args.add(name);
+            args.add(value);
+        }
+    }
+
+    /**
+     * A single conversion of the spec.
+     *
+     * @author modcloth
+     *
+     */
+    public static class Job {
+        private String name;
+        private String myUrl;
+        private String myDb;
+        private String pgUrl;
+        private List<String> tables;
+        private List<String> options;
+
+        /**
+         * @return the name of the job, or the source database name if it has none
+         */
+        public String getName() {
+            return name != null ? name : myDb;
+        }
+    }
+}
@@ -1,13 +1,50 @@
 package com.modcloth.core;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import com.modcloth.database.CsvExporter;
+import com.modcloth.database.DataCopier;
+import com.modcloth.database.FingerprintStore;
+import com.modcloth.database.IndexMemoryPlanner;
 import com.modcloth.database.MetaDataReader;
+import com.modcloth.database.MigrationPlanner;
+import com.modcloth.database.MigrationPlanner.Plan;
+import com.modcloth.database.MysqlDataLoader;
+import com.modcloth.database.PostgresCatalogReader;
+import com.modcloth.database.SchemaChecksumReader;
+import com.modcloth.database.SnapshotReader;
+import com.modcloth.database.SnapshotWriter;
 import com.modcloth.database.StatementExecutor;
+import com.modcloth.database.TableAnalyzer;
 import com.modcloth.database.TableDefinition;
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
+import com.modcloth.database.TableExporter;
+import com.modcloth.database.TableStatisticsReader;
+import com.modcloth.database.TableStatisticsReader.TableStatistics;
+import com.modcloth.database.TableSwapper;
+import com.modcloth.database.managers.AdaptiveConnectionManager;
+import com.modcloth.database.managers.AdaptiveLimiter;
 import com.modcloth.database.managers.ConnectionManager;
 import com.modcloth.database.managers.MysqlConnectionManager;
 import com.modcloth.database.managers.PostgresConnectionManager;
+import com.modcloth.metrics.Events;
+import com.modcloth.metrics.MetricsRegistry;
+import com.modcloth.metrics.ProgressReporter;
+import com.modcloth.server.ConversionServer;
 
 /**
  * Main
@@ -24,18 +61,46 @@ public class Main {
     public static void main(String[] args) {
         OptionParser optionParser = new OptionParser();
 
-        if (optionParser.parse(args)) {
-            MysqlConnectionManager myConnectionManager = new MysqlConnectionManager(optionParser.getMysqlUrl());
-            PostgresConnectionManager pgConnectionManager = new PostgresConnectionManager(optionParser.getPostgresUrl());
-            MetaDataReader reader = new MetaDataReader(myConnectionManager, optionParser.getSourceDbName(), optionParser.getKeyPattern());
-            List<TableDefinition> tableDefinitions = reader.read();
+        if (args.length > 0 && args[0].equals("server")) {
+            ConversionServer.main(Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length == 2 && args[0].equals("batch")) {
+            JobSpec spec = JobSpec.read(new File(args[1]));
 
-            if (optionParser.getTablesOnly() || (!optionParser.getTablesOnly() && !optionParser.getIndexesOnly())) {
-                createTables(pgConnectionManager, tableDefinitions, optionParser.getDeleteAllTables(), optionParser.getArguments());
+            if (spec == null) {
+                System.exit(1);
             }
+            MetricsRegistry.getDefault().registerMBean("com.modcloth:type=Metrics");
+            new FanOutRunner(spec).run();
+        } else if (optionParser.parse(args)) {
+            MetricsRegistry.getDefault().registerMBean("com.modcloth:type=Metrics");
+            if (optionParser.getFlightRecording() != null) {
+                Events.startFlightRecording(optionParser.getFlightRecording());
+            }
+
+            RunReport report = new RunReport(optionParser.getConfiguration());
+            ConnectionManager myConnectionManager = adaptConcurrency(new MysqlConnectionManager(
+                    optionParser.getMysqlUrl()), "mysql", optionParser.getMysqlLatencyMillis(),
+                    optionParser.getMysqlMaxConnections());
+            ConnectionManager pgConnectionManager = adaptConcurrency(new PostgresConnectionManager(
+                    optionParser.getPostgresUrl()), "postgres", optionParser.getPostgresLatencyMillis(),
+                    optionParser.getPostgresMaxConnections());
+
+            boolean completed = false;
 
-            if(optionParser.getIndexesOnly() || (!optionParser.getTablesOnly() && !optionParser.getIndexesOnly())) {
-                createTableIndexes(pgConnectionManager, tableDefinitions, optionParser.getArguments());
+            try {
+                completed = execute(optionParser, report, myConnectionManager, pgConnectionManager);
+            } finally {
+                Events.stopRecording();
+                if (optionParser.getPrintMetrics()) {
+                    MetricsRegistry.getDefault().dump(System.out);
+                }
+                if (optionParser.getReportFile() != null) {
+                    report.finish(MetricsRegistry.getDefault());
+                    report.write(optionParser.getReportFile());
+                }
+            }
+            if (!completed) {
+                System.exit(1);
             }
         } else {
             System.err.println("Unable to parse arguments");
@@ -43,14 +108,1049 @@ public class Main {
         }
     }
 
+    /**
+     * Limits the metadata reads and copy batches run on a manager's
+     * connections to as many as the database serves within a latency
+     * target, if one is given.
+     *
+     * @param connectionManager manages connections to the database
+     * @param name the name of the database, used when logging changes of the limit
+     * @param latencyMillis the latency of a single operation to hold, in milliseconds, or 0 for no limit
+     * @param maxConnections the largest number of operations run at once
+     * @return the limited manager, or the given manager if no target is given or it has no URL
+     */
+    public static ConnectionManager adaptConcurrency(ConnectionManager connectionManager, String name,
+            long latencyMillis, int maxConnections) {
+        if (latencyMillis <= 0 || connectionManager == null || connectionManager.getConnectionUrl() == null) {
+            return connectionManager;
+        }
+        return new AdaptiveConnectionManager(connectionManager, new AdaptiveLimiter(name, latencyMillis,
+                maxConnections));
+    }
+
+    /**
+     * Runs a conversion: reads the source table definitions, writes the
+     * snapshot if requested, predicts the conversion if requested, then
+     * either writes the SQL scripts or creates the tables and indexes in the
+     * PostgreSQL database. A conversion that is only planned stops once it
+     * is predicted.
+     *
+     * @param optionParser the parsed program options
+     * @param report the report in which the run's timings and errors are recorded
+     * @param myConnectionManager manages connections to the MySQL database
+     * @param pgConnectionManager manages connections to the PostgreSQL database
+     * @return true if the run completed, false if its scripts could not be written
+     */
+    public static boolean execute(OptionParser optionParser, RunReport report, ConnectionManager myConnectionManager,
+            ConnectionManager pgConnectionManager) {
+        Map<String, TableStatistics> statistics = new HashMap<String, TableStatistics>();
+        boolean completed = true;
+
+        if (optionParser.getToMysql()) {
+            convertToMysql(optionParser, report, myConnectionManager, pgConnectionManager);
+            return true;
+        }
+        if (optionParser.getProgressSeconds() > 0) {
+            if (optionParser.getSnapshotInput() == null) {
+                statistics = new TableStatisticsReader(myConnectionManager, optionParser.getSourceDbName()).read();
+            }
+            report.getProgress().setTotal(ProgressReporter.Phase.METADATA, statistics.size());
+            report.getProgress().start(optionParser.getProgressSeconds());
+        }
+
+        List<TableDefinition> tableDefinitions = readTableDefinitions(optionParser, report, myConnectionManager);
+
+        if (optionParser.getProgressSeconds() > 0) {
+            estimateProgress(report.getProgress(), tableDefinitions, optionParser.getArguments(), statistics,
+                    optionParser.getCopyData() ? optionParser.getSourceDbNames().size() : 0);
+        }
+        if (optionParser.getPlan() || optionParser.getPredict()) {
+            if (statistics.isEmpty()) {
+                statistics = new TableStatisticsReader(myConnectionManager, optionParser.getSourceDbName()).read();
+            }
+
+            final Plan plan = new MigrationPlanner(myConnectionManager, pgConnectionManager,
+                    optionParser.getPlanSampleRows()).plan(tableDefinitions, optionParser.getArguments(), statistics,
+                    optionParser.getCopyData() ? optionParser.getSourceDbNames() : new LinkedList<String>(),
+                    optionParser.getCopyThreads(), optionParser.getIndexThreads());
+
+            System.out.print(plan.toText());
+            report.setPlan(plan);
+        }
+        if (!optionParser.getPlan()) {
+            completed = execute(optionParser, report, tableDefinitions, myConnectionManager, pgConnectionManager);
+            if (report.getPlan() != null) {
+                printPlanComparison(report);
+            }
+        }
+        report.getProgress().stop();
+        return completed;
+    }
+
+    /**
+     * Prints the predicted and actual duration of every phase of a planned
+     * run.
+     *
+     * @param report the report holding the plan and the durations of the run's phases
+     */
+    public static void printPlanComparison(RunReport report) {
+        final Map<String, Long> actual = report.getPhaseMillis();
+
+        for (Map.Entry<String, Long> e : report.getPlan().getPhaseMillis().entrySet()) {
+            System.out.println("Phase " + e.getKey() + ": predicted " + e.getValue() + " ms, took " +
+                    (actual.containsKey(e.getKey()) ? actual.get(e.getKey()) + " ms" : "no time (not run)"));
+        }
+    }
+
+    /**
+     * Runs a conversion of table definitions that have already been read:
+     * writes the snapshot if requested, then either writes the SQL scripts
+     * or creates the tables and indexes in the PostgreSQL database.
+     *
+     * @param optionParser the parsed program options
+     * @param report the report in which the run's timings and errors are recorded
+     * @param tableDefinitions the source table definitions
+     * @param pgConnectionManager manages connections to the PostgreSQL database
+     * @return true if the run completed, false if its scripts could not be written
+     */
+    public static boolean execute(OptionParser optionParser, RunReport report, List<TableDefinition> tableDefinitions,
+            ConnectionManager pgConnectionManager) {
+        return execute(optionParser, report, tableDefinitions, new MysqlConnectionManager(optionParser.getMysqlUrl()),
+                pgConnectionManager);
+    }
+
+    /**
+     * Runs a conversion of table definitions that have already been read:
+     * writes the snapshot if requested, then either writes the SQL scripts,
+     * exports the rows to files, joins a distributed run as a worker, or
+     * creates the tables and indexes in the PostgreSQL database, copying the
+     * rows from MySQL if requested.
+     *
+     * @param optionParser the parsed program options
+     * @param report the report in which the run's timings and errors are recorded
+     * @param tableDefinitions the source table definitions
+     * @param myConnectionManager manages connections to the MySQL database the rows are copied from
+     * @param pgConnectionManager manages connections to the PostgreSQL database
+     * @return true if the run completed, false if its scripts could not be written
+     */
+    public static boolean execute(OptionParser optionParser, RunReport report, List<TableDefinition> tableDefinitions,
+            ConnectionManager myConnectionManager, ConnectionManager pgConnectionManager) {
+        if (optionParser.getSnapshotOutput() != null) {
+            new SnapshotWriter(optionParser.getSnapshotOutput()).write(tableDefinitions);
+        }
+
+        if (optionParser.getScriptDirectory() != null) {
+            return writeScripts(optionParser, tableDefinitions);
+        } else if (optionParser.getExportDirectory() != null) {
+            exportTables(myConnectionManager, tableDefinitions, optionParser.getArguments(),
+                    optionParser.getSourceDbName(), optionParser.getExportDirectory(),
+                    optionParser.getExportFileBytes(), optionParser.getChunkRows(), optionParser.getCleanValues(),
+                    optionParser.getCopyThreads(), report);
+        } else if (optionParser.getWorkerRunId() != null) {
+            Worker.run(optionParser, report, tableDefinitions, myConnectionManager, pgConnectionManager);
+        } else {
+            convert(optionParser, tableDefinitions, report, myConnectionManager, pgConnectionManager);
+        }
+        return true;
+    }
+
+    /**
+     * Runs a conversion the other way: reads the definitions of the given
+     * tables from the PostgreSQL schema, creates them with their indexes in
+     * the MySQL database, then copies their rows if requested.
+     *
+     * @param optionParser the parsed program options
+     * @param report the report in which the run's timings and errors are recorded
+     * @param myConnectionManager manages connections to the MySQL database the tables are created in
+     * @param pgConnectionManager manages connections to the PostgreSQL database the tables are read from
+     */
+    public static void convertToMysql(OptionParser optionParser, RunReport report,
+            ConnectionManager myConnectionManager, ConnectionManager pgConnectionManager) {
+        final List<String> tableNames = optionParser.getArguments();
+        final List<TableDefinition> tableDefinitions = new LinkedList<TableDefinition>();
+        final List<TableDefinition> created = new LinkedList<TableDefinition>();
+
+        for (TableDefinition t : new PostgresCatalogReader(pgConnectionManager, optionParser.getPostgresSchemaName(),
+                optionParser.getKeyPattern()).read()) {
+            if (tableNames.contains(t.getName())) {
+                tableDefinitions.add(t);
+            }
+        }
+        for (String name : tableNames) {
+            if (!containsTable(tableDefinitions, name)) {
+                System.err.println("Error: Table " + name + " was not found in schema " +
+                        optionParser.getPostgresSchemaName());
+                report.table(name).addError("Table was not found in schema " + optionParser.getPostgresSchemaName());
+            }
+        }
+
+        for (TableDefinition t : tableDefinitions) {
+            final TableDefinition destination = t.withName(optionParser.getSourceDbName() + "." + t.getName(), "");
+
+            dropTable(myConnectionManager, destination.getName(), report);
+            if (executeTableStatement(myConnectionManager, destination.toMysqlCreateSyntax(), destination.getName(),
+                    report)) {
+                created.add(t);
+            }
+        }
+
+        if (optionParser.getCopyData()) {
+            loadMysqlData(myConnectionManager, pgConnectionManager, created, optionParser.getPostgresSchemaName(),
+                    optionParser.getSourceDbName(), optionParser.getCopyThreads(), report);
+        }
+    }
+
+    /**
+     * Copies the rows of the given PostgreSQL tables into the MySQL tables
+     * of the same names, several tables at once.
+     *
+     * @param myConnectionManager manages connections to the MySQL database the rows are written to
+     * @param pgConnectionManager manages connections to the PostgreSQL database the rows are read from
+     * @param tableDefinitions the definitions of the source tables
+     * @param schemaName the name of the PostgreSQL schema holding the tables
+     * @param dbName the name of the MySQL database holding the destination tables
+     * @param threads the number of tables copied at once
+     * @param report the report in which the row and byte counts and errors are recorded
+     * @return the names of the destination tables that failed to be loaded
+     */
+    public static Set<String> loadMysqlData(final ConnectionManager myConnectionManager,
+            final ConnectionManager pgConnectionManager, List<TableDefinition> tableDefinitions,
+            final String schemaName, final String dbName, int threads, final RunReport report) {
+        final Set<String> failedTables = Collections.synchronizedSet(new HashSet<String>());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        for (final TableDefinition t : tableDefinitions) {
+            System.out.println("Copying rows of " + t.getName());
+            executor.execute(new Runnable() {
+                public void run() {
+                    final MysqlDataLoader loader = new MysqlDataLoader(pgConnectionManager, myConnectionManager);
+                    final String destinationName = dbName + "." + t.getName();
+                    final long start = System.nanoTime();
+
+                    loader.setProgressReporter(report.getProgress());
+                    if (!loader.load(t, schemaName, destinationName)) {
+                        failedTables.add(destinationName);
+                        report.table(destinationName).addError(loader.getLastError());
+                    }
+                    report.table(destinationName).addData(loader.getRows(), loader.getBytes());
+                    MetricsRegistry.getDefault().timer("data.copy").updateSince(start);
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                continue;
+            }
+        } catch (InterruptedException ie) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        return new HashSet<String>(failedTables);
+    }
+
+    /**
+     * Exports the rows of the given tables to CSV files in a directory with
+     * a {@link TableExporter}, recording the counts and errors of every key
+     * range in the report.
+     *
+     * @param myConnectionManager manages connections to the MySQL server holding the source database
+     * @param tableDefinitions the source table definitions
+     * @param tableNames list of the table names whose rows will be exported
+     * @param sourceDbName the name of the database the rows are read from
+     * @param directory the directory the files and manifest are written into, created if it does not exist
+     * @param maxFileBytes the size after which a new file is started
+     * @param chunkRows the number of keys in each range, or 0 to export each table as one range
+     * @param cleanValues flag indicating whether the values PostgreSQL rejects are cleaned
+     * @param threads the number of ranges exported at once
+     * @param report the report in which the row and byte counts, cleaned values and errors are recorded
+     * @return the names of the tables that failed to be exported
+     */
+    public static Set<String> exportTables(ConnectionManager myConnectionManager,
+            List<TableDefinition> tableDefinitions, List<String> tableNames, String sourceDbName,
+            File directory, long maxFileBytes, long chunkRows, boolean cleanValues, int threads,
+            final RunReport report) {
+        final TableExporter exporter = new TableExporter(myConnectionManager, directory, maxFileBytes, chunkRows,
+                threads) {
+            @Override
+            protected void exported(TableDefinition tableDefinition, String fileName, CsvExporter rangeExporter,
+                    boolean exported) {
+                final String name = tableDefinition.getName();
+
+                if (!exported) {
+                    report.table(name).addError(fileName + ": " + rangeExporter.getLastError());
+                }
+                report.table(name).addData(rangeExporter.getRows(), rangeExporter.getBytes());
+                report.table(name).addCleanedValues(rangeExporter.getTransformed());
+            }
+        };
+
+        exporter.setProgressReporter(report.getProgress());
+        exporter.setCleanValues(cleanValues);
+        return exporter.export(tableDefinitions, tableNames, sourceDbName);
+    }
+
+    /**
+     * @param tableDefinitions table definitions
+     * @param name the name of a table
+     * @return true if one of the definitions is of the named table
+     */
+    private static boolean containsTable(List<TableDefinition> tableDefinitions, String name) {
+        for (TableDefinition t : tableDefinitions) {
+            if (t.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the tables and indexes in the PostgreSQL database.
+     *
+     * @param optionParser the parsed program options
+     * @param tableDefinitions the source table definitions
+     * @param report the report in which the run's timings and errors are recorded
+     */
+    public static void convert(OptionParser optionParser, List<TableDefinition> tableDefinitions, RunReport report) {
+        convert(optionParser, tableDefinitions, report, new PostgresConnectionManager(optionParser.getPostgresUrl()));
+    }
+
+    /**
+     * Creates the tables and indexes in the PostgreSQL database.
+     *
+     * @param optionParser the parsed program options
+     * @param tableDefinitions the source table definitions
+     * @param report the report in which the run's timings and errors are recorded
+     * @param pgConnectionManager manages connections to the PostgreSQL database
+     */
+    public static void convert(OptionParser optionParser, List<TableDefinition> tableDefinitions, RunReport report,
+            ConnectionManager pgConnectionManager) {
+        convert(optionParser, tableDefinitions, report, new MysqlConnectionManager(optionParser.getMysqlUrl()),
+                pgConnectionManager);
+    }
+
+    /**
+     * Creates the tables in the PostgreSQL database, copies their rows from
+     * the MySQL database or shards if requested, then creates the indexes,
+     * so that the indexes are built once over the loaded rows. The loaded
+     * tables are analyzed if requested. When tables are swapped, all of this
+     * is done to staging copies, which then replace the live tables. Foreign
+     * keys are added last, once the keys they reference exist.
+     *
+     * @param optionParser the parsed program options
+     * @param tableDefinitions the source table definitions
+     * @param report the report in which the run's timings and errors are recorded
+     * @param myConnectionManager manages connections to the MySQL database the rows are copied from
+     * @param pgConnectionManager manages connections to the PostgreSQL database
+     */
+    public static void convert(OptionParser optionParser, List<TableDefinition> tableDefinitions, RunReport report,
+            ConnectionManager myConnectionManager, ConnectionManager pgConnectionManager) {
+        FingerprintStore fingerprintStore = new FingerprintStore(pgConnectionManager);
+        Set<String> failedTables = new HashSet<String>();
+        List<TableDefinition> unchangedDefinitions = new LinkedList<TableDefinition>();
+
+        if (optionParser.getSkipUnchanged()) {
+            final List<TableDefinition> changedDefinitions = fingerprintStore.removeUnchanged(tableDefinitions);
+
+            for (TableDefinition t : tableDefinitions) {
+                if (!changedDefinitions.contains(t) && optionParser.getArguments().contains(t.getName())) {
+                    unchangedDefinitions.add(t);
+                }
+            }
+            tableDefinitions = changedDefinitions;
+        }
+
+        if (optionParser.getSourceDbNames().size() > 1 && !checkShards(myConnectionManager,
+                optionParser.getSourceDbNames(), optionParser.getArguments())) {
+            return;
+        }
+
+        List<TableDefinition> destinationDefinitions = tableDefinitions;
+
+        if (optionParser.getShardColumn() != null) {
+            destinationDefinitions = withShardColumn(tableDefinitions, optionParser.getShardColumn());
+            unchangedDefinitions = withShardColumn(unchangedDefinitions, optionParser.getShardColumn());
+        }
+
+        final List<TableDefinition> referencingDefinitions = new LinkedList<TableDefinition>();
+        final List<TableDefinition> foreignKeyDefinitions = new LinkedList<TableDefinition>();
+
+        if (optionParser.getForeignKeys()) {
+            referencingDefinitions.addAll(withForeignKeysReferencing(unchangedDefinitions, tableDefinitions));
+            foreignKeyDefinitions.addAll(destinationDefinitions);
+            foreignKeyDefinitions.addAll(referencingDefinitions);
+        }
+
+        final String loadSuffix = optionParser.getSwapTables() ? TableSwapper.STAGING_SUFFIX : "";
+        final List<TableDefinition> loadDefinitions = new LinkedList<TableDefinition>();
+        final List<String> loadNames = new LinkedList<String>();
+
+        for (TableDefinition t : destinationDefinitions) {
+            loadDefinitions.add(optionParser.getSwapTables() ? TableSwapper.toStagingDefinition(t) : t);
+        }
+        for (String name : optionParser.getArguments()) {
+            loadNames.add(name + loadSuffix);
+        }
+
+        long start = System.nanoTime();
+
+        if (optionParser.getTablesOnly() || (!optionParser.getTablesOnly() && !optionParser.getIndexesOnly())) {
+            failedTables.addAll(createTables(pgConnectionManager, loadDefinitions,
+                    optionParser.getDeleteAllTables(), optionParser.getForeignKeys(), loadNames, report));
+            report.setPhaseMillis("tables", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        if (optionParser.getCopyData() && !optionParser.getIndexesOnly()) {
+            final List<String> tableNames = new LinkedList<String>();
+
+            for (String name : optionParser.getArguments()) {
+                if (!failedTables.contains(name + loadSuffix)) {
+                    tableNames.add(name);
+                }
+            }
+            start = System.nanoTime();
+            failedTables.addAll(copyData(myConnectionManager, pgConnectionManager, tableDefinitions, tableNames,
+                    optionParser, loadSuffix, report));
+            report.setPhaseMillis("data", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        if(optionParser.getIndexesOnly() || (!optionParser.getTablesOnly() && !optionParser.getIndexesOnly())) {
+            start = System.nanoTime();
+            failedTables.addAll(createTableIndexes(pgConnectionManager, loadDefinitions, loadNames,
+                    optionParser.getIndexThreads(), planIndexMemory(optionParser, loadDefinitions, loadSuffix,
+                            myConnectionManager, optionParser.getIndexThreads()), report));
+            report.setPhaseMillis("indexes", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        if (optionParser.getAnalyze()) {
+            final List<String> tableNames = new LinkedList<String>(loadNames);
+
+            tableNames.removeAll(failedTables);
+            failedTables.addAll(analyzeTables(pgConnectionManager, loadDefinitions, tableNames,
+                    optionParser.getAnalyzeThreads(), report));
+        }
+
+        if (optionParser.getSwapTables()) {
+            final Set<String> failedLoads = failedTables;
+            final List<String> tableNames = new LinkedList<String>();
+
+            failedTables = new HashSet<String>();
+            for (String name : optionParser.getArguments()) {
+                if (failedLoads.contains(name + loadSuffix)) {
+                    failedTables.add(name);
+                } else {
+                    tableNames.add(name);
+                }
+            }
+            failedTables.addAll(swapTables(pgConnectionManager, destinationDefinitions, tableNames,
+                    foreignKeyDefinitions, report));
+        }
+
+        if (optionParser.getForeignKeys() &&
+                (optionParser.getIndexesOnly() || (!optionParser.getTablesOnly() && !optionParser.getIndexesOnly()))) {
+            final List<String> tableNames = new LinkedList<String>(optionParser.getArguments());
+
+            tableNames.removeAll(failedTables);
+            failedTables.addAll(createForeignKeys(pgConnectionManager, foreignKeyDefinitions, tableNames,
+                    optionParser.getValidateThreads(), report));
+        }
+
+        if (optionParser.getSkipUnchanged()) {
+            recordFingerprints(fingerprintStore, tableDefinitions, optionParser.getArguments(), failedTables);
+            forgetFingerprints(fingerprintStore, referencingDefinitions, failedTables);
+        }
+    }
+
+    /**
+     * Returns the unchanged tables that have foreign keys to a table that is
+     * converted again, each with only those keys. Dropping the converted
+     * table drops the keys too, so they are added again with the converted
+     * tables' own keys.
+     *
+     * @param unchangedDefinitions the definitions of the tables that are skipped as unchanged
+     * @param tableDefinitions the definitions of the tables that are converted
+     * @return the unchanged tables whose foreign keys must be added again
+     */
+    public static List<TableDefinition> withForeignKeysReferencing(List<TableDefinition> unchangedDefinitions,
+            List<TableDefinition> tableDefinitions) {
+        final Set<String> tableNames = new HashSet<String>();
+        final List<TableDefinition> referencing = new LinkedList<TableDefinition>();
+
+        for (TableDefinition t : tableDefinitions) {
+            tableNames.add(t.getName());
+        }
+        for (TableDefinition t : unchangedDefinitions) {
+            final TableDefinition keys = t.withForeignKeysReferencing(tableNames);
+
+            if (!keys.getForeignKeyDefinitions().isEmpty()) {
+                referencing.add(keys);
+            }
+        }
+        return referencing;
+    }
+
+    /**
+     * Checks that the given tables have the same structure in every shard.
+     *
+     * @param connectionManager manages connections to the MySQL server holding the shards
+     * @param shardDbNames the names of the shard databases
+     * @param tableNames list of the table names that will be merged
+     * @return true if every shard matches the first, false if one differs or could not be read
+     */
+    public static boolean checkShards(ConnectionManager connectionManager, List<String> shardDbNames,
+            List<String> tableNames) {
+        String expected = null;
+
+        for (String shard : shardDbNames) {
+            final SchemaChecksumReader reader = new SchemaChecksumReader(connectionManager, shard);
+
+            reader.setTableNames(tableNames);
+
+            final String checksum = reader.read();
+
+            if (checksum == null) {
+                System.err.println("Error: unable to read the structure of shard " + shard);
+                return false;
+            } else if (expected == null) {
+                expected = checksum;
+            } else if (!expected.equals(checksum)) {
+                System.err.println("Error: shard " + shard + " does not have the structure of shard " +
+                        shardDbNames.get(0));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param tableDefinitions the source table definitions
+     * @param shardColumn the name of the column recording the shard of each row
+     * @return the definitions of the merged tables
+     */
+    public static List<TableDefinition> withShardColumn(List<TableDefinition> tableDefinitions, String shardColumn) {
+        final List<TableDefinition> merged = new LinkedList<TableDefinition>();
+
+        for (TableDefinition t : tableDefinitions) {
+            merged.add(t.withShardColumn(shardColumn));
+        }
+        return merged;
+    }
+
+    /**
+     * Copies the rows of the given tables from every source database into
+     * the PostgreSQL database. Every table of every source is copied as a
+     * separate task, so the shards of a table are loaded concurrently.
+     * Serial columns are then moved past the largest copied value.
+     *
+     * @param myConnectionManager manages connections to the MySQL server holding the source databases
+     * @param pgConnectionManager manages connections to the PostgreSQL database
+     * @param tableDefinitions the source table definitions
+     * @param tableNames list of the table names whose rows will be copied
+     * @param sourceDbNames the names of the databases the rows are copied from
+     * @param shardColumn the column in which the name of the source database is recorded, or null for none
+     * @param threads the number of copies run at once
+     * @param report the report in which the row and byte counts and errors are recorded
+     * @return the names of the tables that failed to be copied
+     */
+    public static Set<String> copyData(ConnectionManager myConnectionManager, ConnectionManager pgConnectionManager,
+            List<TableDefinition> tableDefinitions, List<String> tableNames, List<String> sourceDbNames,
+            String shardColumn, int threads, RunReport report) {
+        return copyData(myConnectionManager, pgConnectionManager, tableDefinitions, tableNames, sourceDbNames,
+                shardColumn, "", threads, report);
+    }
+
+    /**
+     * Copies the rows of the given tables from every source database into
+     * PostgreSQL tables named like them plus a suffix, such as their
+     * staging copies. The copies are reported under the destination names.
+     *
+     * @param myConnectionManager manages connections to the MySQL server holding the source databases
+     * @param pgConnectionManager manages connections to the PostgreSQL database
+     * @param tableDefinitions the source table definitions
+     * @param tableNames list of the table names whose rows will be copied
+     * @param sourceDbNames the names of the databases the rows are copied from
+     * @param shardColumn the column in which the name of the source database is recorded, or null for none
+     * @param destinationSuffix the suffix of the name of each destination table
+     * @param threads the number of copies run at once
+     * @param report the report in which the row and byte counts and errors are recorded
+     * @return the names of the destination tables that failed to be copied
+     */
+    public static Set<String> copyData(ConnectionManager myConnectionManager, ConnectionManager pgConnectionManager,
+            List<TableDefinition> tableDefinitions, List<String> tableNames, List<String> sourceDbNames,
+            String shardColumn, String destinationSuffix, int threads, RunReport report) {
+        return copyData(myConnectionManager, pgConnectionManager, tableDefinitions, tableNames, sourceDbNames,
+                shardColumn, destinationSuffix, 0, 0, false, threads, report);
+    }
+
+    /**
+     * Copies the rows of the given tables from the source databases of a
+     * run into PostgreSQL tables named like them plus a suffix, as the
+     * run's options say: with COPY or, for destinations that do not accept
+     * it, with multi-row INSERT statements, and with or without cleaning
+     * the values PostgreSQL rejects.
+     *
+     * @param myConnectionManager manages connections to the MySQL server holding the source databases
+     * @param pgConnectionManager manages connections to the PostgreSQL database
+     * @param tableDefinitions the source table definitions
+     * @param tableNames list of the table names whose rows will be copied
+     * @param optionParser the options of the run
+     * @param destinationSuffix the suffix of the name of each destination table
+     * @param report the report in which the row and byte counts, cleaned values and errors are recorded
+     * @return the names of the destination tables that failed to be copied
+     */
+    public static Set<String> copyData(ConnectionManager myConnectionManager, ConnectionManager pgConnectionManager,
+            List<TableDefinition> tableDefinitions, List<String> tableNames, OptionParser optionParser,
+            String destinationSuffix, RunReport report) {
+        return copyData(myConnectionManager, pgConnectionManager, tableDefinitions, tableNames,
+                optionParser.getSourceDbNames(), optionParser.getShardColumn(), destinationSuffix,
+                optionParser.getInsertRows(), optionParser.getInsertCommitBatches(), optionParser.getCleanValues(),
+                optionParser.getCopyThreads(), report);
+    }
+
+    /**
+     * Copies the rows of the given tables from every source database into
+     * PostgreSQL tables named like them plus a suffix.
+     *
+     * @param myConnectionManager manages connections to the MySQL server holding the source databases
+     * @param pgConnectionManager manages connections to the PostgreSQL database
+     * @param tableDefinitions the source table definitions
+     * @param tableNames list of the table names whose rows will be copied
+     * @param sourceDbNames the names of the databases the rows are copied from
+     * @param shardColumn the column in which the name of the source database is recorded, or null for none
+     * @param destinationSuffix the suffix of the name of each destination table
+     * @param insertRows the number of rows written by each INSERT statement, or 0 to write the rows with COPY
+     * @param commitBatches the number of INSERT statements run between commits
+     * @param cleanValues flag indicating whether the values PostgreSQL rejects are cleaned
+     * @param threads the number of copies run at once
+     * @param report the report in which the row and byte counts, cleaned values and errors are recorded
+     * @return the names of the destination tables that failed to be copied
+     */
+    private static Set<String> copyData(final ConnectionManager myConnectionManager,
+            final ConnectionManager pgConnectionManager, List<TableDefinition> tableDefinitions,
+            List<String> tableNames, List<String> sourceDbNames, final String shardColumn,
+            final String destinationSuffix, final int insertRows, final int commitBatches,
+            final boolean cleanValues, int threads, final RunReport report) {
+        final Set<String> failedTables = Collections.synchronizedSet(new HashSet<String>());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        for (final TableDefinition t : tableDefinitions) {
+            if (tableNames.contains(t.getName())) {
+                System.out.println("Copying rows of " + t.getName());
+
+                for (final String dbName : sourceDbNames) {
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            final DataCopier copier = new DataCopier(myConnectionManager, pgConnectionManager);
+                            final String destinationName = t.getName() + destinationSuffix;
+                            final long start = System.nanoTime();
+
+                            copier.setProgressReporter(report.getProgress());
+                            copier.setDestinationTableName(destinationName);
+                            copier.setInsertBatches(insertRows, commitBatches);
+                            copier.setCleanValues(cleanValues);
+                            if (!copier.copy(t, dbName, shardColumn, dbName)) {
+                                failedTables.add(destinationName);
+                                report.table(destinationName).addError(dbName + ": " + copier.getLastError());
+                            }
+                            report.table(destinationName).addData(copier.getRows(), copier.getBytes());
+                            report.table(destinationName).addDataMillis(TimeUnit.NANOSECONDS.toMillis(
+                                    System.nanoTime() - start));
+                            if (!copier.getTransformed().isEmpty()) {
+                                System.out.println("Cleaned values of " + destinationName + " from " + dbName +
+                                        ": " + copier.getTransformed());
+                                report.table(destinationName).addCleanedValues(copier.getTransformed());
+                            }
+                            MetricsRegistry.getDefault().timer("data.copy").updateSince(start);
+                        }
+                    });
+                }
+            }
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                continue;
+            }
+        } catch (InterruptedException ie) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        for (TableDefinition t : tableDefinitions) {
+            if (tableNames.contains(t.getName()) && !failedTables.contains(t.getName() + destinationSuffix)) {
+                resetSequences(pgConnectionManager, t, t.getName() + destinationSuffix, report);
+            }
+        }
+        return new HashSet<String>(failedTables);
+    }
+
+    /**
+     * Adds the foreign keys of the given tables, then validates them. The
+     * keys are added NOT VALID, which only briefly locks the tables, and are
+     * then validated under a lock that lets both tables be read and written.
+     * Validating two keys of one table would wait on each other, so the keys
+     * of a table are validated in turn while several tables are validated at
+     * once. Keys that reference a table that is not converted, or failed to
+     * be, are skipped.
+     *
+     * @param connectionManager manages connections to the PostgreSQL database
+     * @param tableDefinitions the definitions of the tables in the PostgreSQL database
+     * @param tableNames list of the table names whose foreign keys will be added
+     * @param threads the number of tables whose foreign keys are validated at once
+     * @param report the report in which the statements' timings and errors are recorded
+     * @return the names of the tables on which a foreign key failed to be added or validated
+     */
+    public static Set<String> createForeignKeys(final ConnectionManager connectionManager,
+            List<TableDefinition> tableDefinitions, List<String> tableNames, int threads, final RunReport report) {
+        final Set<String> failedTables = Collections.synchronizedSet(new HashSet<String>());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        for (final TableDefinition t : tableDefinitions) {
+            if (tableNames.contains(t.getName())) {
+                final Map<String, List<ForeignKeyDefinition>> foreignKeys = t.getForeignKeysByName();
+                final List<String> added = new LinkedList<String>();
+
+                for (Map.Entry<String, String> fk : t.toPostgresForeignKeySyntaxByName().entrySet()) {
+                    final String referencedTableName = foreignKeys.get(fk.getKey()).get(0).getReferencedTableName();
+
+                    if (!tableNames.contains(referencedTableName)) {
+                        System.out.println("Skipping foreign key " + fk.getKey() + " of " + t.getName() +
+                                ": " + referencedTableName + " is not converted");
+                    } else if (executeTableStatement(connectionManager, fk.getValue(), t.getName(), report)) {
+                        added.add(fk.getKey());
+                    } else {
+                        failedTables.add(t.getName());
+                    }
+                }
+                if (added.isEmpty()) {
+                    continue;
+                }
+                executor.execute(new Runnable() {
+                    public void run() {
+                        for (String fk : added) {
+                            final StatementExecutor statementExecutor = new StatementExecutor(connectionManager);
+                            final long start = System.nanoTime();
+
+                            if (!statementExecutor.executeStatement(t.toPostgresValidateForeignKeySyntax(fk),
+                                    t.getName())) {
+                                failedTables.add(t.getName());
+                                report.table(t.getName()).addError(statementExecutor.getLastError());
+                            }
+                            report.table(t.getName()).setForeignKeyMillis(fk, TimeUnit.NANOSECONDS.toMillis(
+                                    MetricsRegistry.getDefault().timer("foreignkey.validate").updateSince(start)));
+                        }
+                    }
+                });
+            }
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                continue;
+            }
+        } catch (InterruptedException ie) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        return new HashSet<String>(failedTables);
+    }
+
+    /**
+     * Analyzes the given tables in the PostgreSQL database, several at once,
+     * so that the planner has statistics before the first queries run.
+     *
+     * @param connectionManager manages connections to the PostgreSQL database
+     * @param tableDefinitions the definitions of the tables in the PostgreSQL database
+     * @param tableNames list of the table names that will be analyzed
+     * @param threads the number of tables analyzed at once
+     * @param report the report in which the analysis timings and errors are recorded
+     * @return the names of the tables that failed to be analyzed
+     */
+    public static Set<String> analyzeTables(final ConnectionManager connectionManager,
+            List<TableDefinition> tableDefinitions, List<String> tableNames, int threads, final RunReport report) {
+        final Set<String> failedTables = Collections.synchronizedSet(new HashSet<String>());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long start = System.nanoTime();
+        int analyzed = 0;
+
+        for (final TableDefinition t : tableDefinitions) {
+            if (tableNames.contains(t.getName())) {
+                analyzed++;
+                executor.execute(new Runnable() {
+                    public void run() {
+                        final TableAnalyzer analyzer = new TableAnalyzer(connectionManager);
+                        final long tableStart = System.nanoTime();
+
+                        if (!analyzer.analyze(t)) {
+                            failedTables.add(t.getName());
+                            report.table(t.getName()).addError(analyzer.getLastError());
+                        }
+                        report.table(t.getName()).setAnalyzeMillis(TimeUnit.NANOSECONDS.toMillis(
+                                System.nanoTime() - tableStart));
+                        MetricsRegistry.getDefault().timer("table.analyze").updateSince(tableStart);
+                    }
+                });
+            }
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                continue;
+            }
+        } catch (InterruptedException ie) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        MetricsRegistry.getDefault().timer("analyze").updateSince(start);
+        System.out.println("Analyzed " + analyzed + " tables in " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        return new HashSet<String>(failedTables);
+    }
+
+    /**
+     * Moves the sequence of every serial column of a table past the largest
+     * value copied into the column.
+     *
+     * @param connectionManager manages connections to the PostgreSQL database
+     * @param tableDefinition the definition of the table
+     * @param report the report in which the statements' timings and errors are recorded
+     * @return true if every sequence was moved, false if one failed
+     */
+    public static boolean resetSequences(ConnectionManager connectionManager, TableDefinition tableDefinition,
+            RunReport report) {
+        return resetSequences(connectionManager, tableDefinition, tableDefinition.getName(), report);
+    }
+
+    /**
+     * Moves the sequence of every serial column of a table past the largest
+     * value copied into the column.
+     *
+     * @param connectionManager manages connections to the PostgreSQL database
+     * @param tableDefinition the definition of the table
+     * @param tableName the name of the PostgreSQL table the rows were copied into
+     * @param report the report in which the statements' timings and errors are recorded
+     * @return true if every sequence was moved, false if one failed
+     */
+    public static boolean resetSequences(ConnectionManager connectionManager, TableDefinition tableDefinition,
+            String tableName, RunReport report) {
+        boolean reset = true;
+
+        for (ColumnDefinition cd : tableDefinition.getColumnDefinitions()) {
+            if (cd.getIsAutoIncrement()) {
+                reset &= executeTableStatement(connectionManager, toSetSequenceStatement(tableName, cd.getName()),
+                        tableName, report);
+            }
+        }
+        return reset;
+    }
+
+    /**
+     * Swaps the loaded staging copies of the given tables into place, one
+     * table at a time, and moves the report entry of each staging table to
+     * the live table.
+     *
+     * @param connectionManager manages connections to the PostgreSQL database
+     * @param tableDefinitions the definitions of the live tables
+     * @param tableNames list of the table names whose staging copies will be swapped in
+     * @param foreignKeyDefinitions the definitions of the tables whose foreign keys are added again after the
+     * swaps, or an empty list if foreign keys are not added
+     * @param report the report in which the swap timings and errors are recorded
+     * @return the names of the tables that failed to be swapped
+     */
+    public static Set<String> swapTables(ConnectionManager connectionManager, List<TableDefinition> tableDefinitions,
+            List<String> tableNames, List<TableDefinition> foreignKeyDefinitions, RunReport report) {
+        final TableSwapper swapper = new TableSwapper(connectionManager, foreignKeyDefinitions);
+        final Set<String> failedTables = new HashSet<String>();
+
+        for (TableDefinition t : tableDefinitions) {
+            if (tableNames.contains(t.getName())) {
+                final long start = System.nanoTime();
+
+                System.out.println("Swapping in " + t.getName());
+                report.renameTable(TableSwapper.toStagingName(t.getName()), t.getName());
+                if (!swapper.swap(t)) {
+                    failedTables.add(t.getName());
+                    report.table(t.getName()).addError(swapper.getLastError());
+                }
+                report.table(t.getName()).addDdlMillis(TimeUnit.NANOSECONDS.toMillis(
+                        MetricsRegistry.getDefault().timer("table.swap").updateSince(start)));
+            }
+        }
+        return failedTables;
+    }
+
+    /**
+     * The column is named in lower case, since pg_get_serial_sequence takes
+     * it as a quoted identifier while the tables are created unquoted.
+     *
+     * @param tableName the name of the table
+     * @param columnName the name of the serial column
+     * @return the statement that moves the column's sequence past its largest value
+     */
+    protected static String toSetSequenceStatement(String tableName, String columnName) {
+        return "SELECT setval(pg_get_serial_sequence('" + tableName + "', '" + columnName.toLowerCase() + "'), " +
+                "COALESCE(MAX(" + columnName + "), 0) + 1, false) FROM " + tableName;
+    }
+
+    /**
+     * Writes the statements that create the tables and indexes to SQL scripts.
+     *
+     * @param optionParser the parsed program options
+     * @param tableDefinitions the source table definitions
+     * @return true if every script was written, false if one failed
+     */
+    public static boolean writeScripts(OptionParser optionParser, List<TableDefinition> tableDefinitions) {
+        ScriptEmitter emitter = new ScriptEmitter(optionParser.getScriptDirectory(), optionParser.getScriptPerTable());
+        boolean written = true;
+
+        if (optionParser.getTablesOnly() || (!optionParser.getTablesOnly() && !optionParser.getIndexesOnly())) {
+            written = emitter.emitTables(tableDefinitions, optionParser.getDeleteAllTables(),
+                    optionParser.getForeignKeys(), optionParser.getArguments()) && written;
+        }
+
+        if(optionParser.getIndexesOnly() || (!optionParser.getTablesOnly() && !optionParser.getIndexesOnly())) {
+            written = emitter.emitIndexes(tableDefinitions, optionParser.getArguments()) && written;
+            if (optionParser.getForeignKeys()) {
+                written = emitter.emitForeignKeys(tableDefinitions, optionParser.getArguments()) && written;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Reads the source table definitions, either from the snapshot file given
+     * in the options or from the MySQL database.
+     *
+     * @param optionParser the parsed program options
+     * @param report the report in which the time taken to read each table is recorded
+     * @return the source table definitions
+     */
+    public static List<TableDefinition> readTableDefinitions(OptionParser optionParser, RunReport report) {
+        return readTableDefinitions(optionParser, report, new MysqlConnectionManager(optionParser.getMysqlUrl()));
+    }
+
+    /**
+     * Reads the source table definitions, either from the snapshot file given
+     * in the options or from the MySQL database.
+     *
+     * @param optionParser the parsed program options
+     * @param report the report in which the time taken to read each table is recorded
+     * @param myConnectionManager manages connections to the MySQL database
+     * @return the source table definitions
+     */
+    public static List<TableDefinition> readTableDefinitions(OptionParser optionParser, RunReport report,
+            ConnectionManager myConnectionManager) {
+        if (optionParser.getSnapshotInput() != null) {
+            return new SnapshotReader(optionParser.getSnapshotInput(), optionParser.getKeyPattern()).read();
+        }
+
+        MetaDataReader reader = new MetaDataReader(myConnectionManager, optionParser.getSourceDbName(),
+                optionParser.getKeyPattern());
+        reader.setProgressReporter(report.getProgress());
+        List<TableDefinition> tableDefinitions = reader.read();
+
+        for (Map.Entry<String, Long> e : reader.getReadMillis().entrySet()) {
+            report.table(e.getKey()).setMetadataReadMillis(e.getValue());
+        }
+        return tableDefinitions;
+    }
+
+    /**
+     * Sets the amount of work expected in the table and index phases. Each
+     * index is weighted by an equal share of its table's index size, so that
+     * the index phase's ETA reflects the bytes still to be indexed.
+     *
+     * @param progress the reporter in which the work is recorded
+     * @param tableDefinitions the source table definitions
+     * @param tableNames list of the table names that will be converted
+     * @param statistics the size estimates of the source tables, by table name
+     */
+    public static void estimateProgress(ProgressReporter progress, List<TableDefinition> tableDefinitions,
+            List<String> tableNames, Map<String, TableStatistics> statistics) {
+        estimateProgress(progress, tableDefinitions, tableNames, statistics, 0);
+    }
+
+    /**
+     * Sets the amount of work expected in the table, data and index phases.
+     * The data phase is estimated from the source tables' row counts, once
+     * for every database the rows are copied from.
+     *
+     * @param progress the reporter in which the work is recorded
+     * @param tableDefinitions the source table definitions
+     * @param tableNames list of the table names that will be converted
+     * @param statistics the size estimates of the source tables, by table name
+     * @param dataSources the number of databases the rows are copied from, or 0 if no rows are copied
+     */
+    public static void estimateProgress(ProgressReporter progress, List<TableDefinition> tableDefinitions,
+            List<String> tableNames, Map<String, TableStatistics> statistics, int dataSources) {
+
+        for (TableDefinition t: tableDefinitions) {
+            if (tableNames.contains(t.getName())) {
+                final Map<String, String> indexes = t.toPostgresIndexSyntaxByName();
+                final TableStatistics s = statistics.get(t.getName());
+                final long indexWeight = s == null || indexes.isEmpty() ? 1 :
+                        Math.max(1, s.getIndexLength() / indexes.size());
+
+                progress.addWork(ProgressReporter.Phase.TABLES, t.getName(), 1);
+                if (s != null) {
+                    progress.addTotal(ProgressReporter.Phase.DATA, s.getRows() * dataSources);
+                }
+                for (String indexName : indexes.keySet()) {
+                    progress.addWork(ProgressReporter.Phase.INDEXES, t.getName() + "." + indexName, indexWeight);
+                }
+            }
+        }
+    }
+
     /**
      * Drops a table if it exists
      * 
      * @param connectionManager manages connections for the database in which the table will be dropped
      * @param name the name of the table to drop
+     * @param report the report in which the statement's timing and errors are recorded
+     * @return true if the table was dropped, false if it failed
+     */
+    public static boolean dropTable(ConnectionManager connectionManager, String name, RunReport report) {
+        return dropTable(connectionManager, name, false, report);
+    }
+
+    /**
+     * Drops a table if it exists, along with the foreign keys and views that
+     * depend on it if requested.
+     *
+     * @param connectionManager manages connections for the database in which the table will be dropped
+     * @param name the name of the table to drop
+     * @param cascade flag indicating whether the objects that depend on the table are dropped too
+     * @param report the report in which the statement's timing and errors are recorded
+     * @return true if the table was dropped, false if it failed
      */
-    public static void dropTable(ConnectionManager connectionManager, String name) {
-        new StatementExecutor(connectionManager).executeStatement("DROP TABLE IF EXISTS " + name);
+    public static boolean dropTable(ConnectionManager connectionManager, String name, boolean cascade,
+            RunReport report) {
+        return executeTableStatement(connectionManager, "DROP TABLE IF EXISTS " + name + (cascade ? " CASCADE" : ""),
+                name, report);
+    }
+
+    /**
+     * Executes a statement that drops or creates a table, recording its
+     * timing and any error in the report.
+     *
+     * @param connectionManager manages connections for the database in which the statement is executed
+     * @param sqlStatement the statement to execute
+     * @param name the name of the table the statement applies to
+     * @param report the report in which the statement's timing and errors are recorded
+     * @return true if the statement was executed, false if it failed
+     */
+    private static boolean executeTableStatement(ConnectionManager connectionManager, String sqlStatement,
+            String name, RunReport report) {
+        final StatementExecutor executor = new StatementExecutor(connectionManager);
+        final long start = System.nanoTime();
+        final boolean executed = executor.executeStatement(sqlStatement, name);
+
+        report.table(name).addDdlMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (!executed) {
+            report.table(name).addError(executor.getLastError());
+        }
+        return executed;
     }
 
     /**
@@ -60,22 +1160,50 @@ public class Main {
      * @param tableDefinitions collection of the table definitions which will be used to generate the tables
      * @param deleteAllTables flag indicating whether all existing tables in the database should be dropped
      * @param tableNames list of the table names that will be created
+     * @param report the report in which the statements' timings and errors are recorded
+     * @return the names of the tables that failed to be created
+     */
+    public static Set<String> createTables(ConnectionManager connectionManager, List<TableDefinition> tableDefinitions,
+            boolean deleteAllTables, List<String> tableNames, RunReport report) {
+        return createTables(connectionManager, tableDefinitions, deleteAllTables, false, tableNames, report);
+    }
+
+    /**
+     * Create the given tables, first dropping them along with the objects
+     * that depend on them if requested. Tables referenced by the foreign
+     * keys of other tables can only be dropped with their dependents.
+     *
+     * @param connectionManager manages the connection to the database for which the tables will be created
+     * @param tableDefinitions collection of the table definitions which will be used to generate the tables
+     * @param deleteAllTables flag indicating whether all existing tables in the database should be dropped
+     * @param cascade flag indicating whether the objects that depend on a dropped table are dropped too
+     * @param tableNames list of the table names that will be created
+     * @param report the report in which the statements' timings and errors are recorded
+     * @return the names of the tables that failed to be created
      */
-    public static void createTables(ConnectionManager connectionManager, List<TableDefinition> tableDefinitions,
-            boolean deleteAllTables, List<String> tableNames) {
+    public static Set<String> createTables(ConnectionManager connectionManager, List<TableDefinition> tableDefinitions,
+            boolean deleteAllTables, boolean cascade, List<String> tableNames, RunReport report) {
+        final Set<String> failedTables = new HashSet<String>();
 
         for (TableDefinition t: tableDefinitions) {
             if (deleteAllTables) {
-                dropTable(connectionManager, t.getName());
+                dropTable(connectionManager, t.getName(), cascade, report);
             }
 
             if (tableNames.contains(t.getName())) {
                 if (!deleteAllTables) {
-                    dropTable(connectionManager, t.getName());
+                    dropTable(connectionManager, t.getName(), cascade, report);
                 }
-                new StatementExecutor(connectionManager).executeStatement(t.toPostgresCreateSyntax());
+                final long start = System.nanoTime();
+
+                if (!executeTableStatement(connectionManager, t.toPostgresCreateSyntax(), t.getName(), report)) {
+                    failedTables.add(t.getName());
+                }
+                MetricsRegistry.getDefault().timer("table.create").updateSince(start);
+                report.getProgress().complete(ProgressReporter.Phase.TABLES, t.getName());
             }
         }
+        return failedTables;
     }
 
     /**
@@ -83,17 +1211,187 @@ public class Main {
      * 
      * @param connectionManager manages the connection to the database for which indexes will be created
      * @param tableDefinitions definitions of the tables for which indexes will be created
+     * @param tableNames list of the table names for which indexes will be created
+     * @param report the report in which the index build times and errors are recorded
+     * @return the names of the tables on which an index failed to be created
      */
-    public static void createTableIndexes(ConnectionManager connectionManager, List<TableDefinition> tableDefinitions,
-            List<String> tableNames) {
+    public static Set<String> createTableIndexes(ConnectionManager connectionManager, List<TableDefinition> tableDefinitions,
+            List<String> tableNames, RunReport report) {
+        return createTableIndexes(connectionManager, tableDefinitions, tableNames, 1, null, report);
+    }
+
+    /**
+     * Create the indexes on all given tables, several at once. When the
+     * builds are given memory budgets, the largest indexes are started
+     * first, so that they do not hold up the end of the phase.
+     *
+     * @param connectionManager manages the connection to the database for which indexes will be created
+     * @param tableDefinitions definitions of the tables for which indexes will be created
+     * @param tableNames list of the table names for which indexes will be created
+     * @param threads the number of indexes built at once
+     * @param planner the planner holding the memory budget of each index, or null to use the server's settings
+     * @param report the report in which the index build times and errors are recorded
+     * @return the names of the tables on which an index failed to be created
+     */
+    public static Set<String> createTableIndexes(final ConnectionManager connectionManager,
+            List<TableDefinition> tableDefinitions, List<String> tableNames, int threads,
+            final IndexMemoryPlanner planner, final RunReport report) {
+        final Set<String> failedTables = Collections.synchronizedSet(new HashSet<String>());
+        final List<String[]> builds = new ArrayList<String[]>();
 
         for (TableDefinition t: tableDefinitions) {
             if (tableNames.contains(t.getName())) {
                 System.out.println("Building index for " + t.getName());
 
-                for (String s : t.toPostgresIndexSyntax()) {
-                    new StatementExecutor(connectionManager).executeStatement(s);
+                for (Map.Entry<String, String> i : t.toPostgresIndexSyntaxByName().entrySet()) {
+                    builds.add(new String[] { t.getName(), i.getKey(), i.getValue() });
+                }
+            }
+        }
+        if (planner != null) {
+            Collections.sort(builds, new Comparator<String[]>() {
+                public int compare(String[] left, String[] right) {
+                    final long leftBytes = planner.getBudget(left[0], left[1]).getEstimatedBytes();
+                    final long rightBytes = planner.getBudget(right[0], right[1]).getEstimatedBytes();
+
+                    return leftBytes == rightBytes ? 0 : leftBytes > rightBytes ? -1 : 1;
                 }
+            });
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        for (final String[] build : builds) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    final StatementExecutor statementExecutor = new StatementExecutor(connectionManager);
+                    final long start = System.nanoTime();
+                    final boolean built = planner == null ? statementExecutor.executeStatement(build[2], build[0]) :
+                            statementExecutor.executeStatements(planner.toBuildStatements(build[0], build[1],
+                                    build[2]), build[0]);
+
+                    if (!built) {
+                        failedTables.add(build[0]);
+                        report.table(build[0]).addError(statementExecutor.getLastError());
+                    }
+                    report.table(build[0]).setIndexMillis(build[1], TimeUnit.NANOSECONDS.toMillis(
+                            MetricsRegistry.getDefault().timer("index.build").updateSince(start)));
+                    report.getProgress().complete(ProgressReporter.Phase.INDEXES, build[0] + "." + build[1]);
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                continue;
+            }
+        } catch (InterruptedException ie) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        return new HashSet<String>(failedTables);
+    }
+
+    /**
+     * Plans the maintenance memory and parallel workers of every index
+     * build, sizing the indexes from the source table statistics. When rows
+     * are merged from several databases, the tables are taken to be that
+     * many times the size of the first.
+     *
+     * @param optionParser the parsed program options
+     * @param tableDefinitions the definitions of the tables whose indexes will be built
+     * @param myConnectionManager manages connections to the MySQL database the statistics are read from
+     * @param sessions the number of indexes built at once
+     * @return the planner holding every index's budget, or null if no maintenance memory budget was given
+     */
+    public static IndexMemoryPlanner planIndexMemory(OptionParser optionParser, List<TableDefinition> tableDefinitions,
+            ConnectionManager myConnectionManager, int sessions) {
+        return planIndexMemory(optionParser, tableDefinitions, "", myConnectionManager, sessions);
+    }
+
+    /**
+     * Plans the maintenance memory and parallel workers of every index
+     * build on tables named like the source tables plus a suffix, such as
+     * their staging copies.
+     *
+     * @param optionParser the parsed program options
+     * @param tableDefinitions the definitions of the tables whose indexes will be built
+     * @param tableSuffix the suffix of the name of each table whose indexes will be built
+     * @param myConnectionManager manages connections to the MySQL database the statistics are read from
+     * @param sessions the number of indexes built at once
+     * @return the planner holding every index's budget, or null if no maintenance memory budget was given
+     */
+    public static IndexMemoryPlanner planIndexMemory(OptionParser optionParser, List<TableDefinition> tableDefinitions,
+            String tableSuffix, ConnectionManager myConnectionManager, int sessions) {
+        if (optionParser.getMaintenanceMemory() == 0) {
+            return null;
+        }
+
+        final IndexMemoryPlanner planner = new IndexMemoryPlanner(optionParser.getMaintenanceMemory(),
+                optionParser.getMaintenanceWorkers(), sessions);
+        final Map<String, TableStatistics> statistics = new HashMap<String, TableStatistics>();
+        final int sources = optionParser.getSourceDbNames().size();
+
+        if (optionParser.getSnapshotInput() == null) {
+            for (Map.Entry<String, TableStatistics> e : new TableStatisticsReader(myConnectionManager,
+                    optionParser.getSourceDbName()).read().entrySet()) {
+                statistics.put(e.getKey() + tableSuffix, new TableStatistics(e.getValue().getRows() * sources,
+                        e.getValue().getDataLength() * sources, e.getValue().getIndexLength() * sources));
+            }
+        }
+        final List<String> tableNames = new LinkedList<String>();
+
+        for (String name : optionParser.getArguments()) {
+            tableNames.add(name + tableSuffix);
+        }
+        planner.plan(tableDefinitions, tableNames, statistics);
+        return planner;
+    }
+
+    /**
+     * Records the fingerprints of the given tables that were converted without errors.
+     * The source definitions are recorded, without a shard column, as they
+     * are what the next run compares against.
+     *
+     * @param fingerprintStore the store in which the fingerprints will be recorded
+     * @param tableDefinitions source definitions of the converted tables
+     * @param tableNames list of the table names that were converted
+     * @param failedTables names of the tables that failed to be converted
+     */
+    public static void recordFingerprints(FingerprintStore fingerprintStore, List<TableDefinition> tableDefinitions,
+            List<String> tableNames, Set<String> failedTables) {
+
+        for (TableDefinition t: tableDefinitions) {
+            if (tableNames.contains(t.getName()) && !failedTables.contains(t.getName())) {
+                fingerprintStore.record(t);
+            }
+        }
+    }
+
+    /**
+     * Removes the fingerprints of the unchanged tables whose foreign keys to
+     * a converted table were dropped and could not be added again, because
+     * adding them or converting the referenced table failed. The next run
+     * then converts those tables again instead of skipping them without
+     * their keys.
+     *
+     * @param fingerprintStore the store from which the fingerprints will be removed
+     * @param referencingDefinitions the unchanged tables whose foreign keys were added again
+     * @param failedTables names of the tables that failed to be converted or to get their foreign keys
+     */
+    public static void forgetFingerprints(FingerprintStore fingerprintStore,
+            List<TableDefinition> referencingDefinitions, Set<String> failedTables) {
+
+        for (TableDefinition t : referencingDefinitions) {
+            boolean lost = failedTables.contains(t.getName());
+
+            for (ForeignKeyDefinition fk : t.getForeignKeyDefinitions()) {
+                lost = lost || failedTables.contains(fk.getReferencedTableName());
+            }
+            if (lost) {
+                System.err.println("Error: The foreign keys of unchanged table " + t.getName() +
+                        " were not added again; it will be converted on the next run");
+                fingerprintStore.forget(t);
             }
         }
     }
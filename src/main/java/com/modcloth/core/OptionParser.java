@@ -1,7 +1,11 @@
 package com.modcloth.core;
 
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.CmdLineException;
@@ -40,6 +44,126 @@ public class OptionParser {
     @Option(name="--delete-tables", usage="Delete existing tables in destination database (default: false)")
     private boolean deleteAllTables;
 
+    @Option(name="--skip-unchanged", usage="Skip tables whose definition has not changed since the last run")
+    private boolean skipUnchanged;
+
+    @Option(name="--write-snapshot", usage="Write the source table definitions to a snapshot file", metaVar="FILE")
+    private File snapshotOutput;
+
+    @Option(name="--from-snapshot", usage="Read the table definitions from a snapshot file instead of MySQL", metaVar="FILE")
+    private File snapshotInput;
+
+    @Option(name="--script-dir", usage="Write the SQL to scripts in a directory instead of executing it", metaVar="DIR")
+    private File scriptDirectory;
+
+    @Option(name="--script-per-table", usage="Write a separate script per table for each phase")
+    private boolean scriptPerTable;
+
+    @Option(name="--metrics", usage="Print the run's timing and throughput metrics when it finishes")
+    private boolean printMetrics;
+
+    @Option(name="--jfr", usage="Record the run with Java Flight Recorder into a file", metaVar="FILE")
+    private File flightRecording;
+
+    @Option(name="--report", usage="Write a JSON report of the run's timings and errors to a file", metaVar="FILE")
+    private File reportFile;
+
+    @Option(name="--progress", usage="Print progress and ETA of each phase every N seconds", metaVar="N")
+    private int progressSeconds;
+
+    @Option(name="--copy-data", usage="Copy the rows of the tables after creating them")
+    private boolean copyData;
+
+    @Option(name="--merge-shards", usage="Merge the rows of the given comma-separated MySQL databases into one set of tables", metaVar="NAMES")
+    private String mergeShards;
+
+    @Option(name="--shard-column", usage="Add a column recording the shard each merged row came from", metaVar="NAME")
+    private String shardColumn;
+
+    @Option(name="--copy-threads", usage="Number of tables or shards copied at once (default: 4)", metaVar="N")
+    private int copyThreads;
+
+    @Option(name="--clean-values", usage="Clean values PostgreSQL rejects while copying: zero dates, NUL characters, unsigned overflow and TINYINTs other than 0 and 1")
+    private boolean cleanValues;
+
+    @Option(name="--insert-rows", usage="Copy rows with multi-row INSERT statements of N rows, for destinations that do not accept COPY (default: 0, COPY)", metaVar="N")
+    private int insertRows;
+
+    @Option(name="--insert-commit", usage="Number of INSERT statements run between commits when copying with INSERT (default: 10)", metaVar="N")
+    private int insertCommitBatches;
+
+    @Option(name="--index-threads", usage="Number of indexes built at once (default: 1)", metaVar="N")
+    private int indexThreads;
+
+    @Option(name="--maintenance-memory", usage="Memory in MB divided among the index builds running at once, set as their maintenance_work_mem", metaVar="MB")
+    private long maintenanceMemory;
+
+    @Option(name="--maintenance-workers", usage="Parallel workers divided among the index builds running at once, set as their max_parallel_maintenance_workers", metaVar="N")
+    private int maintenanceWorkers;
+
+    @Option(name="--foreign-keys", usage="Add the foreign keys once the indexes are built, dropping tables with CASCADE")
+    private boolean foreignKeys;
+
+    @Option(name="--validate-threads", usage="Number of tables whose foreign keys are validated at once (default: 4)", metaVar="N")
+    private int validateThreads;
+
+    @Option(name="--analyze", usage="Analyze the tables once they are loaded, raising the statistics target of selective indexed columns")
+    private boolean analyze;
+
+    @Option(name="--analyze-threads", usage="Number of tables analyzed at once (default: 4)", metaVar="N")
+    private int analyzeThreads;
+
+    @Option(name="--my-latency-ms", usage="Latency of a MySQL read to hold by adapting the number of MySQL reads running at once (default: 0, fixed)", metaVar="MS")
+    private long mysqlLatencyMillis;
+
+    @Option(name="--my-max-connections", usage="Most MySQL reads running at once when adapting to latency (default: 8)", metaVar="N")
+    private int mysqlMaxConnections;
+
+    @Option(name="--pg-latency-ms", usage="Latency of a PostgreSQL copy batch to hold by adapting the number of PostgreSQL batches running at once (default: 0, fixed)", metaVar="MS")
+    private long postgresLatencyMillis;
+
+    @Option(name="--pg-max-connections", usage="Most PostgreSQL copy batches running at once when adapting to latency (default: 8)", metaVar="N")
+    private int postgresMaxConnections;
+
+    @Option(name="--swap-tables", usage="Load each table as <NAME>__staging and rename it into place once it is built")
+    private boolean swapTables;
+
+    @Option(name="--worker", usage="Run as one of several workers sharing the run with the given id", metaVar="RUN_ID")
+    private String workerRunId;
+
+    @Option(name="--worker-name", usage="Name of the worker in the control table (default: pid@host)", metaVar="NAME")
+    private String workerName;
+
+    @Option(name="--worker-threads", usage="Number of work items the worker runs at once (default: 4)", metaVar="N")
+    private int workerThreads;
+
+    @Option(name="--lease-seconds", usage="Seconds a claimed work item is leased for between heartbeats (default: 60)", metaVar="N")
+    private int leaseSeconds;
+
+    @Option(name="--chunk-rows", usage="Split the copy of each table into work items, or its export into files, of N keys (default: 0, no split)", metaVar="N")
+    private long chunkRows;
+
+    @Option(name="--to-mysql", usage="Convert the given PostgreSQL tables into the MySQL database instead, copying their rows with --copy-data")
+    private boolean toMysql;
+
+    @Option(name="--pg-schema", usage="Name of the PostgreSQL schema holding the tables converted to MySQL (default: public)", metaVar="NAME")
+    private String postgresSchemaName;
+
+    @Option(name="--export-dir", usage="Export the rows of the tables to CSV files and a manifest in a directory instead of converting them", metaVar="DIR")
+    private File exportDirectory;
+
+    @Option(name="--export-file-mb", usage="Size in MB after which an export file is closed and the next one started (default: 256)", metaVar="MB")
+    private long exportFileMegabytes;
+
+    @Option(name="--plan", usage="Predict the duration and disk usage of the conversion from a trial on a sample of each table, run in a temporary schema_convert_plan schema of the PostgreSQL database, without converting")
+    private boolean plan;
+
+    @Option(name="--predict", usage="Predict the conversion as with --plan, then convert, reporting the predicted and actual times side by side")
+    private boolean predict;
+
+    @Option(name="--plan-sample-rows", usage="Number of rows of each table copied in the trial of --plan or --predict (default: 1000)", metaVar="N")
+    private int planSampleRows;
+
     @Argument
     private List<String> arguments = new ArrayList<String>();
 
@@ -51,6 +175,36 @@ public class OptionParser {
         indexesOnly = false;
         tinyIntToSmallInt = false;
         deleteAllTables = false;
+        skipUnchanged = false;
+        scriptPerTable = false;
+        printMetrics = false;
+        progressSeconds = 0;
+        copyData = false;
+        copyThreads = 4;
+        cleanValues = false;
+        insertRows = 0;
+        insertCommitBatches = 10;
+        indexThreads = 1;
+        maintenanceMemory = 0;
+        maintenanceWorkers = -1;
+        foreignKeys = false;
+        validateThreads = 4;
+        analyze = false;
+        analyzeThreads = 4;
+        swapTables = false;
+        mysqlLatencyMillis = 0;
+        mysqlMaxConnections = 8;
+        postgresLatencyMillis = 0;
+        postgresMaxConnections = 8;
+        workerThreads = 4;
+        leaseSeconds = 60;
+        chunkRows = 0;
+        toMysql = false;
+        postgresSchemaName = "public";
+        exportFileMegabytes = 256;
+        plan = false;
+        predict = false;
+        planSampleRows = 1000;
     }
 
     /**
@@ -68,13 +222,13 @@ public class OptionParser {
             if (arguments.isEmpty()) {
                 throw new CmdLineException(parser, "No table names were given");
             }
-            if (mysqlUrl == null || mysqlUrl.equals("")) {
+            if (snapshotInput == null && (mysqlUrl == null || mysqlUrl.equals(""))) {
                 throw new CmdLineException(parser, "No MySQL connection URL was given");
             }
-            if (postgresUrl == null || postgresUrl.equals("")) {
+            if (scriptDirectory == null && exportDirectory == null && (postgresUrl == null || postgresUrl.equals(""))) {
                 throw new CmdLineException(parser, "No PostgreSQL connection URL was given");
             }
-            if (sourceDbName == null || sourceDbName.equals("")) {
+            if (snapshotInput == null && mergeShards == null && (sourceDbName == null || sourceDbName.equals(""))) {
                 throw new CmdLineException(parser, "No source database name was given");
             }
             if (surrogateKeyPattern == null || surrogateKeyPattern.equals("")) {
@@ -83,6 +237,127 @@ public class OptionParser {
             if (tablesOnly && indexesOnly) {
                 throw new CmdLineException(parser, "Cannot specify both index-only and table-only");
             }
+            if (skipUnchanged && (tablesOnly || indexesOnly)) {
+                throw new CmdLineException(parser, "Cannot skip unchanged tables when creating only tables or indexes");
+            }
+            if (skipUnchanged && scriptDirectory != null) {
+                throw new CmdLineException(parser, "Cannot skip unchanged tables when writing scripts");
+            }
+            if (scriptPerTable && scriptDirectory == null) {
+                throw new CmdLineException(parser, "No script directory was given");
+            }
+            if (progressSeconds < 0) {
+                throw new CmdLineException(parser, "Progress interval cannot be negative");
+            }
+            if (mergeShards != null && getSourceDbNames().isEmpty()) {
+                throw new CmdLineException(parser, "No shard database names were given");
+            }
+            if (shardColumn != null && mergeShards == null) {
+                throw new CmdLineException(parser, "Cannot add a shard column without merging shards");
+            }
+            if (getCopyData() && (mysqlUrl == null || mysqlUrl.equals(""))) {
+                throw new CmdLineException(parser, "No MySQL connection URL was given");
+            }
+            if (getCopyData() && scriptDirectory != null) {
+                throw new CmdLineException(parser, "Cannot copy data when writing scripts");
+            }
+            if (getCopyData() && skipUnchanged) {
+                throw new CmdLineException(parser, "Cannot skip unchanged tables when copying data");
+            }
+            if (copyThreads < 1) {
+                throw new CmdLineException(parser, "Copy threads must be at least 1");
+            }
+            if (insertRows < 0) {
+                throw new CmdLineException(parser, "Insert rows cannot be negative");
+            }
+            if (insertCommitBatches < 1) {
+                throw new CmdLineException(parser, "Insert commit must be at least 1");
+            }
+            if (indexThreads < 1) {
+                throw new CmdLineException(parser, "Index threads must be at least 1");
+            }
+            if (maintenanceMemory < 0) {
+                throw new CmdLineException(parser, "Maintenance memory cannot be negative");
+            }
+            if (maintenanceWorkers >= 0 && maintenanceMemory == 0) {
+                throw new CmdLineException(parser, "Cannot divide maintenance workers without a maintenance memory budget");
+            }
+            if (validateThreads < 1) {
+                throw new CmdLineException(parser, "Validate threads must be at least 1");
+            }
+            if (foreignKeys && workerRunId != null) {
+                throw new CmdLineException(parser, "Cannot add foreign keys in worker mode");
+            }
+            if (analyze && scriptDirectory != null) {
+                throw new CmdLineException(parser, "Cannot analyze tables when writing scripts");
+            }
+            if (analyzeThreads < 1) {
+                throw new CmdLineException(parser, "Analyze threads must be at least 1");
+            }
+            if (swapTables && (tablesOnly || indexesOnly || deleteAllTables)) {
+                throw new CmdLineException(parser, "Cannot swap tables with table-only, index-only or delete-tables");
+            }
+            if (swapTables && (scriptDirectory != null || workerRunId != null)) {
+                throw new CmdLineException(parser, "Cannot swap tables when writing scripts or in worker mode");
+            }
+            if (mysqlLatencyMillis < 0 || postgresLatencyMillis < 0) {
+                throw new CmdLineException(parser, "Latency targets cannot be negative");
+            }
+            if (mysqlMaxConnections < 1 || postgresMaxConnections < 1) {
+                throw new CmdLineException(parser, "Max connections must be at least 1");
+            }
+            if ((mysqlLatencyMillis > 0 || postgresLatencyMillis > 0) && workerRunId != null) {
+                throw new CmdLineException(parser, "Cannot adapt connections to latency in worker mode");
+            }
+            if (workerRunId != null && (scriptDirectory != null || skipUnchanged)) {
+                throw new CmdLineException(parser, "Cannot write scripts or skip unchanged tables in worker mode");
+            }
+            if (workerThreads < 1) {
+                throw new CmdLineException(parser, "Worker threads must be at least 1");
+            }
+            if (leaseSeconds < 3) {
+                throw new CmdLineException(parser, "Lease must be at least 3 seconds");
+            }
+            if (chunkRows < 0) {
+                throw new CmdLineException(parser, "Chunk rows cannot be negative");
+            }
+            if (toMysql && (mergeShards != null || workerRunId != null || scriptDirectory != null ||
+                    snapshotInput != null || snapshotOutput != null)) {
+                throw new CmdLineException(parser,
+                        "Cannot convert to MySQL when merging shards, writing scripts or snapshots, or in worker mode");
+            }
+            if (toMysql && (tablesOnly || indexesOnly || swapTables || foreignKeys || analyze || skipUnchanged ||
+                    cleanValues || insertRows > 0)) {
+                throw new CmdLineException(parser, "Cannot convert to MySQL with table-only, index-only, swap-tables, " +
+                        "foreign-keys, analyze, skip-unchanged, clean-values or insert-rows");
+            }
+            if (exportDirectory != null && (mergeShards != null || workerRunId != null || toMysql ||
+                    scriptDirectory != null)) {
+                throw new CmdLineException(parser,
+                        "Cannot export when merging shards, converting to MySQL, writing scripts or in worker mode");
+            }
+            if (exportDirectory != null && (tablesOnly || indexesOnly || swapTables || foreignKeys || analyze ||
+                    insertRows > 0)) {
+                throw new CmdLineException(parser, "Cannot export with table-only, index-only, swap-tables, " +
+                        "foreign-keys, analyze or insert-rows");
+            }
+            if (exportFileMegabytes < 1) {
+                throw new CmdLineException(parser, "Export file size must be at least 1 MB");
+            }
+            if (plan && predict) {
+                throw new CmdLineException(parser, "Cannot specify both plan and predict");
+            }
+            if ((plan || predict) && (scriptDirectory != null || workerRunId != null || toMysql ||
+                    exportDirectory != null || snapshotInput != null)) {
+                throw new CmdLineException(parser, "Cannot plan when writing scripts, converting to MySQL, " +
+                        "exporting, reading a snapshot or in worker mode");
+            }
+            if (planSampleRows < 1) {
+                throw new CmdLineException(parser, "Plan sample rows must be at least 1");
+            }
+            if (snapshotInput != null && snapshotInput.equals(snapshotOutput)) {
+                throw new CmdLineException(parser, "Cannot write the snapshot that is being read");
+            }
         } catch(CmdLineException cle) {
             System.err.println(cle.getMessage());
             System.err.println("java schema-convert [options...] arguments...");
@@ -107,10 +382,11 @@ public class OptionParser {
     }
 
     /**
-     * @return the name of the source database
+     * @return the name of the source database, or of the first shard if none was given
      */
     public String getSourceDbName() {
-        return sourceDbName;
+        return sourceDbName == null && mergeShards != null && !getSourceDbNames().isEmpty() ?
+                getSourceDbNames().get(0) : sourceDbName;
     }
 
     /**
@@ -148,6 +424,352 @@ public class OptionParser {
         return deleteAllTables;
     }
 
+    /**
+     * @return the flag that indicates whether tables with an unchanged fingerprint should be skipped
+     */
+    public boolean getSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    /**
+     * @return the file to which the table definitions will be written, or null
+     */
+    public File getSnapshotOutput() {
+        return snapshotOutput;
+    }
+
+    /**
+     * @return the file from which the table definitions will be read, or null to read them from MySQL
+     */
+    public File getSnapshotInput() {
+        return snapshotInput;
+    }
+
+    /**
+     * @return the directory to which SQL scripts will be written, or null to execute the SQL
+     */
+    public File getScriptDirectory() {
+        return scriptDirectory;
+    }
+
+    /**
+     * @return the flag that indicates whether each table gets its own script per phase
+     */
+    public boolean getScriptPerTable() {
+        return scriptPerTable;
+    }
+
+    /**
+     * @return the flag that indicates whether the metrics should be printed when the run finishes
+     */
+    public boolean getPrintMetrics() {
+        return printMetrics;
+    }
+
+    /**
+     * @return the file to which a flight recording of the run will be written, or null
+     */
+    public File getFlightRecording() {
+        return flightRecording;
+    }
+
+    /**
+     * @return the number of seconds between progress reports, or 0 for no progress reports
+     */
+    public int getProgressSeconds() {
+        return progressSeconds;
+    }
+
+    /**
+     * @return true if the rows of the tables are copied, either from the source database or from the shards,
+     * or exported
+     */
+    public boolean getCopyData() {
+        return copyData || mergeShards != null || exportDirectory != null;
+    }
+
+    /**
+     * @return the names of the databases the rows are copied from: the shards if merging, else the source database
+     */
+    public List<String> getSourceDbNames() {
+        final List<String> names = new ArrayList<String>();
+
+        if (mergeShards == null) {
+            names.add(sourceDbName);
+        } else {
+            for (String name : mergeShards.split(",")) {
+                if (!name.trim().equals("")) {
+                    names.add(name.trim());
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return the name of the column recording the shard of each merged row, or null for no shard column
+     */
+    public String getShardColumn() {
+        return shardColumn;
+    }
+
+    /**
+     * @return the number of tables or shards copied at once
+     */
+    public int getCopyThreads() {
+        return copyThreads;
+    }
+
+    /**
+     * @return the flag that indicates whether values PostgreSQL rejects are cleaned while copying
+     */
+    public boolean getCleanValues() {
+        return cleanValues;
+    }
+
+    /**
+     * @return the number of rows written by each INSERT statement, or 0 to copy rows with COPY
+     */
+    public int getInsertRows() {
+        return insertRows;
+    }
+
+    /**
+     * @return the number of INSERT statements run between commits
+     */
+    public int getInsertCommitBatches() {
+        return insertCommitBatches;
+    }
+
+    /**
+     * @return the number of indexes built at once
+     */
+    public int getIndexThreads() {
+        return indexThreads;
+    }
+
+    /**
+     * @return the memory divided among the index builds running at once, in megabytes, or 0 to leave
+     * maintenance_work_mem unset
+     */
+    public long getMaintenanceMemory() {
+        return maintenanceMemory;
+    }
+
+    /**
+     * @return the parallel workers divided among the index builds running at once, or -1 to leave
+     * max_parallel_maintenance_workers unset
+     */
+    public int getMaintenanceWorkers() {
+        return maintenanceWorkers;
+    }
+
+    /**
+     * @return true if the foreign keys of the tables are added once their indexes are built
+     */
+    public boolean getForeignKeys() {
+        return foreignKeys;
+    }
+
+    /**
+     * @return the number of tables whose foreign keys are validated at once
+     */
+    public int getValidateThreads() {
+        return validateThreads;
+    }
+
+    /**
+     * @return true if the tables are analyzed once they are loaded
+     */
+    public boolean getAnalyze() {
+        return analyze;
+    }
+
+    /**
+     * @return the number of tables analyzed at once
+     */
+    public int getAnalyzeThreads() {
+        return analyzeThreads;
+    }
+
+    /**
+     * @return true if each table is loaded into a staging copy that then replaces the live table
+     */
+    public boolean getSwapTables() {
+        return swapTables;
+    }
+
+    /**
+     * @return the latency of a MySQL read to hold, in milliseconds, or 0 to use a fixed number of connections
+     */
+    public long getMysqlLatencyMillis() {
+        return mysqlLatencyMillis;
+    }
+
+    /**
+     * @return the largest number of MySQL connections in use at once when adapting to latency
+     */
+    public int getMysqlMaxConnections() {
+        return mysqlMaxConnections;
+    }
+
+    /**
+     * @return the latency of a PostgreSQL statement or copy batch to hold, in milliseconds, or 0 to use a fixed
+     * number of connections
+     */
+    public long getPostgresLatencyMillis() {
+        return postgresLatencyMillis;
+    }
+
+    /**
+     * @return the largest number of PostgreSQL connections in use at once when adapting to latency
+     */
+    public int getPostgresMaxConnections() {
+        return postgresMaxConnections;
+    }
+
+    /**
+     * @return the identifier of the distributed run the worker joins, or null when not running as a worker
+     */
+    public String getWorkerRunId() {
+        return workerRunId;
+    }
+
+    /**
+     * @return the name of the worker, unique among the workers of a run
+     */
+    public String getWorkerName() {
+        return workerName != null ? workerName : ManagementFactory.getRuntimeMXBean().getName();
+    }
+
+    /**
+     * @return the number of work items the worker runs at once
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * @return the number of seconds a claimed work item is leased for
+     */
+    public int getLeaseSeconds() {
+        return leaseSeconds;
+    }
+
+    /**
+     * @return the number of keys in each copy work item or exported range, or 0 to copy or export each table from
+     * each source as one item
+     */
+    public long getChunkRows() {
+        return chunkRows;
+    }
+
+    /**
+     * @return true if the tables are converted from PostgreSQL to MySQL rather than from MySQL to PostgreSQL
+     */
+    public boolean getToMysql() {
+        return toMysql;
+    }
+
+    /**
+     * @return the name of the PostgreSQL schema holding the tables converted to MySQL
+     */
+    public String getPostgresSchemaName() {
+        return postgresSchemaName;
+    }
+
+    /**
+     * @return the directory to which the rows are exported, or null to convert the tables
+     */
+    public File getExportDirectory() {
+        return exportDirectory;
+    }
+
+    /**
+     * @return the size in bytes after which an export file is closed and the next one started
+     */
+    public long getExportFileBytes() {
+        return exportFileMegabytes << 20;
+    }
+
+    /**
+     * @return true if the conversion is only predicted, not run
+     */
+    public boolean getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return true if the conversion is predicted before it is run
+     */
+    public boolean getPredict() {
+        return predict;
+    }
+
+    /**
+     * @return the number of rows of each table copied in the trial of a plan
+     */
+    public int getPlanSampleRows() {
+        return planSampleRows;
+    }
+
+    /**
+     * @return the file to which the JSON run report will be written, or null
+     */
+    public File getReportFile() {
+        return reportFile;
+    }
+
+    /**
+     * Returns the parsed options for recording with the results of a run.
+     * Connection URLs are stripped of their parameters, which may hold credentials.
+     *
+     * @return the option values, by option name
+     */
+    public Map<String, Object> getConfiguration() {
+        final Map<String, Object> configuration = new LinkedHashMap<String, Object>();
+
+        configuration.put("myUrl", withoutParameters(mysqlUrl));
+        configuration.put("pgUrl", withoutParameters(postgresUrl));
+        configuration.put("myDb", sourceDbName);
+        configuration.put("keyPattern", surrogateKeyPattern);
+        configuration.put("tablesOnly", tablesOnly);
+        configuration.put("indexesOnly", indexesOnly);
+        configuration.put("deleteTables", deleteAllTables);
+        configuration.put("skipUnchanged", skipUnchanged);
+        configuration.put("fromSnapshot", snapshotInput == null ? null : snapshotInput.getPath());
+        configuration.put("scriptDir", scriptDirectory == null ? null : scriptDirectory.getPath());
+        configuration.put("copyData", getCopyData());
+        configuration.put("mergeShards", mergeShards == null ? null : getSourceDbNames());
+        configuration.put("shardColumn", shardColumn);
+        configuration.put("cleanValues", cleanValues);
+        configuration.put("insertRows", insertRows);
+        configuration.put("indexThreads", indexThreads);
+        configuration.put("maintenanceMemory", maintenanceMemory);
+        configuration.put("foreignKeys", foreignKeys);
+        configuration.put("analyze", analyze);
+        configuration.put("swapTables", swapTables);
+        configuration.put("myLatencyMillis", mysqlLatencyMillis);
+        configuration.put("pgLatencyMillis", postgresLatencyMillis);
+        configuration.put("workerRunId", workerRunId);
+        configuration.put("toMysql", toMysql);
+        configuration.put("pgSchema", toMysql ? postgresSchemaName : null);
+        configuration.put("exportDir", exportDirectory == null ? null : exportDirectory.getPath());
+        configuration.put("plan", plan);
+        configuration.put("predict", predict);
+        configuration.put("planSampleRows", plan || predict ? planSampleRows : null);
+        configuration.put("tables", arguments);
+        return configuration;
+    }
+
+    /**
+     * @param url a connection URL
+     * @return the URL without its parameters, or null
+     */
+    private static String withoutParameters(String url) {
+        return url == null || url.indexOf('?') < 0 ? url : url.substring(0, url.indexOf('?'));
+    }
+
     /**
      * @return the list of command-line arguments passed to the program after options have been parsed
      */
@@ -0,0 +1,418 @@
+package com.modcloth.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.modcloth.database.MigrationPlanner.Plan;
+import com.modcloth.metrics.MetricsRegistry;
+import com.modcloth.metrics.MetricsRegistry.Timer;
+import com.modcloth.metrics.ProgressReporter;
+
+/**
+ * Machine-readable record of a single run, written as JSON when the run
+ * finishes so that runs can be stored and compared.
+ *
+ * The report holds the configuration used, the timings, row and byte counts
+ * and errors of every table, and run-level totals. A run that was planned
+ * also holds the predictions of the plan next to the actual durations of
+ * its phases, so that they can be compared. Table entries may be updated
+ * from several threads at once, including while the report is written, so
+ * each entry is copied under its lock before it is written. The live progress of the run is kept
+ * alongside but is not part of the written report.
+ *
+ * @author modcloth
+ *
+ */
+public class RunReport {
+    private final Map<String, Object> configuration;
+    private final long startedAt;
+    private long finishedAt;
+    private Plan plan;
+    private final Map<String, Long> phaseMillis;
+    private final transient Map<String, TableReport> tables;
+    private Totals totals;
+    private Map<String, Map<String, Long>> metrics;
+    private final transient ProgressReporter progress;
+
+    /**
+     * @param configuration the options the run was started with
+     */
+    public RunReport(Map<String, Object> configuration) {
+        this.configuration = configuration;
+        this.startedAt = System.currentTimeMillis();
+        this.phaseMillis = new LinkedHashMap<String, Long>();
+        this.tables = new LinkedHashMap<String, TableReport>();
+        this.progress = new ProgressReporter(System.out);
+    }
+
+    /**
+     * @return the live progress of the run's phases
+     */
+    public ProgressReporter getProgress() {
+        return progress;
+    }
+
+    /**
+     * @param plan the predictions the run was planned with
+     */
+    public synchronized void setPlan(Plan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * @return the predictions the run was planned with, or null if it was not planned
+     */
+    public synchronized Plan getPlan() {
+        return plan;
+    }
+
+    /**
+     * @param phase the name of a phase of the run, as named by the plan
+     * @param millis the time taken by the phase
+     */
+    public synchronized void setPhaseMillis(String phase, long millis) {
+        phaseMillis.put(phase, millis);
+    }
+
+    /**
+     * @return the time taken by each phase of the run, by phase name, in milliseconds
+     */
+    public synchronized Map<String, Long> getPhaseMillis() {
+        return new LinkedHashMap<String, Long>(phaseMillis);
+    }
+
+    /**
+     * @param name the name of the table
+     * @return the report entry of the table, created if it does not exist
+     */
+    public synchronized TableReport table(String name) {
+        TableReport table = tables.get(name);
+
+        if (table == null) {
+            table = new TableReport();
+            tables.put(name, table);
+        }
+        return table;
+    }
+
+    /**
+     * Moves the report entry of a table that was renamed to its new name,
+     * replacing any entry under that name.
+     *
+     * @param name the old name of the table
+     * @param newName the new name of the table
+     */
+    public synchronized void renameTable(String name, String newName) {
+        final TableReport table = tables.remove(name);
+
+        if (table != null) {
+            tables.put(newName, table);
+        }
+    }
+
+    /**
+     * @return the report entries of every table, by table name
+     */
+    public synchronized Map<String, TableReport> getTables() {
+        return new LinkedHashMap<String, TableReport>(tables);
+    }
+
+    /**
+     * Records the end of the run, computing the run-level totals and copying
+     * the timers of the given metrics registry into the report.
+     *
+     * @param registry the registry holding the run's metrics
+     */
+    public synchronized void finish(MetricsRegistry registry) {
+        finishedAt = System.currentTimeMillis();
+        totals = new Totals();
+        totals.elapsedMillis = finishedAt - startedAt;
+        for (TableReport t : tables.values()) {
+            synchronized (t) {
+                totals.tables++;
+                totals.failedTables += t.errors.isEmpty() ? 0 : 1;
+                totals.metadataReadMillis += t.metadataReadMillis;
+                totals.ddlMillis += t.ddlMillis;
+                totals.dataMillis += t.dataMillis;
+                for (Long millis : t.indexMillis.values()) {
+                    totals.indexMillis += millis;
+                }
+                totals.rows += t.rows;
+                totals.bytes += t.bytes;
+                totals.analyzeMillis += t.analyzeMillis;
+                for (Long millis : t.foreignKeyMillis.values()) {
+                    totals.foreignKeyMillis += millis;
+                }
+            }
+        }
+
+        metrics = new LinkedHashMap<String, Map<String, Long>>();
+        for (Map.Entry<String, Timer> e : registry.getTimers().entrySet()) {
+            final Map<String, Long> timer = new LinkedHashMap<String, Long>();
+
+            timer.put("count", e.getValue().getCount());
+            timer.put("totalMillis", e.getValue().getTotalMillis());
+            timer.put("p50Millis", e.getValue().getPercentileMillis(0.5));
+            timer.put("p99Millis", e.getValue().getPercentileMillis(0.99));
+            timer.put("maxMillis", e.getValue().getMaxMillis());
+            metrics.put(e.getKey(), timer);
+        }
+    }
+
+    /**
+     * @return the report as pretty-printed JSON
+     */
+    public synchronized String toJson() {
+        final Gson gson = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
+        final Map<String, TableReport> snapshots = new LinkedHashMap<String, TableReport>();
+        final JsonObject json = new JsonObject();
+
+        for (Map.Entry<String, TableReport> e : tables.entrySet()) {
+            snapshots.put(e.getKey(), e.getValue().snapshot());
+        }
+        for (Map.Entry<String, JsonElement> e : gson.toJsonTree(this).getAsJsonObject().entrySet()) {
+            json.add(e.getKey(), e.getValue());
+            if (e.getKey().equals("phaseMillis")) {
+                json.add("tables", gson.toJsonTree(snapshots));
+            }
+        }
+        return gson.toJson(json);
+    }
+
+    /**
+     * Writes the report as JSON to the given file.
+     *
+     * @param file the file to which the report will be written
+     * @return true if the report was written, false if it failed
+     */
+    public boolean write(File file) {
+        Writer writer = null;
+        boolean written = false;
+
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write(toJson());
+            written = true;
+        } catch (IOException ioe) {
+            System.err.println("Error: " + ioe.getMessage());
+        } finally {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+            } catch (IOException ioe) {
+                System.err.println("Error: " + ioe.getMessage());
+                written = false;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Report entry for a single table.
+     *
+     * @author modcloth
+     *
+     */
+    public static class TableReport {
+        private long metadataReadMillis;
+        private long ddlMillis;
+        private final Map<String, Long> indexMillis = new LinkedHashMap<String, Long>();
+        private long dataMillis;
+        private long rows;
+        private long bytes;
+        private final Map<String, Long> cleanedValues = new TreeMap<String, Long>();
+        private long analyzeMillis;
+        private final Map<String, Long> foreignKeyMillis = new LinkedHashMap<String, Long>();
+        private final List<String> errors = new LinkedList<String>();
+
+        /**
+         * @param millis the time taken to read the table's definition
+         */
+        public synchronized void setMetadataReadMillis(long millis) {
+            metadataReadMillis = millis;
+        }
+
+        /**
+         * @param millis time spent on statements that drop or create the table
+         */
+        public synchronized void addDdlMillis(long millis) {
+            ddlMillis += millis;
+        }
+
+        /**
+         * @param indexName the name of the index
+         * @param millis the time taken to build the index
+         */
+        public synchronized void setIndexMillis(String indexName, long millis) {
+            indexMillis.put(indexName, millis);
+        }
+
+        /**
+         * @param millis time spent copying rows of the table
+         */
+        public synchronized void addDataMillis(long millis) {
+            dataMillis += millis;
+        }
+
+        /**
+         * @param rows the number of rows copied
+         * @param bytes the number of bytes copied
+         */
+        public synchronized void addData(long rows, long bytes) {
+            this.rows += rows;
+            this.bytes += bytes;
+        }
+
+        /**
+         * @param counts the number of values cleaned in each column, by column name
+         */
+        public synchronized void addCleanedValues(Map<String, Long> counts) {
+            for (Map.Entry<String, Long> c : counts.entrySet()) {
+                final Long count = cleanedValues.get(c.getKey());
+
+                cleanedValues.put(c.getKey(), count == null ? c.getValue() : count + c.getValue());
+            }
+        }
+
+        /**
+         * @param millis the time taken to analyze the table
+         */
+        public synchronized void setAnalyzeMillis(long millis) {
+            analyzeMillis = millis;
+        }
+
+        /**
+         * @param foreignKeyName the name of the foreign key
+         * @param millis the time taken to validate the foreign key
+         */
+        public synchronized void setForeignKeyMillis(String foreignKeyName, long millis) {
+            foreignKeyMillis.put(foreignKeyName, millis);
+        }
+
+        /**
+         * @param error the error encountered while converting the table
+         */
+        public synchronized void addError(String error) {
+            errors.add(error);
+        }
+
+        /**
+         * @return the time taken to read the table's definition, in milliseconds
+         */
+        public synchronized long getMetadataReadMillis() {
+            return metadataReadMillis;
+        }
+
+        /**
+         * @return the time spent on statements that drop or create the table, in milliseconds
+         */
+        public synchronized long getDdlMillis() {
+            return ddlMillis;
+        }
+
+        /**
+         * @return the time taken to build each index, by index name, in milliseconds
+         */
+        public synchronized Map<String, Long> getIndexMillis() {
+            return new LinkedHashMap<String, Long>(indexMillis);
+        }
+
+        /**
+         * @return the time spent copying rows of the table, in milliseconds
+         */
+        public synchronized long getDataMillis() {
+            return dataMillis;
+        }
+
+        /**
+         * @return the number of rows copied
+         */
+        public synchronized long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return the number of bytes copied
+         */
+        public synchronized long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return the number of values cleaned in each column, by column name
+         */
+        public synchronized Map<String, Long> getCleanedValues() {
+            return new TreeMap<String, Long>(cleanedValues);
+        }
+
+        /**
+         * @return the time taken to analyze the table, in milliseconds
+         */
+        public synchronized long getAnalyzeMillis() {
+            return analyzeMillis;
+        }
+
+        /**
+         * @return the time taken to validate each foreign key, by constraint name, in milliseconds
+         */
+        public synchronized Map<String, Long> getForeignKeyMillis() {
+            return new LinkedHashMap<String, Long>(foreignKeyMillis);
+        }
+
+        /**
+         * @return the errors encountered while converting the table
+         */
+        public synchronized List<String> getErrors() {
+            return new LinkedList<String>(errors);
+        }
+
+        /**
+         * @return a copy of the entry that later updates do not change
+         */
+        protected synchronized TableReport snapshot() {
+            final TableReport copy = new TableReport();
+
+            copy.metadataReadMillis = metadataReadMillis;
+            copy.ddlMillis = ddlMillis;
+            copy.indexMillis.putAll(indexMillis);
+            copy.dataMillis = dataMillis;
+            copy.rows = rows;
+            copy.bytes = bytes;
+            copy.cleanedValues.putAll(cleanedValues);
+            copy.analyzeMillis = analyzeMillis;
+            copy.foreignKeyMillis.putAll(foreignKeyMillis);
+            copy.errors.addAll(errors);
+            return copy;
+        }
+    }
+
+    /**
+     * Run-level totals, computed when the run finishes.
+     */
+    private static class Totals {
+        private long elapsedMillis;
+        private int tables;
+        private int failedTables;
+        private long metadataReadMillis;
+        private long ddlMillis;
+        private long dataMillis;
+        private long indexMillis;
+        private long rows;
+        private long bytes;
+        private long analyzeMillis;
+        private long foreignKeyMillis;
+    }
+}
@@ -0,0 +1,291 @@
+package com.modcloth.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.modcloth.converters.PostgresTableConverter;
+import com.modcloth.converters.SqlScriptWriter;
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
+
+/**
+ * Writes the statements Main would execute to SQL script files instead.
+ *
+ * The statements are split by phase: tables, primary keys, indexes, and if
+ * requested foreign keys and their validation. By default each phase is a
+ * single file in the script directory. When scripts are written per table,
+ * each phase is a directory holding one file per table, so the files of a
+ * phase can be applied in parallel. Foreign keys are always added from a
+ * single file, since adding keys in parallel can deadlock on the tables
+ * they share. Statements are streamed to the files one table at a time.
+ *
+ * @author modcloth
+ *
+ */
+public class ScriptEmitter {
+    protected static final String TABLES = "01_tables";
+    protected static final String PRIMARY_KEYS = "02_primary_keys";
+    protected static final String INDEXES = "03_indexes";
+    protected static final String FOREIGN_KEYS = "04_foreign_keys";
+    protected static final String VALIDATE_FOREIGN_KEYS = "05_validate_foreign_keys";
+
+    private final File directory;
+    private final boolean perTable;
+
+    /**
+     * @param directory the directory in which the scripts will be written
+     * @param perTable flag indicating whether each table gets its own script per phase
+     */
+    public ScriptEmitter(File directory, boolean perTable) {
+        this.directory = directory;
+        this.perTable = perTable;
+    }
+
+    /**
+     * Writes the statements that drop and create the given tables.
+     *
+     * @param tableDefinitions collection of the table definitions which will be used to generate the tables
+     * @param deleteAllTables flag indicating whether all existing tables in the database should be dropped
+     * @param tableNames list of the table names that will be created
+     * @return true if the scripts were written, false if writing failed
+     */
+    public boolean emitTables(List<TableDefinition> tableDefinitions, boolean deleteAllTables,
+            List<String> tableNames) {
+        return emitTables(tableDefinitions, deleteAllTables, false, tableNames);
+    }
+
+    /**
+     * Writes the statements that drop and create the given tables, dropping
+     * the objects that depend on the tables too if requested.
+     *
+     * @param tableDefinitions collection of the table definitions which will be used to generate the tables
+     * @param deleteAllTables flag indicating whether all existing tables in the database should be dropped
+     * @param cascade flag indicating whether the objects that depend on a dropped table are dropped too
+     * @param tableNames list of the table names that will be created
+     * @return true if the scripts were written, false if writing failed
+     */
+    public boolean emitTables(List<TableDefinition> tableDefinitions, boolean deleteAllTables, boolean cascade,
+            List<String> tableNames) {
+        PhaseScripts tables = null;
+        boolean emitted = false;
+
+        try {
+            tables = new PhaseScripts(TABLES);
+            for (TableDefinition t : tableDefinitions) {
+                final boolean selected = tableNames.contains(t.getName());
+
+                if (deleteAllTables || selected) {
+                    final SqlScriptWriter writer = tables.writerFor(t.getName());
+
+                    writer.writeStatement("DROP TABLE IF EXISTS " + t.getName() + (cascade ? " CASCADE" : ""));
+                    if (selected) {
+                        writer.writeStatement(t.toPostgresCreateSyntax());
+                    }
+                    tables.finishTable();
+                }
+            }
+            emitted = true;
+        } catch (IOException ioe) {
+            System.err.println("Error: " + ioe.getMessage());
+        } finally {
+            emitted = close(tables) && emitted;
+        }
+        return emitted;
+    }
+
+    /**
+     * Writes the statements that add the primary keys and indexes of the given tables.
+     *
+     * @param tableDefinitions definitions of the tables for which indexes will be created
+     * @param tableNames list of the table names for which indexes will be created
+     * @return true if the scripts were written, false if writing failed
+     */
+    public boolean emitIndexes(List<TableDefinition> tableDefinitions, List<String> tableNames) {
+        PhaseScripts primaryKeys = null;
+        PhaseScripts indexes = null;
+        boolean emitted = false;
+
+        try {
+            primaryKeys = new PhaseScripts(PRIMARY_KEYS);
+            indexes = new PhaseScripts(INDEXES);
+            for (TableDefinition t : tableDefinitions) {
+                if (tableNames.contains(t.getName())) {
+                    final PostgresTableConverter converter = new PostgresTableConverter(t);
+                    final String primaryKey = converter.convertToCreatePrimaryKey();
+                    final List<String> secondaryIndexes = converter.convertToCreateSecondaryIndexes();
+
+                    if (primaryKey != null) {
+                        primaryKeys.writerFor(t.getName()).writeStatement(primaryKey);
+                        primaryKeys.finishTable();
+                    }
+                    if (!secondaryIndexes.isEmpty()) {
+                        final SqlScriptWriter writer = indexes.writerFor(t.getName());
+
+                        for (String s : secondaryIndexes) {
+                            writer.writeStatement(s);
+                        }
+                        indexes.finishTable();
+                    }
+                }
+            }
+            emitted = true;
+        } catch (IOException ioe) {
+            System.err.println("Error: " + ioe.getMessage());
+        } finally {
+            emitted = close(primaryKeys) && emitted;
+            emitted = close(indexes) && emitted;
+        }
+        return emitted;
+    }
+
+    /**
+     * Writes the statements that add the foreign keys of the given tables
+     * without checking their rows, and the statements that then validate
+     * them. Keys that reference a table that is not converted are skipped.
+     *
+     * @param tableDefinitions definitions of the tables for which foreign keys will be added
+     * @param tableNames list of the table names for which foreign keys will be added
+     * @return true if the scripts were written, false if writing failed
+     */
+    public boolean emitForeignKeys(List<TableDefinition> tableDefinitions, List<String> tableNames) {
+        PhaseScripts foreignKeys = null;
+        PhaseScripts validations = null;
+        boolean emitted = false;
+
+        try {
+            foreignKeys = new PhaseScripts(FOREIGN_KEYS, false);
+            validations = new PhaseScripts(VALIDATE_FOREIGN_KEYS, perTable);
+            for (TableDefinition t : tableDefinitions) {
+                if (tableNames.contains(t.getName())) {
+                    final Map<String, List<ForeignKeyDefinition>> keys = t.getForeignKeysByName();
+                    final List<String> added = new LinkedList<String>();
+
+                    for (Map.Entry<String, String> fk : t.toPostgresForeignKeySyntaxByName().entrySet()) {
+                        if (tableNames.contains(keys.get(fk.getKey()).get(0).getReferencedTableName())) {
+                            foreignKeys.writerFor(t.getName()).writeStatement(fk.getValue());
+                            added.add(fk.getKey());
+                        }
+                    }
+                    if (!added.isEmpty()) {
+                        final SqlScriptWriter writer = validations.writerFor(t.getName());
+
+                        for (String fk : added) {
+                            writer.writeStatement(t.toPostgresValidateForeignKeySyntax(fk));
+                        }
+                        validations.finishTable();
+                    }
+                }
+            }
+            emitted = true;
+        } catch (IOException ioe) {
+            System.err.println("Error: " + ioe.getMessage());
+        } finally {
+            emitted = close(foreignKeys) && emitted;
+            emitted = close(validations) && emitted;
+        }
+        return emitted;
+    }
+
+    /**
+     * Closes the scripts of a phase, ignoring nulls.
+     *
+     * @param scripts the scripts to close
+     * @return true if the scripts were closed, false if closing failed
+     */
+    private boolean close(PhaseScripts scripts) {
+        if (scripts != null) {
+            try {
+                scripts.close();
+            } catch (IOException ioe) {
+                System.err.println("Error: " + ioe.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hands out the script writers of a single phase: one shared writer, or a
+     * new writer for each table when scripts are written per table.
+     *
+     * @author modcloth
+     *
+     */
+    private class PhaseScripts {
+        private final String phase;
+        private final boolean perTable;
+        private SqlScriptWriter writer;
+
+        /**
+         * @param phase the name of the phase's script file or directory
+         * @throws IOException if the script directory or file cannot be created
+         */
+        public PhaseScripts(String phase) throws IOException {
+            this(phase, ScriptEmitter.this.perTable);
+        }
+
+        /**
+         * @param phase the name of the phase's script file or directory
+         * @param perTable flag indicating whether each table gets its own script in this phase
+         * @throws IOException if the script directory or file cannot be created
+         */
+        public PhaseScripts(String phase, boolean perTable) throws IOException {
+            this.phase = phase;
+            this.perTable = perTable;
+            mkdirs(perTable ? new File(directory, phase) : directory);
+            if (!perTable) {
+                writer = new SqlScriptWriter(new File(directory, phase + ".sql"));
+            }
+        }
+
+        /**
+         * @param tableName the name of the table whose statements will be written
+         * @return the writer to which the table's statements will be written
+         * @throws IOException if the script file cannot be opened
+         */
+        public SqlScriptWriter writerFor(String tableName) throws IOException {
+            if (perTable) {
+                writer = new SqlScriptWriter(new File(new File(directory, phase), tableName + ".sql"));
+            }
+            return writer;
+        }
+
+        /**
+         * Closes the current table's script when scripts are written per table.
+         *
+         * @throws IOException if the script cannot be flushed
+         */
+        public void finishTable() throws IOException {
+            if (perTable) {
+                close();
+            }
+        }
+
+        /**
+         * Closes the open script, if any.
+         *
+         * @throws IOException if the script cannot be flushed
+         */
+        public void close() throws IOException {
+            if (writer != null) {
+                final SqlScriptWriter open = writer;
+
+                writer = null;
+                open.close();
+            }
+        }
+
+        /**
+         * @param dir the directory to create if it does not exist
+         * @throws IOException if the directory cannot be created
+         */
+        private void mkdirs(File dir) throws IOException {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Unable to create directory " + dir);
+            }
+        }
+    }
+}
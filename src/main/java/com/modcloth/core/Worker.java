@@ -0,0 +1,415 @@
+package com.modcloth.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.modcloth.database.DataCopier;
+import com.modcloth.database.IndexMemoryPlanner;
+import com.modcloth.database.KeyRangeReader;
+import com.modcloth.database.StatementExecutor;
+import com.modcloth.database.TableAnalyzer;
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.WorkQueue;
+import com.modcloth.database.WorkQueue.WorkItem;
+import com.modcloth.database.managers.ConnectionManager;
+import com.modcloth.database.managers.PooledConnectionManager;
+import com.modcloth.metrics.MetricsRegistry;
+
+/**
+ * One of several processes, possibly on different hosts, that share a run
+ * through a {@link WorkQueue} in the destination PostgreSQL database.
+ *
+ * The first worker to start plans the run: one item per table, per source
+ * database and key range to copy, per index, per table's sequences, and
+ * per table to analyze. Every worker then claims and runs items until none
+ * are left. Items are phased per table: a table's rows are copied once it
+ * exists, its indexes and sequences are built once its rows are in, and it
+ * is analyzed last. A worker renews
+ * the leases of its items with a heartbeat, so the items of a crashed
+ * worker are handed out again when their leases expire. Items retried after
+ * a crash first remove what the earlier attempt may have left behind.
+ *
+ * @author modcloth
+ *
+ */
+public class Worker {
+    protected static final int MAX_ATTEMPTS = 3;
+    protected static final long POLL_MILLIS = 1000;
+
+    protected static final String TABLE = "table";
+    protected static final String DATA = "data";
+    protected static final String INDEX = "index";
+    protected static final String SEQUENCES = "sequences";
+    protected static final String ANALYZE = "analyze";
+
+    private final OptionParser optionParser;
+    private final RunReport report;
+    private final ConnectionManager myConnectionManager;
+    private final ConnectionManager pgConnectionManager;
+    private final Map<String, TableDefinition> sourceDefinitions = new HashMap<String, TableDefinition>();
+    private final Map<String, TableDefinition> destinationDefinitions = new HashMap<String, TableDefinition>();
+    private final WorkQueue queue;
+    private final String name;
+    private final IndexMemoryPlanner indexMemoryPlanner;
+
+    /**
+     * @param optionParser the parsed program options, the same for every worker of the run
+     * @param report the report in which the timings and errors of the items this worker runs are recorded
+     * @param tableDefinitions the source table definitions
+     * @param myConnectionManager manages connections to the MySQL server the rows are copied from
+     * @param pgConnectionManager manages connections to the PostgreSQL database
+     */
+    public Worker(OptionParser optionParser, RunReport report, List<TableDefinition> tableDefinitions,
+            ConnectionManager myConnectionManager, ConnectionManager pgConnectionManager) {
+        this.optionParser = optionParser;
+        this.report = report;
+        this.myConnectionManager = myConnectionManager;
+        this.pgConnectionManager = pgConnectionManager;
+        this.queue = new WorkQueue(pgConnectionManager, optionParser.getWorkerRunId(), MAX_ATTEMPTS);
+        this.name = optionParser.getWorkerName();
+
+        for (TableDefinition t : tableDefinitions) {
+            sourceDefinitions.put(t.getName(), t);
+            destinationDefinitions.put(t.getName(), optionParser.getShardColumn() == null ? t :
+                    t.withShardColumn(optionParser.getShardColumn()));
+        }
+        this.indexMemoryPlanner = Main.planIndexMemory(optionParser,
+                new LinkedList<TableDefinition>(destinationDefinitions.values()), myConnectionManager,
+                optionParser.getWorkerThreads());
+    }
+
+    /**
+     * Runs work items until every item of the run is finished.
+     *
+     * @param optionParser the parsed program options
+     * @param report the report in which the timings and errors are recorded
+     * @param tableDefinitions the source table definitions
+     * @param myConnectionManager manages connections to the MySQL server
+     * @param pgConnectionManager manages connections to the PostgreSQL database
+     * @return true if the worker ran until the run finished, false if it could not join the run
+     */
+    public static boolean run(OptionParser optionParser, RunReport report, List<TableDefinition> tableDefinitions,
+            ConnectionManager myConnectionManager, ConnectionManager pgConnectionManager) {
+        final PooledConnectionManager pool = new PooledConnectionManager(pgConnectionManager.getDriverName(),
+                pgConnectionManager.getConnectionUrl(), optionParser.getWorkerThreads() + 2);
+
+        try {
+            return new Worker(optionParser, report, tableDefinitions, myConnectionManager, pool).run();
+        } finally {
+            pool.close();
+        }
+    }
+
+    /**
+     * Joins the run, planning it if no worker has yet, and runs work items
+     * on the worker's threads until every item of the run is finished.
+     *
+     * @return true if the worker ran until the run finished, false if it could not join the run
+     */
+    public boolean run() {
+        if (!queue.createControlTable()) {
+            return false;
+        }
+        if (!queue.isSeeded()) {
+            final List<WorkItem> items = plan();
+
+            if (items == null || !queue.seed(items)) {
+                return false;
+            }
+        }
+
+        final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "worker-heartbeat");
+
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final long period = Math.max(1, optionParser.getLeaseSeconds() / 3);
+        final ExecutorService executor = Executors.newFixedThreadPool(optionParser.getWorkerThreads());
+
+        System.out.println("Worker " + name + " joined run " + optionParser.getWorkerRunId());
+        heartbeat.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                queue.heartbeat(name, optionParser.getLeaseSeconds());
+            }
+        }, period, period, TimeUnit.SECONDS);
+        for (int i = 0; i < optionParser.getWorkerThreads(); i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    runItems();
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                continue;
+            }
+        } catch (InterruptedException ie) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        heartbeat.shutdownNow();
+        System.out.println("Worker " + name + " finished run " + optionParser.getWorkerRunId());
+        return true;
+    }
+
+    /**
+     * Claims and runs items until none are pending or running.
+     */
+    private void runItems() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final WorkItem item = queue.claim(name, optionParser.getLeaseSeconds());
+
+            if (item == null) {
+                if (queue.countUnfinished() <= 0) {
+                    return;
+                }
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                final long start = System.nanoTime();
+                final String error = execute(item);
+
+                MetricsRegistry.getDefault().timer("worker.item." + item.getKind()).updateSince(start);
+                if (error == null) {
+                    queue.complete(item, name);
+                } else {
+                    MetricsRegistry.getDefault().counter("worker.item.failed").increment();
+                    queue.fail(item, name, error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the work items of the run, reading the key range of every
+     * source table whose copy is split into chunks.
+     *
+     * @return the items of the run, or null if the shards of a merge do not match
+     */
+    protected List<WorkItem> plan() {
+        final List<WorkItem> items = new LinkedList<WorkItem>();
+        final List<String> sourceDbNames = optionParser.getSourceDbNames();
+        final boolean tables = !optionParser.getIndexesOnly();
+        final boolean indexes = !optionParser.getTablesOnly();
+        final boolean data = optionParser.getCopyData() && !optionParser.getIndexesOnly();
+
+        if (data && sourceDbNames.size() > 1 && !Main.checkShards(myConnectionManager, sourceDbNames,
+                optionParser.getArguments())) {
+            return null;
+        }
+        for (String tableName : optionParser.getArguments()) {
+            final TableDefinition source = sourceDefinitions.get(tableName);
+
+            if (source == null) {
+                continue;
+            }
+            if (tables) {
+                items.add(new WorkItem(TABLE + ":" + tableName, 1, TABLE, tableName, null, null, null));
+            }
+            if (data) {
+                for (String dbName : sourceDbNames) {
+                    items.addAll(planCopy(source, dbName));
+                }
+                items.add(new WorkItem(SEQUENCES + ":" + tableName, 3, SEQUENCES, tableName, null, null, null));
+            }
+            if (indexes) {
+                for (String indexName : destinationDefinitions.get(tableName).toPostgresIndexSyntaxByName().keySet()) {
+                    items.add(new WorkItem(INDEX + ":" + tableName + ":" + indexName, 3, INDEX, tableName,
+                            indexName, null, null));
+                }
+            }
+            if (optionParser.getAnalyze()) {
+                items.add(new WorkItem(ANALYZE + ":" + tableName, 4, ANALYZE, tableName, null, null, null));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * @param tableDefinition the definition of the source table
+     * @param dbName the source database the rows are copied from
+     * @return one item per key range of the table, or a single item if the copy is not split
+     */
+    private List<WorkItem> planCopy(TableDefinition tableDefinition, String dbName) {
+        final List<WorkItem> items = new LinkedList<WorkItem>();
+        final String prefix = DATA + ":" + tableDefinition.getName() + ":" + dbName;
+        final long chunkRows = optionParser.getChunkRows();
+        final long[] range = chunkRows > 0 ? new KeyRangeReader(myConnectionManager).read(tableDefinition, dbName) :
+                null;
+
+        if (range == null || range.length == 0) {
+            items.add(new WorkItem(prefix, 2, DATA, tableDefinition.getName(), dbName, null, null));
+        } else {
+            for (long start = range[0]; start <= range[1]; start += chunkRows) {
+                items.add(new WorkItem(prefix + ":" + start, 2, DATA, tableDefinition.getName(), dbName, start,
+                        Math.min(start + chunkRows, range[1] + 1)));
+                if (start > Long.MAX_VALUE - chunkRows) {
+                    break;
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Runs a single work item.
+     *
+     * @param item the item to run
+     * @return null if the item succeeded, else its error
+     */
+    protected String execute(WorkItem item) {
+        final TableDefinition source = sourceDefinitions.get(item.getTableName());
+        final TableDefinition destination = destinationDefinitions.get(item.getTableName());
+
+        if (source == null) {
+            return "Unknown table " + item.getTableName();
+        } else if (item.getKind().equals(TABLE)) {
+            return Main.createTables(pgConnectionManager, Collections.singletonList(destination), false,
+                    Collections.singletonList(item.getTableName()), report).isEmpty() ? null : lastError(item);
+        } else if (item.getKind().equals(DATA)) {
+            return copy(item, source);
+        } else if (item.getKind().equals(SEQUENCES)) {
+            return Main.resetSequences(pgConnectionManager, source, report) ? null : lastError(item);
+        } else if (item.getKind().equals(INDEX)) {
+            return buildIndex(item, destination);
+        } else if (item.getKind().equals(ANALYZE)) {
+            return analyze(item, destination);
+        }
+        return "Unknown work item kind " + item.getKind();
+    }
+
+    /**
+     * Copies the rows of a data item, first deleting the rows an earlier
+     * attempt may have copied. When shards are merged without a shard
+     * column, the rows an earlier attempt copied cannot be told apart from
+     * those of the other shards, so the item is not retried rather than
+     * deleting or duplicating rows.
+     *
+     * @param item the data item
+     * @param source the definition of the source table
+     * @return null if the rows were copied, else the error
+     */
+    private String copy(WorkItem item, TableDefinition source) {
+        final String shardColumn = optionParser.getShardColumn();
+        final List<String> conditions = new LinkedList<String>();
+
+        if (item.getRangeStart() != null) {
+            final String keyName = KeyRangeReader.getIntegerKeyName(source);
+
+            conditions.add(keyName + " >= " + item.getRangeStart() + " AND " + keyName + " < " + item.getRangeEnd());
+        }
+        if (item.getAttempt() > 1) {
+            final List<String> cleanup = new LinkedList<String>(conditions);
+            final StatementExecutor executor = new StatementExecutor(pgConnectionManager);
+
+            if (shardColumn != null) {
+                cleanup.add(shardColumn + " = '" + item.getTarget().replace("'", "''") + "'");
+            } else if (optionParser.getSourceDbNames().size() > 1) {
+                final String error = "Cannot retry the copy from " + item.getTarget() + " without --shard-column: " +
+                        "its rows cannot be told apart from those of the other shards";
+
+                report.table(item.getTableName()).addError(error);
+                return error;
+            }
+            if (!executor.executeStatement("DELETE FROM " + item.getTableName() +
+                    (cleanup.isEmpty() ? "" : " WHERE " + StringUtils.join(cleanup, " AND ")), item.getTableName())) {
+                return executor.getLastError();
+            }
+        }
+
+        final DataCopier copier = new DataCopier(myConnectionManager, pgConnectionManager);
+
+        copier.setInsertBatches(optionParser.getInsertRows(), optionParser.getInsertCommitBatches());
+        copier.setCleanValues(optionParser.getCleanValues());
+
+        final boolean copied = copier.copy(source, item.getTarget(), shardColumn,
+                shardColumn == null ? null : item.getTarget(), conditions.isEmpty() ? null : StringUtils.join(conditions, " AND "));
+
+        report.table(item.getTableName()).addData(copier.getRows(), copier.getBytes());
+        report.table(item.getTableName()).addCleanedValues(copier.getTransformed());
+        if (!copied) {
+            report.table(item.getTableName()).addError(item.getTarget() + ": " + copier.getLastError());
+        }
+        return copied ? null : copier.getLastError();
+    }
+
+    /**
+     * Analyzes the table of an analyze item.
+     *
+     * @param item the analyze item
+     * @param destination the definition of the destination table
+     * @return null if the table was analyzed, else the error
+     */
+    private String analyze(WorkItem item, TableDefinition destination) {
+        final TableAnalyzer analyzer = new TableAnalyzer(pgConnectionManager);
+        final long start = System.nanoTime();
+
+        if (!analyzer.analyze(destination)) {
+            report.table(item.getTableName()).addError(analyzer.getLastError());
+            return analyzer.getLastError();
+        }
+        report.table(item.getTableName()).setAnalyzeMillis(TimeUnit.NANOSECONDS.toMillis(
+                MetricsRegistry.getDefault().timer("table.analyze").updateSince(start)));
+        return null;
+    }
+
+    /**
+     * Builds the index of an index item, first dropping the index an earlier
+     * attempt may have built.
+     *
+     * @param item the index item
+     * @param destination the definition of the destination table
+     * @return null if the index was built, else the error
+     */
+    private String buildIndex(WorkItem item, TableDefinition destination) {
+        final StatementExecutor executor = new StatementExecutor(pgConnectionManager);
+        final String statement = destination.toPostgresIndexSyntaxByName().get(item.getTarget());
+        final long start = System.nanoTime();
+
+        if (statement == null) {
+            return "Unknown index " + item.getTarget();
+        }
+        if (item.getAttempt() > 1) {
+            executor.executeStatement(item.getTarget().equals("PRIMARY") ?
+                    "ALTER TABLE " + item.getTableName() + " DROP CONSTRAINT IF EXISTS " +
+                    item.getTableName().toLowerCase() + "_pkey" : "DROP INDEX IF EXISTS " + item.getTarget(),
+                    item.getTableName());
+        }
+        if (!(indexMemoryPlanner == null ? executor.executeStatement(statement, item.getTableName()) :
+                executor.executeStatements(indexMemoryPlanner.toBuildStatements(item.getTableName(), item.getTarget(),
+                        statement), item.getTableName()))) {
+            report.table(item.getTableName()).addError(executor.getLastError());
+            return executor.getLastError();
+        }
+        report.table(item.getTableName()).setIndexMillis(item.getTarget(), TimeUnit.NANOSECONDS.toMillis(
+                MetricsRegistry.getDefault().timer("index.build").updateSince(start)));
+        return null;
+    }
+
+    /**
+     * @param item a failed item
+     * @return the last error recorded for the item's table
+     */
+    private String lastError(WorkItem item) {
+        final List<String> errors = report.table(item.getTableName()).getErrors();
+
+        return errors.isEmpty() ? "Failed" : errors.get(errors.size() - 1);
+    }
+}
@@ -0,0 +1,384 @@
+package com.modcloth.database;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.modcloth.database.ExportManifest.FileEntry;
+import com.modcloth.database.transforms.ValueTransform;
+import com.modcloth.database.managers.ConnectionManager;
+import com.modcloth.database.managers.ConnectionManager.Operation;
+import com.modcloth.metrics.MetricsRegistry;
+import com.modcloth.metrics.ProgressReporter;
+
+/**
+ * Exports the rows of a MySQL table, or of a range of its integer key, to
+ * CSV files in a local directory instead of copying them into PostgreSQL.
+ *
+ * The rows are streamed from MySQL and written in chunks, as they are by
+ * {@link DataCopier}, so memory holds a single chunk however large the
+ * table is. A new file is started once a file reaches its size limit;
+ * each file starts with a header of column names, and a range without rows
+ * writes no file. Values are read by the same transforms as a copy:
+ * booleans are written as true or false, binary values in hex, and NULL as
+ * an empty field, which is told apart from an empty string by the quotes
+ * around the latter. The files written for a range are only complete once
+ * the export returns true; a failed export deletes them.
+ *
+ * @author modcloth
+ *
+ */
+public class CsvExporter {
+    protected static final int CHUNK_SIZE = 1 << 16;
+    protected static final String EXTENSION = ".csv";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ConnectionManager sourceConnectionManager;
+    private final File directory;
+    private final long maxFileBytes;
+    private ProgressReporter progressReporter;
+    private boolean cleanValues;
+    private final List<FileEntry> files = new LinkedList<FileEntry>();
+    private final Map<String, Long> transformed = new LinkedHashMap<String, Long>();
+    private OutputStream output;
+    private long fileRows;
+    private long fileBytes;
+    private String lastError;
+    private long rows;
+    private long bytes;
+
+    /**
+     * @param sourceConnectionManager manages connections to the MySQL server the rows are read from
+     * @param directory the directory the files are written into
+     * @param maxFileBytes the size after which a new file is started
+     */
+    public CsvExporter(ConnectionManager sourceConnectionManager, File directory, long maxFileBytes) {
+        this.sourceConnectionManager = sourceConnectionManager;
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    /**
+     * @param progressReporter the reporter advanced by the rows of every chunk written
+     */
+    public void setProgressReporter(ProgressReporter progressReporter) {
+        this.progressReporter = progressReporter;
+    }
+
+    /**
+     * @param cleanValues flag indicating whether the values PostgreSQL rejects are cleaned, as they are for a copy
+     */
+    public void setCleanValues(boolean cleanValues) {
+        this.cleanValues = cleanValues;
+    }
+
+    /**
+     * Exports the rows of the given table whose integer key is within a
+     * range, or every row if no range is given. The files are named after
+     * the given name, numbered from 1.
+     *
+     * @param tableDefinition the definition of the source table
+     * @param sourceDbName the name of the MySQL database holding the table
+     * @param keyStart the smallest key exported, or null to export every row
+     * @param keyEnd the key following the largest key exported, or null to export every row
+     * @param fileName the name the files are numbered after
+     * @return true if every row was exported, false if it failed
+     */
+    public boolean export(TableDefinition tableDefinition, String sourceDbName, Long keyStart, Long keyEnd,
+            String fileName) {
+        final Connection source = sourceConnectionManager.openConnection();
+        final MetricsRegistry metrics = MetricsRegistry.getDefault();
+        final ValueTransform[] transforms = ValueTransform.forColumns(tableDefinition.getColumnDefinitions(),
+                cleanValues);
+        final String keyName = KeyRangeReader.getIntegerKeyName(tableDefinition);
+        final String condition = keyStart == null || keyName == null ? null :
+                keyName + " >= " + keyStart + " AND " + keyName + " < " + keyEnd;
+        Statement statement = null;
+        ResultSet resultSet = null;
+        Operation reading = null;
+        boolean exported = false;
+
+        lastError = null;
+        rows = 0;
+        bytes = 0;
+        files.clear();
+        transformed.clear();
+        if (source == null) {
+            lastError = "Unable to open a connection";
+        } else {
+            try {
+                final StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 1024);
+                final String header = toHeader(tableDefinition);
+                long chunkRows = 0;
+
+                statement = source.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(Integer.MIN_VALUE);
+                resultSet = statement.executeQuery(DataCopier.toSelectStatement(tableDefinition, sourceDbName,
+                        condition));
+
+                reading = new Operation(sourceConnectionManager);
+                while (resultSet.next()) {
+                    for (int i = 0; i < transforms.length; i++) {
+                        if (i > 0) {
+                            chunk.append(',');
+                        }
+                        appendValue(chunk, transforms[i].read(resultSet, i + 1));
+                    }
+                    chunk.append("\r\n");
+                    chunkRows++;
+                    if (chunk.length() >= CHUNK_SIZE) {
+                        reading.end();
+                        writeChunk(chunk, chunkRows, header, fileName, keyStart, keyEnd);
+                        chunkRows = 0;
+                        reading = new Operation(sourceConnectionManager);
+                    }
+                }
+                reading.end();
+                if (chunk.length() > 0) {
+                    writeChunk(chunk, chunkRows, header, fileName, keyStart, keyEnd);
+                }
+                if (output != null) {
+                    closeFile(fileName, keyStart, keyEnd);
+                }
+                exported = true;
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+                lastError = sqe.getMessage();
+                metrics.counter("data.copy.failed").increment();
+            } catch (IOException ioe) {
+                System.err.println("Error: " + ioe.getMessage());
+                lastError = ioe.getMessage();
+                metrics.counter("data.copy.failed").increment();
+            } finally {
+                if (reading != null) {
+                    reading.end();
+                }
+                try {
+                    if (output != null) {
+                        closeFile(fileName, keyStart, keyEnd);
+                    }
+                } catch (IOException ioe) {
+                    System.err.println("Error: " + ioe.getMessage());
+                }
+                try {
+                    if (resultSet != null && !resultSet.isClosed()) {
+                        resultSet.close();
+                    }
+                    if (statement != null && !statement.isClosed()) {
+                        statement.close();
+                    }
+                } catch (SQLException sqe) {
+                    System.err.println("Error: " + sqe.getMessage());
+                }
+            }
+            sourceConnectionManager.closeConnection(source);
+        }
+        if (!exported) {
+            for (FileEntry f : files) {
+                new File(directory, f.getName()).delete();
+            }
+            files.clear();
+        }
+        for (ValueTransform t : transforms) {
+            if (t.getChanged() > 0) {
+                transformed.put(t.getColumn().getName(), t.getChanged());
+                metrics.counter("transform." + t.getRule()).add(t.getChanged());
+            }
+        }
+        return exported;
+    }
+
+    /**
+     * @return the files written by the last export, in order
+     */
+    public List<FileEntry> getFiles() {
+        return new LinkedList<FileEntry>(files);
+    }
+
+    /**
+     * @return the number of rows exported by the last export
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of bytes of rows written by the last export, not counting headers
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of values cleaned by the last export, by column name
+     */
+    public Map<String, Long> getTransformed() {
+        return new LinkedHashMap<String, Long>(transformed);
+    }
+
+    /**
+     * @return the error of the last export, or null if it succeeded
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Writes a chunk of rows into the current file, starting a file if none
+     * is open, and closes the file once it is full.
+     *
+     * @param chunk the rows, emptied once written
+     * @param chunkRows the number of rows in the chunk
+     * @param header the header line starting each file
+     * @param fileName the name the files are numbered after
+     * @param keyStart the smallest key of the range, or null
+     * @param keyEnd the key following the range, or null
+     * @throws IOException if the rows could not be written
+     */
+    private void writeChunk(StringBuilder chunk, long chunkRows, String header, String fileName, Long keyStart,
+            Long keyEnd) throws IOException {
+        if (output == null) {
+            output = new BufferedOutputStream(new FileOutputStream(new File(directory,
+                    toFileName(fileName, files.size() + 1))), CHUNK_SIZE);
+            fileRows = 0;
+            fileBytes = write(output, header);
+        }
+
+        final long written = write(output, chunk);
+
+        fileRows += chunkRows;
+        fileBytes += written;
+        rows += chunkRows;
+        bytes += written;
+        chunk.setLength(0);
+        MetricsRegistry.getDefault().meter("data.rows").mark(chunkRows);
+        MetricsRegistry.getDefault().meter("data.bytes").mark(written);
+        if (progressReporter != null) {
+            progressReporter.advance(ProgressReporter.Phase.DATA, chunkRows);
+        }
+        if (fileBytes >= maxFileBytes) {
+            closeFile(fileName, keyStart, keyEnd);
+        }
+    }
+
+    /**
+     * Closes the current file and records it, even if it could not be
+     * closed, so that it is deleted if the export fails.
+     *
+     * @param fileName the name the files are numbered after
+     * @param keyStart the smallest key of the range, or null
+     * @param keyEnd the key following the range, or null
+     * @throws IOException if the file could not be closed
+     */
+    private void closeFile(String fileName, Long keyStart, Long keyEnd) throws IOException {
+        final OutputStream closed = output;
+
+        output = null;
+        files.add(new FileEntry(toFileName(fileName, files.size() + 1), keyStart, keyEnd, fileRows, fileBytes));
+        closed.close();
+    }
+
+    /**
+     * @param output the file
+     * @param text the text to write
+     * @return the number of bytes written
+     * @throws IOException if the text could not be written
+     */
+    private static long write(OutputStream output, CharSequence text) throws IOException {
+        final byte[] data = text.toString().getBytes("UTF-8");
+
+        output.write(data);
+        return data.length;
+    }
+
+    /**
+     * @param fileName the name the files are numbered after
+     * @param number the number of the file
+     * @return the name of the file within the export directory
+     */
+    protected static String toFileName(String fileName, int number) {
+        return fileName + "." + String.format("%04d", number) + EXTENSION;
+    }
+
+    /**
+     * @param tableDefinition the definition of the source table
+     * @return the header line naming the columns
+     */
+    protected static String toHeader(TableDefinition tableDefinition) {
+        final StringBuilder header = new StringBuilder();
+
+        for (String name : tableDefinition.getColumnNames()) {
+            if (header.length() > 0) {
+                header.append(',');
+            }
+            appendValue(header, name);
+        }
+        return header.append("\r\n").toString();
+    }
+
+    /**
+     * Appends a value as a CSV field. Text is quoted if it holds a
+     * separator, quote or line break, or is empty, so that it is not read
+     * as NULL.
+     *
+     * @param row the rows being built
+     * @param value the value read by the column's transform, or null for NULL
+     */
+    protected static void appendValue(StringBuilder row, Object value) {
+        if (value == null) {
+            return;
+        } else if (value instanceof byte[]) {
+            for (byte b : (byte[]) value) {
+                row.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+            }
+        } else if (value instanceof BigDecimal) {
+            row.append(((BigDecimal) value).toPlainString());
+        } else if (value instanceof String) {
+            final String text = (String) value;
+
+            if (text.length() == 0 || needsQuotes(text)) {
+                row.append('"');
+                for (int i = 0; i < text.length(); i++) {
+                    final char c = text.charAt(i);
+
+                    if (c == '"') {
+                        row.append('"');
+                    }
+                    row.append(c);
+                }
+                row.append('"');
+            } else {
+                row.append(text);
+            }
+        } else {
+            row.append(value);
+        }
+    }
+
+    /**
+     * @param text a text value
+     * @return true if the text holds a separator, quote or line break
+     */
+    private static boolean needsQuotes(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
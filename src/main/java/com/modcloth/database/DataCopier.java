@@ -0,0 +1,479 @@
+package com.modcloth.database;
+
+import java.io.UnsupportedEncodingException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import com.modcloth.database.managers.ConnectionManager;
+import com.modcloth.database.managers.ConnectionManager.Operation;
+import com.modcloth.database.transforms.ValueTransform;
+import com.modcloth.metrics.Events;
+import com.modcloth.metrics.MetricsRegistry;
+import com.modcloth.metrics.ProgressReporter;
+
+/**
+ * Copies the rows of a table from a MySQL database into the table of the
+ * same name in a PostgreSQL database.
+ *
+ * Rows are read with a streaming result set, so the source table is never
+ * held in memory, and written with COPY in its text format, flushed in
+ * chunks of about {@link #CHUNK_SIZE} characters. A value may be given for
+ * an extra leading column, which is how rows merged from several shards
+ * record the shard they came from. Each column's values pass through the
+ * {@link ValueTransform} chosen for it, which may clean them.
+ *
+ * Destinations that do not accept COPY can be written with multi-row
+ * INSERT statements instead, see {@link InsertWriter}.
+ *
+ * @author modcloth
+ *
+ */
+public class DataCopier {
+    protected static final int CHUNK_SIZE = 1 << 16;
+    protected static final int FETCH_SIZE = 1000;
+
+    private final ConnectionManager sourceConnectionManager;
+    private final ConnectionManager destinationConnectionManager;
+    private ProgressReporter progressReporter;
+    private String destinationTableName;
+    private int insertRows;
+    private int commitBatches;
+    private boolean cleanValues;
+    private long rowLimit;
+    private final Map<String, Long> transformed = new LinkedHashMap<String, Long>();
+    private String lastError;
+    private long rows;
+    private long bytes;
+    private long firstRowStart;
+    private long rowNanos;
+
+    /**
+     * @param sourceConnectionManager manages connections to the MySQL database the rows are read from
+     * @param destinationConnectionManager manages connections to the PostgreSQL database the rows are written to
+     */
+    public DataCopier(ConnectionManager sourceConnectionManager, ConnectionManager destinationConnectionManager) {
+        this.sourceConnectionManager = sourceConnectionManager;
+        this.destinationConnectionManager = destinationConnectionManager;
+    }
+
+    /**
+     * @param progressReporter the reporter advanced by the rows of every chunk copied
+     */
+    public void setProgressReporter(ProgressReporter progressReporter) {
+        this.progressReporter = progressReporter;
+    }
+
+    /**
+     * @param destinationTableName the name of the table the rows are written to, or null to write them to the
+     * table of the same name as the source
+     */
+    public void setDestinationTableName(String destinationTableName) {
+        this.destinationTableName = destinationTableName;
+    }
+
+    /**
+     * @param insertRows the number of rows written by each INSERT statement, or 0 to write the rows with COPY
+     * @param commitBatches the number of INSERT statements run between commits
+     */
+    public void setInsertBatches(int insertRows, int commitBatches) {
+        this.insertRows = insertRows;
+        this.commitBatches = commitBatches;
+    }
+
+    /**
+     * @param cleanValues flag indicating whether values PostgreSQL rejects, such as MySQL's zero dates, are
+     * cleaned rather than copied as they are
+     */
+    public void setCleanValues(boolean cleanValues) {
+        this.cleanValues = cleanValues;
+    }
+
+    /**
+     * @param rowLimit the largest number of rows copied, such as for a sample, or 0 to copy every row
+     */
+    public void setRowLimit(long rowLimit) {
+        this.rowLimit = rowLimit;
+    }
+
+    /**
+     * Copies every row of the given table.
+     *
+     * @param tableDefinition the definition of the source table
+     * @param sourceDbName the name of the MySQL database holding the table
+     * @return true if every row was copied, false if it failed
+     */
+    public boolean copy(TableDefinition tableDefinition, String sourceDbName) {
+        return copy(tableDefinition, sourceDbName, null, null);
+    }
+
+    /**
+     * Copies every row of the given table, setting an extra leading column
+     * of the destination table to the same value in every row.
+     *
+     * @param tableDefinition the definition of the source table
+     * @param sourceDbName the name of the MySQL database holding the table
+     * @param extraColumn the name of the extra destination column, or null if there is none
+     * @param extraValue the value of the extra column in every row
+     * @return true if every row was copied, false if it failed
+     */
+    public boolean copy(TableDefinition tableDefinition, String sourceDbName, String extraColumn, String extraValue) {
+        return copy(tableDefinition, sourceDbName, extraColumn, extraValue, null);
+    }
+
+    /**
+     * Copies the rows of the given table that match a condition, setting an
+     * extra leading column of the destination table to the same value in
+     * every row.
+     *
+     * @param tableDefinition the definition of the source table
+     * @param sourceDbName the name of the MySQL database holding the table
+     * @param extraColumn the name of the extra destination column, or null if there is none
+     * @param extraValue the value of the extra column in every row
+     * @param condition the SQL condition the copied rows match, or null to copy every row
+     * @return true if every matching row was copied, false if it failed
+     */
+    public boolean copy(TableDefinition tableDefinition, String sourceDbName, String extraColumn, String extraValue,
+            String condition) {
+        final Connection source = sourceConnectionManager.openConnection();
+        final Connection destination = source == null ? null : destinationConnectionManager.openConnection();
+        final MetricsRegistry metrics = MetricsRegistry.getDefault();
+        final String tableName = tableDefinition.getName();
+        final ValueTransform[] transforms = ValueTransform.forColumns(tableDefinition.getColumnDefinitions(),
+                cleanValues);
+        Statement statement = null;
+        ResultSet resultSet = null;
+        CopyIn copyIn = null;
+        Operation reading = null;
+        boolean copied = false;
+
+        lastError = null;
+        rows = 0;
+        bytes = 0;
+        firstRowStart = 0;
+        rowNanos = 0;
+        transformed.clear();
+        if (destination == null) {
+            lastError = "Unable to open a connection";
+        } else if (insertRows <= 0 && !(destination instanceof PGConnection)) {
+            lastError = "Destination is not a PostgreSQL connection";
+        } else {
+            try {
+                final StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 1024);
+                final String prefix = extraColumn == null ? "" : escape(extraValue) + "\t";
+                long chunkRows = 0;
+
+                statement = source.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(isMysql() ? Integer.MIN_VALUE : FETCH_SIZE);
+                resultSet = statement.executeQuery(toSelectStatement(tableDefinition, sourceDbName, condition,
+                        rowLimit));
+                if (insertRows > 0) {
+                    insert(destination, tableDefinition, transforms, extraColumn, extraValue, resultSet);
+                } else {
+                    copyIn = ((PGConnection) destination).getCopyAPI().copyIn(toCopyStatement(tableDefinition,
+                            extraColumn, destinationTableName));
+
+                    reading = new Operation(sourceConnectionManager);
+                    while (resultSet.next()) {
+                        if (firstRowStart == 0) {
+                            firstRowStart = System.nanoTime();
+                        }
+                        chunk.append(prefix);
+                        for (int i = 0; i < transforms.length; i++) {
+                            if (i > 0) {
+                                chunk.append('\t');
+                            }
+                            transforms[i].append(chunk, resultSet, i + 1);
+                        }
+                        chunk.append('\n');
+                        chunkRows++;
+                        if (chunk.length() >= CHUNK_SIZE) {
+                            reading.end();
+                            writeChunk(copyIn, tableName, chunk, chunkRows);
+                            chunkRows = 0;
+                            reading = new Operation(sourceConnectionManager);
+                        }
+                    }
+                    reading.end();
+                    if (chunk.length() > 0) {
+                        writeChunk(copyIn, tableName, chunk, chunkRows);
+                    }
+                    copyIn.endCopy();
+                }
+                rowNanos = firstRowStart == 0 ? 0 : System.nanoTime() - firstRowStart;
+                copied = true;
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+                lastError = sqe.getMessage();
+                metrics.counter("data.copy.failed").increment();
+            } catch (UnsupportedEncodingException uee) {
+                System.err.println("Error: " + uee.getMessage());
+                lastError = uee.getMessage();
+            } finally {
+                if (reading != null) {
+                    reading.end();
+                }
+                try {
+                    if (copyIn != null && copyIn.isActive()) {
+                        copyIn.cancelCopy();
+                    }
+                } catch (SQLException sqe) {
+                    System.err.println("Error: " + sqe.getMessage());
+                }
+                try {
+                    if (resultSet != null && !resultSet.isClosed()) {
+                        resultSet.close();
+                    }
+                    if (statement != null && !statement.isClosed()) {
+                        statement.close();
+                    }
+                } catch (SQLException sqe) {
+                    System.err.println("Error: " + sqe.getMessage());
+                }
+            }
+        }
+        if (destination != null) {
+            destinationConnectionManager.closeConnection(destination);
+        }
+        if (source != null) {
+            sourceConnectionManager.closeConnection(source);
+        }
+        for (ValueTransform t : transforms) {
+            if (t.getChanged() > 0) {
+                transformed.put(t.getColumn().getName(), t.getChanged());
+                metrics.counter("transform." + t.getRule()).add(t.getChanged());
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * @return the number of rows copied by the last copy
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the time the last copy took from reading its first row to writing its last one, in nanoseconds,
+     * which leaves out opening the connections and starting the query and the COPY
+     */
+    public long getRowNanos() {
+        return rowNanos;
+    }
+
+    /**
+     * @return the number of bytes of COPY data written by the last copy, or the approximate size of the values
+     * inserted by it
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of values of each column that the last copy changed while cleaning them, by column
+     * name, for the columns whose values were changed
+     */
+    public Map<String, Long> getTransformed() {
+        return new LinkedHashMap<String, Long>(transformed);
+    }
+
+    /**
+     * @return the error of the last copy, or null if it succeeded
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Sends a chunk of rows to the destination and empties it, recording
+     * how long the destination took to accept it.
+     *
+     * @param copyIn the running COPY
+     * @param tableName the name of the table being copied
+     * @param chunk the rows of the chunk, in COPY text format
+     * @param chunkRows the number of rows in the chunk
+     * @throws SQLException if the chunk could not be written
+     * @throws UnsupportedEncodingException if UTF-8 is not supported
+     */
+    private void writeChunk(CopyIn copyIn, String tableName, StringBuilder chunk, long chunkRows)
+            throws SQLException, UnsupportedEncodingException {
+        final byte[] data = chunk.toString().getBytes("UTF-8");
+        final Events.Span span = Events.copyChunk(tableName);
+        final Operation writing = new Operation(destinationConnectionManager);
+        boolean written = false;
+
+        try {
+            copyIn.writeToCopy(data, 0, data.length);
+            written = true;
+        } finally {
+            writing.end();
+            span.setRows(chunkRows);
+            span.setBytes(data.length);
+            span.end(written);
+        }
+        chunk.setLength(0);
+        rows += chunkRows;
+        bytes += data.length;
+        MetricsRegistry.getDefault().meter("data.rows").mark(chunkRows);
+        MetricsRegistry.getDefault().meter("data.bytes").mark(data.length);
+        if (progressReporter != null) {
+            progressReporter.advance(ProgressReporter.Phase.DATA, chunkRows);
+        }
+    }
+
+    /**
+     * Writes the rows of a result set with multi-row INSERT statements,
+     * rolling back the uncommitted batches if one fails.
+     *
+     * @param destination the connection to the PostgreSQL database
+     * @param tableDefinition the definition of the source table
+     * @param transforms the transform of each source column
+     * @param extraColumn the name of the extra destination column, or null if there is none
+     * @param extraValue the value of the extra column in every row
+     * @param resultSet the rows of the source table
+     * @throws SQLException if a row could not be read or written
+     */
+    private void insert(Connection destination, TableDefinition tableDefinition, ValueTransform[] transforms,
+            String extraColumn, String extraValue, ResultSet resultSet) throws SQLException {
+        final InsertWriter writer = new InsertWriter(destination, tableDefinition, transforms, extraColumn,
+                destinationTableName, insertRows, commitBatches);
+        Operation reading = new Operation(sourceConnectionManager);
+
+        try {
+            while (resultSet.next()) {
+                if (firstRowStart == 0) {
+                    firstRowStart = System.nanoTime();
+                }
+                if (writer.addRow(extraValue, resultSet)) {
+                    reading.end();
+                    writeBatch(writer, tableDefinition.getName());
+                    reading = new Operation(sourceConnectionManager);
+                }
+            }
+            reading.end();
+            if (writer.getBufferedRows() > 0) {
+                writeBatch(writer, tableDefinition.getName());
+            }
+            writer.finish();
+        } catch (SQLException sqe) {
+            writer.abort();
+            throw sqe;
+        } finally {
+            reading.end();
+        }
+    }
+
+    /**
+     * Inserts the rows buffered by a writer, recording how long the
+     * destination took to accept them.
+     *
+     * @param writer the writer holding the rows
+     * @param tableName the name of the table being copied
+     * @throws SQLException if the rows could not be inserted
+     */
+    private void writeBatch(InsertWriter writer, String tableName) throws SQLException {
+        final long batchBytes = writer.takeBytes();
+        final Events.Span span = Events.copyChunk(tableName);
+        final Operation writing = new Operation(destinationConnectionManager);
+        int batchRows = 0;
+
+        try {
+            batchRows = writer.flush();
+        } finally {
+            writing.end();
+            span.setRows(batchRows);
+            span.setBytes(batchBytes);
+            span.end(batchRows > 0);
+        }
+        rows += batchRows;
+        bytes += batchBytes;
+        MetricsRegistry.getDefault().meter("data.rows").mark(batchRows);
+        MetricsRegistry.getDefault().meter("data.bytes").mark(batchBytes);
+        if (progressReporter != null) {
+            progressReporter.advance(ProgressReporter.Phase.DATA, batchRows);
+        }
+    }
+
+    /**
+     * MySQL Connector/J only streams a result set whose fetch size is
+     * Integer.MIN_VALUE; other drivers reject that value.
+     *
+     * @return true if the source is a MySQL database
+     */
+    private boolean isMysql() {
+        final String url = sourceConnectionManager.getConnectionUrl();
+
+        return url != null && url.startsWith("jdbc:mysql:");
+    }
+
+    /**
+     * @param tableDefinition the definition of the source table
+     * @param sourceDbName the name of the MySQL database holding the table
+     * @param condition the SQL condition the rows match, or null for every row
+     * @return the query that reads the rows of the table
+     */
+    protected static String toSelectStatement(TableDefinition tableDefinition, String sourceDbName,
+            String condition) {
+        return toSelectStatement(tableDefinition, sourceDbName, condition, 0);
+    }
+
+    /**
+     * @param tableDefinition the definition of the source table
+     * @param sourceDbName the name of the MySQL database holding the table
+     * @param condition the SQL condition the rows match, or null for every row
+     * @param rowLimit the largest number of rows read, or 0 for every row
+     * @return the query that reads the rows of the table
+     */
+    protected static String toSelectStatement(TableDefinition tableDefinition, String sourceDbName,
+            String condition, long rowLimit) {
+        return "SELECT " + StringUtils.join(tableDefinition.getColumnNames(), ", ") + " FROM " +
+                (sourceDbName == null ? "" : sourceDbName + ".") + tableDefinition.getName() +
+                (condition == null ? "" : " WHERE " + condition) + (rowLimit > 0 ? " LIMIT " + rowLimit : "");
+    }
+
+    /**
+     * @param tableDefinition the definition of the source table
+     * @param extraColumn the name of an extra leading destination column, or null if there is none
+     * @return the COPY statement that writes the rows into the destination table
+     */
+    protected static String toCopyStatement(TableDefinition tableDefinition, String extraColumn) {
+        return toCopyStatement(tableDefinition, extraColumn, null);
+    }
+
+    /**
+     * @param tableDefinition the definition of the source table
+     * @param extraColumn the name of an extra leading destination column, or null if there is none
+     * @param destinationTableName the name of the destination table, or null if it is named like the source
+     * @return the COPY statement that writes the rows into the destination table
+     */
+    protected static String toCopyStatement(TableDefinition tableDefinition, String extraColumn,
+            String destinationTableName) {
+        final List<String> columnNames = new LinkedList<String>(tableDefinition.getColumnNames());
+
+        if (extraColumn != null) {
+            columnNames.add(0, extraColumn);
+        }
+        return "COPY " + (destinationTableName == null ? tableDefinition.getName() : destinationTableName) +
+                " (" + StringUtils.join(columnNames, ", ") + ") FROM STDIN";
+    }
+
+    /**
+     * Escapes the characters that have a meaning in COPY text format.
+     *
+     * @param value a text value
+     * @return the value with backslashes, tabs and line breaks escaped
+     */
+    protected static String escape(String value) {
+        return ValueTransform.appendEscaped(new StringBuilder(value.length() + 16), value).toString();
+    }
+}
@@ -0,0 +1,291 @@
+package com.modcloth.database;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.modcloth.converters.SqlTypeConverter;
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+
+/**
+ * Describes the files of an export: for every table, its columns and their
+ * types, and the files holding its rows with the key range and the number
+ * of rows and bytes of each. It is written as JSON next to the files once
+ * the export finishes, so a reader can find and type the files without
+ * reading the source database, and can tell a finished export from one
+ * that was interrupted.
+ *
+ * Tables may be added to from several threads at once.
+ *
+ * @author modcloth
+ *
+ */
+public class ExportManifest {
+    public static final String FILE_NAME = "manifest.json";
+
+    private final String format;
+    private final long createdAt;
+    private final Map<String, TableEntry> tables;
+
+    /**
+     * @param format the format of the files, such as csv
+     */
+    public ExportManifest(String format) {
+        this.format = format;
+        this.createdAt = System.currentTimeMillis();
+        this.tables = new LinkedHashMap<String, TableEntry>();
+    }
+
+    /**
+     * @param tableDefinition the definition of the exported table
+     * @return the manifest entry of the table, created if it does not exist
+     */
+    public synchronized TableEntry table(TableDefinition tableDefinition) {
+        TableEntry table = tables.get(tableDefinition.getName());
+
+        if (table == null) {
+            table = new TableEntry(tableDefinition);
+            tables.put(tableDefinition.getName(), table);
+        }
+        return table;
+    }
+
+    /**
+     * @return the manifest entries of the tables, by table name
+     */
+    public synchronized Map<String, TableEntry> getTables() {
+        return new LinkedHashMap<String, TableEntry>(tables);
+    }
+
+    /**
+     * @return the manifest as pretty-printed JSON
+     */
+    public synchronized String toJson() {
+        final Gson gson = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
+
+        for (TableEntry t : tables.values()) {
+            t.sortFiles();
+        }
+        return gson.toJson(this);
+    }
+
+    /**
+     * Writes the manifest into the directory holding the exported files.
+     *
+     * @param directory the directory of the export
+     * @return true if the manifest was written, false if it failed
+     */
+    public boolean write(File directory) {
+        Writer writer = null;
+        boolean written = false;
+
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(new File(directory, FILE_NAME)), "UTF-8");
+            writer.write(toJson());
+            written = true;
+        } catch (IOException ioe) {
+            System.err.println("Error: " + ioe.getMessage());
+        } finally {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+            } catch (IOException ioe) {
+                System.err.println("Error: " + ioe.getMessage());
+                written = false;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Manifest entry for a single table.
+     *
+     * @author modcloth
+     *
+     */
+    public static class TableEntry {
+        private final String keyName;
+        private final List<ColumnEntry> columns = new LinkedList<ColumnEntry>();
+        private final List<FileEntry> files = new LinkedList<FileEntry>();
+        private long rows;
+        private long bytes;
+        private boolean complete = true;
+
+        /**
+         * @param tableDefinition the definition of the exported table
+         */
+        public TableEntry(TableDefinition tableDefinition) {
+            this.keyName = KeyRangeReader.getIntegerKeyName(tableDefinition);
+            for (ColumnDefinition cd : tableDefinition.getColumnDefinitions()) {
+                columns.add(new ColumnEntry(cd));
+            }
+        }
+
+        /**
+         * @param exported the files written for one key range of the table
+         */
+        public synchronized void addFiles(List<FileEntry> exported) {
+            for (FileEntry f : exported) {
+                files.add(f);
+                rows += f.getRows();
+                bytes += f.getBytes();
+            }
+        }
+
+        /**
+         * Marks the table as incomplete because a key range of it failed to
+         * be exported.
+         */
+        public synchronized void failed() {
+            complete = false;
+        }
+
+        /**
+         * @return the files of the table
+         */
+        public synchronized List<FileEntry> getFiles() {
+            return new LinkedList<FileEntry>(files);
+        }
+
+        /**
+         * @return the number of rows in the files of the table
+         */
+        public synchronized long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return true if every key range of the table was exported
+         */
+        public synchronized boolean getComplete() {
+            return complete;
+        }
+
+        /**
+         * Orders the files by name, which orders them by key range.
+         */
+        private synchronized void sortFiles() {
+            Collections.sort(files, new Comparator<FileEntry>() {
+                public int compare(FileEntry left, FileEntry right) {
+                    return left.getName().compareTo(right.getName());
+                }
+            });
+        }
+    }
+
+    /**
+     * Manifest entry for a column of a table.
+     *
+     * @author modcloth
+     *
+     */
+    public static class ColumnEntry {
+        private final String name;
+        private final String type;
+        private final boolean nullable;
+        private final int size;
+        private final int decimalDigits;
+
+        /**
+         * @param columnDefinition the definition of the exported column
+         */
+        public ColumnEntry(ColumnDefinition columnDefinition) {
+            this.name = columnDefinition.getName();
+            this.type = toTypeName(columnDefinition.getType());
+            this.nullable = columnDefinition.getIsNullable();
+            this.size = columnDefinition.getColumnSize();
+            this.decimalDigits = columnDefinition.getDecimalDigits();
+        }
+
+        /**
+         * @return the name of the column
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the name of the standard SQL type of the column's values in the files
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Names the type of the values written for a column. BIT and TINYINT
+         * values are written as booleans, as they are converted for
+         * PostgreSQL.
+         *
+         * @param type the SQL type of the source column
+         * @return the name of the standard SQL type of the values in the files
+         */
+        protected static String toTypeName(int type) {
+            if (type == Types.BIT || type == Types.TINYINT) {
+                return "BOOLEAN";
+            }
+            return SqlTypeConverter.typeToString(type);
+        }
+    }
+
+    /**
+     * Manifest entry for a file of a table.
+     *
+     * @author modcloth
+     *
+     */
+    public static class FileEntry {
+        private final String name;
+        private final Long keyStart;
+        private final Long keyEnd;
+        private final long rows;
+        private final long bytes;
+
+        /**
+         * @param name the name of the file within the export directory
+         * @param keyStart the smallest key of the range the file belongs to, or null if the table is not split
+         * @param keyEnd the key following the range the file belongs to, or null if the table is not split
+         * @param rows the number of rows in the file
+         * @param bytes the size of the file
+         */
+        public FileEntry(String name, Long keyStart, Long keyEnd, long rows, long bytes) {
+            this.name = name;
+            this.keyStart = keyStart;
+            this.keyEnd = keyEnd;
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return the name of the file within the export directory
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of rows in the file
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return the size of the file
+         */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.modcloth.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.modcloth.database.managers.ConnectionManager;
+
+/**
+ * Persists table fingerprints as table comments in a PostgreSQL database.
+ *
+ * After a table has been converted its fingerprint is stored with
+ * 'COMMENT ON TABLE'. Later runs read all comments with a single catalog
+ * query and skip the tables whose fingerprint still matches. Dropping a
+ * table drops its comment as well, so a stale fingerprint can never outlive
+ * the table it describes.
+ *
+ * @author modcloth
+ *
+ */
+public class FingerprintStore {
+    protected static final String COMMENT_PREFIX = "schema-convert fingerprint ";
+
+    private static final String FINGERPRINT_QUERY =
+        "SELECT c.relname, obj_description(c.oid, 'pg_class') AS description " +
+        "FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+        "WHERE c.relkind = 'r' AND n.nspname = current_schema()";
+
+    private final ConnectionManager connectionManager;
+
+    /**
+     * @param connectionManager manages connections to the database in which the fingerprints are stored
+     */
+    public FingerprintStore(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    /**
+     * Reads the fingerprints recorded for the tables in the current schema.
+     *
+     * @return a map of table names to their recorded fingerprints
+     */
+    public Map<String, String> read() {
+        final Map<String, String> fingerprints = new HashMap<String, String>();
+        final Connection connection = connectionManager.openConnection();
+
+        if (connection != null) {
+            Statement statement = null;
+            ResultSet resultSet = null;
+
+            try {
+                statement = connection.createStatement();
+                resultSet = statement.executeQuery(FINGERPRINT_QUERY);
+
+                while (resultSet.next()) {
+                    final String description = resultSet.getString("description");
+
+                    if (description != null && description.startsWith(COMMENT_PREFIX)) {
+                        fingerprints.put(resultSet.getString("relname"),
+                                description.substring(COMMENT_PREFIX.length()));
+                    }
+                }
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+            } finally {
+                try {
+                    if (resultSet != null && !resultSet.isClosed()) {
+                        resultSet.close();
+                    }
+                    if (statement != null && !statement.isClosed()) {
+                        statement.close();
+                    }
+                } catch (SQLException sqe) {
+                    System.err.println("Error: " + sqe.getMessage());
+                }
+                connectionManager.closeConnection(connection);
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Returns the given tables without the ones whose recorded fingerprint
+     * matches their current definition.
+     *
+     * @param tableDefinitions the definitions of the tables to check
+     * @return the definitions of the tables that have changed or were never recorded
+     */
+    public List<TableDefinition> removeUnchanged(List<TableDefinition> tableDefinitions) {
+        final Map<String, String> fingerprints = read();
+        final List<TableDefinition> changed = new LinkedList<TableDefinition>();
+
+        for (TableDefinition t : tableDefinitions) {
+            if (t.getFingerprint().equals(fingerprints.get(t.getName()))) {
+                System.out.println("Skipping unchanged table " + t.getName());
+            } else {
+                changed.add(t);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Records the current fingerprint of the given table.
+     *
+     * @param tableDefinition the definition of the converted table
+     * @return true if the fingerprint was recorded, false if it failed
+     */
+    public boolean record(TableDefinition tableDefinition) {
+        return new StatementExecutor(connectionManager).executeStatement(toCommentStatement(tableDefinition),
+                tableDefinition.getName());
+    }
+
+    /**
+     * Removes the recorded fingerprint of the given table, so that the next
+     * run converts it again.
+     *
+     * @param tableDefinition the definition of the table
+     * @return true if the fingerprint was removed, false if it failed
+     */
+    public boolean forget(TableDefinition tableDefinition) {
+        return new StatementExecutor(connectionManager).executeStatement("COMMENT ON TABLE " +
+                tableDefinition.getName() + " IS NULL", tableDefinition.getName());
+    }
+
+    /**
+     * Builds the statement that stores the table's fingerprint as its comment.
+     *
+     * @param tableDefinition the definition of the table
+     * @return the 'COMMENT ON TABLE' statement
+     */
+    protected static String toCommentStatement(TableDefinition tableDefinition) {
+        return "COMMENT ON TABLE " + tableDefinition.getName() + " IS '" +
+                COMMENT_PREFIX + tableDefinition.getFingerprint() + "'";
+    }
+}
@@ -0,0 +1,89 @@
+package com.modcloth.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.modcloth.database.managers.ConnectionManager;
+
+/**
+ * Reads the cardinality MySQL estimates for every index column of a
+ * database from information_schema.STATISTICS, using a single query.
+ *
+ * Databases of the same structure share table definitions, but not their
+ * rows, so each one's cardinalities are read to replace those of the
+ * database the shared definitions were read from.
+ *
+ * @author modcloth
+ *
+ */
+public class IndexCardinalityReader {
+    private static final String CARDINALITY_QUERY =
+        "SELECT TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX, CARDINALITY " +
+        "FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = ?";
+
+    private final ConnectionManager connectionManager;
+    private final String dbName;
+
+    /**
+     * @param connectionManager the manager from which the connection to the database will be retrieved
+     * @param dbName the name of the database whose index cardinalities will be read
+     */
+    public IndexCardinalityReader(ConnectionManager connectionManager, String dbName) {
+        this.connectionManager = connectionManager;
+        this.dbName = dbName;
+    }
+
+    /**
+     * Reads the cardinalities of every index in the object's database.
+     *
+     * @return the cardinalities of each table keyed by {@link TableDefinition#cardinalityKey}, by table name,
+     * or null if they could not be read
+     */
+    public Map<String, Map<String, Long>> read() {
+        final Connection connection = connectionManager.openConnection();
+        Map<String, Map<String, Long>> cardinalities = null;
+
+        if (connection != null) {
+            PreparedStatement statement = null;
+            ResultSet resultSet = null;
+
+            try {
+                statement = connection.prepareStatement(CARDINALITY_QUERY);
+                statement.setString(1, dbName);
+                resultSet = statement.executeQuery();
+
+                final Map<String, Map<String, Long>> read = new HashMap<String, Map<String, Long>>();
+
+                while (resultSet.next()) {
+                    final String tableName = resultSet.getString("TABLE_NAME");
+
+                    if (!read.containsKey(tableName)) {
+                        read.put(tableName, new HashMap<String, Long>());
+                    }
+                    read.get(tableName).put(TableDefinition.cardinalityKey(resultSet.getString("INDEX_NAME"),
+                            resultSet.getInt("SEQ_IN_INDEX")), resultSet.getLong("CARDINALITY"));
+                }
+                cardinalities = read;
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+            } finally {
+                try {
+                    if (resultSet != null && !resultSet.isClosed()) {
+                        resultSet.close();
+                    }
+                    if (statement != null && !statement.isClosed()) {
+                        statement.close();
+                    }
+                } catch (SQLException sqe) {
+                    System.err.println("Error: " + sqe.getMessage());
+                }
+                connectionManager.closeConnection(connection);
+            }
+        }
+        return cardinalities;
+    }
+}
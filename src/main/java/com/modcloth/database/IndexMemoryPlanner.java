@@ -0,0 +1,315 @@
+package com.modcloth.database;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+import com.modcloth.database.TableStatisticsReader.TableStatistics;
+
+/**
+ * Divides a PostgreSQL memory budget and parallel worker budget among index
+ * builds that run several at a time, so that the builds neither spill their
+ * sorts to disk needlessly nor together exhaust the host's memory.
+ *
+ * Each index is sized from the widths of its columns and the table's row
+ * count, taken from the source table statistics or else from the largest
+ * index cardinality. An index asks for enough maintenance_work_mem to sort
+ * all of its entries in memory. When the largest requests of as many builds
+ * as can run at once exceed the budget, every request is capped at the
+ * level where those builds just fit, so no combination of concurrent builds
+ * can exceed it. Small indexes keep all they ask for and the large ones
+ * share the rest. Parallel workers are divided the same way among the
+ * indexes large enough to be worth building in parallel.
+ *
+ * @author modcloth
+ *
+ */
+public class IndexMemoryPlanner {
+    protected static final long MEGABYTE = 1024L * 1024;
+    protected static final long ENTRY_OVERHEAD = 48;
+    protected static final long DEFAULT_VARIABLE_WIDTH = 32;
+    protected static final long PARALLEL_MIN_BYTES = 64 * MEGABYTE;
+    protected static final long WORKER_MIN_MEGABYTES = 32;
+
+    private final long memoryBudgetMegabytes;
+    private final int parallelWorkerBudget;
+    private final int sessions;
+    private final Map<String, IndexBudget> budgets = new HashMap<String, IndexBudget>();
+
+    /**
+     * @param memoryBudgetMegabytes the memory all concurrent index builds may use together, in megabytes
+     * @param parallelWorkerBudget the parallel workers all concurrent index builds may use together, or -1 to
+     * leave max_parallel_maintenance_workers unset
+     * @param sessions the number of index builds run at once
+     */
+    public IndexMemoryPlanner(long memoryBudgetMegabytes, int parallelWorkerBudget, int sessions) {
+        this.memoryBudgetMegabytes = memoryBudgetMegabytes;
+        this.parallelWorkerBudget = parallelWorkerBudget;
+        this.sessions = Math.max(1, sessions);
+    }
+
+    /**
+     * Assigns the memory and parallel workers of every index of the given
+     * tables, replacing any earlier plan.
+     *
+     * @param tableDefinitions the definitions of the tables whose indexes will be built
+     * @param tableNames list of the table names whose indexes will be built
+     * @param statistics the size estimates of the source tables, by table name
+     */
+    public void plan(List<TableDefinition> tableDefinitions, List<String> tableNames,
+            Map<String, TableStatistics> statistics) {
+        final Map<String, Long> sizes = new HashMap<String, Long>();
+        final Map<String, Long> memory = new HashMap<String, Long>();
+        final Map<String, Long> workers = new HashMap<String, Long>();
+
+        for (TableDefinition t : tableDefinitions) {
+            if (tableNames.contains(t.getName())) {
+                for (String indexName : t.getIndexesByName().keySet()) {
+                    final long bytes = estimateIndexBytes(t, indexName, statistics.get(t.getName()));
+
+                    sizes.put(getKey(t.getName(), indexName), bytes);
+                    memory.put(getKey(t.getName(), indexName), Math.max(1, (bytes + MEGABYTE - 1) / MEGABYTE));
+                }
+            }
+        }
+
+        final long memoryCap = getCap(memory.values(), sessions, memoryBudgetMegabytes);
+
+        for (Map.Entry<String, Long> e : memory.entrySet()) {
+            final long megabytes = Math.max(1, Math.min(e.getValue(), memoryCap));
+
+            e.setValue(megabytes);
+            workers.put(e.getKey(), sizes.get(e.getKey()) < PARALLEL_MIN_BYTES ? 0 :
+                    Math.max(0, Math.min(parallelWorkerBudget, megabytes / WORKER_MIN_MEGABYTES - 1)));
+        }
+
+        final long workerCap = getCap(workers.values(), sessions, Math.max(0, parallelWorkerBudget));
+
+        budgets.clear();
+        for (Map.Entry<String, Long> e : sizes.entrySet()) {
+            budgets.put(e.getKey(), new IndexBudget(e.getValue(), memory.get(e.getKey()),
+                    parallelWorkerBudget < 0 ? -1 : (int) Math.min(workers.get(e.getKey()), workerCap)));
+        }
+    }
+
+    /**
+     * @param tableName the name of the table
+     * @param indexName the name of the index
+     * @return the planned budget of the index, or null if it was not planned
+     */
+    public IndexBudget getBudget(String tableName, String indexName) {
+        return budgets.get(getKey(tableName, indexName));
+    }
+
+    /**
+     * Returns the statements that build an index within its budget. The
+     * settings are made with SET LOCAL, so the statements must run in one
+     * transaction and leave the session as they found it.
+     *
+     * @param tableName the name of the table
+     * @param indexName the name of the index
+     * @param createStatement the statement that creates the index
+     * @return the statements that set the index's budget and create it
+     */
+    public List<String> toBuildStatements(String tableName, String indexName, String createStatement) {
+        final List<String> statements = new LinkedList<String>();
+        final IndexBudget budget = getBudget(tableName, indexName);
+
+        if (budget != null) {
+            statements.add("SET LOCAL maintenance_work_mem = '" + budget.getMemoryMegabytes() + "MB'");
+            if (budget.getParallelWorkers() >= 0) {
+                statements.add("SET LOCAL max_parallel_maintenance_workers = " + budget.getParallelWorkers());
+            }
+        }
+        statements.add(createStatement);
+        return statements;
+    }
+
+    /**
+     * Finds the largest amount every request can be capped at so that the
+     * largest requests of the given number of concurrent sessions fit in the
+     * budget together.
+     *
+     * @param requests the amount asked for by each index
+     * @param sessions the number of index builds run at once
+     * @param budget the amount the concurrent builds may use together
+     * @return the cap on every request, or Long.MAX_VALUE if the requests fit uncapped
+     */
+    protected static long getCap(Iterable<Long> requests, int sessions, long budget) {
+        final List<Long> largest = new ArrayList<Long>();
+
+        for (Long r : requests) {
+            largest.add(r);
+        }
+        Collections.sort(largest, Collections.reverseOrder());
+
+        final List<Long> concurrent = largest.subList(0, Math.min(sessions, largest.size()));
+        long remaining = budget;
+
+        for (int i = concurrent.size() - 1; i >= 0; i--) {
+            if (concurrent.get(i) * (i + 1) > remaining) {
+                return remaining / (i + 1);
+            }
+            remaining -= concurrent.get(i);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Estimates the memory needed to sort all the entries of an index: one
+     * entry per row, holding the index's columns and a fixed overhead for
+     * the tuple header and sort slot.
+     *
+     * @param tableDefinition the definition of the table
+     * @param indexName the name of the index
+     * @param statistics the size estimates of the source table, or null if unknown
+     * @return the estimated size of the index's entries, in bytes
+     */
+    protected static long estimateIndexBytes(TableDefinition tableDefinition, String indexName,
+            TableStatistics statistics) {
+        final Map<String, Long> widths = estimateColumnWidths(tableDefinition, statistics);
+        long rows = statistics != null ? statistics.getRows() : 0;
+        long width = ENTRY_OVERHEAD;
+
+        for (IndexDefinition i : tableDefinition.getIndexDefinitions()) {
+            rows = Math.max(rows, i.getCardinality());
+        }
+        for (IndexDefinition i : tableDefinition.getIndexAsMultiColumnIndex(indexName)) {
+            final Long columnWidth = widths.get(i.getColumnName());
+
+            width += columnWidth != null ? columnWidth : DEFAULT_VARIABLE_WIDTH;
+        }
+        return rows * width;
+    }
+
+    /**
+     * Estimates the average stored width of every column. Fixed-width types
+     * take their PostgreSQL size. Variable-width columns share what is left
+     * of the source table's average row length in proportion to their
+     * declared sizes, or are assumed to hold short values when the table's
+     * statistics are unknown.
+     *
+     * @param tableDefinition the definition of the table
+     * @param statistics the size estimates of the source table, or null if unknown
+     * @return the estimated width of each column, in bytes, by column name
+     */
+    protected static Map<String, Long> estimateColumnWidths(TableDefinition tableDefinition,
+            TableStatistics statistics) {
+        final Map<String, Long> widths = new HashMap<String, Long>();
+        final List<ColumnDefinition> variable = new LinkedList<ColumnDefinition>();
+        long fixedWidth = 0;
+        long variableSize = 0;
+
+        for (ColumnDefinition cd : tableDefinition.getColumnDefinitions()) {
+            final long width = getFixedWidth(cd);
+
+            if (width > 0) {
+                widths.put(cd.getName(), width);
+                fixedWidth += width;
+            } else {
+                variable.add(cd);
+                variableSize += Math.max(1, cd.getColumnSize());
+            }
+        }
+
+        final long spare = statistics == null || statistics.getRows() <= 0 ? -1 :
+                Math.max(0, statistics.getDataLength() / statistics.getRows() - fixedWidth);
+
+        for (ColumnDefinition cd : variable) {
+            final long size = Math.max(1, cd.getColumnSize());
+
+            widths.put(cd.getName(), spare < 0 ? Math.min(size, DEFAULT_VARIABLE_WIDTH) :
+                    Math.min(size, spare * size / variableSize));
+        }
+        return widths;
+    }
+
+    /**
+     * @param columnDefinition the definition of a column
+     * @return the width of the column's PostgreSQL type in bytes, or 0 if the type is variable-width
+     */
+    private static long getFixedWidth(ColumnDefinition columnDefinition) {
+        switch (columnDefinition.getType()) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+                return 1;
+            case Types.SMALLINT:
+                return 2;
+            case Types.INTEGER:
+            case Types.REAL:
+            case Types.DATE:
+                return 4;
+            case Types.BIGINT:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return 8;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return 8 + columnDefinition.getColumnSize() / 2;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param tableName the name of the table
+     * @param indexName the name of the index
+     * @return the key of the index's budget
+     */
+    private static String getKey(String tableName, String indexName) {
+        return tableName + "." + indexName;
+    }
+
+    /**
+     * Container class for the planned budget of a single index build.
+     *
+     * @author modcloth
+     *
+     */
+    public static class IndexBudget {
+        private final long estimatedBytes;
+        private final long memoryMegabytes;
+        private final int parallelWorkers;
+
+        /**
+         * @param estimatedBytes the estimated size of the index's entries, in bytes
+         * @param memoryMegabytes the maintenance_work_mem of the build, in megabytes
+         * @param parallelWorkers the max_parallel_maintenance_workers of the build, or -1 to leave it unset
+         */
+        public IndexBudget(long estimatedBytes, long memoryMegabytes, int parallelWorkers) {
+            this.estimatedBytes = estimatedBytes;
+            this.memoryMegabytes = memoryMegabytes;
+            this.parallelWorkers = parallelWorkers;
+        }
+
+        /**
+         * @return the estimated size of the index's entries, in bytes
+         */
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        /**
+         * @return the maintenance_work_mem of the build, in megabytes
+         */
+        public long getMemoryMegabytes() {
+            return memoryMegabytes;
+        }
+
+        /**
+         * @return the max_parallel_maintenance_workers of the build, or -1 to leave it unset
+         */
+        public int getParallelWorkers() {
+            return parallelWorkers;
+        }
+    }
+}
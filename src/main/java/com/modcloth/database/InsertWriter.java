@@ -0,0 +1,309 @@
+package com.modcloth.database;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.postgresql.PGStatement;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.transforms.ValueTransform;
+
+/**
+ * Writes rows into a PostgreSQL table with parameterized multi-row INSERT
+ * statements, for destinations that do not accept COPY, such as poolers in
+ * transaction mode.
+ *
+ * Rows are buffered until a batch is full, then bound to an
+ * <code>INSERT ... VALUES (...), (...)</code> statement of that many rows.
+ * One prepared statement is kept per table and number of rows, so a copy
+ * prepares at most two: one for the full batches and one for the last.
+ * Values are read by the transform of their column and bound by its
+ * type, so the server receives them as numbers, booleans and bytes rather
+ * than text to be parsed; dates and times are sent as text of unspecified
+ * type, as COPY would, so they are not shifted by the time zone of the
+ * JVM. The rows are committed
+ * every few batches, which bounds the work lost to a failure but leaves
+ * the committed batches in the table.
+ *
+ * The statements are kept unnamed on the server even though they are
+ * reused: by default the PostgreSQL driver switches a statement to a named
+ * server-side one after a few executions, and a pooler in transaction mode
+ * may send the next execution to a server connection that never prepared
+ * it.
+ *
+ * @author modcloth
+ *
+ */
+public class InsertWriter {
+    protected static final int MAX_PARAMETERS = 32767;
+
+    private final Connection connection;
+    private final String tableName;
+    private final List<String> columnNames;
+    private final int[] types;
+    private final ValueTransform[] transforms;
+    private final int offset;
+    private final int batchRows;
+    private final int commitBatches;
+    private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+    private final Object[] values;
+    private int bufferedRows;
+    private int uncommittedBatches;
+    private long bufferedBytes;
+
+    /**
+     * @param connection the connection to the PostgreSQL database, whose auto-commit is turned off while writing
+     * @param tableDefinition the definition of the source table
+     * @param extraColumn the name of an extra leading destination column, or null if there is none
+     * @param destinationTableName the name of the destination table, or null if it is named like the source
+     * @param batchRows the number of rows inserted by each statement, lowered to stay within the parameters a
+     * statement may have
+     * @param commitBatches the number of batches inserted between commits
+     * @throws SQLException if auto-commit could not be turned off
+     */
+    public InsertWriter(Connection connection, TableDefinition tableDefinition, String extraColumn,
+            String destinationTableName, int batchRows, int commitBatches) throws SQLException {
+        this(connection, tableDefinition, ValueTransform.forColumns(tableDefinition.getColumnDefinitions(), false),
+                extraColumn, destinationTableName, batchRows, commitBatches);
+    }
+
+    /**
+     * @param connection the connection to the PostgreSQL database, whose auto-commit is turned off while writing
+     * @param tableDefinition the definition of the source table
+     * @param transforms the transform reading the values of each source column
+     * @param extraColumn the name of an extra leading destination column, or null if there is none
+     * @param destinationTableName the name of the destination table, or null if it is named like the source
+     * @param batchRows the number of rows inserted by each statement, lowered to stay within the parameters a
+     * statement may have
+     * @param commitBatches the number of batches inserted between commits
+     * @throws SQLException if auto-commit could not be turned off
+     */
+    public InsertWriter(Connection connection, TableDefinition tableDefinition, ValueTransform[] transforms,
+            String extraColumn, String destinationTableName, int batchRows, int commitBatches)
+            throws SQLException {
+        final List<ColumnDefinition> columns = tableDefinition.getColumnDefinitions();
+
+        this.connection = connection;
+        this.transforms = transforms;
+        this.tableName = destinationTableName == null ? tableDefinition.getName() : destinationTableName;
+        this.columnNames = new LinkedList<String>(tableDefinition.getColumnNames());
+        this.offset = extraColumn == null ? 0 : 1;
+        this.types = new int[columns.size() + offset];
+        if (extraColumn != null) {
+            columnNames.add(0, extraColumn);
+            types[0] = Types.VARCHAR;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            types[i + offset] = columns.get(i).getType();
+        }
+        this.batchRows = Math.max(1, Math.min(batchRows, MAX_PARAMETERS / types.length));
+        this.commitBatches = Math.max(1, commitBatches);
+        this.values = new Object[this.batchRows * types.length];
+        connection.setAutoCommit(false);
+    }
+
+    /**
+     * Buffers the current row of a result set.
+     *
+     * @param extraValue the value of the extra leading column, ignored if there is none
+     * @param resultSet the result set positioned on the row, holding the source columns in order
+     * @return true if the batch is full and must be flushed before the next row is added
+     * @throws SQLException if a value could not be read
+     */
+    public boolean addRow(String extraValue, ResultSet resultSet) throws SQLException {
+        final int start = bufferedRows * types.length;
+
+        if (offset > 0) {
+            values[start] = extraValue;
+            bufferedBytes += extraValue == null ? 0 : extraValue.length();
+        }
+        for (int i = offset; i < types.length; i++) {
+            final Object value = transforms[i - offset].read(resultSet, i - offset + 1);
+
+            values[start + i] = value;
+            bufferedBytes += value instanceof String ? ((String) value).length() :
+                    value instanceof byte[] ? ((byte[]) value).length : value == null ? 0 : 8;
+        }
+        bufferedRows++;
+        return bufferedRows == batchRows;
+    }
+
+    /**
+     * Inserts the buffered rows, committing if enough batches have been
+     * inserted since the last commit.
+     *
+     * @return the number of rows inserted
+     * @throws SQLException if the rows could not be inserted
+     */
+    public int flush() throws SQLException {
+        final int rows = bufferedRows;
+
+        if (rows == 0) {
+            return 0;
+        }
+
+        final PreparedStatement statement = prepare(rows);
+
+        for (int i = 0; i < rows * types.length; i++) {
+            bindValue(statement, i + 1, values[i], types[i % types.length]);
+        }
+        statement.executeUpdate();
+        Arrays.fill(values, 0, rows * types.length, null);
+        bufferedRows = 0;
+        if (++uncommittedBatches >= commitBatches) {
+            connection.commit();
+            uncommittedBatches = 0;
+        }
+        return rows;
+    }
+
+    /**
+     * Inserts the buffered rows and commits them, then closes the prepared
+     * statements and turns auto-commit back on.
+     *
+     * @throws SQLException if the rows could not be inserted or committed
+     */
+    public void finish() throws SQLException {
+        try {
+            flush();
+            connection.commit();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Rolls back the rows inserted since the last commit, then closes the
+     * prepared statements and turns auto-commit back on.
+     */
+    public void abort() {
+        try {
+            connection.rollback();
+        } catch (SQLException sqe) {
+            System.err.println("Error: " + sqe.getMessage());
+        }
+        try {
+            close();
+        } catch (SQLException sqe) {
+            System.err.println("Error: " + sqe.getMessage());
+        }
+    }
+
+    /**
+     * Returns the approximate size of the values buffered since the last
+     * call, counting characters of text, bytes of binary values and eight
+     * bytes for other values.
+     *
+     * @return the size of the values read since the last call
+     */
+    public long takeBytes() {
+        final long bytes = bufferedBytes;
+
+        bufferedBytes = 0;
+        return bytes;
+    }
+
+    /**
+     * @return the number of rows inserted by each full batch
+     */
+    public int getBatchRows() {
+        return batchRows;
+    }
+
+    /**
+     * @return the number of rows buffered and not yet inserted
+     */
+    public int getBufferedRows() {
+        return bufferedRows;
+    }
+
+    /**
+     * @param rows the number of rows of the statement
+     * @return the cached statement inserting the given number of rows into the table
+     * @throws SQLException if the statement could not be prepared
+     */
+    private PreparedStatement prepare(int rows) throws SQLException {
+        final String key = tableName + ":" + rows;
+        PreparedStatement statement = statements.get(key);
+
+        if (statement == null) {
+            statement = connection.prepareStatement(toInsertStatement(tableName, columnNames, rows));
+            if (statement instanceof PGStatement) {
+                ((PGStatement) statement).setPrepareThreshold(0);
+            }
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * @throws SQLException if auto-commit could not be turned back on
+     */
+    private void close() throws SQLException {
+        for (PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+            }
+        }
+        statements.clear();
+        connection.setAutoCommit(true);
+    }
+
+    /**
+     * @param tableName the name of the destination table
+     * @param columnNames the names of the destination columns
+     * @param rows the number of rows inserted
+     * @return the parameterized statement inserting the given number of rows
+     */
+    protected static String toInsertStatement(String tableName, List<String> columnNames, int rows) {
+        final String row = "(" + StringUtils.repeat("?", ", ", columnNames.size()) + ")";
+
+        return "INSERT INTO " + tableName + " (" + StringUtils.join(columnNames, ", ") + ") VALUES " +
+                StringUtils.repeat(row, ", ", rows);
+    }
+
+    /**
+     * Binds a value with the setter of its column's type. Text that is not
+     * character data, such as dates and times, is bound without a type so
+     * the server parses it as the type of its column.
+     *
+     * @param statement the statement
+     * @param parameter the index of the parameter
+     * @param value the value, or null for NULL
+     * @param type the SQL type of the source column
+     * @throws SQLException if the value could not be bound
+     */
+    protected static void bindValue(PreparedStatement statement, int parameter, Object value, int type)
+            throws SQLException {
+        if (value == null) {
+            statement.setNull(parameter, Types.OTHER);
+        } else if (value instanceof byte[]) {
+            statement.setBytes(parameter, (byte[]) value);
+        } else if (value instanceof Boolean) {
+            statement.setBoolean(parameter, (Boolean) value);
+        } else if (value instanceof Long) {
+            statement.setLong(parameter, (Long) value);
+        } else if (value instanceof Double) {
+            statement.setDouble(parameter, (Double) value);
+        } else if (value instanceof BigDecimal) {
+            statement.setBigDecimal(parameter, (BigDecimal) value);
+        } else if (type == Types.CHAR || type == Types.VARCHAR || type == Types.LONGVARCHAR ||
+                type == Types.CLOB) {
+            statement.setString(parameter, (String) value);
+        } else {
+            statement.setObject(parameter, value, Types.OTHER);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.modcloth.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+/**
+ * Reads the smallest and largest value of a table's integer key, so that the
+ * table's rows can be split into key ranges copied independently.
+ *
+ * @author modcloth
+ *
+ */
+public class KeyRangeReader {
+    private final ConnectionManager connectionManager;
+
+    /**
+     * @param connectionManager the manager from which the connection to the MySQL server will be retrieved
+     */
+    public KeyRangeReader(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    /**
+     * Reads the range of the table's key in one source database.
+     *
+     * @param tableDefinition the definition of the table
+     * @param sourceDbName the name of the database holding the table, or null for the connection's database
+     * @return the smallest and largest key, an empty array if the table is empty, or null if the table
+     * has no integer key or the range could not be read
+     */
+    public long[] read(TableDefinition tableDefinition, String sourceDbName) {
+        final String keyName = getIntegerKeyName(tableDefinition);
+        long[] range = null;
+
+        if (keyName != null) {
+            final Connection connection = connectionManager.openConnection();
+
+            if (connection != null) {
+                Statement statement = null;
+                ResultSet resultSet = null;
+
+                try {
+                    statement = connection.createStatement();
+                    resultSet = statement.executeQuery("SELECT MIN(" + keyName + "), MAX(" + keyName + ") FROM " +
+                            (sourceDbName == null ? "" : sourceDbName + ".") + tableDefinition.getName());
+
+                    if (resultSet.next()) {
+                        final long min = resultSet.getLong(1);
+
+                        range = resultSet.wasNull() ? new long[0] : new long[] { min, resultSet.getLong(2) };
+                    }
+                } catch (SQLException sqe) {
+                    System.err.println("Error: " + sqe.getMessage());
+                } finally {
+                    try {
+                        if (resultSet != null && !resultSet.isClosed()) {
+                            resultSet.close();
+                        }
+                        if (statement != null && !statement.isClosed()) {
+                            statement.close();
+                        }
+                    } catch (SQLException sqe) {
+                        System.err.println("Error: " + sqe.getMessage());
+                    }
+                    connectionManager.closeConnection(connection);
+                }
+            }
+        }
+        return range;
+    }
+
+    /**
+     * @param tableDefinition the definition of a table
+     * @return the name of the table's primary key if it is a single integer column, else of its surrogate
+     * key if that is an integer column, or null
+     */
+    public static String getIntegerKeyName(TableDefinition tableDefinition) {
+        final List<IndexDefinition> primary = tableDefinition.getIndexAsMultiColumnIndex("PRIMARY");
+        final String keyName = primary.size() == 1 ? primary.get(0).getColumnName() :
+                tableDefinition.getSurrogateKeyName();
+
+        for (ColumnDefinition cd : tableDefinition.getColumnDefinitions()) {
+            if (cd.getName().equals(keyName) && (cd.getType() == Types.TINYINT || cd.getType() == Types.SMALLINT ||
+                    cd.getType() == Types.INTEGER || cd.getType() == Types.BIGINT)) {
+                return cd.getName();
+            }
+        }
+        return null;
+    }
+}
@@ -4,12 +4,20 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
 import com.modcloth.database.TableDefinition.IndexDefinition;
 import com.modcloth.database.managers.ConnectionManager;
+import com.modcloth.database.managers.ConnectionManager.Operation;
+import com.modcloth.metrics.Events;
+import com.modcloth.metrics.MetricsRegistry;
+import com.modcloth.metrics.ProgressReporter;
 
 /**
  * Reads the metadata for a given database using standard SQL constructs.
@@ -22,6 +30,8 @@ public class MetaDataReader {
     private final ConnectionManager connectionManager;
     private final String dbName;
     private final String surrogateKeyPattern;
+    private final Map<String, Long> readMillis;
+    private ProgressReporter progressReporter;
 
     /**
      * @param connectionManager the manager from which the connection to the database will be retrieved
@@ -32,6 +42,7 @@ public class MetaDataReader {
         this.connectionManager = connectionManager;
         this.dbName = dbName;
         this.surrogateKeyPattern = surrogateKeyPattern;
+        this.readMillis = new LinkedHashMap<String, Long>();
     }
 
     /**
@@ -42,6 +53,9 @@ public class MetaDataReader {
      */
     public List<TableDefinition> read() {
         final List<TableDefinition> tableDefinitions = new LinkedList<TableDefinition>();
+        final long start = System.nanoTime();
+
+        readMillis.clear();
         final Connection connection = connectionManager.openConnection();
 
         if (connection != null) {
@@ -69,9 +83,24 @@ public class MetaDataReader {
                 connectionManager.closeConnection(connection);              
             }
         }
+        MetricsRegistry.getDefault().timer("metadata.read").updateSince(start);
         return tableDefinitions;
     }
 
+    /**
+     * @param progressReporter the reporter to advance as each table is read
+     */
+    public void setProgressReporter(ProgressReporter progressReporter) {
+        this.progressReporter = progressReporter;
+    }
+
+    /**
+     * @return the time taken to read each table's definition during the last read, in milliseconds
+     */
+    public Map<String, Long> getReadMillis() {
+        return readMillis;
+    }
+
     /**
      * Reads the table structure of a given table and maps it to a TableDefinition. 
      * 
@@ -99,7 +128,11 @@ public class MetaDataReader {
          */
         public TableDefinition read() {
             final TableDefinition tableDefinition = new TableDefinition(name, surrogateKeyPattern);
+            final Events.Span span = Events.tableRead(name);
+            final Operation operation = new Operation(connectionManager);
+            final long start = System.nanoTime();
             ResultSet resultSet = null;
+            boolean success = false;
 
             try {
                 resultSet = metaData.getColumns(dbName, null, name, null);
@@ -111,7 +144,8 @@ public class MetaDataReader {
                             resultSet.getInt("COLUMN_SIZE"),
                             resultSet.getInt("DECIMAL_DIGITS"),
                             resultSet.getString("COLUMN_DEF"),
-                            resultSet.getString("IS_AUTOINCREMENT")));
+                            resultSet.getString("IS_AUTOINCREMENT"),
+                            isUnsigned(resultSet.getString("TYPE_NAME"))));
                 }
                 resultSet = metaData.getIndexInfo(dbName, null, name, false, true);
                 while (resultSet.next()) {
@@ -119,13 +153,44 @@ public class MetaDataReader {
                             resultSet.getString("INDEX_NAME"),
                             resultSet.getString("COLUMN_NAME"),
                             resultSet.getBoolean("NON_UNIQUE"),
-                            resultSet.getInt("ORDINAL_POSITION")));
+                            resultSet.getInt("ORDINAL_POSITION"),
+                            resultSet.getLong("CARDINALITY")));
                 }
+                resultSet = metaData.getImportedKeys(dbName, null, name);
+                while (resultSet.next()) {
+                    tableDefinition.addForeignKeyDefinition(new ForeignKeyDefinition(
+                            resultSet.getString("FK_NAME"),
+                            resultSet.getString("FKCOLUMN_NAME"),
+                            resultSet.getString("PKTABLE_NAME"),
+                            resultSet.getString("PKCOLUMN_NAME"),
+                            resultSet.getInt("KEY_SEQ"),
+                            resultSet.getInt("UPDATE_RULE"),
+                            resultSet.getInt("DELETE_RULE")));
+                }
+                success = true;
             } catch (SQLException sqe) {
                 System.err.println("Error: " + sqe.getMessage());
+            } finally {
+                operation.end();
+            }
+            span.end(success);
+
+            final long nanos = MetricsRegistry.getDefault().timer("metadata.table.read").updateSince(start);
+
+            readMillis.put(name, TimeUnit.NANOSECONDS.toMillis(nanos));
+            if (progressReporter != null) {
+                progressReporter.advance(ProgressReporter.Phase.METADATA, 1);
             }
             return tableDefinition;
         }
+
+        /**
+         * @param typeName the mysql type name of a column, such as 'INT UNSIGNED'
+         * @return true if the column is an UNSIGNED number
+         */
+        private boolean isUnsigned(String typeName) {
+            return typeName != null && typeName.toUpperCase().contains("UNSIGNED");
+        }
     }
 }
 
@@ -0,0 +1,527 @@
+package com.modcloth.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.modcloth.database.TableStatisticsReader.TableStatistics;
+import com.modcloth.database.managers.ConnectionManager;
+
+/**
+ * Predicts how long a conversion will take, and how much disk it will use
+ * in PostgreSQL, before it is run.
+ *
+ * Every table is tried out on a small scale: it is created as a trial copy
+ * in the {@link #TRIAL_SCHEMA} schema of the destination, a sample of its
+ * rows is copied into it from MySQL, its indexes are built, its size is
+ * read and the trial copy is dropped. The schema is created for the plan and
+ * dropped with it, so the destination's own tables are never touched, but
+ * the plan does need the right to create a schema. The sample is taken from
+ * {@link #SAMPLE_BLOCKS} blocks of rows spread evenly over the range of the
+ * table's integer key, so that it covers old and new rows alike; a table
+ * without one is sampled from its first rows.
+ *
+ * The timings and sizes of the trial are then scaled to the number
+ * of rows MySQL estimates for the table: the time the copy spends on rows
+ * and disk usage in proportion to the rows, and index build time in
+ * proportion to n log n, the cost of the sort behind a B-tree build. The
+ * time a copy takes before its first row is counted once, unscaled, and
+ * timings are kept in nanoseconds until they are scaled, so that a sample
+ * that takes under a millisecond still predicts a time. Each phase is predicted to
+ * take as long as its items take when they are spread over the phase's
+ * threads, longest first, as the run spreads them.
+ *
+ * The trial shares the source and destination with the run, so its
+ * figures include their actual load; the predictions are meant to be
+ * compared with the actual times of the run they precede, which the run
+ * report holds side by side, rather than trusted as exact.
+ *
+ * @author modcloth
+ *
+ */
+public class MigrationPlanner {
+    public static final String TRIAL_SCHEMA = "schema_convert_plan";
+    protected static final int SAMPLE_BLOCKS = 10;
+    protected static final String SIZE_QUERY = "SELECT pg_relation_size(?::regclass), pg_indexes_size(?::regclass)";
+
+    private final ConnectionManager myConnectionManager;
+    private final ConnectionManager pgConnectionManager;
+    private final int sampleRows;
+
+    /**
+     * @param myConnectionManager manages connections to the MySQL server holding the source database
+     * @param pgConnectionManager manages connections to the PostgreSQL database the trial tables are created in
+     * @param sampleRows the number of rows copied into each trial table
+     */
+    public MigrationPlanner(ConnectionManager myConnectionManager, ConnectionManager pgConnectionManager,
+            int sampleRows) {
+        this.myConnectionManager = myConnectionManager;
+        this.pgConnectionManager = pgConnectionManager;
+        this.sampleRows = sampleRows;
+    }
+
+    /**
+     * Tries out the given tables and predicts the phases of their
+     * conversion.
+     *
+     * @param tableDefinitions the source table definitions
+     * @param tableNames list of the table names that will be converted
+     * @param statistics the size estimates of the source tables, by table name
+     * @param sourceDbNames the names of the databases the rows are copied from, the first of which is sampled,
+     * or an empty list if no rows are copied
+     * @param copyThreads the number of tables or shards copied at once
+     * @param indexThreads the number of indexes built at once
+     * @return the predicted conversion
+     */
+    public Plan plan(List<TableDefinition> tableDefinitions, List<String> tableNames,
+            Map<String, TableStatistics> statistics, List<String> sourceDbNames, int copyThreads, int indexThreads) {
+        final Plan plan = new Plan(sampleRows, copyThreads, indexThreads);
+        final List<Long> ddl = new ArrayList<Long>();
+        final List<Long> copies = new ArrayList<Long>();
+        final List<Long> indexes = new ArrayList<Long>();
+        final StatementExecutor executor = new StatementExecutor(pgConnectionManager);
+
+        if (!executor.executeStatement("CREATE SCHEMA IF NOT EXISTS " + TRIAL_SCHEMA, TRIAL_SCHEMA)) {
+            System.err.println("Error: Unable to create the " + TRIAL_SCHEMA + " schema for the trial tables");
+        }
+        for (TableDefinition t : tableDefinitions) {
+            if (tableNames.contains(t.getName())) {
+                final TableStatistics s = statistics.get(t.getName());
+                final TablePlan table = tryTable(t, s == null ? -1 : s.getRows() * Math.max(1, sourceDbNames.size()),
+                        sourceDbNames.isEmpty() ? null : sourceDbNames.get(0));
+
+                System.out.println("Planned " + t.getName());
+                plan.tables.put(t.getName(), table);
+                ddl.add(table.ddlMillis);
+                for (int i = 0; i < sourceDbNames.size(); i++) {
+                    copies.add(table.dataMillis / sourceDbNames.size());
+                }
+                indexes.addAll(table.indexMillis.values());
+                plan.tableBytes += table.tableBytes;
+                plan.indexBytes += table.indexBytes;
+            }
+        }
+        executor.executeStatement("DROP SCHEMA IF EXISTS " + TRIAL_SCHEMA + " CASCADE", TRIAL_SCHEMA);
+        plan.phaseMillis.put("tables", schedule(ddl, 1));
+        plan.phaseMillis.put("data", schedule(copies, copyThreads));
+        plan.phaseMillis.put("indexes", schedule(indexes, indexThreads));
+        for (Long millis : plan.phaseMillis.values()) {
+            plan.totalMillis += millis;
+        }
+        return plan;
+    }
+
+    /**
+     * Creates a trial copy of a table in the trial schema, copies a sample
+     * of its rows into it, builds its indexes and reads its size, then drops
+     * it.
+     *
+     * @param tableDefinition the definition of the source table
+     * @param rows the number of rows MySQL estimates the table holds in every source together, or -1 if unknown
+     * @param sourceDbName the name of the database the sample is copied from, or null to copy no rows
+     * @return the predicted conversion of the table
+     */
+    protected TablePlan tryTable(TableDefinition tableDefinition, long rows, String sourceDbName) {
+        final String trialName = TRIAL_SCHEMA + "." + tableDefinition.getName();
+        final TableDefinition trial = tableDefinition.withName(trialName, "");
+        final StatementExecutor executor = new StatementExecutor(pgConnectionManager);
+        final Map<String, Long> indexMillis = new LinkedHashMap<String, Long>();
+        String error = null;
+        long sample = 0;
+        long sampleNanos = 0;
+        long rowNanos = 0;
+        long start;
+
+        executor.executeStatement("DROP TABLE IF EXISTS " + trialName + " CASCADE", trialName);
+        start = System.nanoTime();
+        if (!executor.executeStatement(trial.toPostgresCreateSyntax(), trialName)) {
+            return new TablePlan(Math.max(0, rows), 0, 0, 0, indexMillis, 0, 0, executor.getLastError());
+        }
+
+        final long ddlMillis = millisSince(start);
+
+        if (sourceDbName != null && sampleRows > 0) {
+            final DataCopier copier = new DataCopier(myConnectionManager, pgConnectionManager);
+            final List<String> conditions = toSampleConditions(KeyRangeReader.getIntegerKeyName(tableDefinition),
+                    new KeyRangeReader(myConnectionManager).read(tableDefinition, sourceDbName), sampleRows);
+            int blocks = 0;
+
+            copier.setDestinationTableName(trialName);
+            copier.setRowLimit((sampleRows + conditions.size() - 1) / conditions.size());
+            for (String condition : conditions) {
+                start = System.nanoTime();
+                blocks++;
+                if (!copier.copy(tableDefinition, sourceDbName, null, null, condition)) {
+                    error = copier.getLastError();
+                }
+                sampleNanos += System.nanoTime() - start;
+                rowNanos += copier.getRowNanos();
+                sample += copier.getRows();
+                if (error != null) {
+                    break;
+                }
+            }
+            sampleNanos = (sampleNanos - rowNanos) / blocks + rowNanos;
+        }
+
+        final long tableRows = rows < 0 ? sample : rows;
+
+        for (Map.Entry<String, String> e : trial.toPostgresIndexSyntaxByName().entrySet()) {
+            start = System.nanoTime();
+            if (executor.executeStatement(e.getValue(), trialName)) {
+                indexMillis.put(e.getKey(), TimeUnit.NANOSECONDS.toMillis(scaleSort(System.nanoTime() - start,
+                        sample, tableRows)));
+            } else if (error == null) {
+                error = executor.getLastError();
+            }
+        }
+
+        final long[] sizes = readSizes(trialName);
+
+        executor.executeStatement("DROP TABLE IF EXISTS " + trialName + " CASCADE", trialName);
+        return new TablePlan(tableRows, sample, ddlMillis, scaleCopy(sampleNanos, rowNanos, sample, tableRows),
+                indexMillis, scale(sizes[0], sample, tableRows), scale(sizes[1], sample, tableRows), error);
+    }
+
+    /**
+     * Splits the range of a table's key into blocks spread evenly over it,
+     * each of which is sampled from its start, so that the sample is not
+     * only the table's oldest rows.
+     *
+     * @param keyName the name of the table's integer key, or null if it has none
+     * @param range the smallest and largest key, or null or empty if they are unknown
+     * @param sampleRows the number of rows sampled from the table
+     * @return the condition selecting each block, or a single null condition to sample the first rows of a
+     * table without a key or with fewer keys than the sample
+     */
+    protected static List<String> toSampleConditions(String keyName, long[] range, int sampleRows) {
+        final List<String> conditions = new ArrayList<String>();
+
+        if (keyName == null || range == null || range.length == 0 ||
+                (range[1] - range[0] >= 0 && range[1] - range[0] < sampleRows)) {
+            conditions.add(null);
+            return conditions;
+        }
+
+        final int blocks = Math.max(1, Math.min(SAMPLE_BLOCKS, sampleRows));
+        final long stride = range[1] - range[0] >= 0 ? (range[1] - range[0]) / blocks + 1 :
+                range[1] / blocks - range[0] / blocks + 1;
+        long start = range[0];
+
+        for (int i = 0; i < blocks; i++) {
+            final boolean last = i == blocks - 1 || start > range[1] - stride;
+
+            conditions.add(keyName + " >= " + start + (last ? "" : " AND " + keyName + " < " + (start + stride)));
+            if (last) {
+                break;
+            }
+            start += stride;
+        }
+        return conditions;
+    }
+
+    /**
+     * @param tableName the name of a PostgreSQL table
+     * @return the size of the table's data and of its indexes, in bytes, or zeros if they could not be read
+     */
+    protected long[] readSizes(String tableName) {
+        final long[] sizes = new long[2];
+        final Connection connection = pgConnectionManager.openConnection();
+
+        if (connection != null) {
+            PreparedStatement statement = null;
+            ResultSet resultSet = null;
+
+            try {
+                statement = connection.prepareStatement(SIZE_QUERY);
+                statement.setString(1, tableName);
+                statement.setString(2, tableName);
+                resultSet = statement.executeQuery();
+                if (resultSet.next()) {
+                    sizes[0] = resultSet.getLong(1);
+                    sizes[1] = resultSet.getLong(2);
+                }
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+            } finally {
+                try {
+                    if (resultSet != null && !resultSet.isClosed()) {
+                        resultSet.close();
+                    }
+                    if (statement != null && !statement.isClosed()) {
+                        statement.close();
+                    }
+                } catch (SQLException sqe) {
+                    System.err.println("Error: " + sqe.getMessage());
+                }
+                pgConnectionManager.closeConnection(connection);
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Scales a figure measured on a sample in proportion to the rows.
+     *
+     * @param measured the figure measured on the sample
+     * @param sampleRows the number of rows in the sample
+     * @param rows the number of rows in the table
+     * @return the figure for the table, or the measured figure if the sample is empty
+     */
+    protected static long scale(long measured, long sampleRows, long rows) {
+        return sampleRows <= 0 ? measured : (long) ((double) measured * rows / sampleRows);
+    }
+
+    /**
+     * Scales the time of a copy measured on a sample. Only the time spent
+     * on rows grows with them; the time the copy took before its first row,
+     * to open connections and start the query and the COPY, is spent once
+     * whatever the number of rows.
+     *
+     * @param measuredNanos the time the copy of the sample took, in nanoseconds
+     * @param rowNanos the part of that time spent from the first row to the last, in nanoseconds
+     * @param sampleRows the number of rows in the sample
+     * @param rows the number of rows in the table
+     * @return the time for the table, in milliseconds
+     */
+    protected static long scaleCopy(long measuredNanos, long rowNanos, long sampleRows, long rows) {
+        return TimeUnit.NANOSECONDS.toMillis(measuredNanos - rowNanos + scale(rowNanos, sampleRows, rows));
+    }
+
+    /**
+     * Scales the time of a sort measured on a sample in proportion to
+     * n log n of the rows.
+     *
+     * @param measured the time measured on the sample
+     * @param sampleRows the number of rows in the sample
+     * @param rows the number of rows in the table
+     * @return the time for the table
+     */
+    protected static long scaleSort(long measured, long sampleRows, long rows) {
+        if (sampleRows < 2 || rows <= sampleRows) {
+            return scale(measured, sampleRows, rows);
+        }
+        return Math.round(scale(measured, sampleRows, rows) * Math.log(rows) / Math.log(sampleRows));
+    }
+
+    /**
+     * Predicts how long a phase takes to run the given items on a number of
+     * threads, giving the longest remaining item to the first free thread.
+     *
+     * @param durations the duration of each item
+     * @param threads the number of items run at once
+     * @return the duration of the phase
+     */
+    protected static long schedule(List<Long> durations, int threads) {
+        final long[] busy = new long[Math.max(1, threads)];
+        final List<Long> sorted = new ArrayList<Long>(durations);
+        long longest = 0;
+
+        Collections.sort(sorted, Collections.reverseOrder());
+        for (Long duration : sorted) {
+            int free = 0;
+
+            for (int i = 1; i < busy.length; i++) {
+                if (busy[i] < busy[free]) {
+                    free = i;
+                }
+            }
+            busy[free] += duration;
+            longest = Math.max(longest, busy[free]);
+        }
+        return longest;
+    }
+
+    /**
+     * @param start the start of an interval, from System.nanoTime()
+     * @return the milliseconds elapsed since the start
+     */
+    private static long millisSince(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Container class for the predicted conversion of a set of tables.
+     *
+     * @author modcloth
+     *
+     */
+    public static class Plan {
+        private final int sampleRows;
+        private final int copyThreads;
+        private final int indexThreads;
+        private final Map<String, Long> phaseMillis = new LinkedHashMap<String, Long>();
+        private long totalMillis;
+        private long tableBytes;
+        private long indexBytes;
+        private final Map<String, TablePlan> tables = new LinkedHashMap<String, TablePlan>();
+
+        /**
+         * @param sampleRows the number of rows copied into each trial table
+         * @param copyThreads the number of tables or shards copied at once
+         * @param indexThreads the number of indexes built at once
+         */
+        public Plan(int sampleRows, int copyThreads, int indexThreads) {
+            this.sampleRows = sampleRows;
+            this.copyThreads = copyThreads;
+            this.indexThreads = indexThreads;
+        }
+
+        /**
+         * @return the predicted duration of each phase, in milliseconds, by phase name
+         */
+        public Map<String, Long> getPhaseMillis() {
+            return phaseMillis;
+        }
+
+        /**
+         * @return the predicted duration of the conversion, in milliseconds
+         */
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        /**
+         * @return the predicted disk usage of the tables and their indexes, in bytes
+         */
+        public long getDiskBytes() {
+            return tableBytes + indexBytes;
+        }
+
+        /**
+         * @return the predicted conversion of each table, by table name
+         */
+        public Map<String, TablePlan> getTables() {
+            return tables;
+        }
+
+        /**
+         * @return the plan as lines of text, one per table and one per phase
+         */
+        public String toText() {
+            final StringBuilder text = new StringBuilder();
+
+            text.append(String.format("Plan from samples of %d rows, %d copy and %d index threads:%n", sampleRows,
+                    copyThreads, indexThreads));
+            for (Map.Entry<String, TablePlan> e : tables.entrySet()) {
+                final TablePlan t = e.getValue();
+
+                text.append(String.format("  %s: %d rows, create %d ms, copy %d ms, indexes %d ms, %d MB%s%n",
+                        e.getKey(), t.rows, t.ddlMillis, t.dataMillis, t.getIndexMillis(),
+                        (t.tableBytes + t.indexBytes) >> 20, t.error == null ? "" : " (" + t.error + ")"));
+            }
+            for (Map.Entry<String, Long> e : phaseMillis.entrySet()) {
+                text.append(String.format("  %s phase: %d ms%n", e.getKey(), e.getValue()));
+            }
+            return text.append(String.format("  total: %d ms, %d MB of tables and %d MB of indexes%n", totalMillis,
+                    tableBytes >> 20, indexBytes >> 20)).toString();
+        }
+    }
+
+    /**
+     * Container class for the predicted conversion of a single table.
+     *
+     * @author modcloth
+     *
+     */
+    public static class TablePlan {
+        private final long rows;
+        private final long sampleRows;
+        private final long ddlMillis;
+        private final long dataMillis;
+        private final Map<String, Long> indexMillis;
+        private final long tableBytes;
+        private final long indexBytes;
+        private final String error;
+
+        /**
+         * @param rows the number of rows the table is expected to hold
+         * @param sampleRows the number of rows copied into the trial table
+         * @param ddlMillis the predicted time to create the table
+         * @param dataMillis the predicted time to copy the rows of the table from every source
+         * @param indexMillis the predicted time to build each index, by index name
+         * @param tableBytes the predicted disk usage of the table's data
+         * @param indexBytes the predicted disk usage of the table's indexes
+         * @param error the error that made the trial incomplete, or null
+         */
+        protected TablePlan(long rows, long sampleRows, long ddlMillis, long dataMillis,
+                Map<String, Long> indexMillis, long tableBytes, long indexBytes, String error) {
+            this.rows = rows;
+            this.sampleRows = sampleRows;
+            this.ddlMillis = ddlMillis;
+            this.dataMillis = dataMillis;
+            this.indexMillis = indexMillis;
+            this.tableBytes = tableBytes;
+            this.indexBytes = indexBytes;
+            this.error = error;
+        }
+
+        /**
+         * @return the number of rows the table is expected to hold
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return the number of rows copied into the trial table
+         */
+        public long getSampleRows() {
+            return sampleRows;
+        }
+
+        /**
+         * @return the predicted time to create the table, in milliseconds
+         */
+        public long getDdlMillis() {
+            return ddlMillis;
+        }
+
+        /**
+         * @return the predicted time to copy the rows of the table from every source, in milliseconds
+         */
+        public long getDataMillis() {
+            return dataMillis;
+        }
+
+        /**
+         * @return the predicted total time to build the indexes of the table, in milliseconds
+         */
+        public long getIndexMillis() {
+            long total = 0;
+
+            for (Long millis : indexMillis.values()) {
+                total += millis;
+            }
+            return total;
+        }
+
+        /**
+         * @return the predicted disk usage of the table's data, in bytes
+         */
+        public long getTableBytes() {
+            return tableBytes;
+        }
+
+        /**
+         * @return the predicted disk usage of the table's indexes, in bytes
+         */
+        public long getIndexBytes() {
+            return indexBytes;
+        }
+
+        /**
+         * @return the error that made the trial incomplete, or null
+         */
+        public String getError() {
+            return error;
+        }
+    }
+}
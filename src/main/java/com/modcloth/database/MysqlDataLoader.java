@@ -0,0 +1,415 @@
+package com.modcloth.database;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyOut;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+import com.modcloth.database.managers.ConnectionManager.Operation;
+import com.modcloth.metrics.MetricsRegistry;
+import com.modcloth.metrics.ProgressReporter;
+
+/**
+ * Copies the rows of a table from a PostgreSQL database into a table of a
+ * MySQL database, the reverse of {@link DataCopier}.
+ *
+ * The rows are read with COPY TO STDOUT and handed to MySQL's LOAD DATA
+ * LOCAL INFILE as the stream the driver sends in place of a file, so they
+ * move at the speed of both databases' bulk loaders without being held in
+ * memory or written to disk. The text format of COPY is also the default
+ * format of LOAD DATA: tab-separated fields, backslash escapes and \N for
+ * NULL. Booleans are selected as 0 or 1 for TINYINT(1), and binary values
+ * as hex, which LOAD DATA decodes with UNHEX. The two escapes of COPY that
+ * MySQL does not know, \f and \v, are replaced with the characters they
+ * stand for.
+ *
+ * LOAD DATA LOCAL reports rows it cannot store as warnings rather than
+ * errors, so a load only succeeds if MySQL stored as many rows as were
+ * read and raised no warning.
+ *
+ * @author modcloth
+ *
+ */
+public class MysqlDataLoader {
+    protected static final int CHUNK_SIZE = 1 << 16;
+
+    private final ConnectionManager sourceConnectionManager;
+    private final ConnectionManager destinationConnectionManager;
+    private ProgressReporter progressReporter;
+    private String lastError;
+    private long rows;
+    private long bytes;
+
+    /**
+     * @param sourceConnectionManager manages connections to the PostgreSQL database the rows are read from
+     * @param destinationConnectionManager manages connections to the MySQL database the rows are written to
+     */
+    public MysqlDataLoader(ConnectionManager sourceConnectionManager,
+            ConnectionManager destinationConnectionManager) {
+        this.sourceConnectionManager = sourceConnectionManager;
+        this.destinationConnectionManager = destinationConnectionManager;
+    }
+
+    /**
+     * @param progressReporter the reporter advanced by the rows of every chunk loaded
+     */
+    public void setProgressReporter(ProgressReporter progressReporter) {
+        this.progressReporter = progressReporter;
+    }
+
+    /**
+     * Copies every row of the given table.
+     *
+     * @param tableDefinition the definition of the source table
+     * @param sourceSchemaName the name of the PostgreSQL schema holding the table, or null for the search path
+     * @param destinationTableName the name of the MySQL table, qualified by its database if needed
+     * @return true if every row was loaded, false if it failed
+     */
+    public boolean load(TableDefinition tableDefinition, String sourceSchemaName, String destinationTableName) {
+        final Connection source = sourceConnectionManager.openConnection();
+        final Connection destination = source == null ? null : destinationConnectionManager.openConnection();
+        Statement statement = null;
+        CopyOut copyOut = null;
+        CopyOutStream rowStream = null;
+        boolean loaded = false;
+
+        lastError = null;
+        rows = 0;
+        bytes = 0;
+        if (destination == null) {
+            lastError = "Unable to open a connection";
+        } else if (!(source instanceof PGConnection)) {
+            lastError = "Source is not a PostgreSQL connection";
+        } else {
+            try {
+                statement = destination.createStatement();
+                if (!(statement instanceof com.mysql.jdbc.Statement)) {
+                    lastError = "Destination is not a MySQL connection";
+                } else {
+                    copyOut = ((PGConnection) source).getCopyAPI().copyOut(toCopyOutStatement(tableDefinition,
+                            sourceSchemaName));
+                    rowStream = new CopyOutStream(copyOut);
+                    ((com.mysql.jdbc.Statement) statement).setLocalInfileInputStream(rowStream);
+                    statement.execute(toLoadStatement(tableDefinition, destinationTableName));
+                    final long copiedRows = rows;
+
+                    rows = Math.max(0, statement.getUpdateCount());
+                    lastError = checkLoad(rows, copiedRows, statement.getWarnings());
+                    if (lastError == null) {
+                        loaded = true;
+                    } else {
+                        System.err.println("Error: " + destinationTableName + ": " + lastError);
+                        MetricsRegistry.getDefault().counter("data.copy.failed").increment();
+                    }
+                }
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+                lastError = sqe.getMessage();
+                MetricsRegistry.getDefault().counter("data.copy.failed").increment();
+            } finally {
+                if (rowStream != null) {
+                    rowStream.endReading();
+                }
+                try {
+                    if (copyOut != null && copyOut.isActive()) {
+                        copyOut.cancelCopy();
+                    }
+                } catch (SQLException sqe) {
+                    System.err.println("Error: " + sqe.getMessage());
+                }
+                try {
+                    if (statement != null) {
+                        statement.close();
+                    }
+                } catch (SQLException sqe) {
+                    System.err.println("Error: " + sqe.getMessage());
+                }
+            }
+        }
+        if (destination != null) {
+            destinationConnectionManager.closeConnection(destination);
+        }
+        if (source != null) {
+            sourceConnectionManager.closeConnection(source);
+        }
+        return loaded;
+    }
+
+    /**
+     * @return the number of rows MySQL stored during the last load
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of bytes of COPY data loaded by the last load
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the error of the last load, or null if it succeeded
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Checks that LOAD DATA stored every row it was sent. With LOCAL, MySQL
+     * turns the errors of rows it cannot store into warnings and skips or
+     * changes those rows, so the statement succeeds even when it lost data.
+     *
+     * @param loadedRows the number of rows MySQL reports as loaded
+     * @param copiedRows the number of rows read from PostgreSQL
+     * @param warning the first warning of the LOAD DATA statement, or null if there were none
+     * @return the reason the load lost or changed rows, or null if it stored them all as they were
+     */
+    protected static String checkLoad(long loadedRows, long copiedRows, SQLWarning warning) {
+        if (loadedRows != copiedRows) {
+            return "Loaded " + loadedRows + " of " + copiedRows + " rows" +
+                    (warning == null ? "" : ": " + warning.getMessage());
+        } else if (warning != null) {
+            int count = 0;
+
+            for (SQLWarning w = warning; w != null; w = w.getNextWarning()) {
+                count++;
+            }
+            return "Loaded " + loadedRows + " rows with " + count + " warning" + (count == 1 ? "" : "s") +
+                    ": " + warning.getMessage();
+        }
+        return null;
+    }
+
+    /**
+     * @param tableDefinition the definition of the source table
+     * @param sourceSchemaName the name of the PostgreSQL schema holding the table, or null for the search path
+     * @return the COPY statement that reads the rows of the table in the format LOAD DATA reads
+     */
+    protected static String toCopyOutStatement(TableDefinition tableDefinition, String sourceSchemaName) {
+        final List<String> expressions = new LinkedList<String>();
+
+        for (ColumnDefinition cd : tableDefinition.getColumnDefinitions()) {
+            if (isBoolean(cd.getType())) {
+                expressions.add(cd.getName() + "::int");
+            } else if (isBinary(cd.getType())) {
+                expressions.add("encode(" + cd.getName() + ", 'hex')");
+            } else {
+                expressions.add(cd.getName());
+            }
+        }
+        return "COPY (SELECT " + StringUtils.join(expressions, ", ") + " FROM " +
+                (sourceSchemaName == null ? "" : sourceSchemaName + ".") + tableDefinition.getName() + ") TO STDOUT";
+    }
+
+    /**
+     * @param tableDefinition the definition of the source table
+     * @param destinationTableName the name of the MySQL table
+     * @return the LOAD DATA statement that writes the rows into the MySQL table
+     */
+    protected static String toLoadStatement(TableDefinition tableDefinition, String destinationTableName) {
+        final List<String> columns = new LinkedList<String>();
+        final List<String> assignments = new LinkedList<String>();
+
+        for (ColumnDefinition cd : tableDefinition.getColumnDefinitions()) {
+            if (isBinary(cd.getType())) {
+                columns.add("@" + cd.getName());
+                assignments.add(cd.getName() + " = UNHEX(@" + cd.getName() + ")");
+            } else {
+                columns.add(cd.getName());
+            }
+        }
+        return "LOAD DATA LOCAL INFILE 'stdin' INTO TABLE " + destinationTableName + " CHARACTER SET utf8mb4 (" +
+                StringUtils.join(columns, ", ") + ")" +
+                (assignments.isEmpty() ? "" : " SET " + StringUtils.join(assignments, ", "));
+    }
+
+    /**
+     * Rewrites the escapes of a row of COPY text that MySQL does not know.
+     *
+     * @param row a row in COPY text format
+     * @return the row, or a copy of it with \f and \v replaced by the characters they stand for
+     */
+    protected static byte[] toMysqlEscapes(byte[] row) {
+        int escapes = 0;
+
+        for (int i = 0; i < row.length - 1; i++) {
+            if (row[i] == '\\') {
+                if (row[i + 1] == 'f' || row[i + 1] == 'v') {
+                    escapes++;
+                }
+                i++;
+            }
+        }
+        if (escapes == 0) {
+            return row;
+        }
+
+        final byte[] rewritten = new byte[row.length - escapes];
+        int j = 0;
+
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] == '\\' && i + 1 < row.length) {
+                final byte next = row[++i];
+
+                if (next == 'f') {
+                    rewritten[j++] = '\f';
+                } else if (next == 'v') {
+                    rewritten[j++] = 0x0b;
+                } else {
+                    rewritten[j++] = '\\';
+                    rewritten[j++] = next;
+                }
+            } else {
+                rewritten[j++] = row[i];
+            }
+        }
+        return rewritten;
+    }
+
+    /**
+     * @param type the SQL type of the source column
+     * @return true if the column is created as TINYINT(1)
+     */
+    private static boolean isBoolean(int type) {
+        return type == Types.BIT || type == Types.BOOLEAN;
+    }
+
+    /**
+     * @param type the SQL type of the source column
+     * @return true if the column holds binary values
+     */
+    private static boolean isBinary(int type) {
+        return type == Types.BINARY || type == Types.VARBINARY || type == Types.LONGVARBINARY ||
+                type == Types.BLOB;
+    }
+
+    /**
+     * The rows of a running COPY TO STDOUT, read as a stream of bytes by
+     * the MySQL driver. Every chunk of rows read is counted, and is read as
+     * one operation of the source, whose latency is the time PostgreSQL
+     * took to produce it.
+     */
+    private class CopyOutStream extends InputStream {
+        private final CopyOut copyOut;
+        private byte[] row = new byte[0];
+        private int position;
+        private long chunkBytes;
+        private long chunkRows;
+        private long readNanos;
+        private Operation reading;
+        private boolean finished;
+
+        /**
+         * @param copyOut the running COPY
+         */
+        public CopyOutStream(CopyOut copyOut) {
+            this.copyOut = copyOut;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == row.length && !nextRow()) {
+                return -1;
+            }
+            return row[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == row.length && !nextRow()) {
+                return -1;
+            }
+
+            final int count = Math.min(length, row.length - position);
+
+            System.arraycopy(row, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * Reads the next row from the COPY.
+         *
+         * @return true if a row was read, false if the COPY is complete
+         * @throws IOException if the row could not be read
+         */
+        private boolean nextRow() throws IOException {
+            if (finished) {
+                return false;
+            }
+
+            if (reading == null) {
+                reading = new Operation(sourceConnectionManager);
+            }
+
+            final long start = System.nanoTime();
+            byte[] next;
+
+            try {
+                next = copyOut.readFromCopy();
+            } catch (SQLException sqe) {
+                throw new IOException(sqe.getMessage());
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+            if (next == null) {
+                finished = true;
+                endChunk();
+                return false;
+            }
+            chunkRows++;
+            chunkBytes += next.length;
+            row = toMysqlEscapes(next);
+            position = 0;
+            if (chunkBytes >= CHUNK_SIZE) {
+                endChunk();
+            }
+            return true;
+        }
+
+        /**
+         * Ends the operation reading the current chunk, if one is running.
+         */
+        public void endReading() {
+            if (reading != null) {
+                reading.end(readNanos);
+                reading = null;
+            }
+        }
+
+        /**
+         * Counts the rows read since the last chunk.
+         */
+        private void endChunk() {
+            endReading();
+            if (chunkRows > 0) {
+                rows += chunkRows;
+                bytes += chunkBytes;
+                MetricsRegistry.getDefault().meter("data.rows").mark(chunkRows);
+                MetricsRegistry.getDefault().meter("data.bytes").mark(chunkBytes);
+                if (progressReporter != null) {
+                    progressReporter.advance(ProgressReporter.Phase.DATA, chunkRows);
+                }
+            }
+            chunkRows = 0;
+            chunkBytes = 0;
+            readNanos = 0;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.modcloth.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+/**
+ * Reads the table definitions of a PostgreSQL schema directly from pg_catalog.
+ *
+ * Unlike MetaDataReader, which issues several DatabaseMetaData calls per
+ * table, all tables of the schema are read with one column query and one
+ * index query, regardless of how many tables the schema holds. Primary keys
+ * are named 'PRIMARY' so the resulting TableDefinitions match the ones read
+ * from MySQL.
+ *
+ * @author modcloth
+ *
+ */
+public class PostgresCatalogReader {
+    private static final String COLUMN_QUERY =
+        "SELECT c.relname, a.attname, t.typname, a.atttypmod, a.attnotnull, " +
+        "pg_get_expr(d.adbin, d.adrelid) AS column_default " +
+        "FROM pg_class c " +
+        "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+        "LEFT JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum > 0 AND NOT a.attisdropped " +
+        "LEFT JOIN pg_type t ON t.oid = a.atttypid " +
+        "LEFT JOIN pg_attrdef d ON d.adrelid = c.oid AND d.adnum = a.attnum " +
+        "WHERE n.nspname = ? AND c.relkind = 'r' " +
+        "ORDER BY c.relname, a.attnum";
+
+    private static final String INDEX_QUERY =
+        "SELECT t.relname, i.relname AS index_name, a.attname, x.indisunique, x.indisprimary, " +
+        "k.n + 1 AS ordinal_position " +
+        "FROM pg_index x " +
+        "JOIN pg_class t ON t.oid = x.indrelid " +
+        "JOIN pg_class i ON i.oid = x.indexrelid " +
+        "JOIN pg_namespace n ON n.oid = t.relnamespace " +
+        "CROSS JOIN generate_series(0, x.%s - 1) AS k(n) " +
+        "JOIN pg_attribute a ON a.attrelid = t.oid AND a.attnum = x.indkey[k.n] " +
+        "WHERE n.nspname = ? AND t.relkind = 'r' " +
+        "ORDER BY t.relname, i.relname, k.n";
+
+    /** The first version whose indexes have INCLUDE columns after their key columns. */
+    private static final int INCLUDE_VERSION = 11;
+
+    private static final Pattern QUOTED_DEFAULT = Pattern.compile("^'(.*)'::[\\w \\[\\]\"]+$", Pattern.DOTALL);
+
+    private static final Map<String, Integer> typeMap = initTypeMap();
+
+    private final ConnectionManager connectionManager;
+    private final String schemaName;
+    private final String surrogateKeyPattern;
+
+    /**
+     * @param connectionManager the manager from which the connection to the database will be retrieved
+     * @param schemaName the name of the PostgreSQL schema from which the tables will be read
+     * @param surrogateKeyPattern the pattern with which to check for surrogate keys
+     */
+    public PostgresCatalogReader(ConnectionManager connectionManager, String schemaName, String surrogateKeyPattern) {
+        this.connectionManager = connectionManager;
+        this.schemaName = schemaName;
+        this.surrogateKeyPattern = surrogateKeyPattern;
+    }
+
+    /**
+     * Reads the table definitions for all tables in the object's schema and maps
+     * them to TableDefinitions.
+     *
+     * @return a list of TableDefinitions, ordered by table name
+     */
+    public List<TableDefinition> read() {
+        final Map<String, TableDefinition> tableDefinitions = new LinkedHashMap<String, TableDefinition>();
+        final Connection connection = connectionManager.openConnection();
+
+        if (connection != null) {
+            try {
+                readColumns(connection, tableDefinitions);
+                readIndexes(connection, tableDefinitions);
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+            } finally {
+                connectionManager.closeConnection(connection);
+            }
+        }
+        return new LinkedList<TableDefinition>(tableDefinitions.values());
+    }
+
+    /**
+     * Reads every column of every table in the schema and adds them to the
+     * table definitions, creating a definition for each table found.
+     *
+     * @param connection the connection on which the catalog will be queried
+     * @param tableDefinitions the table definitions keyed by table name
+     * @throws SQLException if the catalog query fails
+     */
+    private void readColumns(Connection connection, Map<String, TableDefinition> tableDefinitions)
+            throws SQLException {
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            statement = connection.prepareStatement(COLUMN_QUERY);
+            statement.setString(1, schemaName);
+            resultSet = statement.executeQuery();
+
+            while (resultSet.next()) {
+                final String tableName = resultSet.getString("relname");
+                TableDefinition tableDefinition = tableDefinitions.get(tableName);
+
+                if (tableDefinition == null) {
+                    tableDefinition = new TableDefinition(tableName, surrogateKeyPattern);
+                    tableDefinitions.put(tableName, tableDefinition);
+                }
+
+                final String columnName = resultSet.getString("attname");
+
+                if (columnName != null) {
+                    tableDefinition.addColumnDefinition(toColumnDefinition(columnName,
+                            resultSet.getString("typname"),
+                            resultSet.getInt("atttypmod"),
+                            resultSet.getBoolean("attnotnull"),
+                            resultSet.getString("column_default")));
+                }
+            }
+        } finally {
+            close(resultSet, statement);
+        }
+    }
+
+    /**
+     * Reads every index column of every table in the schema and adds them to
+     * the matching table definitions.
+     *
+     * @param connection the connection on which the catalog will be queried
+     * @param tableDefinitions the table definitions keyed by table name
+     * @throws SQLException if the catalog query fails
+     */
+    private void readIndexes(Connection connection, Map<String, TableDefinition> tableDefinitions)
+            throws SQLException {
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            statement = connection.prepareStatement(toIndexQuery(
+                    connection.getMetaData().getDatabaseMajorVersion()));
+            statement.setString(1, schemaName);
+            resultSet = statement.executeQuery();
+
+            while (resultSet.next()) {
+                final TableDefinition tableDefinition = tableDefinitions.get(resultSet.getString("relname"));
+
+                if (tableDefinition != null) {
+                    final String indexName = resultSet.getString("index_name");
+
+                    tableDefinition.addIndexDefinition(new IndexDefinition(
+                            resultSet.getBoolean("indisprimary") ? "PRIMARY" : indexName,
+                            resultSet.getString("attname"),
+                            !resultSet.getBoolean("indisunique"),
+                            resultSet.getInt("ordinal_position")));
+                }
+            }
+        } finally {
+            close(resultSet, statement);
+        }
+    }
+
+    /**
+     * Returns the index query for a server version. From PostgreSQL 11 an
+     * index may hold INCLUDE columns after its key columns; only the key
+     * columns, counted by indnkeyatts, are read.
+     *
+     * @param majorVersion the major version of the PostgreSQL server
+     * @return the query reading the key columns of every index
+     */
+    protected static String toIndexQuery(int majorVersion) {
+        return String.format(INDEX_QUERY, majorVersion >= INCLUDE_VERSION ? "indnkeyatts" : "indnatts");
+    }
+
+    /**
+     * Maps a row of the column query to a ColumnDefinition, decoding the
+     * type modifier into a column size and number of decimal digits.
+     *
+     * @param name the name of the column
+     * @param typeName the name of the column's PostgreSQL type
+     * @param typeModifier the type modifier of the column (atttypmod)
+     * @param notNull the not null flag of the column
+     * @param defaultExpression the default expression of the column, if any
+     * @return the ColumnDefinition representing the column
+     */
+    protected static ColumnDefinition toColumnDefinition(String name, String typeName, int typeModifier,
+            boolean notNull, String defaultExpression) {
+        final Integer mappedType = typeMap.get(typeName);
+        final int type = mappedType == null ? Types.OTHER : mappedType;
+        final boolean isAutoIncrement = defaultExpression != null && defaultExpression.startsWith("nextval(");
+        int columnSize = 0;
+        int decimalDigits = 0;
+
+        if ((type == Types.CHAR || type == Types.VARCHAR) && typeModifier > 4) {
+            columnSize = typeModifier - 4;
+        } else if (type == Types.DECIMAL && typeModifier > 4) {
+            columnSize = ((typeModifier - 4) >> 16) & 0xffff;
+            decimalDigits = (typeModifier - 4) & 0xffff;
+        }
+
+        return new ColumnDefinition(name, type, notNull ? "NO" : "YES", columnSize, decimalDigits,
+                isAutoIncrement ? null : stripDefaultCast(defaultExpression),
+                isAutoIncrement ? "YES" : "NO");
+    }
+
+    /**
+     * Strips the quoting and type cast PostgreSQL adds to literal defaults,
+     * e.g. 'abc'::character varying becomes abc.
+     *
+     * @param defaultExpression the default expression as stored in the catalog
+     * @return the literal default value, or the expression if it is not a literal
+     */
+    private static String stripDefaultCast(String defaultExpression) {
+        if (defaultExpression == null) {
+            return null;
+        }
+
+        final Matcher matcher = QUOTED_DEFAULT.matcher(defaultExpression);
+
+        return matcher.matches() ? matcher.group(1).replace("''", "'") : defaultExpression;
+    }
+
+    /**
+     * Closes the given result set and statement, ignoring nulls.
+     *
+     * @param resultSet the result set to close
+     * @param statement the statement to close
+     */
+    private void close(ResultSet resultSet, PreparedStatement statement) {
+        try {
+            if (resultSet != null && !resultSet.isClosed()) {
+                resultSet.close();
+            }
+            if (statement != null && !statement.isClosed()) {
+                statement.close();
+            }
+        } catch (SQLException sqe) {
+            System.err.println("Error: " + sqe.getMessage());
+        }
+    }
+
+    /**
+     * Creates the map that links PostgreSQL type names with the integral SQL
+     * types used by the TableDefinitions.
+     *
+     * @return the initialized type map
+     */
+    private static Map<String, Integer> initTypeMap() {
+        final Map<String, Integer> map = new HashMap<String, Integer>();
+
+        map.put("int2", Types.SMALLINT);
+        map.put("int4", Types.INTEGER);
+        map.put("int8", Types.BIGINT);
+        map.put("bool", Types.BIT);
+        map.put("float4", Types.REAL);
+        map.put("float8", Types.DOUBLE);
+        map.put("numeric", Types.DECIMAL);
+        map.put("bpchar", Types.CHAR);
+        map.put("varchar", Types.VARCHAR);
+        map.put("text", Types.LONGVARCHAR);
+        map.put("date", Types.DATE);
+        map.put("time", Types.TIME);
+        map.put("timestamp", Types.TIMESTAMP);
+        map.put("bytea", Types.LONGVARBINARY);
+        return map;
+    }
+}
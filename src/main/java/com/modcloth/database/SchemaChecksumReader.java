@@ -0,0 +1,152 @@
+package com.modcloth.database;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.modcloth.database.managers.ConnectionManager;
+
+/**
+ * Computes a checksum of the structure of the tables in a MySQL database
+ * from information_schema, using four queries whatever the number of tables.
+ *
+ * Databases with the same checksum have the same tables, columns, indexes
+ * and foreign keys, so table definitions read from one can be used for the
+ * other without reading them again. Index cardinalities depend on the rows
+ * of each database and are not part of the checksum; see
+ * {@link IndexCardinalityReader}.
+ *
+ * @author modcloth
+ *
+ */
+public class SchemaChecksumReader {
+    private static final String COLUMN_QUERY =
+        "SELECT TABLE_NAME, COLUMN_NAME, ORDINAL_POSITION, COLUMN_TYPE, IS_NULLABLE, COLUMN_DEFAULT, EXTRA " +
+        "FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, ORDINAL_POSITION";
+
+    private static final String INDEX_QUERY =
+        "SELECT TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX, COLUMN_NAME, NON_UNIQUE " +
+        "FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX";
+
+    private static final String FOREIGN_KEY_QUERY =
+        "SELECT TABLE_NAME, CONSTRAINT_NAME, REFERENCED_TABLE_NAME, UPDATE_RULE, DELETE_RULE " +
+        "FROM information_schema.REFERENTIAL_CONSTRAINTS WHERE CONSTRAINT_SCHEMA = ? " +
+        "ORDER BY TABLE_NAME, CONSTRAINT_NAME";
+
+    private static final String FOREIGN_KEY_COLUMN_QUERY =
+        "SELECT TABLE_NAME, CONSTRAINT_NAME, ORDINAL_POSITION, COLUMN_NAME, REFERENCED_TABLE_NAME, " +
+        "REFERENCED_COLUMN_NAME FROM information_schema.KEY_COLUMN_USAGE " +
+        "WHERE TABLE_SCHEMA = ? AND REFERENCED_TABLE_NAME IS NOT NULL " +
+        "ORDER BY TABLE_NAME, CONSTRAINT_NAME, ORDINAL_POSITION";
+
+    private final ConnectionManager connectionManager;
+    private final String dbName;
+    private Set<String> tableNames;
+
+    /**
+     * @param connectionManager the manager from which the connection to the database will be retrieved
+     * @param dbName the name of the database whose structure will be checksummed
+     */
+    public SchemaChecksumReader(ConnectionManager connectionManager, String dbName) {
+        this.connectionManager = connectionManager;
+        this.dbName = dbName;
+    }
+
+    /**
+     * Limits the checksum to the given tables, so that databases which only
+     * share those tables can be compared.
+     *
+     * @param tableNames the names of the tables to include, or null to include every table
+     */
+    public void setTableNames(Collection<String> tableNames) {
+        this.tableNames = tableNames == null ? null : new HashSet<String>(tableNames);
+    }
+
+    /**
+     * Reads the structure of the object's database.
+     *
+     * @return the hex encoded MD5 digest of the database's structure, or null if it could not be read
+     */
+    public String read() {
+        final Connection connection = connectionManager.openConnection();
+        String checksum = null;
+
+        if (connection != null) {
+            try {
+                final MessageDigest digest = MessageDigest.getInstance("MD5");
+
+                update(digest, connection, COLUMN_QUERY, 7);
+                digest.update((byte) 0);
+                update(digest, connection, INDEX_QUERY, 5);
+                digest.update((byte) 0);
+                update(digest, connection, FOREIGN_KEY_QUERY, 5);
+                digest.update((byte) 0);
+                update(digest, connection, FOREIGN_KEY_COLUMN_QUERY, 6);
+
+                final StringBuilder hex = new StringBuilder();
+
+                for (byte b : digest.digest()) {
+                    hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+                }
+                checksum = hex.toString();
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+            } catch (NoSuchAlgorithmException nsae) {
+                System.err.println("Error: " + nsae.getMessage());
+            } catch (UnsupportedEncodingException uee) {
+                System.err.println("Error: " + uee.getMessage());
+            } finally {
+                connectionManager.closeConnection(connection);
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * Adds every row of the given query to the digest.
+     *
+     * @param digest the digest to update
+     * @param connection the connection on which the query is run
+     * @param query the query, with the database name as its only parameter
+     * @param columns the number of columns the query returns
+     * @throws SQLException if the query fails
+     * @throws UnsupportedEncodingException if UTF-8 is not supported
+     */
+    private void update(MessageDigest digest, Connection connection, String query, int columns)
+            throws SQLException, UnsupportedEncodingException {
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            statement = connection.prepareStatement(query);
+            statement.setString(1, dbName);
+            resultSet = statement.executeQuery();
+
+            while (resultSet.next()) {
+                if (tableNames != null && !tableNames.contains(resultSet.getString(1))) {
+                    continue;
+                }
+                for (int i = 1; i <= columns; i++) {
+                    final String value = resultSet.getString(i);
+
+                    digest.update(value == null ? new byte[] {1} : value.getBytes("UTF-8"));
+                    digest.update((byte) (i == columns ? '\n' : '\t'));
+                }
+            }
+        } finally {
+            if (resultSet != null) {
+                resultSet.close();
+            }
+            if (statement != null) {
+                statement.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.modcloth.database;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+
+/**
+ * Reads the TableDefinitions stored in a snapshot file written by
+ * SnapshotWriter. The file is memory-mapped and decoded in one pass, so
+ * loading even a large schema does not touch the source database and takes
+ * no longer than reading the file.
+ *
+ * @author modcloth
+ *
+ */
+public class SnapshotReader {
+    private final File file;
+    private final String surrogateKeyPattern;
+
+    /**
+     * @param file the snapshot file from which the table definitions will be read
+     * @param surrogateKeyPattern the pattern with which to check for surrogate keys
+     */
+    public SnapshotReader(File file, String surrogateKeyPattern) {
+        this.file = file;
+        this.surrogateKeyPattern = surrogateKeyPattern;
+    }
+
+    /**
+     * Reads the table definitions stored in the object's snapshot file.
+     *
+     * @return a list of TableDefinitions in the order they were written
+     */
+    public List<TableDefinition> read() {
+        final List<TableDefinition> tableDefinitions = new LinkedList<TableDefinition>();
+        FileInputStream input = null;
+
+        try {
+            input = new FileInputStream(file);
+
+            final FileChannel channel = input.getChannel();
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            parse(Charset.forName("UTF-8").decode(buffer), tableDefinitions);
+        } catch (IOException ioe) {
+            System.err.println("Error: " + ioe.getMessage());
+        } catch (IllegalArgumentException iae) {
+            System.err.println("Error: " + iae.getMessage());
+            tableDefinitions.clear();
+        } finally {
+            try {
+                if (input != null) {
+                    input.close();
+                }
+            } catch (IOException ioe) {
+                System.err.println("Error: " + ioe.getMessage());
+            }
+        }
+        return tableDefinitions;
+    }
+
+    /**
+     * Parses the decoded snapshot into table definitions.
+     *
+     * @param snapshot the decoded contents of the snapshot file
+     * @param tableDefinitions the list to which the table definitions will be added
+     * @throws IllegalArgumentException if the snapshot is malformed
+     */
+    private void parse(CharBuffer snapshot, List<TableDefinition> tableDefinitions) {
+        final List<String> fields = new ArrayList<String>(8);
+        final StringBuilder field = new StringBuilder();
+        TableDefinition tableDefinition = null;
+        int lineNumber = 0;
+
+        while (readLine(snapshot, fields, field)) {
+            lineNumber++;
+            if (lineNumber == 1) {
+                if (fields.size() != 1 || !SnapshotWriter.HEADER.equals(fields.get(0))) {
+                    throw new IllegalArgumentException(file + " is not a schema-convert snapshot");
+                }
+                continue;
+            }
+
+            final String kind = fields.get(0);
+
+            if (kind.equals("T") && fields.size() == 2) {
+                tableDefinition = new TableDefinition(fields.get(1), surrogateKeyPattern);
+                tableDefinitions.add(tableDefinition);
+            } else if (kind.equals("C") && (fields.size() == 8 || fields.size() == 9) && tableDefinition != null) {
+                tableDefinition.addColumnDefinition(new ColumnDefinition(fields.get(1),
+                        Integer.parseInt(fields.get(2)), fields.get(3),
+                        Integer.parseInt(fields.get(4)), Integer.parseInt(fields.get(5)),
+                        fields.get(6), fields.get(7), fields.size() == 9 && "YES".equals(fields.get(8))));
+            } else if (kind.equals("I") && (fields.size() == 5 || fields.size() == 6) && tableDefinition != null) {
+                tableDefinition.addIndexDefinition(new IndexDefinition(fields.get(1), fields.get(2),
+                        Boolean.parseBoolean(fields.get(3)),
+                        fields.get(4) == null ? null : Integer.valueOf(fields.get(4)),
+                        fields.size() == 6 ? Long.parseLong(fields.get(5)) : 0));
+            } else if (kind.equals("F") && fields.size() == 8 && tableDefinition != null) {
+                tableDefinition.addForeignKeyDefinition(new ForeignKeyDefinition(fields.get(1), fields.get(2),
+                        fields.get(3), fields.get(4), Integer.parseInt(fields.get(5)),
+                        Integer.parseInt(fields.get(6)), Integer.parseInt(fields.get(7))));
+            } else {
+                throw new IllegalArgumentException("Malformed snapshot line " + lineNumber + " in " + file);
+            }
+        }
+    }
+
+    /**
+     * Reads the next line of the snapshot and splits it into unescaped fields.
+     *
+     * @param snapshot the decoded snapshot, positioned at the start of a line
+     * @param fields the list that will hold the fields of the line
+     * @param field a buffer reused for building each field
+     * @return true if a line was read, false at the end of the snapshot
+     */
+    private boolean readLine(CharBuffer snapshot, List<String> fields, StringBuilder field) {
+        boolean escaped = false;
+        boolean isNull = false;
+
+        fields.clear();
+        field.setLength(0);
+        if (!snapshot.hasRemaining()) {
+            return false;
+        }
+
+        while (snapshot.hasRemaining()) {
+            final char c = snapshot.get();
+
+            if (escaped) {
+                switch (c) {
+                case 't': field.append('\t'); break;
+                case 'n': field.append('\n'); break;
+                case 'r': field.append('\r'); break;
+                case 'N': isNull = true; break;
+                default: field.append(c);
+                }
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '\t' || c == '\n') {
+                fields.add(isNull ? null : field.toString());
+                field.setLength(0);
+                isNull = false;
+                if (c == '\n') {
+                    return true;
+                }
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(isNull ? null : field.toString());
+        return true;
+    }
+}
@@ -0,0 +1,139 @@
+package com.modcloth.database;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+
+/**
+ * Writes a list of TableDefinitions to a snapshot file so that they can be
+ * converted later without reading the source database again.
+ *
+ * The snapshot is line-delimited UTF-8 text. After a header line, each table
+ * is written as a 'T' line followed by one 'C' line per column, one 'I'
+ * line per index column and one 'F' line per foreign key column. Fields are separated by tabs; tabs, line breaks and
+ * backslashes within fields are escaped and nulls are written as \N.
+ *
+ * @author modcloth
+ *
+ */
+public class SnapshotWriter {
+    protected static final String HEADER = "schema-convert snapshot 1";
+    protected static final String NULL = "\\N";
+
+    private final File file;
+
+    /**
+     * @param file the file to which the snapshot will be written
+     */
+    public SnapshotWriter(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Writes the given table definitions to the object's file, replacing any
+     * existing snapshot.
+     *
+     * @param tableDefinitions the table definitions to write
+     * @return true if the snapshot was written, false if it failed
+     */
+    public boolean write(List<TableDefinition> tableDefinitions) {
+        Writer writer = null;
+        boolean written = false;
+
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+            writer.write(HEADER);
+            writer.write('\n');
+
+            for (TableDefinition t : tableDefinitions) {
+                writeLine(writer, "T", t.getName());
+
+                for (ColumnDefinition cd : t.getColumnDefinitions()) {
+                    writeLine(writer, "C", cd.getName(), String.valueOf(cd.getType()),
+                            cd.getIsNullable() ? "YES" : "NO",
+                            String.valueOf(cd.getColumnSize()),
+                            String.valueOf(cd.getDecimalDigits()),
+                            cd.getDefaultValue(),
+                            cd.getIsAutoIncrement() ? "YES" : "NO",
+                            cd.getIsUnsigned() ? "YES" : "NO");
+                }
+                for (IndexDefinition i : t.getIndexDefinitions()) {
+                    writeLine(writer, "I", i.getName(), i.getColumnName(),
+                            String.valueOf(!i.getIsUnique()),
+                            i.getSequenceNumber() == null ? null : String.valueOf(i.getSequenceNumber()),
+                            String.valueOf(i.getCardinality()));
+                }
+                for (ForeignKeyDefinition fk : t.getForeignKeyDefinitions()) {
+                    writeLine(writer, "F", fk.getName(), fk.getColumnName(), fk.getReferencedTableName(),
+                            fk.getReferencedColumnName(), String.valueOf(fk.getSequenceNumber()),
+                            String.valueOf(fk.getUpdateRule()), String.valueOf(fk.getDeleteRule()));
+                }
+            }
+            written = true;
+        } catch (IOException ioe) {
+            System.err.println("Error: " + ioe.getMessage());
+        } finally {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+            } catch (IOException ioe) {
+                System.err.println("Error: " + ioe.getMessage());
+                written = false;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Writes a single tab-separated snapshot line.
+     *
+     * @param writer the writer to which the line will be written
+     * @param fields the fields of the line, which may be null
+     * @throws IOException if the line cannot be written
+     */
+    private void writeLine(Writer writer, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write('\t');
+            }
+            writer.write(escape(fields[i]));
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Escapes a field value so that it cannot be confused with a separator.
+     *
+     * @param value the value to escape
+     * @return the escaped value, or \N for null
+     */
+    protected static String escape(String value) {
+        if (value == null) {
+            return NULL;
+        }
+
+        final StringBuilder escaped = new StringBuilder(value.length());
+
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+
+            switch (c) {
+            case '\\': escaped.append("\\\\"); break;
+            case '\t': escaped.append("\\t"); break;
+            case '\n': escaped.append("\\n"); break;
+            case '\r': escaped.append("\\r"); break;
+            default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
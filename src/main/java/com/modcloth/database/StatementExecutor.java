@@ -3,8 +3,11 @@ package com.modcloth.database;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
 
 import com.modcloth.database.managers.ConnectionManager;
+import com.modcloth.metrics.Events;
+import com.modcloth.metrics.MetricsRegistry;
 
 /**
  * Executes a SQL statement against the connection provided by the
@@ -15,6 +18,8 @@ import com.modcloth.database.managers.ConnectionManager;
  */
 public class StatementExecutor {
     final private ConnectionManager connectionManager;
+    private String lastError;
+    private String lastSqlState;
 
     /**
      * @param connectionManager the manager from which the connection for the
@@ -29,27 +34,138 @@ public class StatementExecutor {
      * provided by the object's ConnectionManager.
      * 
      * @param sqlStatement the SQL string to be executed
+     * @return true if the statement was executed, false if it failed
      */
-    public void executeStatement(String sqlStatement) {
+    public boolean executeStatement(String sqlStatement) {
+        return executeStatement(sqlStatement, null);
+    }
+
+    /**
+     * Executes the given SQL statement against the database connection
+     * provided by the object's ConnectionManager.
+     * 
+     * @param sqlStatement the SQL string to be executed
+     * @param tableName the name of the table the statement applies to, recorded with its timing
+     * @return true if the statement was executed, false if it failed
+     */
+    public boolean executeStatement(String sqlStatement, String tableName) {
+        Connection connection = connectionManager.openConnection();
+        Statement statement = null;
+        boolean executed = false;
+
+        lastError = null;
+        lastSqlState = null;
+        if (connection == null) {
+            lastError = "Unable to open a connection";
+        } else {
+            final MetricsRegistry metrics = MetricsRegistry.getDefault();
+
+            try {
+                statement = connection.createStatement();
+
+                final Events.Span span = Events.statement(tableName, sqlStatement);
+                final long start = System.nanoTime();
+
+                try {
+                    statement.execute(sqlStatement);
+                    executed = true;
+                } finally {
+                    metrics.timer("ddl.statement").updateSince(start);
+                    span.end(executed);
+                }
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+                lastError = sqe.getMessage();
+                lastSqlState = sqe.getSQLState();
+                metrics.counter("ddl.statement.failed").increment();
+            } finally {
+                try {
+                    if (statement != null && !statement.isClosed()) {
+                        statement.close();
+                    }
+                } catch (SQLException sqe) {
+                    System.err.println("Error: " + sqe.getMessage());
+                }
+                connectionManager.closeConnection(connection);
+            }
+        }
+        return executed;
+    }
+
+    /**
+     * Executes the given SQL statements in order, in one transaction on a
+     * single connection, so that settings made with SET LOCAL apply to the
+     * statements that follow them and end with the transaction. The
+     * transaction is rolled back at the first statement that fails.
+     *
+     * @param sqlStatements the SQL strings to be executed
+     * @param tableName the name of the table the statements apply to, recorded with their timings
+     * @return true if every statement was executed and committed, false if one failed
+     */
+    public boolean executeStatements(List<String> sqlStatements, String tableName) {
         Connection connection = connectionManager.openConnection();
         Statement statement = null;
+        boolean executed = false;
+
+        lastError = null;
+        lastSqlState = null;
+        if (connection == null) {
+            lastError = "Unable to open a connection";
+        } else {
+            final MetricsRegistry metrics = MetricsRegistry.getDefault();
 
-        if (connection != null) {
             try {
+                connection.setAutoCommit(false);
                 statement = connection.createStatement();
-                statement.execute(sqlStatement);
+                for (String sqlStatement : sqlStatements) {
+                    final Events.Span span = Events.statement(tableName, sqlStatement);
+                    final long start = System.nanoTime();
+                    boolean succeeded = false;
+
+                    try {
+                        statement.execute(sqlStatement);
+                        succeeded = true;
+                    } finally {
+                        metrics.timer("ddl.statement").updateSince(start);
+                        span.end(succeeded);
+                    }
+                }
+                connection.commit();
+                executed = true;
             } catch (SQLException sqe) {
                 System.err.println("Error: " + sqe.getMessage());
+                lastError = sqe.getMessage();
+                lastSqlState = sqe.getSQLState();
+                metrics.counter("ddl.statement.failed").increment();
             } finally {
                 try {
                     if (statement != null && !statement.isClosed()) {
                         statement.close();
                     }
+                    if (!executed) {
+                        connection.rollback();
+                    }
+                    connection.setAutoCommit(true);
                 } catch (SQLException sqe) {
                     System.err.println("Error: " + sqe.getMessage());
                 }
                 connectionManager.closeConnection(connection);
             }
         }
+        return executed;
+    }
+
+    /**
+     * @return the error message of the last statement that failed, or null if it succeeded
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return the SQLSTATE of the last statement that failed, or null if it succeeded or has none
+     */
+    public String getLastSqlState() {
+        return lastSqlState;
     }
 }
@@ -0,0 +1,111 @@
+package com.modcloth.database;
+
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import com.modcloth.database.TableDefinition.IndexDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+/**
+ * Gathers the planner statistics of a converted table in the PostgreSQL
+ * database, which has none until the table is analyzed.
+ *
+ * The index cardinalities read from MySQL tell which columns hold many
+ * distinct values. ANALYZE samples 300 rows per unit of statistics target,
+ * which for a large table is too few to estimate such columns well, so the
+ * target of the leading column of every selective index is raised before
+ * the table is analyzed.
+ *
+ * @author modcloth
+ *
+ */
+public class TableAnalyzer {
+    protected static final int STATISTICS_TARGET = 1000;
+    protected static final long MIN_ROWS = 300L * 100;
+    protected static final double MIN_SELECTIVITY = 0.1;
+
+    private final ConnectionManager connectionManager;
+    private String lastError;
+
+    /**
+     * @param connectionManager the manager from which the connections to the PostgreSQL database will be retrieved
+     */
+    public TableAnalyzer(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    /**
+     * Raises the statistics target of the table's selective columns, then
+     * analyzes the table.
+     *
+     * @param tableDefinition the definition of the table
+     * @return true if the table was analyzed, false if a statement failed
+     */
+    public boolean analyze(TableDefinition tableDefinition) {
+        final StatementExecutor executor = new StatementExecutor(connectionManager);
+
+        lastError = null;
+        for (String s : toAnalyzeStatements(tableDefinition)) {
+            if (!executor.executeStatement(s, tableDefinition.getName())) {
+                lastError = executor.getLastError();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the error of the last analysis, or null if it succeeded
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @param tableDefinition the definition of the table
+     * @return the statements that set the statistics targets of the table's columns and analyze it
+     */
+    protected static List<String> toAnalyzeStatements(TableDefinition tableDefinition) {
+        final List<String> statements = new LinkedList<String>();
+
+        for (String c : getSelectiveColumnNames(tableDefinition)) {
+            statements.add("ALTER TABLE " + tableDefinition.getName() + " ALTER COLUMN " + c +
+                    " SET STATISTICS " + STATISTICS_TARGET);
+        }
+        statements.add("ANALYZE " + tableDefinition.getName());
+        return statements;
+    }
+
+    /**
+     * Returns the leading columns of the table's indexes whose distinct
+     * values number at least {@link #MIN_SELECTIVITY} of its rows. The row
+     * count is estimated by the largest index cardinality, and tables small
+     * enough to be sampled whole at the default target are skipped. Single
+     * column unique indexes are skipped too, since ANALYZE recognizes a
+     * column whose sampled values are all distinct.
+     *
+     * @param tableDefinition the definition of the table
+     * @return the names of the table's selective indexed columns
+     */
+    public static Set<String> getSelectiveColumnNames(TableDefinition tableDefinition) {
+        final Set<String> columnNames = new LinkedHashSet<String>();
+        long rows = 0;
+
+        for (IndexDefinition i : tableDefinition.getIndexDefinitions()) {
+            rows = Math.max(rows, i.getCardinality());
+        }
+        if (rows < MIN_ROWS) {
+            return columnNames;
+        }
+        for (IndexDefinition i : tableDefinition.getIndexDefinitions()) {
+            if (i.getSequenceNumber() != null && i.getSequenceNumber() == 1 &&
+                    i.getCardinality() >= MIN_SELECTIVITY * rows &&
+                    !(i.getIsUnique() && tableDefinition.getIndexAsMultiColumnIndex(i.getName()).size() == 1)) {
+                columnNames.add(i.getColumnName());
+            }
+        }
+        return columnNames;
+    }
+}
@@ -1,17 +1,31 @@
 package com.modcloth.database;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.DatabaseMetaData;
+import java.sql.Types;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
+import com.modcloth.converters.MysqlTableConverter;
 import com.modcloth.converters.PostgresTableConverter;
 
 /**
  * Container for storing a standard SQL table definition.
+ *
+ * The PostgreSQL statements for the table are generated on first use and
+ * kept until a column or index is added, so a definition shared by several
+ * jobs is converted only once.
  * 
  * @author modcloth
  *
@@ -21,6 +35,9 @@ public class TableDefinition {
     private final String surrogateKeyPattern;
     private final List<ColumnDefinition> columnDefinitions;
     private final List<IndexDefinition> indexDefinitions;
+    private final List<ForeignKeyDefinition> foreignKeyDefinitions;
+    private volatile String postgresCreateSyntax;
+    private volatile Map<String, String> postgresIndexSyntaxByName;
 
     /**
      * @param name the name of the table
@@ -31,6 +48,7 @@ public class TableDefinition {
         this.surrogateKeyPattern = surrogateKeyPattern;
         this.columnDefinitions = new LinkedList<ColumnDefinition>();
         this.indexDefinitions = new LinkedList<IndexDefinition>();
+        this.foreignKeyDefinitions = new LinkedList<ForeignKeyDefinition>();
     }
 
     /**
@@ -54,6 +72,40 @@ public class TableDefinition {
         return indexDefinitions;
     }
 
+    /**
+     * @return the list of objects representing the columns of the table's foreign keys
+     */
+    public List<ForeignKeyDefinition> getForeignKeyDefinitions() {
+        return foreignKeyDefinitions;
+    }
+
+    /**
+     * Groups the columns of the table's foreign keys by constraint name,
+     * each sorted by its position in the key.
+     *
+     * @return the columns of each foreign key, by constraint name
+     */
+    public Map<String, List<ForeignKeyDefinition>> getForeignKeysByName() {
+        final Map<String, List<ForeignKeyDefinition>> foreignKeys =
+                new LinkedHashMap<String, List<ForeignKeyDefinition>>();
+
+        for (ForeignKeyDefinition fk : foreignKeyDefinitions) {
+            if (!foreignKeys.containsKey(fk.getName())) {
+                foreignKeys.put(fk.getName(), new LinkedList<ForeignKeyDefinition>());
+            }
+            foreignKeys.get(fk.getName()).add(fk);
+        }
+        for (List<ForeignKeyDefinition> columns : foreignKeys.values()) {
+            Collections.sort(columns, new Comparator<ForeignKeyDefinition>() {
+                public int compare(ForeignKeyDefinition left, ForeignKeyDefinition right) {
+                    return left.getSequenceNumber() == right.getSequenceNumber() ? 0 :
+                            left.getSequenceNumber() < right.getSequenceNumber() ? -1 : 1;
+                }
+            });
+        }
+        return foreignKeys;
+    }
+
     /**
      * Builds the list of indexes into a map containing the index name as a key
      * and the list of index-column sequences as the value.
@@ -119,7 +171,22 @@ public class TableDefinition {
      * @return the SQL string for creating the table
      */
     public String toPostgresCreateSyntax() {
-        return new PostgresTableConverter(this).convertToCreateTable();
+        String syntax = postgresCreateSyntax;
+
+        if (syntax == null) {
+            syntax = new PostgresTableConverter(this).convertToCreateTable();
+            postgresCreateSyntax = syntax;
+        }
+        return syntax;
+    }
+
+    /**
+     * Returns the table definition, including its indexes, as its MySQL-compatible SQL syntax.
+     *
+     * @return the SQL string for creating the table
+     */
+    public String toMysqlCreateSyntax() {
+        return new MysqlTableConverter(this).convertToCreateTable();
     }
 
     /**
@@ -128,7 +195,76 @@ public class TableDefinition {
      * @return The SQL strings for adding indexes to the table
      */
     public List<String> toPostgresIndexSyntax() {
-        return new PostgresTableConverter(this).convertToCreateIndex();
+        return new LinkedList<String>(toPostgresIndexSyntaxByName().values());
+    }
+
+    /**
+     * Returns the index definitions as their PostgreSQL-compatible SQL syntax,
+     * keyed by the name of the index each statement creates.
+     * 
+     * @return The SQL strings for adding indexes to the table, by index name
+     */
+    public Map<String, String> toPostgresIndexSyntaxByName() {
+        Map<String, String> syntax = postgresIndexSyntaxByName;
+
+        if (syntax == null) {
+            syntax = Collections.unmodifiableMap(new PostgresTableConverter(this).convertToCreateIndexByName());
+            postgresIndexSyntaxByName = syntax;
+        }
+        return syntax;
+    }
+
+    /**
+     * Returns the foreign keys as the PostgreSQL statements that add them
+     * without checking the existing rows, keyed by constraint name. Each
+     * constraint is checked later by the statement from
+     * {@link #toPostgresValidateForeignKeySyntax(String)}.
+     *
+     * @return The SQL strings for adding foreign keys to the table, by constraint name
+     */
+    public Map<String, String> toPostgresForeignKeySyntaxByName() {
+        return new PostgresTableConverter(this).convertToAddForeignKeyByName();
+    }
+
+    /**
+     * @param foreignKeyName the name of one of the table's foreign keys
+     * @return the SQL string that checks the existing rows against the foreign key
+     */
+    public String toPostgresValidateForeignKeySyntax(String foreignKeyName) {
+        return "ALTER TABLE " + name + " VALIDATE CONSTRAINT " + foreignKeyName;
+    }
+
+    /**
+     * Returns a digest of the PostgreSQL statements generated for the table.
+     * Two definitions with the same fingerprint produce the same table,
+     * indexes and foreign keys, so a table whose fingerprint has not changed
+     * since it was last converted does not need to be converted again.
+     *
+     * @return the hex encoded MD5 digest of the table's create, index and foreign key statements
+     */
+    public String getFingerprint() {
+        final List<String> statements = new LinkedList<String>(toPostgresIndexSyntax());
+        final StringBuilder fingerprint = new StringBuilder();
+
+        statements.addAll(toPostgresForeignKeySyntaxByName().values());
+        Collections.sort(statements);
+        statements.add(0, toPostgresCreateSyntax());
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("MD5");
+
+            for (String s : statements) {
+                digest.update(s.getBytes("UTF-8"));
+                digest.update((byte) '\n');
+            }
+            for (byte b : digest.digest()) {
+                fingerprint.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+        } catch (NoSuchAlgorithmException nsae) {
+            System.err.println("Error: " + nsae.getMessage());
+        } catch (UnsupportedEncodingException uee) {
+            System.err.println("Error: " + uee.getMessage());
+        }
+        return fingerprint.toString();
     }
 
     /**
@@ -161,13 +297,149 @@ public class TableDefinition {
         return names;
     }
 
+    /**
+     * Returns a copy of the definition with an extra leading column that
+     * records which shard each row was merged from. Keys are only unique
+     * within a shard, so the column is also added in front of the primary
+     * key and of every unique index, and foreign keys match rows of the
+     * same shard.
+     *
+     * @param columnName the name of the shard column
+     * @return the definition of the merged table
+     */
+    public TableDefinition withShardColumn(String columnName) {
+        final TableDefinition merged = new TableDefinition(name, surrogateKeyPattern);
+        final Set<String> prefixedIndexes = new HashSet<String>();
+        final Set<String> prefixedForeignKeys = new HashSet<String>();
+
+        merged.addColumnDefinition(new ColumnDefinition(columnName, Types.VARCHAR, "NO", 64, 0, null, "NO"));
+        for (ColumnDefinition cd : columnDefinitions) {
+            merged.addColumnDefinition(cd);
+        }
+        for (IndexDefinition i : indexDefinitions) {
+            if (i.getIsUnique() && prefixedIndexes.add(i.getName())) {
+                merged.addIndexDefinition(new IndexDefinition(i.getName(), columnName, false, 0));
+            }
+            merged.addIndexDefinition(i);
+        }
+        for (ForeignKeyDefinition fk : foreignKeyDefinitions) {
+            if (prefixedForeignKeys.add(fk.getName())) {
+                merged.addForeignKeyDefinition(new ForeignKeyDefinition(fk.getName(), columnName,
+                        fk.getReferencedTableName(), columnName, 0, fk.getUpdateRule(), fk.getDeleteRule()));
+            }
+            merged.addForeignKeyDefinition(fk);
+        }
+        return merged;
+    }
+
+    /**
+     * Returns a copy of the definition under another name. PostgreSQL index
+     * names must be unique within a schema, so the indexes of the copy are
+     * renamed too; the primary key is named after its table by PostgreSQL.
+     *
+     * @param tableName the name of the copy
+     * @param indexSuffix the suffix appended to the name of every index other than the primary key
+     * @return the definition of the renamed table
+     */
+    public TableDefinition withName(String tableName, String indexSuffix) {
+        final TableDefinition renamed = new TableDefinition(tableName, surrogateKeyPattern);
+
+        for (ColumnDefinition cd : columnDefinitions) {
+            renamed.addColumnDefinition(cd);
+        }
+        for (IndexDefinition i : indexDefinitions) {
+            renamed.addIndexDefinition(i.getName() == null || i.getName().equals("PRIMARY") ? i :
+                    new IndexDefinition(i.getName() + indexSuffix, i.getColumnName(), !i.getIsUnique(),
+                            i.getSequenceNumber(), i.getCardinality()));
+        }
+        for (ForeignKeyDefinition fk : foreignKeyDefinitions) {
+            renamed.addForeignKeyDefinition(fk);
+        }
+        return renamed;
+    }
+
+    /**
+     * Returns a copy of the definition with only the foreign keys that
+     * reference one of the given tables, so that the keys dropped along with
+     * those tables can be added again.
+     *
+     * @param tableNames the names of the referenced tables
+     * @return the definition with the foreign keys that reference the tables
+     */
+    public TableDefinition withForeignKeysReferencing(Collection<String> tableNames) {
+        final TableDefinition copy = new TableDefinition(name, surrogateKeyPattern);
+
+        for (ColumnDefinition cd : columnDefinitions) {
+            copy.addColumnDefinition(cd);
+        }
+        for (IndexDefinition i : indexDefinitions) {
+            copy.addIndexDefinition(i);
+        }
+        for (ForeignKeyDefinition fk : foreignKeyDefinitions) {
+            if (tableNames.contains(fk.getReferencedTableName())) {
+                copy.addForeignKeyDefinition(fk);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the definition with the index cardinalities of
+     * another database of the same structure. The PostgreSQL statements
+     * already generated from the definition are kept, as they do not depend
+     * on cardinalities.
+     *
+     * @param cardinalities the cardinality of each index column, keyed by {@link #cardinalityKey}
+     * @return the definition with the given cardinalities, 0 for index columns that have none
+     */
+    public TableDefinition withCardinalities(Map<String, Long> cardinalities) {
+        final TableDefinition copy = new TableDefinition(name, surrogateKeyPattern);
+
+        for (ColumnDefinition cd : columnDefinitions) {
+            copy.addColumnDefinition(cd);
+        }
+        for (IndexDefinition i : indexDefinitions) {
+            final Long cardinality = cardinalities.get(cardinalityKey(i.getName(), i.getSequenceNumber()));
+
+            copy.addIndexDefinition(new IndexDefinition(i.getName(), i.getColumnName(), !i.getIsUnique(),
+                    i.getSequenceNumber(), cardinality == null ? 0 : cardinality));
+        }
+        for (ForeignKeyDefinition fk : foreignKeyDefinitions) {
+            copy.addForeignKeyDefinition(fk);
+        }
+        copy.postgresCreateSyntax = postgresCreateSyntax;
+        copy.postgresIndexSyntaxByName = postgresIndexSyntaxByName;
+        return copy;
+    }
+
+    /**
+     * @param indexName the name of an index
+     * @param sequenceNumber the position of a column in the index
+     * @return the key of the index column in a map of cardinalities
+     */
+    public static String cardinalityKey(String indexName, Integer sequenceNumber) {
+        return indexName + "." + sequenceNumber;
+    }
+
     /**
      * Adds a column definition to the set of columns in the current table object.
      * 
      * @param columnDefinition the definition to be added to the table definition
      */
-    protected void addColumnDefinition(ColumnDefinition columnDefinition) {
+    public void addColumnDefinition(ColumnDefinition columnDefinition) {
         this.columnDefinitions.add(columnDefinition);
+        this.postgresCreateSyntax = null;
+    }
+
+    /**
+     * Adds a foreign key column to the set of foreign keys in the current table object.
+     *
+     * @param foreignKeyDefinition the definition to be added to the table definition
+     */
+    public void addForeignKeyDefinition(ForeignKeyDefinition foreignKeyDefinition) {
+        if (foreignKeyDefinition.getColumnName() != null) {
+            this.foreignKeyDefinitions.add(foreignKeyDefinition);
+        }
     }
 
     /**
@@ -175,9 +447,10 @@ public class TableDefinition {
      *
      * @param indexDefinition the definition to be added to the table definition
      */
-    protected void addIndexDefinition(IndexDefinition indexDefinition) {
+    public void addIndexDefinition(IndexDefinition indexDefinition) {
         if (indexDefinition.getColumnName() != null) {
           this.indexDefinitions.add(indexDefinition);
+          this.postgresIndexSyntaxByName = null;
         }
     }
 
@@ -195,6 +468,7 @@ public class TableDefinition {
         private final int decimalDigits;
         private final String defaultValue;
         private final boolean isAutoIncrement;
+        private final boolean isUnsigned;
 
         /**
          * @param name the name of the column
@@ -207,6 +481,21 @@ public class TableDefinition {
          */
         public ColumnDefinition(String name, int type, String nullable, int columnSize,
                 int decimalDigits, String defaultValue, String autoincrement) {
+            this(name, type, nullable, columnSize, decimalDigits, defaultValue, autoincrement, false);
+        }
+
+        /**
+         * @param name the name of the column
+         * @param type the type of the column
+         * @param nullable the nullability of the column
+         * @param columnSize the size of the column, if any
+         * @param decimalDigits the number of decimal digits held by the column, if any
+         * @param defaultValue the default value of the column, if any
+         * @param autoincrement the autoincrement flag for the column
+         * @param unsigned flag indicating whether the column is a mysql UNSIGNED integer
+         */
+        public ColumnDefinition(String name, int type, String nullable, int columnSize,
+                int decimalDigits, String defaultValue, String autoincrement, boolean unsigned) {
             this.name = name;
             this.type = type;
             this.isNullable = convertFlagToBoolean(nullable);
@@ -214,6 +503,7 @@ public class TableDefinition {
             this.decimalDigits = decimalDigits;
             this.defaultValue = defaultValue;
             this.isAutoIncrement = convertFlagToBoolean(autoincrement);
+            this.isUnsigned = unsigned;
         }
 
         /**
@@ -270,6 +560,13 @@ public class TableDefinition {
             return isAutoIncrement;
         }
 
+        /**
+         * @return true if the column is an UNSIGNED integer, false if it is not
+         */
+        public boolean getIsUnsigned() {
+            return isUnsigned;
+        }
+
         /**
          * Converts a 'YES' or 'NO' flag into a boolean value.
          * 
@@ -297,6 +594,7 @@ public class TableDefinition {
         private final String columnName;
         private final boolean isUnique;
         private final Integer sequenceNumber;
+        private final long cardinality;
 
         /**
          * @param name the name of the index
@@ -306,10 +604,23 @@ public class TableDefinition {
          */
         public IndexDefinition(String name, String columnName, boolean nonUnique,
                 Integer sequenceNumber) {
+            this(name, columnName, nonUnique, sequenceNumber, 0);
+        }
+
+        /**
+         * @param name the name of the index
+         * @param columnName the name of the column that the index covers
+         * @param isUnique flag indication if the index is unique
+         * @param sequenceNumber column number of multi-column indexes
+         * @param cardinality the estimated number of distinct values of the index up to this column, or 0 if unknown
+         */
+        public IndexDefinition(String name, String columnName, boolean nonUnique,
+                Integer sequenceNumber, long cardinality) {
             this.name = name;
             this.columnName = columnName;
             this.isUnique = !nonUnique;
             this.sequenceNumber = sequenceNumber;
+            this.cardinality = cardinality;
         }
 
         /**
@@ -339,6 +650,126 @@ public class TableDefinition {
         public Integer getSequenceNumber() {
           return sequenceNumber;
         }
+
+        /**
+         * @return the estimated number of distinct values of the index up to this column, or 0 if unknown
+         */
+        public long getCardinality() {
+            return cardinality;
+        }
     }
-}
 
+    /**
+     * Container class to represent one column of a foreign key.
+     *
+     * @author modcloth
+     *
+     */
+    public static class ForeignKeyDefinition {
+        private final String name;
+        private final String columnName;
+        private final String referencedTableName;
+        private final String referencedColumnName;
+        private final int sequenceNumber;
+        private final int updateRule;
+        private final int deleteRule;
+
+        /**
+         * @param name the name of the foreign key constraint
+         * @param columnName the name of the referencing column
+         * @param referencedTableName the name of the referenced table
+         * @param referencedColumnName the name of the referenced column
+         * @param sequenceNumber the position of the column in the key
+         * @param updateRule what happens to the row when the referenced key is updated, as a DatabaseMetaData
+         * importedKey constant
+         * @param deleteRule what happens to the row when the referenced row is deleted, as a DatabaseMetaData
+         * importedKey constant
+         */
+        public ForeignKeyDefinition(String name, String columnName, String referencedTableName,
+                String referencedColumnName, int sequenceNumber, int updateRule, int deleteRule) {
+            this.name = name;
+            this.columnName = columnName;
+            this.referencedTableName = referencedTableName;
+            this.referencedColumnName = referencedColumnName;
+            this.sequenceNumber = sequenceNumber;
+            this.updateRule = updateRule;
+            this.deleteRule = deleteRule;
+        }
+
+        /**
+         * @return the name of the foreign key constraint
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the name of the referencing column
+         */
+        public String getColumnName() {
+            return columnName;
+        }
+
+        /**
+         * @return the name of the referenced table
+         */
+        public String getReferencedTableName() {
+            return referencedTableName;
+        }
+
+        /**
+         * @return the name of the referenced column
+         */
+        public String getReferencedColumnName() {
+            return referencedColumnName;
+        }
+
+        /**
+         * @return the position of the column in the key
+         */
+        public int getSequenceNumber() {
+            return sequenceNumber;
+        }
+
+        /**
+         * @return the update rule, as a DatabaseMetaData importedKey constant
+         */
+        public int getUpdateRule() {
+            return updateRule;
+        }
+
+        /**
+         * @return the delete rule, as a DatabaseMetaData importedKey constant
+         */
+        public int getDeleteRule() {
+            return deleteRule;
+        }
+
+        /**
+         * @return the SQL actions of the update and delete rules, or an empty string for the default of NO ACTION
+         */
+        public String toPostgresActions() {
+            return toPostgresAction(" ON UPDATE ", updateRule) + toPostgresAction(" ON DELETE ", deleteRule);
+        }
+
+        /**
+         * @param clause the clause the action belongs to
+         * @param rule the rule, as a DatabaseMetaData importedKey constant
+         * @return the clause and its action, or an empty string for NO ACTION
+         */
+        private static String toPostgresAction(String clause, int rule) {
+            switch (rule) {
+                case DatabaseMetaData.importedKeyCascade:
+                    return clause + "CASCADE";
+                case DatabaseMetaData.importedKeyRestrict:
+                    return clause + "RESTRICT";
+                case DatabaseMetaData.importedKeySetNull:
+                    return clause + "SET NULL";
+                case DatabaseMetaData.importedKeySetDefault:
+                    return clause + "SET DEFAULT";
+                default:
+                    return "";
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.modcloth.database;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import com.modcloth.database.managers.ConnectionManager;
+import com.modcloth.metrics.MetricsRegistry;
+import com.modcloth.metrics.ProgressReporter;
+
+/**
+ * Exports the rows of several MySQL tables to CSV files in a directory,
+ * then writes the manifest describing them. A table with an integer key is
+ * split into ranges of a given number of keys, each exported by a
+ * {@link CsvExporter}, and the ranges of all tables are exported several
+ * at once.
+ *
+ * The ranges are handed out one at a time as threads become free, so only
+ * the key range of each table is held in memory however many ranges it
+ * spans. The files of a table split into several ranges are numbered in
+ * key order.
+ *
+ * @author modcloth
+ *
+ */
+public class TableExporter {
+    private final ConnectionManager sourceConnectionManager;
+    private final File directory;
+    private final long maxFileBytes;
+    private final long chunkRows;
+    private final int threads;
+    private ProgressReporter progressReporter;
+    private boolean cleanValues;
+
+    /**
+     * @param sourceConnectionManager manages connections to the MySQL server the rows are read from
+     * @param directory the directory the files and manifest are written into, created if it does not exist
+     * @param maxFileBytes the size after which a new file is started
+     * @param chunkRows the number of keys in each range, or 0 to export each table as one range
+     * @param threads the number of ranges exported at once
+     */
+    public TableExporter(ConnectionManager sourceConnectionManager, File directory, long maxFileBytes,
+            long chunkRows, int threads) {
+        this.sourceConnectionManager = sourceConnectionManager;
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.chunkRows = chunkRows;
+        this.threads = threads;
+    }
+
+    /**
+     * @param progressReporter the reporter advanced by the rows of every chunk written
+     */
+    public void setProgressReporter(ProgressReporter progressReporter) {
+        this.progressReporter = progressReporter;
+    }
+
+    /**
+     * @param cleanValues flag indicating whether the values PostgreSQL rejects are cleaned, as they are for a copy
+     */
+    public void setCleanValues(boolean cleanValues) {
+        this.cleanValues = cleanValues;
+    }
+
+    /**
+     * Exports the rows of the given tables and writes the manifest. A range
+     * whose export throws marks its table failed in the manifest, which is
+     * still written, and the exception is thrown once the other ranges
+     * have been exported.
+     *
+     * @param tableDefinitions the source table definitions
+     * @param tableNames list of the table names whose rows will be exported
+     * @param sourceDbName the name of the database the rows are read from
+     * @return the names of the tables that failed to be exported
+     */
+    public Set<String> export(List<TableDefinition> tableDefinitions, List<String> tableNames,
+            final String sourceDbName) {
+        final Set<String> failedTables = Collections.synchronizedSet(new HashSet<String>());
+        final ExportManifest manifest = new ExportManifest("csv");
+        final List<KeyRanges> tables = new LinkedList<KeyRanges>();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.err.println("Error: Unable to create export directory " + directory);
+            return new HashSet<String>(tableNames);
+        }
+
+        for (TableDefinition t : tableDefinitions) {
+            if (tableNames.contains(t.getName())) {
+                System.out.println("Exporting rows of " + t.getName());
+                manifest.table(t);
+                tables.add(new KeyRanges(t, chunkRows > 0 ?
+                        new KeyRangeReader(sourceConnectionManager).read(t, sourceDbName) : null, chunkRows));
+            }
+        }
+
+        final RangeQueue queue = new RangeQueue(tables);
+        final TaskPool pool = new TaskPool(threads);
+
+        for (int i = 0; i < threads; i++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    Range range;
+
+                    while ((range = queue.next()) != null) {
+                        final TableDefinition t = range.getTableDefinition();
+                        final CsvExporter exporter = new CsvExporter(sourceConnectionManager, directory,
+                                maxFileBytes);
+                        final long start = System.nanoTime();
+                        boolean exported = false;
+
+                        exporter.setProgressReporter(progressReporter);
+                        exporter.setCleanValues(cleanValues);
+                        try {
+                            exported = exporter.export(t, sourceDbName, range.getStartKey(), range.getEndKey(),
+                                    range.getFileName());
+                        } catch (RuntimeException re) {
+                            failedTables.add(t.getName());
+                            manifest.table(t).failed();
+                            throw re;
+                        }
+                        if (exported) {
+                            manifest.table(t).addFiles(exporter.getFiles());
+                        } else {
+                            failedTables.add(t.getName());
+                            manifest.table(t).failed();
+                        }
+                        exported(t, range.getFileName(), exporter, exported);
+                        MetricsRegistry.getDefault().timer("data.export").updateSince(start);
+                    }
+                }
+            });
+        }
+        try {
+            pool.await();
+        } finally {
+            manifest.write(directory);
+        }
+        return new HashSet<String>(failedTables);
+    }
+
+    /**
+     * Called from the exporting thread once a range has been exported or
+     * has failed, to record its counts. Prints the error of a failed range.
+     *
+     * @param tableDefinition the definition of the table
+     * @param fileName the name the range's files start with
+     * @param exporter the exporter of the range
+     * @param exported true if the range was exported, false if it failed
+     */
+    protected void exported(TableDefinition tableDefinition, String fileName, CsvExporter exporter,
+            boolean exported) {
+        if (!exported) {
+            System.err.println("Error: " + fileName + ": " + exporter.getLastError());
+        }
+    }
+
+    /**
+     * The key ranges of one table, produced in order from its smallest and
+     * largest key without being held in memory.
+     */
+    protected static class KeyRanges {
+        private final TableDefinition tableDefinition;
+        private final long[] range;
+        private final long chunkRows;
+        private final boolean single;
+        private Long nextStart;
+        private int count;
+
+        /**
+         * @param tableDefinition the definition of the table
+         * @param range the smallest and largest key, or null or empty to export the table as one range
+         * @param chunkRows the number of keys in each range
+         */
+        public KeyRanges(TableDefinition tableDefinition, long[] range, long chunkRows) {
+            this.tableDefinition = tableDefinition;
+            this.range = range == null || range.length == 0 ? null : range;
+            this.chunkRows = chunkRows;
+            this.single = this.range == null || (range[1] - range[0] >= 0 && range[1] - range[0] < chunkRows);
+            this.nextStart = this.range == null ? null : range[0];
+        }
+
+        /**
+         * @return the next range of the table, or null once every range has been produced
+         */
+        public Range next() {
+            if (range == null) {
+                return count++ == 0 ? new Range(tableDefinition, null, null, tableDefinition.getName()) : null;
+            } else if (nextStart == null) {
+                return null;
+            }
+
+            final long start = nextStart;
+            final boolean last = start > Long.MAX_VALUE - chunkRows || start + chunkRows > range[1];
+            final long end = last ? range[1] + 1 : start + chunkRows;
+
+            nextStart = last ? null : start + chunkRows;
+            count++;
+            return new Range(tableDefinition, start, end, single ? tableDefinition.getName() :
+                    tableDefinition.getName() + "." + String.format("%05d", count));
+        }
+    }
+
+    /**
+     * Hands out the ranges of every table in turn, a table's ranges in key
+     * order, to the threads exporting them.
+     */
+    protected static class RangeQueue {
+        private final List<KeyRanges> tables;
+
+        /**
+         * @param tables the key ranges of each table
+         */
+        public RangeQueue(List<KeyRanges> tables) {
+            this.tables = new LinkedList<KeyRanges>(tables);
+        }
+
+        /**
+         * @return the next range to export, or null once every range has been handed out
+         */
+        public synchronized Range next() {
+            while (!tables.isEmpty()) {
+                final Range range = tables.get(0).next();
+
+                if (range != null) {
+                    return range;
+                }
+                tables.remove(0);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A range of a table's key exported to its own files.
+     */
+    protected static class Range {
+        private final TableDefinition tableDefinition;
+        private final Long startKey;
+        private final Long endKey;
+        private final String fileName;
+
+        /**
+         * @param tableDefinition the definition of the table
+         * @param startKey the smallest key of the range, or null for the whole table
+         * @param endKey the key after the largest key of the range, or null for the whole table
+         * @param fileName the name the range's files start with
+         */
+        public Range(TableDefinition tableDefinition, Long startKey, Long endKey, String fileName) {
+            this.tableDefinition = tableDefinition;
+            this.startKey = startKey;
+            this.endKey = endKey;
+            this.fileName = fileName;
+        }
+
+        /**
+         * @return the definition of the table
+         */
+        public TableDefinition getTableDefinition() {
+            return tableDefinition;
+        }
+
+        /**
+         * @return the smallest key of the range, or null for the whole table
+         */
+        public Long getStartKey() {
+            return startKey;
+        }
+
+        /**
+         * @return the key after the largest key of the range, or null for the whole table
+         */
+        public Long getEndKey() {
+            return endKey;
+        }
+
+        /**
+         * @return the name the range's files start with
+         */
+        public String getFileName() {
+            return fileName;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.modcloth.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.modcloth.database.managers.ConnectionManager;
+
+/**
+ * Reads the size estimates MySQL keeps for every table of a database from
+ * information_schema.TABLES, using a single query.
+ *
+ * The figures are estimates maintained by the storage engine; they are meant
+ * for planning and progress reporting, not for exact counts.
+ *
+ * @author modcloth
+ *
+ */
+public class TableStatisticsReader {
+    private static final String STATISTICS_QUERY =
+        "SELECT TABLE_NAME, TABLE_ROWS, DATA_LENGTH, INDEX_LENGTH " +
+        "FROM information_schema.TABLES WHERE TABLE_SCHEMA = ?";
+
+    private final ConnectionManager connectionManager;
+    private final String dbName;
+
+    /**
+     * @param connectionManager the manager from which the connection to the database will be retrieved
+     * @param dbName the name of the database whose table statistics will be read
+     */
+    public TableStatisticsReader(ConnectionManager connectionManager, String dbName) {
+        this.connectionManager = connectionManager;
+        this.dbName = dbName;
+    }
+
+    /**
+     * Reads the statistics of every table in the object's database.
+     *
+     * @return the statistics of each table, by table name
+     */
+    public Map<String, TableStatistics> read() {
+        final Map<String, TableStatistics> statistics = new HashMap<String, TableStatistics>();
+        final Connection connection = connectionManager.openConnection();
+
+        if (connection != null) {
+            PreparedStatement statement = null;
+            ResultSet resultSet = null;
+
+            try {
+                statement = connection.prepareStatement(STATISTICS_QUERY);
+                statement.setString(1, dbName);
+                resultSet = statement.executeQuery();
+
+                while (resultSet.next()) {
+                    statistics.put(resultSet.getString("TABLE_NAME"), new TableStatistics(
+                            resultSet.getLong("TABLE_ROWS"),
+                            resultSet.getLong("DATA_LENGTH"),
+                            resultSet.getLong("INDEX_LENGTH")));
+                }
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+            } finally {
+                try {
+                    if (resultSet != null && !resultSet.isClosed()) {
+                        resultSet.close();
+                    }
+                    if (statement != null && !statement.isClosed()) {
+                        statement.close();
+                    }
+                } catch (SQLException sqe) {
+                    System.err.println("Error: " + sqe.getMessage());
+                }
+                connectionManager.closeConnection(connection);
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Container class for the size estimates of a single table.
+     *
+     * @author modcloth
+     *
+     */
+    public static class TableStatistics {
+        private final long rows;
+        private final long dataLength;
+        private final long indexLength;
+
+        /**
+         * @param rows the estimated number of rows in the table
+         * @param dataLength the size of the table's data, in bytes
+         * @param indexLength the size of the table's indexes, in bytes
+         */
+        public TableStatistics(long rows, long dataLength, long indexLength) {
+            this.rows = rows;
+            this.dataLength = dataLength;
+            this.indexLength = indexLength;
+        }
+
+        /**
+         * @return the estimated number of rows in the table
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * @return the size of the table's data, in bytes
+         */
+        public long getDataLength() {
+            return dataLength;
+        }
+
+        /**
+         * @return the size of the table's indexes, in bytes
+         */
+        public long getIndexLength() {
+            return indexLength;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.modcloth.database;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+/**
+ * Replaces a live PostgreSQL table with a staging copy that was created,
+ * loaded and indexed under another name, so that readers of the table see
+ * the old rows until the new ones are complete.
+ *
+ * The swap renames the live table and the indexes and sequences named
+ * after it out of the way, then renames the staging table and its own into
+ * their places, all in one transaction. The transaction waits at most
+ * {@link #LOCK_TIMEOUT_MILLIS} for its locks, so that it never queues the
+ * table's readers behind a long-running query; a swap that times out is
+ * retried after a growing pause. The old table is dropped after the swap
+ * has been committed.
+ *
+ * The old table is never dropped with CASCADE. The foreign keys that the
+ * run adds again are dropped in the swap's transaction, and a swap is
+ * refused if anything else, such as a view or another table's foreign key,
+ * still depends on the live table, as it would be left on the old table.
+ *
+ * @author modcloth
+ *
+ */
+public class TableSwapper {
+    public static final String STAGING_SUFFIX = "__staging";
+    public static final String OLD_SUFFIX = "__old";
+    public static final long LOCK_TIMEOUT_MILLIS = 5000;
+
+    private static final String LOCK_NOT_AVAILABLE = "55P03";
+    private static final int SWAP_ATTEMPTS = 5;
+    private static final long FIRST_RETRY_MILLIS = 1000;
+
+    private final ConnectionManager connectionManager;
+    private final List<TableDefinition> foreignKeyDefinitions;
+    private String lastError;
+
+    /**
+     * @param connectionManager the manager from which the connections to the PostgreSQL database will be retrieved
+     * @param foreignKeyDefinitions the definitions of the tables whose foreign keys are added again after the
+     * swaps, or an empty list if foreign keys are not added
+     */
+    public TableSwapper(ConnectionManager connectionManager, List<TableDefinition> foreignKeyDefinitions) {
+        this.connectionManager = connectionManager;
+        this.foreignKeyDefinitions = foreignKeyDefinitions;
+    }
+
+    /**
+     * Swaps the staging copy of a table into its place and drops the old
+     * table. A table left over from an earlier swap whose drop failed is
+     * dropped first. A swap that could not get its locks in time is tried
+     * up to five times in all, pausing twice as long before each retry.
+     *
+     * @param tableDefinition the definition of the live table
+     * @return true if the staging table took the place of the live table, false if a statement failed
+     */
+    public boolean swap(TableDefinition tableDefinition) {
+        final StatementExecutor executor = new StatementExecutor(connectionManager);
+        final String name = tableDefinition.getName();
+        final String oldName = name + OLD_SUFFIX;
+        final List<String> statements = new LinkedList<String>();
+
+        lastError = null;
+        if (!executor.executeStatement(toDropStatement(oldName), name)) {
+            lastError = oldName + " is left from an earlier swap and could not be dropped: " +
+                    executor.getLastError();
+            return false;
+        }
+
+        statements.add("SET LOCAL lock_timeout = " + LOCK_TIMEOUT_MILLIS);
+        statements.addAll(toDropForeignKeyStatements(name, foreignKeyDefinitions));
+        statements.add(toCheckDependentsStatement(name));
+        statements.addAll(toSwapStatements(tableDefinition));
+
+        long pauseMillis = FIRST_RETRY_MILLIS;
+
+        for (int attempt = 1; !executor.executeStatements(statements, name); attempt++) {
+            if (!LOCK_NOT_AVAILABLE.equals(executor.getLastSqlState()) || attempt == SWAP_ATTEMPTS) {
+                lastError = executor.getLastError();
+                return false;
+            }
+            System.out.println("Swapping in " + name + " timed out waiting for its locks, retrying in " +
+                    pauseMillis + " ms");
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                lastError = executor.getLastError();
+                return false;
+            }
+            pauseMillis *= 2;
+        }
+        if (!executor.executeStatement(toDropStatement(oldName), name)) {
+            System.err.println("Error: " + oldName + " was not dropped: " + executor.getLastError());
+        }
+        return true;
+    }
+
+    /**
+     * @return the error of the last swap, or null if it succeeded
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @param tableDefinition the definition of the live table
+     * @return the definition of the table's staging copy
+     */
+    public static TableDefinition toStagingDefinition(TableDefinition tableDefinition) {
+        return tableDefinition.withName(tableDefinition.getName() + STAGING_SUFFIX, STAGING_SUFFIX);
+    }
+
+    /**
+     * @param tableName the name of the live table
+     * @return the name of the table's staging copy
+     */
+    public static String toStagingName(String tableName) {
+        return tableName + STAGING_SUFFIX;
+    }
+
+    /**
+     * Returns the statements that swap the staging copy of a table into its
+     * place. The live table may not exist yet, so its objects are renamed
+     * only if they exist. PostgreSQL names the primary key index and the
+     * sequences of serial columns after their table, so they are renamed
+     * along with the table's own indexes.
+     *
+     * @param tableDefinition the definition of the live table
+     * @return the statements that rename the live table out of the way and the staging table into its place
+     */
+    protected static List<String> toSwapStatements(TableDefinition tableDefinition) {
+        final List<String> statements = new LinkedList<String>();
+        final String name = tableDefinition.getName();
+
+        statements.add("ALTER TABLE IF EXISTS " + name + " RENAME TO " + name + OLD_SUFFIX);
+        statements.addAll(toRenameStatements(tableDefinition, name, "", name + OLD_SUFFIX, OLD_SUFFIX, true));
+        statements.add("ALTER TABLE " + name + STAGING_SUFFIX + " RENAME TO " + name);
+        statements.addAll(toRenameStatements(tableDefinition, name + STAGING_SUFFIX, STAGING_SUFFIX, name, "",
+                false));
+        return statements;
+    }
+
+    /**
+     * @param tableDefinition the definition of the live table
+     * @param fromTable the name of the table whose objects are renamed
+     * @param fromSuffix the suffix of the index names of the renamed table
+     * @param toTable the name of the table the objects are renamed after
+     * @param toSuffix the suffix of the new index names
+     * @param ifExists flag indicating whether the objects may not exist
+     * @return the statements that rename the primary key, indexes and sequences of a table
+     */
+    private static List<String> toRenameStatements(TableDefinition tableDefinition, String fromTable,
+            String fromSuffix, String toTable, String toSuffix, boolean ifExists) {
+        final List<String> statements = new LinkedList<String>();
+        final String exists = ifExists ? "IF EXISTS " : "";
+
+        for (String i : new TreeSet<String>(tableDefinition.getIndexesByName().keySet())) {
+            if (i.equals("PRIMARY")) {
+                statements.add("ALTER INDEX " + exists + fromTable + "_pkey RENAME TO " + toTable + "_pkey");
+            } else {
+                statements.add("ALTER INDEX " + exists + i + fromSuffix + " RENAME TO " + i + toSuffix);
+            }
+        }
+        for (ColumnDefinition cd : tableDefinition.getColumnDefinitions()) {
+            if (cd.getIsAutoIncrement()) {
+                statements.add("ALTER SEQUENCE " + exists + fromTable + "_" + cd.getName() + "_seq RENAME TO " +
+                        toTable + "_" + cd.getName() + "_seq");
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Returns the statements that drop the foreign keys referencing a table
+     * which are added again once the tables have been swapped. Each key is
+     * dropped if it exists, as its table may have been swapped already.
+     *
+     * @param tableName the name of the live table
+     * @param foreignKeyDefinitions the definitions of the tables whose foreign keys are added again
+     * @return the statements that drop the foreign keys of other tables that reference the table
+     */
+    protected static List<String> toDropForeignKeyStatements(String tableName,
+            List<TableDefinition> foreignKeyDefinitions) {
+        final List<String> statements = new LinkedList<String>();
+
+        for (TableDefinition t : foreignKeyDefinitions) {
+            if (t.getName().equals(tableName)) {
+                continue;
+            }
+            for (Map.Entry<String, List<ForeignKeyDefinition>> fk : t.getForeignKeysByName().entrySet()) {
+                if (fk.getValue().get(0).getReferencedTableName().equals(tableName)) {
+                    statements.add("ALTER TABLE IF EXISTS " + t.getName() + " DROP CONSTRAINT IF EXISTS " +
+                            fk.getKey());
+                }
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Returns the statement that fails, naming them, if any objects other
+     * than the table's own constraints, indexes and sequences depend on the
+     * live table. Such objects would follow the table when it is renamed out
+     * of the way, and would be dropped with it or keep it from being dropped.
+     *
+     * @param tableName the name of the live table
+     * @return the statement that checks pg_depend for the table's dependents
+     */
+    protected static String toCheckDependentsStatement(String tableName) {
+        return "DO $$DECLARE dependents text; BEGIN " +
+                "SELECT string_agg(DISTINCT pg_describe_object(d.classid, d.objid, d.objsubid), ', ') " +
+                "INTO dependents FROM pg_depend d " +
+                "WHERE d.refclassid = 'pg_class'::regclass AND d.refobjid = to_regclass('" + tableName + "') " +
+                "AND d.deptype = 'n' AND NOT (d.classid = 'pg_constraint'::regclass AND d.objid IN " +
+                "(SELECT oid FROM pg_constraint WHERE conrelid = to_regclass('" + tableName + "'))); " +
+                "IF dependents IS NOT NULL THEN RAISE EXCEPTION '" + tableName + " has dependent objects, " +
+                "which would be left on " + tableName + OLD_SUFFIX + ": %', dependents; END IF; END$$";
+    }
+
+    /**
+     * @param tableName the name of the table
+     * @return the statement that drops the table if it exists
+     */
+    private static String toDropStatement(String tableName) {
+        return "DROP TABLE IF EXISTS " + tableName;
+    }
+}
@@ -0,0 +1,90 @@
+package com.modcloth.database;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks on a fixed number of threads, for the phases that work on
+ * several tables, ranges or statements at once. Tasks are queued as they
+ * are submitted and run in that order; {@link #await} waits until all of
+ * them have finished, then throws the first exception a task threw, so a
+ * failed task is never mistaken for a finished one.
+ *
+ * @author modcloth
+ *
+ */
+public class TaskPool {
+    private final ExecutorService executor;
+    private Throwable failure;
+
+    /**
+     * @param threads the number of tasks run at once
+     */
+    public TaskPool(int threads) {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /**
+     * @param task the task to run once a thread is free
+     */
+    public void execute(final Runnable task) {
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException re) {
+                    failed(re);
+                    throw re;
+                } catch (Error e) {
+                    failed(e);
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops accepting tasks and waits for the submitted ones to finish. If
+     * the waiting thread is interrupted, the tasks are interrupted too and
+     * the thread's interrupt flag is restored.
+     *
+     * @throws RuntimeException the first runtime exception thrown by a task, once every task has finished
+     * @throws Error the first error thrown by a task, once every task has finished
+     */
+    public void await() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                continue;
+            }
+        } catch (InterruptedException ie) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        final Throwable thrown = getFailure();
+
+        if (thrown instanceof Error) {
+            throw (Error) thrown;
+        } else if (thrown != null) {
+            throw (RuntimeException) thrown;
+        }
+    }
+
+    /**
+     * @return the first exception or error thrown by a task, or null if none has failed
+     */
+    public synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * @param thrown the exception or error a task threw
+     */
+    private synchronized void failed(Throwable thrown) {
+        if (failure == null) {
+            failure = thrown;
+        }
+    }
+}
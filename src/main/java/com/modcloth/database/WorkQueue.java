@@ -0,0 +1,490 @@
+package com.modcloth.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+import com.modcloth.database.managers.ConnectionManager;
+
+/**
+ * Queue of the work items of a distributed run, kept in a control table of
+ * the destination PostgreSQL database so that workers on several hosts can
+ * share one run.
+ *
+ * Workers claim items with 'SELECT ... FOR UPDATE SKIP LOCKED', so each item
+ * is handed to one worker without workers waiting on each other's locks. A
+ * claimed item is leased for a number of seconds and the lease is renewed by
+ * the worker's heartbeat; the item of a worker that stops renewing it is
+ * handed out again once the lease expires, up to a maximum number of
+ * attempts. An item is only claimed once every item of a lower phase of the
+ * same table is done, and is skipped if one of them failed.
+ *
+ * @author modcloth
+ *
+ */
+public class WorkQueue {
+    protected static final String CONTROL_TABLE = "schema_convert_work";
+
+    private static final String CREATE_STATEMENT =
+        "CREATE TABLE IF NOT EXISTS " + CONTROL_TABLE + " (" +
+        "run_id VARCHAR(64) NOT NULL, item VARCHAR(512) NOT NULL, phase INTEGER NOT NULL, " +
+        "kind VARCHAR(16) NOT NULL, table_name VARCHAR(255) NOT NULL, target VARCHAR(255), " +
+        "range_start BIGINT, range_end BIGINT, status VARCHAR(16) NOT NULL DEFAULT 'pending', " +
+        "worker VARCHAR(255), lease_until TIMESTAMP, attempts INTEGER NOT NULL DEFAULT 0, error TEXT, " +
+        "PRIMARY KEY (run_id, item))";
+
+    private static final String COUNT_QUERY =
+        "SELECT COUNT(*) FROM " + CONTROL_TABLE + " WHERE run_id = ?";
+
+    private static final String LOCK_QUERY = "SELECT pg_advisory_xact_lock(?)";
+
+    private static final String INSERT_STATEMENT =
+        "INSERT INTO " + CONTROL_TABLE + " (run_id, item, phase, kind, table_name, target, range_start, range_end) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String CLAIM_STATEMENT =
+        "UPDATE " + CONTROL_TABLE + " SET status = 'running', worker = ?, " +
+        "lease_until = now() + ? * interval '1 second', attempts = attempts + 1 " +
+        "WHERE (run_id, item) IN (SELECT c.run_id, c.item FROM " + CONTROL_TABLE + " c " +
+        "WHERE c.run_id = ? AND (c.status = 'pending' OR (c.status = 'running' AND c.lease_until < now())) " +
+        "AND c.attempts < ? AND NOT EXISTS (SELECT 1 FROM " + CONTROL_TABLE + " d " +
+        "WHERE d.run_id = c.run_id AND d.table_name = c.table_name AND d.phase < c.phase AND d.status <> 'done') " +
+        "ORDER BY c.phase, c.item LIMIT 1 FOR UPDATE SKIP LOCKED) " +
+        "RETURNING item, phase, kind, table_name, target, range_start, range_end, attempts";
+
+    private static final String HEARTBEAT_STATEMENT =
+        "UPDATE " + CONTROL_TABLE + " SET lease_until = now() + ? * interval '1 second' " +
+        "WHERE run_id = ? AND worker = ? AND status = 'running'";
+
+    private static final String COMPLETE_STATEMENT =
+        "UPDATE " + CONTROL_TABLE + " SET status = 'done', lease_until = NULL, error = NULL " +
+        "WHERE run_id = ? AND item = ? AND worker = ? AND status = 'running'";
+
+    private static final String FAIL_STATEMENT =
+        "UPDATE " + CONTROL_TABLE + " SET status = CASE WHEN attempts < ? THEN 'pending' ELSE 'failed' END, " +
+        "lease_until = NULL, error = ? WHERE run_id = ? AND item = ? AND worker = ? AND status = 'running'";
+
+    private static final String EXPIRE_STATEMENT =
+        "UPDATE " + CONTROL_TABLE + " SET status = 'failed', error = 'Lease expired after ' || attempts || ' attempts' " +
+        "WHERE run_id = ? AND status = 'running' AND lease_until < now() AND attempts >= ?";
+
+    private static final String SKIP_STATEMENT =
+        "UPDATE " + CONTROL_TABLE + " w SET status = 'skipped' WHERE w.run_id = ? AND w.status = 'pending' " +
+        "AND EXISTS (SELECT 1 FROM " + CONTROL_TABLE + " d WHERE d.run_id = w.run_id " +
+        "AND d.table_name = w.table_name AND d.phase < w.phase AND d.status IN ('failed', 'skipped'))";
+
+    private static final String UNFINISHED_QUERY =
+        "SELECT COUNT(*) FROM " + CONTROL_TABLE + " WHERE run_id = ? AND status IN ('pending', 'running')";
+
+    private final ConnectionManager connectionManager;
+    private final String runId;
+    private final int maxAttempts;
+
+    /**
+     * @param connectionManager manages connections to the PostgreSQL database holding the control table
+     * @param runId the identifier shared by the workers of the run
+     * @param maxAttempts the number of times an item is handed out before it fails for good
+     */
+    public WorkQueue(ConnectionManager connectionManager, String runId, int maxAttempts) {
+        this.connectionManager = connectionManager;
+        this.runId = runId;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Creates the control table if it does not exist.
+     *
+     * @return true if the table exists, false if it could not be created
+     */
+    public boolean createControlTable() {
+        return new StatementExecutor(connectionManager).executeStatement(CREATE_STATEMENT, CONTROL_TABLE);
+    }
+
+    /**
+     * @return true if the items of the run have been added, false if they have not or could not be counted
+     */
+    public boolean isSeeded() {
+        return count(COUNT_QUERY) > 0;
+    }
+
+    /**
+     * Adds the items of the run unless another worker already has. Workers
+     * seeding at once are serialized by an advisory lock on the run.
+     *
+     * @param items the items of the run
+     * @return true if the run has its items, false if they could not be added
+     */
+    public boolean seed(List<WorkItem> items) {
+        final Connection connection = connectionManager.openConnection();
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        boolean seeded = false;
+
+        if (connection != null) {
+            try {
+                connection.setAutoCommit(false);
+                statement = connection.prepareStatement(LOCK_QUERY);
+                statement.setLong(1, runId.hashCode());
+                statement.executeQuery().close();
+                statement.close();
+
+                statement = connection.prepareStatement(COUNT_QUERY);
+                statement.setString(1, runId);
+                resultSet = statement.executeQuery();
+                resultSet.next();
+
+                if (resultSet.getLong(1) == 0) {
+                    resultSet.close();
+                    statement.close();
+                    statement = connection.prepareStatement(INSERT_STATEMENT);
+                    for (WorkItem i : items) {
+                        statement.setString(1, runId);
+                        statement.setString(2, i.getName());
+                        statement.setInt(3, i.getPhase());
+                        statement.setString(4, i.getKind());
+                        statement.setString(5, i.getTableName());
+                        statement.setString(6, i.getTarget());
+                        setLong(statement, 7, i.getRangeStart());
+                        setLong(statement, 8, i.getRangeEnd());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                connection.commit();
+                seeded = true;
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+                rollback(connection);
+            } finally {
+                close(resultSet, statement);
+                connectionManager.closeConnection(connection);
+            }
+        }
+        return seeded;
+    }
+
+    /**
+     * Hands the next available item to a worker, leasing it for the given
+     * number of seconds. Items of crashed workers whose last attempt has
+     * expired are failed first, and the items depending on failed items are
+     * skipped.
+     *
+     * @param worker the name of the claiming worker
+     * @param leaseSeconds the number of seconds the item is leased for
+     * @return the claimed item, or null if no item is available
+     */
+    public WorkItem claim(String worker, int leaseSeconds) {
+        final Connection connection = connectionManager.openConnection();
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        WorkItem item = null;
+
+        if (connection != null) {
+            try {
+                statement = connection.prepareStatement(EXPIRE_STATEMENT);
+                statement.setString(1, runId);
+                statement.setInt(2, maxAttempts);
+                statement.executeUpdate();
+                statement.close();
+
+                statement = connection.prepareStatement(SKIP_STATEMENT);
+                statement.setString(1, runId);
+                while (statement.executeUpdate() > 0) {
+                    continue;
+                }
+                statement.close();
+
+                statement = connection.prepareStatement(CLAIM_STATEMENT);
+                statement.setString(1, worker);
+                statement.setInt(2, leaseSeconds);
+                statement.setString(3, runId);
+                statement.setInt(4, maxAttempts);
+                resultSet = statement.executeQuery();
+
+                if (resultSet.next()) {
+                    item = new WorkItem(resultSet.getString("item"), resultSet.getInt("phase"),
+                            resultSet.getString("kind"), resultSet.getString("table_name"),
+                            resultSet.getString("target"), getLong(resultSet, "range_start"),
+                            getLong(resultSet, "range_end"), resultSet.getInt("attempts"));
+                }
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+            } finally {
+                close(resultSet, statement);
+                connectionManager.closeConnection(connection);
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Renews the leases of every item a worker is running.
+     *
+     * @param worker the name of the worker
+     * @param leaseSeconds the number of seconds from now the leases run for
+     * @return true if the leases were renewed, false if it failed
+     */
+    public boolean heartbeat(String worker, int leaseSeconds) {
+        return update(HEARTBEAT_STATEMENT, leaseSeconds, runId, worker) >= 0;
+    }
+
+    /**
+     * Records an item as done. An item whose lease was lost to another
+     * worker is left alone.
+     *
+     * @param item the completed item
+     * @param worker the name of the worker that ran it
+     * @return true if the item was recorded as done, false if the worker no longer held it
+     */
+    public boolean complete(WorkItem item, String worker) {
+        return update(COMPLETE_STATEMENT, runId, item.getName(), worker) > 0;
+    }
+
+    /**
+     * Records a failed attempt at an item, which is handed out again unless
+     * it has reached the maximum number of attempts.
+     *
+     * @param item the failed item
+     * @param worker the name of the worker that ran it
+     * @param error the error of the attempt
+     * @return true if the failure was recorded, false if the worker no longer held the item
+     */
+    public boolean fail(WorkItem item, String worker, String error) {
+        return update(FAIL_STATEMENT, maxAttempts, error, runId, item.getName(), worker) > 0;
+    }
+
+    /**
+     * @return the number of items pending or running, or -1 if they could not be counted
+     */
+    public long countUnfinished() {
+        return count(UNFINISHED_QUERY);
+    }
+
+    /**
+     * @param query a counting query with the run identifier as its only parameter
+     * @return the count, or -1 if the query failed
+     */
+    private long count(String query) {
+        final Connection connection = connectionManager.openConnection();
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        long count = -1;
+
+        if (connection != null) {
+            try {
+                statement = connection.prepareStatement(query);
+                statement.setString(1, runId);
+                resultSet = statement.executeQuery();
+                if (resultSet.next()) {
+                    count = resultSet.getLong(1);
+                }
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+            } finally {
+                close(resultSet, statement);
+                connectionManager.closeConnection(connection);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param sql an update statement
+     * @param parameters the parameters of the statement, strings or integers
+     * @return the number of rows updated, or -1 if the statement failed
+     */
+    private int update(String sql, Object... parameters) {
+        final Connection connection = connectionManager.openConnection();
+        PreparedStatement statement = null;
+        int updated = -1;
+
+        if (connection != null) {
+            try {
+                statement = connection.prepareStatement(sql);
+                for (int i = 0; i < parameters.length; i++) {
+                    if (parameters[i] instanceof Integer) {
+                        statement.setInt(i + 1, (Integer) parameters[i]);
+                    } else {
+                        statement.setString(i + 1, (String) parameters[i]);
+                    }
+                }
+                updated = statement.executeUpdate();
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+            } finally {
+                close(null, statement);
+                connectionManager.closeConnection(connection);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * @param statement the statement whose parameter is set
+     * @param index the index of the parameter
+     * @param value the value of the parameter, or null
+     * @throws SQLException if the parameter could not be set
+     */
+    private static void setLong(PreparedStatement statement, int index, Long value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.BIGINT);
+        } else {
+            statement.setLong(index, value);
+        }
+    }
+
+    /**
+     * @param resultSet the result set positioned on a row
+     * @param column the name of the column
+     * @return the value of the column, or null
+     * @throws SQLException if the value could not be read
+     */
+    private static Long getLong(ResultSet resultSet, String column) throws SQLException {
+        final long value = resultSet.getLong(column);
+
+        return resultSet.wasNull() ? null : value;
+    }
+
+    /**
+     * @param connection the connection whose transaction is rolled back
+     */
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException sqe) {
+            System.err.println("Error: " + sqe.getMessage());
+        }
+    }
+
+    /**
+     * @param resultSet the result set to close, or null
+     * @param statement the statement to close, or null
+     */
+    private static void close(ResultSet resultSet, Statement statement) {
+        try {
+            if (resultSet != null && !resultSet.isClosed()) {
+                resultSet.close();
+            }
+            if (statement != null && !statement.isClosed()) {
+                statement.close();
+            }
+        } catch (SQLException sqe) {
+            System.err.println("Error: " + sqe.getMessage());
+        }
+    }
+
+    /**
+     * Container class for a single unit of work of a distributed run: a
+     * table, a range of a table's rows from one source database, an index
+     * or a table's sequences.
+     *
+     * @author modcloth
+     *
+     */
+    public static class WorkItem {
+        private final String name;
+        private final int phase;
+        private final String kind;
+        private final String tableName;
+        private final String target;
+        private final Long rangeStart;
+        private final Long rangeEnd;
+        private final int attempt;
+
+        /**
+         * @param name the name of the item, unique within the run
+         * @param phase the phase of the item; items wait for the lower phases of their table
+         * @param kind the kind of work
+         * @param tableName the name of the table the item belongs to
+         * @param target the source database or index the item applies to, if any
+         * @param rangeStart the first key of the item's rows, if any
+         * @param rangeEnd the key after the last of the item's rows, if any
+         */
+        public WorkItem(String name, int phase, String kind, String tableName, String target, Long rangeStart,
+                Long rangeEnd) {
+            this(name, phase, kind, tableName, target, rangeStart, rangeEnd, 0);
+        }
+
+        /**
+         * @param name the name of the item, unique within the run
+         * @param phase the phase of the item; items wait for the lower phases of their table
+         * @param kind the kind of work
+         * @param tableName the name of the table the item belongs to
+         * @param target the source database or index the item applies to, if any
+         * @param rangeStart the first key of the item's rows, if any
+         * @param rangeEnd the key after the last of the item's rows, if any
+         * @param attempt the number of times the item has been handed out, including this one
+         */
+        public WorkItem(String name, int phase, String kind, String tableName, String target, Long rangeStart,
+                Long rangeEnd, int attempt) {
+            this.name = name;
+            this.phase = phase;
+            this.kind = kind;
+            this.tableName = tableName;
+            this.target = target;
+            this.rangeStart = rangeStart;
+            this.rangeEnd = rangeEnd;
+            this.attempt = attempt;
+        }
+
+        /**
+         * @return the name of the item, unique within the run
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the phase of the item
+         */
+        public int getPhase() {
+            return phase;
+        }
+
+        /**
+         * @return the kind of work
+         */
+        public String getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the name of the table the item belongs to
+         */
+        public String getTableName() {
+            return tableName;
+        }
+
+        /**
+         * @return the source database or index the item applies to, or null
+         */
+        public String getTarget() {
+            return target;
+        }
+
+        /**
+         * @return the first key of the item's rows, or null
+         */
+        public Long getRangeStart() {
+            return rangeStart;
+        }
+
+        /**
+         * @return the key after the last of the item's rows, or null
+         */
+        public Long getRangeEnd() {
+            return rangeEnd;
+        }
+
+        /**
+         * @return the number of times the item has been handed out, including this one
+         */
+        public int getAttempt() {
+            return attempt;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.modcloth.database.managers;
+
+import java.sql.Connection;
+
+/**
+ * Connection manager that lets operations run on the connections of
+ * another manager only as fast as the database keeps up with them.
+ *
+ * Every metadata read and copy batch takes a permit of an adaptive limiter
+ * while it runs and feeds it its latency, whether it succeeds or fails.
+ * Callers wait for a permit while the database is slow, so a fixed pool of
+ * threads can share a database without overloading it. Connections are
+ * handed out without a permit, so a caller holding several connections of
+ * one manager never waits on itself. Schema statements, such as index
+ * builds, are neither limited nor sampled: their running time says little
+ * about the load of the database, and their concurrency has options of its
+ * own.
+ *
+ * @author modcloth
+ *
+ */
+public class AdaptiveConnectionManager extends ConnectionManager {
+    private final ConnectionManager connectionManager;
+    private final AdaptiveLimiter limiter;
+
+    /**
+     * @param connectionManager the manager of the connections handed out
+     * @param limiter the limiter deciding how many operations run at a time
+     */
+    public AdaptiveConnectionManager(ConnectionManager connectionManager, AdaptiveLimiter limiter) {
+        super(connectionManager.getDriverName(), connectionManager.getConnectionUrl());
+        this.connectionManager = connectionManager;
+        this.limiter = limiter;
+    }
+
+    /**
+     * @return a connection of the wrapped manager, or null if it could not be opened
+     */
+    @Override
+    public Connection openConnection() {
+        return connectionManager.openConnection();
+    }
+
+    /**
+     * @param connection the connection to close
+     */
+    @Override
+    public void closeConnection(Connection connection) {
+        connectionManager.closeConnection(connection);
+    }
+
+    /**
+     * Waits for a permit.
+     */
+    @Override
+    public void startOperation() {
+        limiter.acquireUninterruptibly();
+    }
+
+    /**
+     * Returns the operation's permit and records its latency.
+     *
+     * @param nanos the time the operation took, in nanoseconds
+     */
+    @Override
+    public void endOperation(long nanos) {
+        limiter.release();
+        limiter.record(nanos);
+    }
+
+    /**
+     * @return the limiter deciding how many operations run at a time
+     */
+    public AdaptiveLimiter getLimiter() {
+        return limiter;
+    }
+}
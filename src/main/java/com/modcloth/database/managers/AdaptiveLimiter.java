@@ -0,0 +1,143 @@
+package com.modcloth.database.managers;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.modcloth.metrics.MetricsRegistry;
+
+/**
+ * Limits the number of operations running at once against one database,
+ * adapting the limit to the latency of the operations.
+ *
+ * The limit grows additively and shrinks multiplicatively: after every
+ * window of latency samples, the median sample is compared with the
+ * target. While the median holds at or under the target and callers are
+ * using every permit, the limit rises by one. When the median exceeds the
+ * target, the limit is halved, so an overloaded database is relieved
+ * within one window. The median keeps a single long statement, such as an
+ * index build, from being taken for an overloaded database. Every change
+ * of the limit is printed with the latency that caused it.
+ *
+ * @author modcloth
+ *
+ */
+public class AdaptiveLimiter {
+    protected static final int WINDOW = 10;
+
+    private final String name;
+    private final long targetNanos;
+    private final int maxLimit;
+    private final long[] samples = new long[WINDOW];
+    private int sampleCount;
+    private int limit;
+    private int inUse;
+    private boolean saturated;
+
+    /**
+     * @param name the name of the limited database, used when logging changes of the limit
+     * @param targetMillis the latency of a single operation to hold, in milliseconds
+     * @param maxLimit the largest number of operations allowed at once
+     */
+    public AdaptiveLimiter(String name, long targetMillis, int maxLimit) {
+        this.name = name;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = 1;
+    }
+
+    /**
+     * Waits until fewer operations are running than the limit allows.
+     *
+     * @throws InterruptedException if the wait was interrupted
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inUse >= limit) {
+            saturated = true;
+            wait();
+        }
+        inUse++;
+        if (inUse >= limit) {
+            saturated = true;
+        }
+    }
+
+    /**
+     * Waits until fewer operations are running than the limit allows, even
+     * if the waiting thread is interrupted. The thread's interrupt flag is
+     * restored once the permit is taken, so the caller still sees the
+     * interrupt after its operation.
+     */
+    public void acquireUninterruptibly() {
+        boolean interrupted = false;
+
+        while (true) {
+            try {
+                acquire();
+                break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ends an operation, letting a waiting caller start.
+     */
+    public synchronized void release() {
+        inUse--;
+        notifyAll();
+    }
+
+    /**
+     * Records the latency of an operation, adjusting the limit once a
+     * window of samples is complete.
+     *
+     * @param nanos the time the operation took, in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        samples[sampleCount++] = nanos;
+        if (sampleCount < WINDOW) {
+            return;
+        }
+
+        final long[] sorted = Arrays.copyOf(samples, WINDOW);
+
+        Arrays.sort(sorted);
+
+        final long median = sorted[WINDOW / 2];
+        final int previous = limit;
+
+        if (median > targetNanos) {
+            limit = Math.max(1, limit / 2);
+            MetricsRegistry.getDefault().counter("concurrency." + name + ".decrease").increment();
+        } else if (saturated && limit < maxLimit) {
+            limit++;
+            MetricsRegistry.getDefault().counter("concurrency." + name + ".increase").increment();
+        }
+        if (limit != previous) {
+            System.out.println("Concurrency of " + name + ": " + previous + " -> " + limit + " (median latency " +
+                    TimeUnit.NANOSECONDS.toMillis(median) + " ms, target " +
+                    TimeUnit.NANOSECONDS.toMillis(targetNanos) + " ms)");
+            notifyAll();
+        }
+        sampleCount = 0;
+        saturated = inUse >= limit;
+    }
+
+    /**
+     * @return the number of operations currently allowed at once
+     */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of operations currently running
+     */
+    public synchronized int getInUse() {
+        return inUse;
+    }
+}
@@ -4,6 +4,9 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 
+import com.modcloth.metrics.Events;
+import com.modcloth.metrics.MetricsRegistry;
+
 public class ConnectionManager {
     private final String driverName;
     private final String connectionUrl;
@@ -17,19 +20,40 @@ public class ConnectionManager {
         this.connectionUrl = connectionUrl;
     }
 
+    /**
+     * @return the qualified class name of the database driver
+     */
+    public String getDriverName() {
+        return driverName;
+    }
+
+    /**
+     * @return the connection URL of the database
+     */
+    public String getConnectionUrl() {
+        return connectionUrl;
+    }
+
     /**
      * Opens a connection to a MySQL database.
      * 
      * @return the opened connection
      */
     public Connection openConnection() {
+        final MetricsRegistry metrics = MetricsRegistry.getDefault();
+        final Events.Span span = Events.connection("open", connectionUrl);
+        final long start = System.nanoTime();
         Connection connection = null;
 
         try {
             Class.forName(driverName);
             connection = DriverManager.getConnection(connectionUrl);
+            metrics.timer("connection.acquire").updateSince(start);
+            span.end(true);
         } catch (Exception e) {
+            span.end(false);
             System.err.println("Error: " + e.getMessage());
+            metrics.counter("connection.failed").increment();
             try {
                 if (connection != null) {
                     connection.close();
@@ -49,11 +73,80 @@ public class ConnectionManager {
      */
     public void closeConnection(Connection connection) {
         if (connection != null) {
+            final Events.Span span = Events.connection("close", connectionUrl);
+
             try {
                 connection.close();
+                span.end(true);
             } catch (SQLException sqe) {
                 System.err.println("Error: " + sqe.getMessage());
+                span.end(false);
+            }
+        }
+    }
+
+    /**
+     * Waits until another operation may run on the manager's connections,
+     * for managers that limit how many run at once. The default is not to
+     * wait. Each call is followed by one call to {@link #endOperation},
+     * which {@link Operation} takes care of.
+     */
+    public void startOperation() {
+    }
+
+    /**
+     * Ends an operation started with {@link #startOperation}, recording how
+     * long it took for managers that adapt to the database's latency. The
+     * default is to ignore it.
+     *
+     * @param nanos the time the operation took, in nanoseconds
+     */
+    public void endOperation(long nanos) {
+    }
+
+    /**
+     * One statement, metadata read or copy batch run on a manager's
+     * connection, started when it is created and ended at most once.
+     */
+    public static class Operation {
+        private final ConnectionManager connectionManager;
+        private final long start;
+        private boolean ended;
+
+        /**
+         * Waits until the manager lets the operation run, then starts it.
+         *
+         * @param connectionManager the manager of the connection the operation runs on
+         */
+        public Operation(ConnectionManager connectionManager) {
+            this.connectionManager = connectionManager;
+            connectionManager.startOperation();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Ends the operation, recording the time since it started. Does
+         * nothing if it has already ended.
+         *
+         * @return the time since the operation started, in nanoseconds
+         */
+        public long end() {
+            return end(System.nanoTime() - start);
+        }
+
+        /**
+         * Ends the operation, recording the given latency rather than the
+         * time since it started. Does nothing if it has already ended.
+         *
+         * @param nanos the time the database spent on the operation, in nanoseconds
+         * @return the given time
+         */
+        public long end(long nanos) {
+            if (!ended) {
+                ended = true;
+                connectionManager.endOperation(nanos);
             }
+            return nanos;
         }
     }
 }
@@ -0,0 +1,186 @@
+package com.modcloth.database.managers;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import com.modcloth.metrics.MetricsRegistry;
+
+/**
+ * Connection manager that keeps closed connections open for reuse, so that
+ * a long-running process pays for opening a connection to a database only
+ * once per concurrent user.
+ *
+ * At most maxSize connections are handed out at a time; further callers
+ * wait until one is returned. Connections are returned in auto-commit mode.
+ * An idle connection is validated before it is handed out again, and one
+ * found closed or broken, such as one the server has timed out, is closed
+ * and discarded. Drivers that do not implement {@link Connection#isValid}
+ * are validated with a query instead.
+ *
+ * @author modcloth
+ *
+ */
+public class PooledConnectionManager extends ConnectionManager {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<Connection>();
+    private final Semaphore permits;
+
+    /**
+     * @param driverName the qualified class name of the appropriate database driver
+     * @param connectionUrl the connection URL for the database server
+     * @param maxSize the largest number of connections handed out at a time
+     */
+    public PooledConnectionManager(String driverName, String connectionUrl, int maxSize) {
+        this(driverName, connectionUrl, new Semaphore(maxSize, true));
+    }
+
+    /**
+     * Creates a pool whose limit is shared with other pools, such as the
+     * pools of every database on one server.
+     *
+     * @param driverName the qualified class name of the appropriate database driver
+     * @param connectionUrl the connection URL for the database server
+     * @param permits the permits limiting the number of connections handed out at a time
+     */
+    public PooledConnectionManager(String driverName, String connectionUrl, Semaphore permits) {
+        super(driverName, connectionUrl);
+        this.permits = permits;
+    }
+
+    /**
+     * Returns a valid idle connection, opening a new one if there is none.
+     *
+     * @return the connection, or null if it could not be opened or the wait was interrupted
+     */
+    @Override
+    public Connection openConnection() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        Connection connection;
+
+        while ((connection = idle.poll()) != null) {
+            if (isValid(connection)) {
+                MetricsRegistry.getDefault().counter("connection.pool.reused").increment();
+                return connection;
+            }
+            MetricsRegistry.getDefault().counter("connection.pool.discarded").increment();
+            discard(connection);
+        }
+        connection = super.openConnection();
+        if (connection == null) {
+            permits.release();
+        }
+        return connection;
+    }
+
+    /**
+     * Returns the connection to the pool.
+     *
+     * @param connection the connection to return
+     */
+    @Override
+    public void closeConnection(Connection connection) {
+        if (connection != null) {
+            try {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                if (!connection.isClosed()) {
+                    idle.offer(connection);
+                }
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+                super.closeConnection(connection);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Closes every idle connection.
+     */
+    public void close() {
+        Connection connection;
+
+        while ((connection = idle.poll()) != null) {
+            super.closeConnection(connection);
+        }
+    }
+
+    /**
+     * @return the number of open connections waiting to be reused
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @param connection an idle connection
+     * @return true if the connection is open and the server answers on it
+     */
+    private static boolean isValid(Connection connection) {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLFeatureNotSupportedException fnse) {
+            return ping(connection);
+        } catch (SQLException sqe) {
+            return "0A000".equals(sqe.getSQLState()) && ping(connection);
+        }
+    }
+
+    /**
+     * Closes a connection that failed validation. It is usually already
+     * broken, so an error closing it is expected and not reported.
+     *
+     * @param connection the connection to close
+     */
+    private static void discard(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException sqe) {
+            // the connection is discarded either way
+        }
+    }
+
+    /**
+     * Validates a connection whose driver does not implement isValid. The
+     * query has no timeout, as such drivers do not support one either.
+     *
+     * @param connection an open idle connection
+     * @return true if a trivial query succeeded on the connection
+     */
+    private static boolean ping(Connection connection) {
+        Statement statement = null;
+
+        try {
+            statement = connection.createStatement();
+            statement.execute("SELECT 1");
+            return true;
+        } catch (SQLException sqe) {
+            return false;
+        } finally {
+            try {
+                if (statement != null && !statement.isClosed()) {
+                    statement.close();
+                }
+            } catch (SQLException sqe) {
+                System.err.println("Error: " + sqe.getMessage());
+            }
+        }
+    }
+}
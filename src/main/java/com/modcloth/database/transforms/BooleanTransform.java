@@ -0,0 +1,58 @@
+package com.modcloth.database.transforms;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+
+/**
+ * Converts TINYINT values to the BOOLEAN their column is created as. MySQL
+ * uses TINYINT(1) for booleans but does not keep it from holding other
+ * numbers; those become true and are counted, since the number is lost.
+ *
+ * @author modcloth
+ *
+ */
+public class BooleanTransform extends ValueTransform {
+
+    /**
+     * @param column the definition of the source column, a TINYINT
+     */
+    public BooleanTransform(ColumnDefinition column) {
+        super(column);
+    }
+
+    @Override
+    public void append(StringBuilder row, ResultSet resultSet, int index) throws SQLException {
+        final int value = resultSet.getInt(index);
+
+        if (resultSet.wasNull()) {
+            row.append(NULL);
+        } else {
+            row.append(toBoolean(value) ? 't' : 'f');
+        }
+    }
+
+    @Override
+    public Object read(ResultSet resultSet, int index) throws SQLException {
+        final int value = resultSet.getInt(index);
+
+        return resultSet.wasNull() ? null : toBoolean(value);
+    }
+
+    @Override
+    public String getRule() {
+        return "tinyint_boolean";
+    }
+
+    /**
+     * @param value a TINYINT value
+     * @return false if the value is 0, else true
+     */
+    private boolean toBoolean(int value) {
+        if (value != 0 && value != 1) {
+            changed();
+        }
+        return value != 0;
+    }
+}
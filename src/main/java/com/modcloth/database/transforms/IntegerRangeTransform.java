@@ -0,0 +1,103 @@
+package com.modcloth.database.transforms;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+
+/**
+ * Clamps integers to the range of the PostgreSQL column they are written
+ * to. A column known to be UNSIGNED is created with a larger type that
+ * holds all of its values and is copied as it is; this transform guards
+ * the columns whose signedness is unknown, such as those of snapshots
+ * written before it was recorded, which get the signed type of the same
+ * size. Values above its range are replaced with the largest value the
+ * column holds and counted.
+ *
+ * @author modcloth
+ *
+ */
+public class IntegerRangeTransform extends ValueTransform {
+    protected static final String BIGINT_MAX = String.valueOf(Long.MAX_VALUE);
+
+    private final long max;
+
+    /**
+     * @param column the definition of the source column, a SMALLINT, INTEGER or BIGINT
+     */
+    public IntegerRangeTransform(ColumnDefinition column) {
+        super(column);
+        this.max = column.getType() == Types.SMALLINT ? Short.MAX_VALUE :
+                column.getType() == Types.INTEGER ? Integer.MAX_VALUE : Long.MAX_VALUE;
+    }
+
+    @Override
+    public void append(StringBuilder row, ResultSet resultSet, int index) throws SQLException {
+        if (max == Long.MAX_VALUE) {
+            final String value = resultSet.getString(index);
+
+            if (value == null) {
+                row.append(NULL);
+            } else if (isBigintOverflow(value)) {
+                changed();
+                row.append(BIGINT_MAX);
+            } else {
+                row.append(value);
+            }
+        } else {
+            final long value = resultSet.getLong(index);
+
+            if (resultSet.wasNull()) {
+                row.append(NULL);
+            } else {
+                row.append(clamp(value));
+            }
+        }
+    }
+
+    @Override
+    public Object read(ResultSet resultSet, int index) throws SQLException {
+        if (max == Long.MAX_VALUE) {
+            final String value = resultSet.getString(index);
+
+            if (value == null) {
+                return null;
+            } else if (isBigintOverflow(value)) {
+                changed();
+                return Long.MAX_VALUE;
+            }
+            return Long.valueOf(value);
+        }
+
+        final long value = resultSet.getLong(index);
+
+        return resultSet.wasNull() ? null : clamp(value);
+    }
+
+    @Override
+    public String getRule() {
+        return "integer_range";
+    }
+
+    /**
+     * @param value an integer
+     * @return the value, or the largest value of the column if it is larger
+     */
+    private long clamp(long value) {
+        if (value > max) {
+            changed();
+            return max;
+        }
+        return value;
+    }
+
+    /**
+     * @param value a BIGINT value in text format
+     * @return true if the value is larger than the largest BIGINT
+     */
+    protected static boolean isBigintOverflow(String value) {
+        return value.charAt(0) != '-' && (value.length() > BIGINT_MAX.length() ||
+                (value.length() == BIGINT_MAX.length() && value.compareTo(BIGINT_MAX) > 0));
+    }
+}
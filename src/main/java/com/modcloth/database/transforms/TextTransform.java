@@ -0,0 +1,126 @@
+package com.modcloth.database.transforms;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+
+/**
+ * Removes the characters MySQL stores in text and PostgreSQL rejects: NUL
+ * characters, which PostgreSQL does not allow in text, and halves of
+ * surrogate pairs left by text cut in the middle of a character, which
+ * cannot be encoded as UTF-8 and are replaced with U+FFFD. Text stored in
+ * the wrong character set, such as UTF-8 bytes in a latin1 column, has
+ * already been decoded by the driver and is copied as it was read.
+ *
+ * @author modcloth
+ *
+ */
+public class TextTransform extends ValueTransform {
+    protected static final char REPLACEMENT = '\uFFFD';
+
+    /**
+     * @param column the definition of the source column, a character type
+     */
+    public TextTransform(ColumnDefinition column) {
+        super(column);
+    }
+
+    @Override
+    public void append(StringBuilder row, ResultSet resultSet, int index) throws SQLException {
+        final String value = resultSet.getString(index);
+
+        if (value == null) {
+            row.append(NULL);
+        } else if (clean(row, value, true)) {
+            changed();
+        }
+    }
+
+    @Override
+    public Object read(ResultSet resultSet, int index) throws SQLException {
+        final String value = resultSet.getString(index);
+
+        if (value == null || isClean(value)) {
+            return value;
+        }
+
+        final StringBuilder cleaned = new StringBuilder(value.length());
+
+        clean(cleaned, value, false);
+        changed();
+        return cleaned.toString();
+    }
+
+    @Override
+    public String getRule() {
+        return "text";
+    }
+
+    /**
+     * @param value a text value
+     * @return true if it holds no character that is removed or replaced
+     */
+    protected static boolean isClean(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+
+            if (c == '\0' || (isSurrogate(c) && !isPair(value, i))) {
+                return false;
+            }
+            if (Character.isHighSurrogate(c)) {
+                i++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends text without its NUL characters and with lone surrogates
+     * replaced.
+     *
+     * @param row the buffer appended to
+     * @param value a text value
+     * @param escape flag indicating whether the characters that have a meaning in COPY text format are escaped
+     * @return true if a character was removed or replaced
+     */
+    private static boolean clean(StringBuilder row, String value, boolean escape) {
+        boolean changed = false;
+
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+
+            if (c == '\0') {
+                changed = true;
+            } else if (isSurrogate(c) && !isPair(value, i)) {
+                row.append(REPLACEMENT);
+                changed = true;
+            } else if (Character.isHighSurrogate(c)) {
+                row.append(c).append(value.charAt(++i));
+            } else if (escape) {
+                appendEscaped(row, c);
+            } else {
+                row.append(c);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param c a character
+     * @return true if it is either half of a surrogate pair
+     */
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    /**
+     * @param value a text value
+     * @param i the index of a surrogate
+     * @return true if the surrogate is the high half of a pair
+     */
+    private static boolean isPair(String value, int i) {
+        return Character.isHighSurrogate(value.charAt(i)) && i + 1 < value.length() &&
+                Character.isLowSurrogate(value.charAt(i + 1));
+    }
+}
@@ -0,0 +1,233 @@
+package com.modcloth.database.transforms;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+
+/**
+ * Reads the values of one source column and writes them in the form the
+ * PostgreSQL column accepts. This class copies values as they are; its
+ * subclasses also clean values that MySQL accepts and PostgreSQL rejects,
+ * counting how many they changed.
+ *
+ * A transform is chosen once per column, see {@link #forColumn}, and then
+ * called for every row. Values are appended straight into the buffer of
+ * the rows being written, escaped in the same pass, and numbers and
+ * booleans are read as primitives, so no string is built per value beyond
+ * the one the driver returns for text.
+ *
+ * @author modcloth
+ *
+ */
+public class ValueTransform {
+    public static final String NULL = "\\N";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    protected final ColumnDefinition column;
+    private long changed;
+
+    /**
+     * @param column the definition of the source column
+     */
+    public ValueTransform(ColumnDefinition column) {
+        this.column = column;
+    }
+
+    /**
+     * Chooses the transform of a column.
+     *
+     * @param column the definition of the source column
+     * @param clean flag indicating whether the values are cleaned or copied as they are
+     * @return the transform of the column
+     */
+    public static ValueTransform forColumn(ColumnDefinition column, boolean clean) {
+        final int type = column.getType();
+
+        if (!clean) {
+            return new ValueTransform(column);
+        } else if (type == Types.DATE || type == Types.TIMESTAMP) {
+            return new ZeroDateTransform(column);
+        } else if (type == Types.CHAR || type == Types.VARCHAR || type == Types.LONGVARCHAR ||
+                type == Types.CLOB) {
+            return new TextTransform(column);
+        } else if (type == Types.TINYINT) {
+            return new BooleanTransform(column);
+        } else if ((type == Types.SMALLINT || type == Types.INTEGER || type == Types.BIGINT) &&
+                !column.getIsUnsigned()) {
+            return new IntegerRangeTransform(column);
+        }
+        return new ValueTransform(column);
+    }
+
+    /**
+     * Chooses the transforms of the columns of a table.
+     *
+     * @param columns the definitions of the source columns
+     * @param clean flag indicating whether the values are cleaned or copied as they are
+     * @return the transform of each column, in order
+     */
+    public static ValueTransform[] forColumns(List<ColumnDefinition> columns, boolean clean) {
+        final ValueTransform[] transforms = new ValueTransform[columns.size()];
+        int i = 0;
+
+        for (ColumnDefinition column : columns) {
+            transforms[i++] = forColumn(column, clean);
+        }
+        return transforms;
+    }
+
+    /**
+     * Appends a value of the current row in COPY text format. Binary values
+     * are written in the hex format of BYTEA, and the types converted to
+     * BOOLEAN as true or false.
+     *
+     * @param row the rows being built
+     * @param resultSet the result set positioned on the row
+     * @param index the index of the column in the result set
+     * @throws SQLException if the value could not be read
+     */
+    public void append(StringBuilder row, ResultSet resultSet, int index) throws SQLException {
+        final int type = column.getType();
+
+        if (isBinary(type)) {
+            final byte[] value = resultSet.getBytes(index);
+
+            if (value == null) {
+                row.append(NULL);
+            } else {
+                row.append("\\\\x");
+                for (byte b : value) {
+                    row.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+                }
+            }
+        } else if (isBoolean(type)) {
+            final boolean value = resultSet.getBoolean(index);
+
+            row.append(resultSet.wasNull() ? NULL : value ? "t" : "f");
+        } else {
+            final String value = resultSet.getString(index);
+
+            if (value == null) {
+                row.append(NULL);
+            } else {
+                appendEscaped(row, value);
+            }
+        }
+    }
+
+    /**
+     * Reads a value of the current row as the Java type it is bound with in
+     * an INSERT statement.
+     *
+     * @param resultSet the result set positioned on the row
+     * @param index the index of the column in the result set
+     * @return the value, or null if it is NULL
+     * @throws SQLException if the value could not be read
+     */
+    public Object read(ResultSet resultSet, int index) throws SQLException {
+        final int type = column.getType();
+        final Object value;
+
+        if (isBinary(type)) {
+            value = resultSet.getBytes(index);
+        } else if (isBoolean(type)) {
+            value = resultSet.getBoolean(index);
+        } else if (type == Types.BIGINT && column.getIsUnsigned()) {
+            value = resultSet.getBigDecimal(index);
+        } else if (type == Types.SMALLINT || type == Types.INTEGER || type == Types.BIGINT) {
+            value = resultSet.getLong(index);
+        } else if (type == Types.REAL || type == Types.FLOAT || type == Types.DOUBLE) {
+            value = resultSet.getDouble(index);
+        } else if (type == Types.DECIMAL || type == Types.NUMERIC) {
+            value = resultSet.getBigDecimal(index);
+        } else {
+            value = resultSet.getString(index);
+        }
+        return resultSet.wasNull() ? null : value;
+    }
+
+    /**
+     * @return the name of the rule the transform applies, or null if it copies values as they are
+     */
+    public String getRule() {
+        return null;
+    }
+
+    /**
+     * @return the definition of the source column
+     */
+    public ColumnDefinition getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the number of values the transform changed
+     */
+    public long getChanged() {
+        return changed;
+    }
+
+    /**
+     * Counts a value the transform changed.
+     */
+    protected void changed() {
+        changed++;
+    }
+
+    /**
+     * Appends text, escaping the characters that have a meaning in COPY
+     * text format.
+     *
+     * @param row the rows being built
+     * @param value a text value
+     * @return the rows being built
+     */
+    public static StringBuilder appendEscaped(StringBuilder row, CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            appendEscaped(row, value.charAt(i));
+        }
+        return row;
+    }
+
+    /**
+     * Appends a character of text, escaping it if it has a meaning in COPY
+     * text format.
+     *
+     * @param row the rows being built
+     * @param c the character
+     */
+    protected static void appendEscaped(StringBuilder row, char c) {
+        if (c == '\\') {
+            row.append("\\\\");
+        } else if (c == '\t') {
+            row.append("\\t");
+        } else if (c == '\n') {
+            row.append("\\n");
+        } else if (c == '\r') {
+            row.append("\\r");
+        } else {
+            row.append(c);
+        }
+    }
+
+    /**
+     * @param type the SQL type of the source column
+     * @return true if the column is converted to BYTEA
+     */
+    private static boolean isBinary(int type) {
+        return type == Types.BINARY || type == Types.VARBINARY || type == Types.LONGVARBINARY ||
+                type == Types.BLOB;
+    }
+
+    /**
+     * @param type the SQL type of the source column
+     * @return true if the column is converted to BOOLEAN
+     */
+    private static boolean isBoolean(int type) {
+        return type == Types.BIT || type == Types.BOOLEAN || type == Types.TINYINT;
+    }
+}
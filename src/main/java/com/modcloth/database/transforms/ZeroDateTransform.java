@@ -0,0 +1,68 @@
+package com.modcloth.database.transforms;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+
+/**
+ * Replaces the zero dates MySQL accepts, such as <code>0000-00-00</code>
+ * or <code>2014-00-00 00:00:00</code>, which PostgreSQL rejects. A date
+ * whose year, month or day is zero becomes NULL, or
+ * <code>-infinity</code> in a NOT NULL column, which sorts before every
+ * other date as the zero date did.
+ *
+ * @author modcloth
+ *
+ */
+public class ZeroDateTransform extends ValueTransform {
+    protected static final String INFINITY = "-infinity";
+
+    /**
+     * @param column the definition of the source column, a DATE or TIMESTAMP
+     */
+    public ZeroDateTransform(ColumnDefinition column) {
+        super(column);
+    }
+
+    @Override
+    public void append(StringBuilder row, ResultSet resultSet, int index) throws SQLException {
+        final String value = resultSet.getString(index);
+
+        if (value == null) {
+            row.append(NULL);
+        } else if (isZeroDate(value)) {
+            changed();
+            row.append(column.getIsNullable() ? NULL : INFINITY);
+        } else {
+            row.append(value);
+        }
+    }
+
+    @Override
+    public Object read(ResultSet resultSet, int index) throws SQLException {
+        final String value = resultSet.getString(index);
+
+        if (value != null && isZeroDate(value)) {
+            changed();
+            return column.getIsNullable() ? null : INFINITY;
+        }
+        return value;
+    }
+
+    @Override
+    public String getRule() {
+        return "zero_date";
+    }
+
+    /**
+     * @param value a date or timestamp in MySQL's text format
+     * @return true if its year, month or day is zero
+     */
+    protected static boolean isZeroDate(CharSequence value) {
+        return value.length() >= 10 && ((value.charAt(0) == '0' && value.charAt(1) == '0' &&
+                value.charAt(2) == '0' && value.charAt(3) == '0') ||
+                (value.charAt(5) == '0' && value.charAt(6) == '0') ||
+                (value.charAt(8) == '0' && value.charAt(9) == '0'));
+    }
+}
@@ -0,0 +1,160 @@
+package com.modcloth.metrics;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Records timed events for statements, metadata reads, connections and data
+ * copy chunks, so they can be lined up against GC and CPU activity.
+ *
+ * Recording is off by default and every event is then a shared no-op. When
+ * a flight recording is started, events are sent to Java Flight Recorder.
+ * The recorder is loaded by name so that the program still runs on JVMs
+ * without the jdk.jfr API.
+ *
+ * @author modcloth
+ *
+ */
+public class Events {
+    private static final String FLIGHT_RECORDER = "com.modcloth.metrics.jfr.FlightRecorder";
+
+    private static volatile Recorder recorder = null;
+
+    /**
+     * A single timed event, started when it was created.
+     */
+    public interface Span {
+        /**
+         * @param rows the number of rows covered by the event
+         */
+        void setRows(long rows);
+
+        /**
+         * @param bytes the number of bytes covered by the event
+         */
+        void setBytes(long bytes);
+
+        /**
+         * Ends the event and records it.
+         *
+         * @param success flag indicating whether the timed operation succeeded
+         */
+        void end(boolean success);
+    }
+
+    /**
+     * Creates the spans for each kind of event.
+     */
+    public interface Recorder {
+        /**
+         * @see Events#statement(String, String)
+         */
+        Span statement(String tableName, String sql);
+
+        /**
+         * @see Events#tableRead(String)
+         */
+        Span tableRead(String tableName);
+
+        /**
+         * @see Events#connection(String, String)
+         */
+        Span connection(String action, String url);
+
+        /**
+         * @see Events#copyChunk(String)
+         */
+        Span copyChunk(String tableName);
+
+        /**
+         * Stops recording and writes out what was recorded.
+         */
+        void stop();
+    }
+
+    private static final Span NOOP = new Span() {
+        public void setRows(long rows) {
+        }
+
+        public void setBytes(long bytes) {
+        }
+
+        public void end(boolean success) {
+        }
+    };
+
+    /**
+     * Starts a flight recording that is written to the given file when
+     * recording stops.
+     *
+     * @param destination the file to which the recording will be written
+     * @return true if the recording was started, false if flight recording is unavailable
+     */
+    public static synchronized boolean startFlightRecording(File destination) {
+        if (recorder != null) {
+            return true;
+        }
+        try {
+            recorder = (Recorder) Class.forName(FLIGHT_RECORDER).getConstructor(File.class).newInstance(destination);
+        } catch (InvocationTargetException ite) {
+            System.err.println("Error: unable to start flight recording: " + ite.getCause());
+        } catch (Exception e) {
+            System.err.println("Error: unable to start flight recording: " + e);
+        } catch (LinkageError le) {
+            System.err.println("Error: flight recording is not supported by this JVM: " + le);
+        }
+        return recorder != null;
+    }
+
+    /**
+     * Stops the running recording, if any, writing it to its destination.
+     */
+    public static synchronized void stopRecording() {
+        if (recorder != null) {
+            recorder.stop();
+            recorder = null;
+        }
+    }
+
+    /**
+     * @param tableName the table the statement applies to, if known
+     * @param sql the SQL text of the statement
+     * @return the span timing the statement's execution
+     */
+    public static Span statement(String tableName, String sql) {
+        final Recorder r = recorder;
+
+        return r == null ? NOOP : r.statement(tableName, sql);
+    }
+
+    /**
+     * @param tableName the table whose metadata is read
+     * @return the span timing the metadata read
+     */
+    public static Span tableRead(String tableName) {
+        final Recorder r = recorder;
+
+        return r == null ? NOOP : r.tableRead(tableName);
+    }
+
+    /**
+     * @param action the connection action, 'open' or 'close'
+     * @param url the connection URL
+     * @return the span timing the connection action
+     */
+    public static Span connection(String action, String url) {
+        final Recorder r = recorder;
+
+        return r == null ? NOOP : r.connection(action, url);
+    }
+
+    /**
+     * @param tableName the table whose data is copied
+     * @return the span timing the copy of one chunk of rows
+     */
+    public static Span copyChunk(String tableName) {
+        final Recorder r = recorder;
+
+        return r == null ? NOOP : r.copyChunk(tableName);
+    }
+}
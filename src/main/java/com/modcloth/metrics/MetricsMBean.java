@@ -0,0 +1,113 @@
+package com.modcloth.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+import com.modcloth.metrics.MetricsRegistry.Counter;
+import com.modcloth.metrics.MetricsRegistry.Meter;
+import com.modcloth.metrics.MetricsRegistry.Timer;
+
+/**
+ * Exposes the metrics of a MetricsRegistry as read-only JMX attributes.
+ *
+ * Metrics are created as the run goes on, so the attributes are rebuilt from
+ * the registry every time they are requested. Each counter is one attribute;
+ * timers and meters are split into one attribute per statistic, such as
+ * 'ddl.statement.p99Millis'.
+ *
+ * @author modcloth
+ *
+ */
+public class MetricsMBean implements DynamicMBean {
+    private final MetricsRegistry registry;
+
+    /**
+     * @param registry the registry whose metrics will be exposed
+     */
+    public MetricsMBean(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @return the current value of every attribute, keyed by attribute name
+     */
+    protected Map<String, Long> getValues() {
+        final Map<String, Long> values = new LinkedHashMap<String, Long>();
+
+        for (Map.Entry<String, Counter> e : registry.getCounters().entrySet()) {
+            values.put(e.getKey() + ".count", e.getValue().getCount());
+        }
+        for (Map.Entry<String, Timer> e : registry.getTimers().entrySet()) {
+            final Timer t = e.getValue();
+
+            values.put(e.getKey() + ".count", t.getCount());
+            values.put(e.getKey() + ".totalMillis", t.getTotalMillis());
+            values.put(e.getKey() + ".meanMillis", t.getMeanMillis());
+            values.put(e.getKey() + ".p50Millis", t.getPercentileMillis(0.5));
+            values.put(e.getKey() + ".p90Millis", t.getPercentileMillis(0.9));
+            values.put(e.getKey() + ".p99Millis", t.getPercentileMillis(0.99));
+            values.put(e.getKey() + ".maxMillis", t.getMaxMillis());
+        }
+        for (Map.Entry<String, Meter> e : registry.getMeters().entrySet()) {
+            values.put(e.getKey() + ".count", e.getValue().getCount());
+            values.put(e.getKey() + ".perSecond", e.getValue().getRatePerSecond());
+        }
+        return values;
+    }
+
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        final Long value = getValues().get(attribute);
+
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+        final Map<String, Long> values = getValues();
+        final AttributeList list = new AttributeList();
+
+        for (String a : attributes) {
+            if (values.containsKey(a)) {
+                list.add(new Attribute(a, values.get(a)));
+            }
+        }
+        return list;
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        final Map<String, Long> values = getValues();
+        final MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+        int i = 0;
+
+        for (String name : values.keySet()) {
+            attributes[i++] = new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false);
+        }
+        return new MBeanInfo(getClass().getName(), "schema-convert run metrics", attributes,
+                new MBeanConstructorInfo[0], new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+    }
+
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName), "No operation " + actionName);
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("No writable attribute " + attribute.getName());
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+}
@@ -0,0 +1,322 @@
+package com.modcloth.metrics;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the counters, timers and meters recorded during a run.
+ *
+ * Metrics are created on first use and are safe to update from any number of
+ * threads; updates are plain atomic increments, so recording costs little
+ * even on per-row paths. The registry can be exposed over JMX while the run
+ * is in progress and dumped when it finishes.
+ *
+ * @author modcloth
+ *
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry defaultRegistry = new MetricsRegistry();
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+    private final ConcurrentMap<String, Meter> meters = new ConcurrentHashMap<String, Meter>();
+
+    /**
+     * @return the registry shared by everything in the running program
+     */
+    public static MetricsRegistry getDefault() {
+        return defaultRegistry;
+    }
+
+    /**
+     * @param name the name of the counter
+     * @return the counter with the given name, created if it does not exist
+     */
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+
+        if (counter == null) {
+            counters.putIfAbsent(name, new Counter());
+            counter = counters.get(name);
+        }
+        return counter;
+    }
+
+    /**
+     * @param name the name of the timer
+     * @return the timer with the given name, created if it does not exist
+     */
+    public Timer timer(String name) {
+        Timer timer = timers.get(name);
+
+        if (timer == null) {
+            timers.putIfAbsent(name, new Timer());
+            timer = timers.get(name);
+        }
+        return timer;
+    }
+
+    /**
+     * @param name the name of the meter
+     * @return the meter with the given name, created if it does not exist
+     */
+    public Meter meter(String name) {
+        Meter meter = meters.get(name);
+
+        if (meter == null) {
+            meters.putIfAbsent(name, new Meter());
+            meter = meters.get(name);
+        }
+        return meter;
+    }
+
+    /**
+     * @return the counters in the registry, sorted by name
+     */
+    public Map<String, Counter> getCounters() {
+        return new TreeMap<String, Counter>(counters);
+    }
+
+    /**
+     * @return the timers in the registry, sorted by name
+     */
+    public Map<String, Timer> getTimers() {
+        return new TreeMap<String, Timer>(timers);
+    }
+
+    /**
+     * @return the meters in the registry, sorted by name
+     */
+    public Map<String, Meter> getMeters() {
+        return new TreeMap<String, Meter>(meters);
+    }
+
+    /**
+     * Registers the registry with the platform MBean server under the given name.
+     *
+     * @param objectName the JMX object name, e.g. com.modcloth:type=Metrics
+     * @return true if the registry was registered, false if it failed
+     */
+    public boolean registerMBean(String objectName) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            final ObjectName name = new ObjectName(objectName);
+
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(this), name);
+            }
+            return true;
+        } catch (JMException jme) {
+            System.err.println("Error: " + jme.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Prints every metric in the registry, one per line.
+     *
+     * @param out the stream to which the metrics will be printed
+     */
+    public void dump(PrintStream out) {
+        for (Map.Entry<String, Counter> e : getCounters().entrySet()) {
+            out.println(e.getKey() + " count=" + e.getValue().getCount());
+        }
+        for (Map.Entry<String, Timer> e : getTimers().entrySet()) {
+            final Timer t = e.getValue();
+
+            out.println(e.getKey() + " count=" + t.getCount() + " totalMs=" + t.getTotalMillis() +
+                    " meanMs=" + t.getMeanMillis() + " p50Ms=" + t.getPercentileMillis(0.5) +
+                    " p90Ms=" + t.getPercentileMillis(0.9) + " p99Ms=" + t.getPercentileMillis(0.99) +
+                    " maxMs=" + t.getMaxMillis());
+        }
+        for (Map.Entry<String, Meter> e : getMeters().entrySet()) {
+            out.println(e.getKey() + " count=" + e.getValue().getCount() +
+                    " perSecond=" + e.getValue().getRatePerSecond());
+        }
+    }
+
+    /**
+     * Removes every metric from the registry.
+     */
+    public void clear() {
+        counters.clear();
+        timers.clear();
+        meters.clear();
+    }
+
+    /**
+     * A monotonically increasing count of events.
+     *
+     * @author modcloth
+     *
+     */
+    public static class Counter {
+        private final AtomicLong count = new AtomicLong();
+
+        /**
+         * Adds one to the counter.
+         */
+        public void increment() {
+            count.incrementAndGet();
+        }
+
+        /**
+         * @param n the amount to add to the counter
+         */
+        public void add(long n) {
+            count.addAndGet(n);
+        }
+
+        /**
+         * @return the current count
+         */
+        public long getCount() {
+            return count.get();
+        }
+    }
+
+    /**
+     * Records durations into a histogram of power-of-two millisecond buckets,
+     * from under 1ms up to 2^20ms and above.
+     *
+     * @author modcloth
+     *
+     */
+    public static class Timer {
+        private static final int BUCKETS = 22;
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        /**
+         * @param nanos the duration to record, in nanoseconds
+         */
+        public void update(long nanos) {
+            final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            long max = maxNanos.get();
+
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis)));
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        /**
+         * Records the time elapsed since the given start time.
+         *
+         * @param startNanos the start time, as returned by System.nanoTime()
+         * @return the recorded duration, in nanoseconds
+         */
+        public long updateSince(long startNanos) {
+            final long nanos = System.nanoTime() - startNanos;
+
+            update(nanos);
+            return nanos;
+        }
+
+        /**
+         * @return the number of recorded durations
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return the sum of the recorded durations, in milliseconds
+         */
+        public long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+        }
+
+        /**
+         * @return the mean of the recorded durations, in milliseconds
+         */
+        public long getMeanMillis() {
+            final long n = count.get();
+
+            return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / n);
+        }
+
+        /**
+         * @return the longest recorded duration, in milliseconds
+         */
+        public long getMaxMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+        }
+
+        /**
+         * Estimates a percentile as the upper bound of the bucket that holds it.
+         *
+         * @param percentile the percentile to estimate, between 0 and 1
+         * @return the estimated percentile, in milliseconds
+         */
+        public long getPercentileMillis(double percentile) {
+            final long n = count.get();
+            final long rank = (long) Math.ceil(n * percentile);
+            long seen = 0;
+
+            for (int i = 0; i < BUCKETS && n > 0; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(1L << i, getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+    }
+
+    /**
+     * Counts events, such as rows or bytes moved, and their rate since the
+     * first event was marked.
+     *
+     * @author modcloth
+     *
+     */
+    public static class Meter {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong startNanos = new AtomicLong();
+
+        /**
+         * @param n the number of events to mark
+         */
+        public void mark(long n) {
+            if (startNanos.get() == 0) {
+                startNanos.compareAndSet(0, System.nanoTime());
+            }
+            count.addAndGet(n);
+        }
+
+        /**
+         * @return the number of marked events
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return the mean number of events per second since the first event was marked
+         */
+        public long getRatePerSecond() {
+            final long start = startNanos.get();
+            final long elapsed = System.nanoTime() - start;
+
+            return start == 0 || elapsed <= 0 ? 0 : (long) (count.get() * 1e9 / elapsed);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.modcloth.metrics;
+
+import java.io.PrintStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks how far each phase of a run has progressed and periodically prints
+ * the percentage complete, throughput and estimated time remaining of the
+ * phases that are under way.
+ *
+ * Totals are estimates given up front, e.g. table sizes from
+ * information_schema.TABLES. Progress is recorded with atomic increments,
+ * so any number of worker threads can report without contending on a lock.
+ *
+ * @author modcloth
+ *
+ */
+public class ProgressReporter {
+    /**
+     * The phases of a run, and the unit in which their progress is measured.
+     */
+    public enum Phase {
+        METADATA("metadata", "tables"),
+        TABLES("tables", "tables"),
+        INDEXES("indexes", "bytes"),
+        DATA("data", "rows");
+
+        private final String label;
+        private final String unit;
+
+        private Phase(String label, String unit) {
+            this.label = label;
+            this.unit = unit;
+        }
+
+        /**
+         * @return the name of the phase as it is printed
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @return the unit in which the phase's progress is measured
+         */
+        public String getUnit() {
+            return unit;
+        }
+    }
+
+    private final PrintStream out;
+    private final AtomicLong[] totals = new AtomicLong[Phase.values().length];
+    private final AtomicLong[] done = new AtomicLong[Phase.values().length];
+    private final AtomicLong[] startNanos = new AtomicLong[Phase.values().length];
+    private final ConcurrentMap<String, Long> weights = new ConcurrentHashMap<String, Long>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param out the stream to which progress will be printed
+     */
+    public ProgressReporter(PrintStream out) {
+        this.out = out;
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new AtomicLong();
+            done[i] = new AtomicLong();
+            startNanos[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * @param phase the phase whose total is set
+     * @param total the estimated amount of work in the phase
+     */
+    public void setTotal(Phase phase, long total) {
+        totals[phase.ordinal()].set(total);
+    }
+
+    /**
+     * @param phase the phase whose total is increased
+     * @param amount the estimated amount of work added to the phase
+     */
+    public void addTotal(Phase phase, long amount) {
+        totals[phase.ordinal()].addAndGet(amount);
+    }
+
+    /**
+     * Adds a unit of work of known size, such as a table or an index, to the
+     * total of a phase so that it can later be completed by name.
+     *
+     * @param phase the phase the work belongs to
+     * @param name the name of the unit of work
+     * @param weight the estimated size of the unit of work
+     */
+    public void addWork(Phase phase, String name, long weight) {
+        weights.put(phase.name() + ":" + name, weight);
+        addTotal(phase, weight);
+    }
+
+    /**
+     * Records a unit of work added with {@link #addWork} as done. Work that
+     * was never added counts as one.
+     *
+     * @param phase the phase the work belongs to
+     * @param name the name of the unit of work
+     */
+    public void complete(Phase phase, String name) {
+        final Long weight = weights.remove(phase.name() + ":" + name);
+
+        advance(phase, weight != null ? weight : 1);
+    }
+
+    /**
+     * Records completed work. The first call for a phase starts its clock.
+     *
+     * @param phase the phase in which the work was done
+     * @param amount the amount of work done
+     */
+    public void advance(Phase phase, long amount) {
+        final AtomicLong start = startNanos[phase.ordinal()];
+
+        if (start.get() == 0) {
+            start.compareAndSet(0, System.nanoTime());
+        }
+        done[phase.ordinal()].addAndGet(amount);
+    }
+
+    /**
+     * @param phase a phase of the run
+     * @return the amount of work done in the phase
+     */
+    public long getDone(Phase phase) {
+        return done[phase.ordinal()].get();
+    }
+
+    /**
+     * @param phase a phase of the run
+     * @return the estimated amount of work in the phase
+     */
+    public long getTotal(Phase phase) {
+        return totals[phase.ordinal()].get();
+    }
+
+    /**
+     * Starts printing progress at the given interval on a daemon thread.
+     *
+     * @param periodSeconds the number of seconds between reports
+     */
+    public synchronized void start(long periodSeconds) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "progress-reporter");
+
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    print();
+                }
+            }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops printing progress.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Prints one line for every phase that has started but not finished.
+     */
+    public void print() {
+        for (Phase phase : Phase.values()) {
+            final String line = format(phase);
+
+            if (line != null) {
+                out.println(line);
+            }
+        }
+    }
+
+    /**
+     * @param phase a phase of the run
+     * @return the progress line of the phase, or null if it has not started or has finished
+     */
+    public String format(Phase phase) {
+        final long start = startNanos[phase.ordinal()].get();
+        final long total = totals[phase.ordinal()].get();
+        final long completed = done[phase.ordinal()].get();
+
+        if (start == 0 || completed >= total) {
+            return null;
+        }
+
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        final double rate = seconds > 0 ? completed / seconds : 0;
+        final StringBuilder line = new StringBuilder("Progress ").append(phase.getLabel()).append(": ");
+
+        line.append(String.format("%.1f%% (%d of %d %s)", 100.0 * completed / total, completed, total,
+                phase.getUnit()));
+        line.append(String.format(", %.1f %s/s", rate, phase.getUnit()));
+        line.append(", ETA ").append(rate > 0 ? formatDuration((long) ((total - completed) / rate)) : "unknown");
+        return line.toString();
+    }
+
+    /**
+     * @param seconds a duration in seconds
+     * @return the duration formatted as h:mm:ss
+     */
+    protected static String formatDuration(long seconds) {
+        return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+}
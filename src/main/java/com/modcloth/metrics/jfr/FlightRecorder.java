@@ -0,0 +1,163 @@
+package com.modcloth.metrics.jfr;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+import com.modcloth.metrics.Events;
+
+/**
+ * Sends events to Java Flight Recorder and records the whole run with the
+ * JVM's default settings, so JDBC waits show up next to GC and CPU samples.
+ *
+ * This class is only loaded by Events when a flight recording is requested.
+ *
+ * @author modcloth
+ *
+ */
+public class FlightRecorder implements Events.Recorder {
+    private final Recording recording;
+
+    /**
+     * Starts recording.
+     *
+     * @param destination the file to which the recording will be written when it stops
+     * @throws IOException if the destination cannot be used
+     * @throws ParseException if the default JFR settings cannot be read
+     */
+    public FlightRecorder(File destination) throws IOException, ParseException {
+        recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName("schema-convert");
+        recording.setToDisk(true);
+        recording.setDestination(destination.toPath());
+        recording.start();
+    }
+
+    public Events.Span statement(String tableName, String sql) {
+        final StatementEvent event = new StatementEvent();
+
+        event.tableName = tableName;
+        event.sqlHash = sql.hashCode();
+        return new EventSpan(event);
+    }
+
+    public Events.Span tableRead(String tableName) {
+        final TableReadEvent event = new TableReadEvent();
+
+        event.tableName = tableName;
+        return new EventSpan(event);
+    }
+
+    public Events.Span connection(String action, String url) {
+        final ConnectionEvent event = new ConnectionEvent();
+        final int parameters = url == null ? -1 : url.indexOf('?');
+
+        event.action = action;
+        event.url = parameters < 0 ? url : url.substring(0, parameters);
+        return new EventSpan(event);
+    }
+
+    public Events.Span copyChunk(String tableName) {
+        final CopyChunkEvent event = new CopyChunkEvent();
+
+        event.tableName = tableName;
+        return new EventSpan(event);
+    }
+
+    public void stop() {
+        recording.stop();
+        recording.close();
+    }
+
+    /**
+     * Times a flight recorder event from its creation until it is ended.
+     *
+     * @author modcloth
+     *
+     */
+    private static class EventSpan implements Events.Span {
+        private final SchemaConvertEvent event;
+
+        /**
+         * @param event the event to time
+         */
+        public EventSpan(SchemaConvertEvent event) {
+            this.event = event;
+            event.begin();
+        }
+
+        public void setRows(long rows) {
+            event.rows = rows;
+        }
+
+        public void setBytes(long bytes) {
+            event.bytes = bytes;
+        }
+
+        public void end(boolean success) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Fields shared by every schema-convert event.
+     */
+    @Category("schema-convert")
+    @StackTrace(false)
+    private abstract static class SchemaConvertEvent extends Event {
+        @Label("Success")
+        boolean success;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Bytes")
+        long bytes;
+    }
+
+    @Name("com.modcloth.Statement")
+    @Label("Statement")
+    private static class StatementEvent extends SchemaConvertEvent {
+        @Label("Table")
+        String tableName;
+
+        @Label("SQL Hash")
+        int sqlHash;
+    }
+
+    @Name("com.modcloth.TableRead")
+    @Label("Table Metadata Read")
+    private static class TableReadEvent extends SchemaConvertEvent {
+        @Label("Table")
+        String tableName;
+    }
+
+    @Name("com.modcloth.Connection")
+    @Label("Connection")
+    private static class ConnectionEvent extends SchemaConvertEvent {
+        @Label("Action")
+        String action;
+
+        @Label("URL")
+        String url;
+    }
+
+    @Name("com.modcloth.CopyChunk")
+    @Label("Copy Chunk")
+    private static class CopyChunkEvent extends SchemaConvertEvent {
+        @Label("Table")
+        String tableName;
+    }
+}
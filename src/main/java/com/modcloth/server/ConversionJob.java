@@ -0,0 +1,154 @@
+package com.modcloth.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.modcloth.core.Main;
+import com.modcloth.core.OptionParser;
+import com.modcloth.core.RunReport;
+import com.modcloth.core.RunReport.TableReport;
+import com.modcloth.database.managers.ConnectionManager;
+import com.modcloth.metrics.MetricsRegistry;
+
+/**
+ * A conversion submitted to the server, run as Main would run it with the
+ * same options but with the server's pooled connections.
+ *
+ * @author modcloth
+ *
+ */
+public class ConversionJob implements Runnable {
+    /**
+     * The states of a job.
+     */
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String id;
+    private final OptionParser optionParser;
+    private final RunReport report;
+    private final ConnectionManager myConnectionManager;
+    private final ConnectionManager pgConnectionManager;
+    private final long submittedAt;
+    private volatile Status status;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+
+    /**
+     * @param id the identifier of the job
+     * @param optionParser the parsed options of the job
+     * @param myConnectionManager manages connections to the job's MySQL database
+     * @param pgConnectionManager manages connections to the job's PostgreSQL database
+     */
+    public ConversionJob(String id, OptionParser optionParser, ConnectionManager myConnectionManager,
+            ConnectionManager pgConnectionManager) {
+        this.id = id;
+        this.optionParser = optionParser;
+        this.report = new RunReport(optionParser.getConfiguration());
+        this.myConnectionManager = myConnectionManager;
+        this.pgConnectionManager = pgConnectionManager;
+        this.submittedAt = System.currentTimeMillis();
+        this.status = Status.QUEUED;
+    }
+
+    /**
+     * Runs the conversion. The job fails if the conversion throws, if its
+     * scripts could not be written or if any table recorded an error. An
+     * Error, such as running out of memory, fails the job before it is
+     * rethrown, so the job never stays running.
+     */
+    public void run() {
+        startedAt = System.currentTimeMillis();
+        status = Status.RUNNING;
+        try {
+            final boolean completed = Main.execute(optionParser, report, myConnectionManager, pgConnectionManager);
+
+            report.finish(MetricsRegistry.getDefault());
+            if (optionParser.getReportFile() != null) {
+                report.write(optionParser.getReportFile());
+            }
+            if (!completed) {
+                error = "The scripts could not be written";
+            }
+            status = !completed || hasErrors() ? Status.FAILED : Status.SUCCEEDED;
+        } catch (RuntimeException e) {
+            error = e.toString();
+            status = Status.FAILED;
+        } catch (Error e) {
+            error = e.toString();
+            status = Status.FAILED;
+            throw e;
+        } finally {
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return the identifier of the job
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the state of the job
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if the job has succeeded or failed
+     */
+    public boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+
+    /**
+     * @return the report of the job's run, which is updated while the job runs
+     */
+    public RunReport getReport() {
+        return report;
+    }
+
+    /**
+     * @return the job's state and timings, without its report
+     */
+    public Map<String, Object> getSummary() {
+        final Map<String, Object> summary = new LinkedHashMap<String, Object>();
+
+        summary.put("id", id);
+        summary.put("status", status.name().toLowerCase());
+        summary.put("submittedAt", submittedAt);
+        summary.put("startedAt", startedAt == 0 ? null : startedAt);
+        summary.put("finishedAt", finishedAt == 0 ? null : finishedAt);
+        summary.put("error", error);
+        return summary;
+    }
+
+    /**
+     * @return the job's state, timings and report as JSON
+     */
+    public JsonElement toJson() {
+        final JsonObject json = new GsonBuilder().serializeNulls().create().toJsonTree(getSummary())
+                .getAsJsonObject();
+
+        json.add("report", new JsonParser().parse(report.toJson()));
+        return json;
+    }
+
+    private boolean hasErrors() {
+        for (TableReport t : report.getTables().values()) {
+            if (!t.getErrors().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
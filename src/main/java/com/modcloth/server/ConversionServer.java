@@ -0,0 +1,434 @@
+package com.modcloth.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.modcloth.core.Main;
+import com.modcloth.core.OptionParser;
+import com.modcloth.database.managers.ConnectionManager;
+import com.modcloth.database.managers.MysqlConnectionManager;
+import com.modcloth.database.managers.PooledConnectionManager;
+import com.modcloth.database.managers.PostgresConnectionManager;
+import com.modcloth.metrics.MetricsRegistry;
+import com.modcloth.metrics.MetricsRegistry.Counter;
+import com.modcloth.metrics.MetricsRegistry.Meter;
+import com.modcloth.metrics.MetricsRegistry.Timer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Long-running server that accepts conversion jobs over a small HTTP API,
+ * so that jobs run in a warm JVM and reuse connections instead of paying
+ * for JVM startup, driver loading and new connections every time.
+ *
+ * Endpoints:
+ * <ul>
+ * <li>POST /jobs with a JSON array of the options Main accepts submits a job
+ * and returns its status with 202, or 400 if the options are invalid and 503
+ * if the queue is full.</li>
+ * <li>GET /jobs lists the status of every retained job.</li>
+ * <li>GET /jobs/ID returns the status and run report of a job.</li>
+ * <li>GET /metrics returns the server's metrics.</li>
+ * </ul>
+ *
+ * Jobs are submitted by any client that can reach the API, so they may not
+ * change the state of the whole process, such as with a flight recording,
+ * and the files they read and write are confined to the server's output
+ * directory: their paths are taken as relative to it, and jobs cannot use
+ * files at all if the server has none.
+ *
+ * Connections are pooled per database URL and shared by every job. The
+ * metrics registry is shared as well, so the metrics in a job's report
+ * cover every job that ran at the same time.
+ *
+ * @author modcloth
+ *
+ */
+public class ConversionServer {
+    /** Options naming a file or directory, confined to the output directory. */
+    protected static final List<String> FILE_OPTIONS = Arrays.asList("--report", "--script-dir",
+            "--write-snapshot", "--from-snapshot", "--export-dir");
+    /** Options changing the state of the whole process, which jobs may not use. */
+    protected static final List<String> PROCESS_OPTIONS = Arrays.asList("--jfr");
+
+    private final ServerOptions options;
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, PooledConnectionManager> pools =
+            new ConcurrentHashMap<String, PooledConnectionManager>();
+    private final Map<String, ConversionJob> jobs = new LinkedHashMap<String, ConversionJob>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().serializeNulls().create();
+
+    /**
+     * @param options the parsed server options
+     * @throws IOException if the server cannot listen on the given address
+     */
+    public ConversionServer(ServerOptions options) throws IOException {
+        this.options = options;
+        this.executor = new ThreadPoolExecutor(options.getMaxJobs(), options.getMaxJobs(), 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(Math.max(1, options.getQueueSize())));
+        this.server = HttpServer.create(new InetSocketAddress(options.getBindAddress(), options.getPort()), 0);
+        this.server.createContext("/jobs", new JobsHandler());
+        this.server.createContext("/metrics", new MetricsHandler());
+    }
+
+    /**
+     * Server main
+     *
+     * @param args server arguments
+     */
+    public static void main(String[] args) {
+        final ServerOptions options = new ServerOptions();
+
+        if (!options.parse(args)) {
+            System.exit(1);
+        }
+        try {
+            final ConversionServer server = new ConversionServer(options);
+
+            MetricsRegistry.getDefault().registerMBean("com.modcloth:type=Metrics");
+            server.start();
+            System.out.println("Listening on " + options.getBindAddress() + ":" + server.getPort());
+        } catch (IOException ioe) {
+            System.err.println("Error: " + ioe.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits for running jobs to finish and closes
+     * the pooled connections.
+     *
+     * @param timeoutSeconds the number of seconds to wait for running jobs
+     */
+    public void stop(int timeoutSeconds) {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        for (PooledConnectionManager pool : pools.values()) {
+            pool.close();
+        }
+    }
+
+    /**
+     * @return the port on which the server listens
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Parses the given options and queues a job to run them.
+     *
+     * @param args the options of the job, as Main accepts them
+     * @return the queued job, or null if the options are invalid or not allowed in a job
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public ConversionJob submit(String[] args) {
+        final OptionParser optionParser = new OptionParser();
+        final String[] confined = confine(args, options.getOutputDirectory());
+
+        if (confined == null || !optionParser.parse(confined)) {
+            return null;
+        }
+
+        final ConversionJob job = new ConversionJob(String.valueOf(nextId.incrementAndGet()), optionParser,
+                Main.adaptConcurrency(pool(new MysqlConnectionManager(optionParser.getMysqlUrl())), "mysql",
+                        optionParser.getMysqlLatencyMillis(), optionParser.getMysqlMaxConnections()),
+                Main.adaptConcurrency(pool(new PostgresConnectionManager(optionParser.getPostgresUrl())), "postgres",
+                        optionParser.getPostgresLatencyMillis(), optionParser.getPostgresMaxConnections()));
+
+        synchronized (jobs) {
+            executor.execute(job);
+            jobs.put(job.getId(), job);
+            removeFinishedJobs();
+        }
+        return job;
+    }
+
+    /**
+     * Confines the files named by the options of a job to the output
+     * directory, resolving each path against it, and refuses the options
+     * that change the state of the whole process.
+     *
+     * @param args the options of the job, as Main accepts them
+     * @param outputDirectory the directory the files are confined to, or null if jobs cannot use files
+     * @return the options with every path resolved in the output directory, or null if an option is not allowed
+     */
+    protected static String[] confine(String[] args, File outputDirectory) {
+        final String[] confined = args.clone();
+
+        for (int i = 0; i < confined.length; i++) {
+            final String name = confined[i].split("=", 2)[0];
+
+            if (PROCESS_OPTIONS.contains(name)) {
+                System.err.println("Error: " + name + " cannot be used in a server job");
+                return null;
+            }
+            if (FILE_OPTIONS.contains(name)) {
+                final File file = outputDirectory == null || !name.equals(confined[i]) || i + 1 == confined.length ?
+                        null : resolve(outputDirectory, confined[i + 1]);
+
+                if (file == null) {
+                    System.err.println("Error: " + name + " must name a path within the server's output directory");
+                    return null;
+                }
+                confined[++i] = file.getPath();
+            }
+        }
+        return confined;
+    }
+
+    /**
+     * @param directory a directory
+     * @param path a path relative to the directory
+     * @return the canonical file at the path, or null if it is outside the directory
+     */
+    private static File resolve(File directory, String path) {
+        try {
+            final File base = directory.getCanonicalFile();
+            final File file = new File(base, path).getCanonicalFile();
+
+            return file.getPath().startsWith(base.getPath() + File.separator) ? file : null;
+        } catch (IOException ioe) {
+            System.err.println("Error: " + ioe.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param id the identifier of a job
+     * @return the job, or null if there is no such job
+     */
+    public ConversionJob getJob(String id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    /**
+     * Returns the pool of connections to the database of the given manager,
+     * creating it on first use.
+     *
+     * @param connectionManager a manager of connections to the database
+     * @return the pooled manager, or the given manager if it has no URL
+     */
+    private ConnectionManager pool(ConnectionManager connectionManager) {
+        if (connectionManager.getConnectionUrl() == null) {
+            return connectionManager;
+        }
+
+        final String key = connectionManager.getDriverName() + " " + connectionManager.getConnectionUrl();
+        final PooledConnectionManager pool = new PooledConnectionManager(connectionManager.getDriverName(),
+                connectionManager.getConnectionUrl(), options.getPoolSize());
+        final PooledConnectionManager existing = pools.putIfAbsent(key, pool);
+
+        return existing != null ? existing : pool;
+    }
+
+    /**
+     * Forgets the oldest finished jobs beyond the retention limit.
+     */
+    private void removeFinishedJobs() {
+        int finished = 0;
+
+        for (ConversionJob job : jobs.values()) {
+            finished += job.isFinished() ? 1 : 0;
+        }
+        for (Iterator<ConversionJob> i = jobs.values().iterator(); i.hasNext() && finished > options.getRetainedJobs();) {
+            if (i.next().isFinished()) {
+                i.remove();
+                finished--;
+            }
+        }
+    }
+
+    /**
+     * Builds a snapshot of every metric in the default registry.
+     *
+     * @return the metrics, by kind and name
+     */
+    private static Map<String, Object> metrics() {
+        final MetricsRegistry registry = MetricsRegistry.getDefault();
+        final Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+        final Map<String, Map<String, Number>> timers = new LinkedHashMap<String, Map<String, Number>>();
+        final Map<String, Map<String, Number>> meters = new LinkedHashMap<String, Map<String, Number>>();
+
+        for (Map.Entry<String, Counter> e : registry.getCounters().entrySet()) {
+            counters.put(e.getKey(), e.getValue().getCount());
+        }
+        for (Map.Entry<String, Timer> e : registry.getTimers().entrySet()) {
+            final Map<String, Number> timer = new LinkedHashMap<String, Number>();
+
+            timer.put("count", e.getValue().getCount());
+            timer.put("totalMillis", e.getValue().getTotalMillis());
+            timer.put("p50Millis", e.getValue().getPercentileMillis(0.5));
+            timer.put("p99Millis", e.getValue().getPercentileMillis(0.99));
+            timer.put("maxMillis", e.getValue().getMaxMillis());
+            timers.put(e.getKey(), timer);
+        }
+        for (Map.Entry<String, Meter> e : registry.getMeters().entrySet()) {
+            final Map<String, Number> meter = new LinkedHashMap<String, Number>();
+
+            meter.put("count", e.getValue().getCount());
+            meter.put("ratePerSecond", e.getValue().getRatePerSecond());
+            meters.put(e.getKey(), meter);
+        }
+        metrics.put("counters", counters);
+        metrics.put("timers", timers);
+        metrics.put("meters", meters);
+        return metrics;
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        final byte[] bytes = (body instanceof String ? (String) body : gson.toJson(body)).getBytes("UTF-8");
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        final InputStream in = exchange.getRequestBody();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+
+        try {
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                body.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return body.toString("UTF-8");
+    }
+
+    private static Map<String, String> error(String message) {
+        final Map<String, String> error = new LinkedHashMap<String, String>();
+
+        error.put("error", message);
+        return error;
+    }
+
+    /**
+     * Handles submission and status of jobs.
+     */
+    private class JobsHandler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            final String path = exchange.getRequestURI().getPath();
+            final String method = exchange.getRequestMethod();
+
+            try {
+                if (path.equals("/jobs") || path.equals("/jobs/")) {
+                    if (method.equals("POST")) {
+                        handleSubmit(exchange);
+                    } else if (method.equals("GET")) {
+                        final List<Map<String, Object>> summaries = new LinkedList<Map<String, Object>>();
+
+                        synchronized (jobs) {
+                            for (ConversionJob job : jobs.values()) {
+                                summaries.add(job.getSummary());
+                            }
+                        }
+                        respond(exchange, 200, summaries);
+                    } else {
+                        respond(exchange, 405, error("Method not allowed"));
+                    }
+                } else if (method.equals("GET")) {
+                    final ConversionJob job = getJob(path.substring("/jobs/".length()));
+
+                    if (job == null) {
+                        respond(exchange, 404, error("No such job"));
+                    } else {
+                        respond(exchange, 200, gson.toJson(job.toJson()));
+                    }
+                } else {
+                    respond(exchange, 405, error("Method not allowed"));
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void handleSubmit(HttpExchange exchange) throws IOException {
+            String[] args;
+
+            try {
+                args = gson.fromJson(readBody(exchange), String[].class);
+            } catch (JsonParseException jpe) {
+                respond(exchange, 400, error("The body must be a JSON array of options"));
+                return;
+            }
+            if (args == null) {
+                respond(exchange, 400, error("The body must be a JSON array of options"));
+                return;
+            }
+
+            try {
+                final ConversionJob job = submit(args);
+
+                if (job == null) {
+                    respond(exchange, 400, error("Unable to parse arguments"));
+                } else {
+                    exchange.getResponseHeaders().set("Location", "/jobs/" + job.getId());
+                    respond(exchange, 202, job.getSummary());
+                }
+            } catch (RejectedExecutionException ree) {
+                respond(exchange, 503, error("Too many jobs are queued"));
+            }
+        }
+    }
+
+    /**
+     * Serves the server's metrics.
+     */
+    private class MetricsHandler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                respond(exchange, 200, metrics());
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
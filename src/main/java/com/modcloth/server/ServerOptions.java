@@ -0,0 +1,112 @@
+package com.modcloth.server;
+
+import java.io.File;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+/**
+ * Parses the options of the conversion server.
+ *
+ * @author modcloth
+ *
+ */
+public class ServerOptions {
+    @Option(name="--port", usage="Port on which the HTTP API listens (default: 7070)", metaVar="PORT")
+    private int port = 7070;
+
+    @Option(name="--bind", usage="Address on which the HTTP API listens (default: 127.0.0.1)", metaVar="ADDRESS")
+    private String bindAddress = "127.0.0.1";
+
+    @Option(name="--max-jobs", usage="Number of jobs run at the same time (default: 4)", metaVar="N")
+    private int maxJobs = 4;
+
+    @Option(name="--queue-size", usage="Number of jobs that may wait to run (default: 100)", metaVar="N")
+    private int queueSize = 100;
+
+    @Option(name="--pool-size", usage="Largest number of connections to each database (default: 8)", metaVar="N")
+    private int poolSize = 8;
+
+    @Option(name="--retained-jobs", usage="Number of finished jobs whose status is kept (default: 1000)", metaVar="N")
+    private int retainedJobs = 1000;
+
+    @Option(name="--output-dir", usage="Directory holding the files jobs read and write with --report, --script-dir, --write-snapshot, --from-snapshot and --export-dir; without it jobs cannot use them", metaVar="DIR")
+    private File outputDirectory;
+
+    /**
+     * Parse the given arguments
+     *
+     * @param args the arguments
+     * @return true if the arguments were parsed successfully, false otherwise
+     */
+    public boolean parse(String[] args) {
+        CmdLineParser parser = new CmdLineParser(this);
+
+        try {
+            parser.parseArgument(args);
+
+            if (maxJobs < 1 || queueSize < 0 || poolSize < 1 || retainedJobs < 0) {
+                throw new CmdLineException(parser, "Job, queue, pool and retention limits must be positive");
+            }
+            if (outputDirectory != null && !outputDirectory.isDirectory()) {
+                throw new CmdLineException(parser, "Output directory " + outputDirectory + " does not exist");
+            }
+        } catch (CmdLineException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: server [options]");
+            parser.printUsage(System.err);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the port on which the HTTP API listens
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return the address on which the HTTP API listens
+     */
+    public String getBindAddress() {
+        return bindAddress;
+    }
+
+    /**
+     * @return the number of jobs run at the same time
+     */
+    public int getMaxJobs() {
+        return maxJobs;
+    }
+
+    /**
+     * @return the number of jobs that may wait to run
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @return the largest number of connections to each database
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return the number of finished jobs whose status is kept
+     */
+    public int getRetainedJobs() {
+        return retainedJobs;
+    }
+
+    /**
+     * @return the directory to which the files of jobs are confined, or null if jobs cannot use files
+     */
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+}
@@ -0,0 +1,99 @@
+package com.modcloth.converters;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MysqlTableConverterTest {
+    private MysqlTableConverter converter;
+    private List<ColumnDefinition> columns;
+    private Map<String, List<IndexDefinition>> indexes;
+
+    @Mock private TableDefinition table;
+
+    @Before public void setUp() {
+        columns = new LinkedList<ColumnDefinition>();
+        indexes = new LinkedHashMap<String, List<IndexDefinition>>();
+
+        when(table.getName()).thenReturn("test_table");
+        when(table.getColumnDefinitions()).thenReturn(columns);
+        when(table.getIndexesByName()).thenReturn(indexes);
+
+        converter = new MysqlTableConverter(table);
+    }
+
+    private String convert() {
+        return converter.convertToCreateTable().replaceAll("\\n", "");
+    }
+
+    @Test public void convertAutoIncrementColumn() {
+        columns.add(new ColumnDefinition("test_sk", Types.INTEGER, "NO", 10, 0, null, "YES"));
+
+        assertEquals("CREATE TABLE test_table(test_sk INT NOT NULL AUTO_INCREMENT)" +
+            "ENGINE=InnoDB DEFAULT CHARSET=utf8", convert());
+    }
+
+    @Test public void convertColumnTypes() {
+        columns.add(new ColumnDefinition("c_one", Types.BIT, "NO", 1, 0, "0", "NO"));
+        columns.add(new ColumnDefinition("c_two", Types.VARCHAR, "YES", 40, 0, "it's", "NO"));
+        columns.add(new ColumnDefinition("c_three", Types.DECIMAL, "YES", 8, 2, null, "NO"));
+        columns.add(new ColumnDefinition("c_four", Types.LONGVARBINARY, "YES", 0, 0, null, "NO"));
+        columns.add(new ColumnDefinition("c_five", Types.TIMESTAMP, "YES", 0, 0, null, "NO"));
+
+        assertEquals("CREATE TABLE test_table(c_one TINYINT(1) NOT NULL DEFAULT '0'," +
+            "c_two VARCHAR(40) DEFAULT 'it''s',c_three DECIMAL(8,2),c_four LONGBLOB,c_five DATETIME)" +
+            "ENGINE=InnoDB DEFAULT CHARSET=utf8", convert());
+    }
+
+    @Test public void convertIndexes() {
+        List<IndexDefinition> primary = new LinkedList<IndexDefinition>();
+        List<IndexDefinition> unique = new LinkedList<IndexDefinition>();
+        List<IndexDefinition> composite = new LinkedList<IndexDefinition>();
+
+        columns.add(new ColumnDefinition("c_one", Types.INTEGER, "NO", 10, 0, null, "NO"));
+        primary.add(new IndexDefinition("PRIMARY", "c_one", false, 1));
+        unique.add(new IndexDefinition("index_one", "c_two", false, 1));
+        composite.add(new IndexDefinition("index_two", "c_two", true, 1));
+        composite.add(new IndexDefinition("index_two", "c_three", true, 2));
+        indexes.put("PRIMARY", primary);
+        indexes.put("index_one", unique);
+        indexes.put("index_two", composite);
+
+        assertEquals("CREATE TABLE test_table(c_one INT NOT NULL,PRIMARY KEY (c_one)," +
+            "UNIQUE KEY index_one (c_two),KEY index_two (c_two,c_three))" +
+            "ENGINE=InnoDB DEFAULT CHARSET=utf8", convert());
+    }
+
+    @Test public void convertPostgresOnlyColumns() {
+        List<IndexDefinition> index = new LinkedList<IndexDefinition>();
+
+        columns.add(new ColumnDefinition("c_one", Types.VARCHAR, "NO", 0, 0, null, "NO"));
+        columns.add(new ColumnDefinition("c_two", Types.NUMERIC, "YES", 0, 0, null, "NO"));
+        columns.add(new ColumnDefinition("c_three", Types.OTHER, "YES", 0, 0, null, "NO"));
+        columns.add(new ColumnDefinition("c_four", Types.TIMESTAMP, "YES", 0, 0, "now()", "NO"));
+        columns.add(new ColumnDefinition("c_five", Types.VARCHAR, "YES", 10, 0, "'new'::character varying", "NO"));
+        index.add(new IndexDefinition("index_one", "c_one", true, 1));
+        index.add(new IndexDefinition("index_one", "c_five", true, 2));
+        indexes.put("index_one", index);
+
+        assertEquals("CREATE TABLE test_table(c_one LONGTEXT NOT NULL,c_two DECIMAL(65,30),c_three LONGTEXT," +
+            "c_four DATETIME,c_five VARCHAR(10),KEY index_one (c_one(255),c_five))" +
+            "ENGINE=InnoDB DEFAULT CHARSET=utf8", convert());
+    }
+}
@@ -2,6 +2,7 @@ package com.modcloth.converters;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.when;
 
 import java.sql.Types;
@@ -48,6 +49,17 @@ public class PostgresTableConverterTest {
             "CREATE TABLE test_table(id SERIAL)");
     }
 
+    @Test public void convertUnsignedColumns() {
+        columns.add(new ColumnDefinition("id", Types.INTEGER, "NO", 0, 0, null, "YES", true));
+        columns.add(new ColumnDefinition("column_one", Types.SMALLINT, "YES", 0, 0, null, "NO", true));
+        columns.add(new ColumnDefinition("column_two", Types.INTEGER, "YES", 0, 0, null, "NO", true));
+        columns.add(new ColumnDefinition("column_three", Types.BIGINT, "NO", 0, 0, null, "NO", true));
+
+        assertEquals(converter.convertToCreateTable().replaceAll("\\n", ""),
+            "CREATE TABLE test_table(id BIGSERIAL,column_one INTEGER,column_two BIGINT," +
+            "column_three NUMERIC(20) NOT NULL)");
+    }
+
     @Test public void convertVarcharColumn() {
         columns.add(new ColumnDefinition("column_one", Types.VARCHAR, "YES", 40, 0, null, "NO"));
 
@@ -55,6 +67,23 @@ public class PostgresTableConverterTest {
             "CREATE TABLE test_table(column_one VARCHAR(40))");
     }
 
+    @Test public void convertLobColumns() {
+        columns.add(new ColumnDefinition("column_one", Types.LONGVARBINARY, "YES", 0, 0, null, "NO"));
+        columns.add(new ColumnDefinition("column_two", Types.CLOB, "YES", 0, 0, null, "NO"));
+
+        assertEquals(converter.convertToCreateTable().replaceAll("\\n", ""),
+            "CREATE TABLE test_table(column_one BYTEA,column_two TEXT)");
+    }
+
+    @Test public void convertBinaryColumns() {
+        columns.add(new ColumnDefinition("column_one", Types.BINARY, "YES", 16, 0, null, "NO"));
+        columns.add(new ColumnDefinition("column_two", Types.VARBINARY, "YES", 255, 0, null, "NO"));
+        columns.add(new ColumnDefinition("column_three", Types.BLOB, "YES", 0, 0, null, "NO"));
+
+        assertEquals(converter.convertToCreateTable().replaceAll("\\n", ""),
+            "CREATE TABLE test_table(column_one BYTEA,column_two BYTEA,column_three BYTEA)");
+    }
+
     @Test public void convertDecimalColumn() {
         columns.add(new ColumnDefinition("column_one", Types.DECIMAL, "YES", 8, 2, null, "NO"));
 
@@ -93,4 +122,29 @@ public class PostgresTableConverterTest {
         assertArrayEquals(converter.convertToCreateIndex().toArray(new String[0]),
             new String[] {"CREATE UNIQUE INDEX idx_one ON test_table (column_one)"});
     }
+
+    @Test public void convertPrimaryKeyOnly() {
+        indexes.put("PRIMARY", sortedIndexes);
+        indexes.get("PRIMARY").add(new IndexDefinition("PRIMARY", "id", false, 1));
+        indexes.put("idx_one", new LinkedList<IndexDefinition>());
+        indexes.get("idx_one").add(new IndexDefinition("idx_one", "column_one", true, 1));
+
+        assertEquals(converter.convertToCreatePrimaryKey(), "ALTER TABLE test_table ADD PRIMARY KEY (id)");
+        assertArrayEquals(converter.convertToCreateSecondaryIndexes().toArray(new String[0]),
+            new String[] {"CREATE INDEX idx_one ON test_table (column_one)"});
+    }
+
+    @Test public void convertMissingPrimaryKey() {
+        assertNull(converter.convertToCreatePrimaryKey());
+    }
+
+    @Test public void convertIndexesByName() {
+        indexes.put("PRIMARY", sortedIndexes);
+        indexes.get("PRIMARY").add(new IndexDefinition("PRIMARY", "id", false, 1));
+
+        Map<String, String> statements = converter.convertToCreateIndexByName();
+
+        assertEquals(statements.get("PRIMARY"), "ALTER TABLE test_table ADD PRIMARY KEY (id)");
+        assertEquals(statements.size(), 1);
+    }
 }
@@ -0,0 +1,71 @@
+package com.modcloth.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FanOutRunnerTest {
+    private File directory;
+
+    @Before public void setUp() throws IOException {
+        directory = File.createTempFile("fanout", "");
+        directory.delete();
+        directory.mkdirs();
+
+        OutputStream out = new FileOutputStream(new File(directory, "schema.snapshot"));
+        out.write(("schema-convert snapshot 1\nT\ttable_one\nC\ttable_sk\t4\tNO\t0\t0\t\\N\tYES\n" +
+                "I\tPRIMARY\ttable_sk\tfalse\t1\n").getBytes("UTF-8"));
+        out.close();
+    }
+
+    @After public void tearDown() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private void write(String contents) throws IOException {
+        OutputStream out = new FileOutputStream(new File(directory, "jobs.json"));
+        out.write(contents.getBytes("UTF-8"));
+        out.close();
+    }
+
+    @Test public void runsEveryValidJob() throws IOException {
+        String path = directory.getAbsolutePath().replace("\\", "\\\\");
+
+        write("{\"concurrency\": 2, \"options\": [\"--key-pattern\", \".*_sk$\", \"--from-snapshot\", \"" + path +
+                "/schema.snapshot\"], \"tables\": [\"table_one\"], \"jobs\": [" +
+                "{\"name\": \"one\", \"options\": [\"--script-dir\", \"" + path + "/one\"]}," +
+                "{\"name\": \"two\", \"options\": [\"--script-dir\", \"" + path + "/two\"]}," +
+                "{\"name\": \"invalid\"}]}");
+        Map<String, RunReport> reports = new FanOutRunner(JobSpec.read(new File(directory, "jobs.json"))).run();
+
+        assertEquals(2, reports.size());
+        assertTrue(new File(directory, "one/01_tables.sql").length() > 0);
+        assertTrue(new File(directory, "two/01_tables.sql").length() > 0);
+    }
+
+    @Test public void hostOfTest() {
+        assertEquals("mysql://db1:3306", FanOutRunner.hostOf("jdbc:mysql://db1:3306/shard_1?user=me"));
+        assertEquals("postgresql://db2:-1", FanOutRunner.hostOf("jdbc:postgresql://db2/target"));
+        assertEquals("jdbc:h2:mem:x", FanOutRunner.hostOf("jdbc:h2:mem:x"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.modcloth.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JobSpecTest {
+    private File file;
+
+    @Before public void setUp() throws IOException {
+        file = File.createTempFile("jobs", ".json");
+    }
+
+    @After public void tearDown() {
+        file.delete();
+    }
+
+    private void write(String contents) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        out.write(contents.getBytes("UTF-8"));
+        out.close();
+    }
+
+    @Test public void readTest() throws IOException {
+        write("{\"concurrency\": 2, \"hostConnections\": 3, \"options\": [\"--key-pattern\", \".*_sk$\"]," +
+                "\"tables\": [\"t_one\", \"t_two\"], \"jobs\": [" +
+                "{\"myUrl\": \"my\", \"myDb\": \"shard_1\", \"pgUrl\": \"pg\"}," +
+                "{\"name\": \"second\", \"myUrl\": \"my\", \"myDb\": \"shard_2\", \"pgUrl\": \"pg\"," +
+                "\"tables\": [\"t_one\"], \"options\": [\"--tables-only\"]}]}");
+        JobSpec spec = JobSpec.read(file);
+
+        assertEquals(2, spec.getConcurrency());
+        assertEquals(3, spec.getHostConnections());
+        assertEquals("shard_1", spec.getJobs().get(0).getName());
+        assertEquals("second", spec.getJobs().get(1).getName());
+        assertArrayEquals(new String[] {"--key-pattern", ".*_sk$", "--my-url", "my", "--my-db", "shard_1",
+                "--pg-url", "pg", "t_one", "t_two"}, spec.toArguments(spec.getJobs().get(0)));
+        assertArrayEquals(new String[] {"--key-pattern", ".*_sk$", "--tables-only", "--my-url", "my",
+                "--my-db", "shard_2", "--pg-url", "pg", "t_one"}, spec.toArguments(spec.getJobs().get(1)));
+    }
+
+    @Test public void specWithoutJobs() throws IOException {
+        write("{\"concurrency\": 2}");
+
+        assertNull(JobSpec.read(file));
+    }
+
+    @Test public void invalidSpec() throws IOException {
+        write("{\"jobs\": ");
+
+        assertNull(JobSpec.read(file));
+    }
+}
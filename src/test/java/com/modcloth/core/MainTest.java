@@ -0,0 +1,124 @@
+package com.modcloth.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.FingerprintStore;
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MainTest {
+    private TableDefinition table;
+
+    @Mock private OptionParser options;
+    @Mock private ConnectionManager pgConnectionManager;
+    @Mock private Connection connection;
+    @Mock private Statement statement;
+    @Mock private ResultSet resultSet;
+
+    @Before public void setUp() throws SQLException {
+        table = new TableDefinition("table_one", ".*_sk$");
+        table.addColumnDefinition(new ColumnDefinition("table_sk", Types.INTEGER, "NO", 0, 0, null, "YES"));
+
+        when(pgConnectionManager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(options.getArguments()).thenReturn(Arrays.asList("table_one"));
+        when(options.getSourceDbNames()).thenReturn(Arrays.asList("shop_one"));
+        when(options.getTablesOnly()).thenReturn(true);
+        when(options.getSkipUnchanged()).thenReturn(true);
+        when(options.getShardColumn()).thenReturn("shard");
+        when(options.getIndexThreads()).thenReturn(1);
+        when(options.getAnalyzeThreads()).thenReturn(1);
+        when(options.getValidateThreads()).thenReturn(1);
+    }
+
+    @Test public void foreignKeysOfUnchangedTablesToConvertedTablesAreAddedAgain() throws SQLException {
+        TableDefinition child = new TableDefinition("child", ".*_sk$");
+        child.addColumnDefinition(new ColumnDefinition("child_sk", Types.INTEGER, "NO", 0, 0, null, "YES"));
+        child.addColumnDefinition(new ColumnDefinition("table_sk", Types.INTEGER, "NO", 0, 0, null, "NO"));
+        child.addForeignKeyDefinition(new ForeignKeyDefinition("fk_table_one", "table_sk", "table_one", "table_sk",
+                1, DatabaseMetaData.importedKeyCascade, DatabaseMetaData.importedKeyRestrict));
+        ArgumentCaptor<String> executed = ArgumentCaptor.forClass(String.class);
+
+        when(options.getArguments()).thenReturn(Arrays.asList("table_one", "child"));
+        when(options.getTablesOnly()).thenReturn(false);
+        when(options.getShardColumn()).thenReturn(null);
+        when(options.getForeignKeys()).thenReturn(true);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString("relname")).thenReturn("child");
+        when(resultSet.getString("description")).thenReturn("schema-convert fingerprint " + child.getFingerprint());
+
+        Main.convert(options, Arrays.asList(table, child), new RunReport(new HashMap<String, Object>()), null,
+                pgConnectionManager);
+
+        verify(statement, atLeastOnce()).execute(executed.capture());
+        assertTrue(executed.getAllValues().contains("DROP TABLE IF EXISTS table_one CASCADE"));
+        assertFalse(executed.getAllValues().toString().contains("CREATE TABLE child"));
+        assertTrue(executed.getAllValues().contains(child.toPostgresForeignKeySyntaxByName().get("fk_table_one")));
+        assertTrue(executed.getAllValues().contains(child.toPostgresValidateForeignKeySyntax("fk_table_one")));
+        assertTrue(executed.getAllValues().get(executed.getAllValues().size() - 1).startsWith(
+                "COMMENT ON TABLE table_one"));
+    }
+
+    @Test public void unchangedTablesWhoseForeignKeysWereLostAreForgotten() throws SQLException {
+        TableDefinition child = new TableDefinition("child", ".*_sk$");
+        child.addForeignKeyDefinition(new ForeignKeyDefinition("fk_table_one", "table_sk", "table_one", "table_sk",
+                1, DatabaseMetaData.importedKeyCascade, DatabaseMetaData.importedKeyRestrict));
+
+        Main.forgetFingerprints(new FingerprintStore(pgConnectionManager), Arrays.asList(child),
+                new HashSet<String>(Arrays.asList("other")));
+        verify(statement, never()).execute(anyString());
+
+        Main.forgetFingerprints(new FingerprintStore(pgConnectionManager), Arrays.asList(child),
+                new HashSet<String>(Arrays.asList("table_one")));
+        verify(statement).execute("COMMENT ON TABLE child IS NULL");
+    }
+
+    @Test public void shardedTablesRecordTheirSourceFingerprint() throws SQLException {
+        ArgumentCaptor<String> executed = ArgumentCaptor.forClass(String.class);
+
+        Main.convert(options, Arrays.asList(table), new RunReport(new HashMap<String, Object>()), null,
+                pgConnectionManager);
+
+        verify(statement, atLeastOnce()).execute(executed.capture());
+        String comment = executed.getValue();
+        assertTrue(comment.startsWith("COMMENT ON TABLE table_one"));
+
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString("relname")).thenReturn("table_one");
+        when(resultSet.getString("description")).thenReturn(comment.substring(comment.indexOf('\'') + 1,
+                comment.length() - 1));
+        List<TableDefinition> changed = new FingerprintStore(pgConnectionManager).removeUnchanged(
+                Arrays.asList(table));
+
+        assertEquals(0, changed.size());
+    }
+}
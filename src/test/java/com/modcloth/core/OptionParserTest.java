@@ -81,4 +81,325 @@ public class OptionParserTest {
                 new String[] { "table_one", "table_two" });
         assertTrue(result);
     }
+
+    @Test public void testDefaultSkipUnchanged() {
+        parser.parse(arguments.toArray(new String[0]));
+
+        assertFalse(parser.getSkipUnchanged());
+    }
+
+    @Test public void testSkipUnchanged() {
+        arguments.add(0, "--skip-unchanged");
+        boolean result = parser.parse(arguments.toArray(new String[0]));
+
+        assertTrue(parser.getSkipUnchanged());
+        assertTrue(result);
+    }
+
+    @Test public void testSkipUnchangedWithTablesOnly() {
+        arguments.add(0, "--skip-unchanged");
+        arguments.add(0, "--tables-only");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testFromSnapshotWithoutMysql() {
+        arguments.remove("--my-url");
+        arguments.remove("mysql_url");
+        arguments.remove("--my-db");
+        arguments.remove("mod_dw");
+        arguments.add(0, "--from-snapshot");
+        arguments.add(1, "schema.snapshot");
+        boolean result = parser.parse(arguments.toArray(new String[0]));
+
+        assertEquals(parser.getSnapshotInput().getName(), "schema.snapshot");
+        assertTrue(result);
+    }
+
+    @Test public void testMissingMysqlWithoutSnapshot() {
+        arguments.remove("--my-url");
+        arguments.remove("mysql_url");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testWriteSnapshot() {
+        arguments.add(0, "--write-snapshot");
+        arguments.add(1, "schema.snapshot");
+        boolean result = parser.parse(arguments.toArray(new String[0]));
+
+        assertEquals(parser.getSnapshotOutput().getName(), "schema.snapshot");
+        assertTrue(result);
+    }
+
+    @Test public void testScriptDirWithoutPostgres() {
+        arguments.remove("--pg-url");
+        arguments.remove("pgsql_url");
+        arguments.add(0, "--script-dir");
+        arguments.add(1, "scripts");
+        arguments.add(0, "--script-per-table");
+        boolean result = parser.parse(arguments.toArray(new String[0]));
+
+        assertEquals(parser.getScriptDirectory().getName(), "scripts");
+        assertTrue(parser.getScriptPerTable());
+        assertTrue(result);
+    }
+
+    @Test public void testScriptPerTableWithoutScriptDir() {
+        arguments.add(0, "--script-per-table");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testProgress() {
+        arguments.add(0, "--progress");
+        arguments.add(1, "10");
+        boolean result = parser.parse(arguments.toArray(new String[0]));
+
+        assertEquals(parser.getProgressSeconds(), 10);
+        assertTrue(result);
+    }
+
+    @Test public void testNegativeProgress() {
+        arguments.add(0, "--progress");
+        arguments.add(1, "-1");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testMergeShards() {
+        arguments.add(0, "--merge-shards");
+        arguments.add(1, "shard_1, shard_2,shard_3");
+        arguments.add(2, "--shard-column");
+        arguments.add(3, "shard");
+        boolean result = parser.parse(arguments.toArray(new String[0]));
+
+        assertTrue(result);
+        assertTrue(parser.getCopyData());
+        assertArrayEquals(parser.getSourceDbNames().toArray(new String[0]),
+                new String[] { "shard_1", "shard_2", "shard_3" });
+        assertEquals(parser.getShardColumn(), "shard");
+    }
+
+    @Test public void testCopyDataFromSourceDb() {
+        arguments.add(0, "--copy-data");
+        boolean result = parser.parse(arguments.toArray(new String[0]));
+
+        assertTrue(result);
+        assertTrue(parser.getCopyData());
+        assertArrayEquals(parser.getSourceDbNames().toArray(new String[0]), new String[] { "mod_dw" });
+    }
+
+    @Test public void testShardColumnWithoutShards() {
+        arguments.add(0, "--shard-column");
+        arguments.add(1, "shard");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testCopyDataWithScripts() {
+        arguments.add(0, "--copy-data");
+        arguments.add(1, "--script-dir");
+        arguments.add(2, "scripts");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testMaintenanceBudget() {
+        arguments.add(0, "--index-threads");
+        arguments.add(1, "4");
+        arguments.add(2, "--maintenance-memory");
+        arguments.add(3, "2048");
+        arguments.add(4, "--maintenance-workers");
+        arguments.add(5, "6");
+        boolean result = parser.parse(arguments.toArray(new String[0]));
+
+        assertTrue(result);
+        assertEquals(4, parser.getIndexThreads());
+        assertEquals(2048, parser.getMaintenanceMemory());
+        assertEquals(6, parser.getMaintenanceWorkers());
+    }
+
+    @Test public void testMaintenanceWorkersWithoutMemory() {
+        arguments.add(0, "--maintenance-workers");
+        arguments.add(1, "6");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testForeignKeysInWorkerMode() {
+        arguments.add(0, "--foreign-keys");
+        arguments.add(1, "--worker");
+        arguments.add(2, "run_1");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testSwapTables() {
+        arguments.remove("--delete-tables");
+        arguments.add(0, "--swap-tables");
+
+        assertTrue(parser.parse(arguments.toArray(new String[0])));
+        assertTrue(parser.getSwapTables());
+    }
+
+    @Test public void testSwapTablesOnly() {
+        arguments.remove("--delete-tables");
+        arguments.add(0, "--swap-tables");
+        arguments.add(1, "--tables-only");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testLatencyTargets() {
+        arguments.add(0, "--my-latency-ms");
+        arguments.add(1, "50");
+        arguments.add(2, "--pg-max-connections");
+        arguments.add(3, "16");
+
+        assertTrue(parser.parse(arguments.toArray(new String[0])));
+        assertEquals(50, parser.getMysqlLatencyMillis());
+        assertEquals(0, parser.getPostgresLatencyMillis());
+        assertEquals(16, parser.getPostgresMaxConnections());
+    }
+
+    @Test public void testLatencyTargetInWorkerMode() {
+        arguments.add(0, "--pg-latency-ms");
+        arguments.add(1, "50");
+        arguments.add(2, "--worker");
+        arguments.add(3, "run_1");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testInsertRows() {
+        arguments.add(0, "--insert-rows");
+        arguments.add(1, "1000");
+
+        assertTrue(parser.parse(arguments.toArray(new String[0])));
+        assertEquals(1000, parser.getInsertRows());
+        assertEquals(10, parser.getInsertCommitBatches());
+    }
+
+    @Test public void testCleanValues() {
+        assertFalse(parser.getCleanValues());
+        arguments.add(0, "--clean-values");
+
+        assertTrue(parser.parse(arguments.toArray(new String[0])));
+        assertTrue(parser.getCleanValues());
+    }
+
+    @Test public void testToMysql() {
+        assertFalse(parser.getToMysql());
+        arguments.add(0, "--to-mysql");
+        arguments.add(1, "--pg-schema");
+        arguments.add(2, "sales");
+        arguments.add(3, "--copy-data");
+
+        assertTrue(parser.parse(arguments.toArray(new String[0])));
+        assertTrue(parser.getToMysql());
+        assertEquals("sales", parser.getPostgresSchemaName());
+        assertEquals("sales", parser.getConfiguration().get("pgSchema"));
+    }
+
+    @Test public void testToMysqlWithSwapTables() {
+        arguments.add(0, "--to-mysql");
+        arguments.add(1, "--swap-tables");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testExportDir() {
+        arguments.remove("--pg-url");
+        arguments.remove("pgsql_url");
+        arguments.add(0, "--export-dir");
+        arguments.add(1, "/tmp/export");
+        arguments.add(2, "--export-file-mb");
+        arguments.add(3, "64");
+
+        assertTrue(parser.parse(arguments.toArray(new String[0])));
+        assertEquals("/tmp/export", parser.getExportDirectory().getPath());
+        assertEquals(64L << 20, parser.getExportFileBytes());
+        assertTrue(parser.getCopyData());
+    }
+
+    @Test public void testExportDirWithMergeShards() {
+        arguments.add(0, "--export-dir");
+        arguments.add(1, "/tmp/export");
+        arguments.add(2, "--merge-shards");
+        arguments.add(3, "shard_1,shard_2");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testPlan() {
+        arguments.add(0, "--plan");
+        arguments.add(1, "--plan-sample-rows");
+        arguments.add(2, "500");
+
+        assertTrue(parser.parse(arguments.toArray(new String[0])));
+        assertTrue(parser.getPlan());
+        assertFalse(parser.getPredict());
+        assertEquals(500, parser.getPlanSampleRows());
+        assertEquals(500, parser.getConfiguration().get("planSampleRows"));
+    }
+
+    @Test public void testPlanWithScriptDir() {
+        arguments.add(0, "--predict");
+        arguments.add(1, "--script-dir");
+        arguments.add(2, "/tmp/scripts");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testInsertCommitMustBePositive() {
+        arguments.add(0, "--insert-commit");
+        arguments.add(1, "0");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testAnalyze() {
+        arguments.add(0, "--analyze");
+        arguments.add(1, "--analyze-threads");
+        arguments.add(2, "8");
+        boolean result = parser.parse(arguments.toArray(new String[0]));
+
+        assertTrue(result);
+        assertTrue(parser.getAnalyze());
+        assertEquals(8, parser.getAnalyzeThreads());
+    }
+
+    @Test public void testAnalyzeWithScripts() {
+        arguments.add(0, "--analyze");
+        arguments.add(1, "--script-dir");
+        arguments.add(2, "scripts");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
+
+    @Test public void testWorker() {
+        arguments.add(0, "--worker");
+        arguments.add(1, "run_1");
+        arguments.add(2, "--worker-name");
+        arguments.add(3, "host_1");
+        arguments.add(4, "--chunk-rows");
+        arguments.add(5, "100000");
+        boolean result = parser.parse(arguments.toArray(new String[0]));
+
+        assertTrue(result);
+        assertEquals(parser.getWorkerRunId(), "run_1");
+        assertEquals(parser.getWorkerName(), "host_1");
+        assertEquals(parser.getChunkRows(), 100000);
+        assertEquals(parser.getLeaseSeconds(), 60);
+    }
+
+    @Test public void testWorkerWithScripts() {
+        arguments.add(0, "--worker");
+        arguments.add(1, "run_1");
+        arguments.add(2, "--script-dir");
+        arguments.add(3, "scripts");
+
+        assertFalse(parser.parse(arguments.toArray(new String[0])));
+    }
 }
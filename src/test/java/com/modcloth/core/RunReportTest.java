@@ -0,0 +1,134 @@
+package com.modcloth.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.modcloth.database.MigrationPlanner.Plan;
+import com.modcloth.metrics.MetricsRegistry;
+
+public class RunReportTest {
+    private RunReport report;
+
+    @Before public void setUp() {
+        Map<String, Object> configuration = new HashMap<String, Object>();
+        configuration.put("myDb", "mod_dw");
+
+        report = new RunReport(configuration);
+        report.table("table_one").setMetadataReadMillis(5);
+        report.table("table_one").addDdlMillis(10);
+        report.table("table_one").addDdlMillis(2);
+        report.table("table_one").setIndexMillis("PRIMARY", 20);
+        report.table("table_one").setIndexMillis("idx_one", 30);
+        report.table("table_one").addData(100, 4096);
+        report.table("table_two").addError("relation \"table_two\" does not exist");
+    }
+
+    @Test public void tableEntriesAreShared() {
+        assertEquals(12, report.table("table_one").getDdlMillis());
+        assertEquals(2, report.getTables().size());
+    }
+
+    @Test public void renamedTableKeepsItsEntry() {
+        report.renameTable("table_one", "table_three");
+
+        assertEquals(12, report.table("table_three").getDdlMillis());
+        assertEquals(2, report.getTables().size());
+        assertTrue(report.getTables().containsKey("table_three"));
+    }
+
+    @Test public void cleanedValuesAreSummed() {
+        report.table("table_one").addCleanedValues(Collections.singletonMap("created_at", 3L));
+        report.table("table_one").addCleanedValues(Collections.singletonMap("created_at", 2L));
+
+        assertEquals(Long.valueOf(5), report.table("table_one").getCleanedValues().get("created_at"));
+    }
+
+    @Test public void jsonReportTest() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.timer("ddl.statement").update(TimeUnit.MILLISECONDS.toNanos(3));
+        report.finish(registry);
+
+        JsonObject json = new JsonParser().parse(report.toJson()).getAsJsonObject();
+        JsonObject tableOne = json.getAsJsonObject("tables").getAsJsonObject("table_one");
+        JsonObject totals = json.getAsJsonObject("totals");
+
+        assertEquals("mod_dw", json.getAsJsonObject("configuration").get("myDb").getAsString());
+        assertEquals(5, tableOne.get("metadataReadMillis").getAsLong());
+        assertEquals(30, tableOne.getAsJsonObject("indexMillis").get("idx_one").getAsLong());
+        assertEquals(4096, tableOne.get("bytes").getAsLong());
+        assertEquals(1, json.getAsJsonObject("tables").getAsJsonObject("table_two").getAsJsonArray("errors").size());
+        assertEquals(2, totals.get("tables").getAsInt());
+        assertEquals(1, totals.get("failedTables").getAsInt());
+        assertEquals(50, totals.get("indexMillis").getAsLong());
+        assertEquals(1, json.getAsJsonObject("metrics").getAsJsonObject("ddl.statement").get("count").getAsLong());
+    }
+
+    @Test public void plannedRunHoldsPredictedAndActualTimes() {
+        report.setPlan(new Plan(1000, 4, 2));
+        report.setPhaseMillis("data", 40);
+        report.table("table_one").addDataMillis(15);
+        report.table("table_one").addDataMillis(25);
+        report.finish(new MetricsRegistry());
+
+        JsonObject json = new JsonParser().parse(report.toJson()).getAsJsonObject();
+
+        assertEquals(1000, json.getAsJsonObject("plan").get("sampleRows").getAsInt());
+        assertEquals(40, json.getAsJsonObject("phaseMillis").get("data").getAsLong());
+        assertEquals(40, json.getAsJsonObject("tables").getAsJsonObject("table_one").get("dataMillis").getAsLong());
+        assertEquals(40, json.getAsJsonObject("totals").get("dataMillis").getAsLong());
+    }
+
+    @Test public void liveReportIsWrittenFromSnapshots() throws InterruptedException {
+        final RunReport.TableReport table = report.table("table_one");
+        final Thread writer = new Thread() {
+            public void run() {
+                for (int i = 0; i < 20000; i++) {
+                    table.setIndexMillis("idx_" + i, i);
+                    table.addError("error " + i);
+                }
+            }
+        };
+        final List<String> keys = new LinkedList<String>();
+
+        writer.start();
+        while (writer.isAlive()) {
+            new JsonParser().parse(report.toJson());
+        }
+        writer.join();
+
+        final JsonObject json = new JsonParser().parse(report.toJson()).getAsJsonObject();
+
+        for (Map.Entry<String, JsonElement> e : json.entrySet()) {
+            keys.add(e.getKey());
+        }
+        assertEquals(Arrays.asList("configuration", "startedAt", "finishedAt", "plan", "phaseMillis", "tables",
+                "totals", "metrics"), keys);
+        assertEquals(20000, json.getAsJsonObject("tables").getAsJsonObject("table_one").getAsJsonArray("errors")
+                .size());
+    }
+
+    @Test public void writeReportTest() throws IOException {
+        File file = File.createTempFile("report", ".json");
+
+        report.finish(new MetricsRegistry());
+        assertTrue(report.write(file));
+        assertTrue(file.length() > 0);
+        file.delete();
+    }
+}
@@ -0,0 +1,170 @@
+package com.modcloth.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ScriptEmitterTest {
+    private File directory;
+    private List<TableDefinition> tables;
+
+    @Mock private TableDefinition tableOne;
+    @Mock private TableDefinition tableTwo;
+
+    @Before public void setUp() throws IOException {
+        directory = File.createTempFile("scripts", "");
+        directory.delete();
+
+        Map<String, List<IndexDefinition>> indexes = new HashMap<String, List<IndexDefinition>>();
+        indexes.put("PRIMARY", Arrays.asList(new IndexDefinition("PRIMARY", "id", false, 1)));
+        indexes.put("idx_name", Arrays.asList(new IndexDefinition("idx_name", "name", true, 1)));
+
+        when(tableOne.getName()).thenReturn("table_one");
+        when(tableOne.toPostgresCreateSyntax()).thenReturn("CREATE TABLE table_one(\nid SERIAL,\nname VARCHAR(20))\n");
+        when(tableOne.getIndexesByName()).thenReturn(indexes);
+        when(tableTwo.getName()).thenReturn("table_two");
+        when(tableTwo.toPostgresCreateSyntax()).thenReturn("CREATE TABLE table_two(\nc_one INTEGER NOT NULL)\n");
+        when(tableTwo.getIndexesByName()).thenReturn(new HashMap<String, List<IndexDefinition>>());
+
+        tables = Arrays.asList(tableOne, tableTwo);
+    }
+
+    @After public void tearDown() {
+        delete(directory);
+    }
+
+    @Test public void emitSingleScripts() throws IOException {
+        ScriptEmitter emitter = new ScriptEmitter(directory, false);
+
+        assertTrue(emitter.emitTables(tables, false, Arrays.asList("table_one", "table_two")));
+        assertTrue(emitter.emitIndexes(tables, Arrays.asList("table_one", "table_two")));
+
+        assertEquals("DROP TABLE IF EXISTS table_one;\nCREATE TABLE table_one(\nid SERIAL,\nname VARCHAR(20));\n" +
+            "DROP TABLE IF EXISTS table_two;\nCREATE TABLE table_two(\nc_one INTEGER NOT NULL);\n",
+            read(new File(directory, "01_tables.sql")));
+        assertEquals("ALTER TABLE table_one ADD PRIMARY KEY (id);\n",
+            read(new File(directory, "02_primary_keys.sql")));
+        assertEquals("CREATE INDEX idx_name ON table_one (name);\n",
+            read(new File(directory, "03_indexes.sql")));
+    }
+
+    @Test public void emitPerTableScripts() throws IOException {
+        ScriptEmitter emitter = new ScriptEmitter(directory, true);
+
+        assertTrue(emitter.emitTables(tables, true, Arrays.asList("table_one")));
+        assertTrue(emitter.emitIndexes(tables, Arrays.asList("table_one")));
+
+        assertEquals("DROP TABLE IF EXISTS table_two;\n",
+            read(new File(directory, "01_tables/table_two.sql")));
+        assertEquals("ALTER TABLE table_one ADD PRIMARY KEY (id);\n",
+            read(new File(directory, "02_primary_keys/table_one.sql")));
+        assertEquals("CREATE INDEX idx_name ON table_one (name);\n",
+            read(new File(directory, "03_indexes/table_one.sql")));
+        assertFalse(new File(directory, "03_indexes/table_two.sql").exists());
+    }
+
+    @Test public void emitForeignKeyScripts() throws IOException {
+        ScriptEmitter emitter = new ScriptEmitter(directory, true);
+        Map<String, List<ForeignKeyDefinition>> keys = new LinkedHashMap<String, List<ForeignKeyDefinition>>();
+        Map<String, String> syntax = new LinkedHashMap<String, String>();
+
+        keys.put("fk_two", Arrays.asList(new ForeignKeyDefinition("fk_two", "id", "table_two", "c_one", 1, 3, 3)));
+        keys.put("fk_three", Arrays.asList(new ForeignKeyDefinition("fk_three", "id", "table_three", "id", 1, 3, 3)));
+        syntax.put("fk_two", "ALTER TABLE table_one ADD CONSTRAINT fk_two FOREIGN KEY (id) REFERENCES table_two (c_one) NOT VALID");
+        syntax.put("fk_three", "ALTER TABLE table_one ADD CONSTRAINT fk_three FOREIGN KEY (id) REFERENCES table_three (id) NOT VALID");
+        when(tableOne.getForeignKeysByName()).thenReturn(keys);
+        when(tableOne.toPostgresForeignKeySyntaxByName()).thenReturn(syntax);
+        when(tableOne.toPostgresValidateForeignKeySyntax("fk_two")).thenReturn("ALTER TABLE table_one VALIDATE CONSTRAINT fk_two");
+        when(tableTwo.getForeignKeysByName()).thenReturn(new LinkedHashMap<String, List<ForeignKeyDefinition>>());
+        when(tableTwo.toPostgresForeignKeySyntaxByName()).thenReturn(new LinkedHashMap<String, String>());
+
+        assertTrue(emitter.emitTables(tables, false, true, Arrays.asList("table_one", "table_two")));
+        assertTrue(emitter.emitForeignKeys(tables, Arrays.asList("table_one", "table_two")));
+
+        assertEquals("DROP TABLE IF EXISTS table_two CASCADE;\nCREATE TABLE table_two(\nc_one INTEGER NOT NULL);\n",
+            read(new File(directory, "01_tables/table_two.sql")));
+        assertEquals("ALTER TABLE table_one ADD CONSTRAINT fk_two FOREIGN KEY (id) REFERENCES table_two (c_one) NOT VALID;\n",
+            read(new File(directory, "04_foreign_keys.sql")));
+        assertEquals("ALTER TABLE table_one VALIDATE CONSTRAINT fk_two;\n",
+            read(new File(directory, "05_validate_foreign_keys/table_one.sql")));
+        assertFalse(new File(directory, "05_validate_foreign_keys/table_two.sql").exists());
+    }
+
+    @Test public void emitLargeScript() throws IOException {
+        ScriptEmitter emitter = new ScriptEmitter(directory, false);
+        List<String> names = new LinkedList<String>();
+
+        for (int i = 0; i < 5000; i++) {
+            names.add("table_one");
+        }
+        List<TableDefinition> many = new LinkedList<TableDefinition>();
+        for (int i = 0; i < 5000; i++) {
+            many.add(tableOne);
+        }
+
+        assertTrue(emitter.emitTables(many, false, names));
+        assertEquals(5000 * "DROP TABLE IF EXISTS table_one;\nCREATE TABLE table_one(\nid SERIAL,\nname VARCHAR(20));\n".length(),
+            new File(directory, "01_tables.sql").length());
+    }
+
+    @Test public void failedScriptFailsTheRun() throws IOException {
+        final OptionParser options = mock(OptionParser.class);
+
+        assertTrue(directory.createNewFile());
+        when(options.getScriptDirectory()).thenReturn(directory);
+        when(options.getArguments()).thenReturn(Arrays.asList("table_one", "table_two"));
+
+        assertFalse(Main.writeScripts(options, tables));
+        assertFalse(Main.execute(options, new RunReport(new HashMap<String, Object>()), tables, null, null));
+    }
+
+    private String read(File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        byte[] bytes = new byte[(int) file.length()];
+
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += input.read(bytes, offset, bytes.length - offset);
+            }
+        } finally {
+            input.close();
+        }
+        return new String(bytes, "UTF-8");
+    }
+
+    private void delete(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
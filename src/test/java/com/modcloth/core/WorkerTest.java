@@ -0,0 +1,142 @@
+package com.modcloth.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.modcloth.database.SnapshotReader;
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.WorkQueue.WorkItem;
+import com.modcloth.database.managers.ConnectionManager;
+
+public class WorkerTest {
+    private List<TableDefinition> tableDefinitions;
+    private ConnectionManager myConnectionManager;
+    private ConnectionManager pgConnectionManager;
+    private Statement pgStatement;
+    private ResultSet resultSet;
+
+    @Before public void setUp() throws IOException, SQLException {
+        File snapshot = File.createTempFile("snapshot", ".txt");
+        OutputStream out = new FileOutputStream(snapshot);
+
+        out.write(("schema-convert snapshot 1\nT\torders\nC\torder_sk\t4\tNO\t0\t0\t\\N\tYES\n" +
+                "C\ttotal\t4\tYES\t0\t0\t\\N\tNO\nI\tPRIMARY\torder_sk\tfalse\t1\n" +
+                "I\tidx_total\ttotal\ttrue\t1\n").getBytes("UTF-8"));
+        out.close();
+        tableDefinitions = new SnapshotReader(snapshot, ".*_sk$").read();
+        snapshot.delete();
+        myConnectionManager = mock(ConnectionManager.class);
+
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+
+        resultSet = mock(ResultSet.class);
+        when(myConnectionManager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+
+        Connection pgConnection = mock(Connection.class);
+
+        pgConnectionManager = mock(ConnectionManager.class);
+        pgStatement = mock(Statement.class);
+        when(pgConnectionManager.openConnection()).thenReturn(pgConnection);
+        when(pgConnection.createStatement()).thenReturn(pgStatement);
+    }
+
+    private Worker worker(String... options) {
+        final List<String> args = new LinkedList<String>(Arrays.asList("--my-url", "mysql_url", "--pg-url",
+                "pgsql_url", "--my-db", "shop", "--key-pattern", ".*_sk$", "--worker", "run_1"));
+        final OptionParser optionParser = new OptionParser();
+
+        args.addAll(Arrays.asList(options));
+        args.add("orders");
+        assertTrue(optionParser.parse(args.toArray(new String[0])));
+        return new Worker(optionParser, new RunReport(optionParser.getConfiguration()), tableDefinitions,
+                myConnectionManager, pgConnectionManager);
+    }
+
+    private static String[] names(List<WorkItem> items) {
+        final List<String> names = new LinkedList<String>();
+
+        for (WorkItem i : items) {
+            names.add(i.getName() + "@" + i.getPhase());
+        }
+        Collections.sort(names);
+        return names.toArray(new String[0]);
+    }
+
+    @Test public void planWithoutData() {
+        assertArrayEquals(new String[] { "index:orders:PRIMARY@3", "index:orders:idx_total@3", "table:orders@1" },
+                names(worker().plan()));
+    }
+
+    @Test public void planSplitsCopyIntoKeyRanges() throws SQLException {
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getLong(1)).thenReturn(1L);
+        when(resultSet.getLong(2)).thenReturn(1000L);
+
+        List<WorkItem> items = worker("--copy-data", "--chunk-rows", "400").plan();
+
+        assertArrayEquals(new String[] { "data:orders:shop:1@2", "data:orders:shop:401@2", "data:orders:shop:801@2",
+                "index:orders:PRIMARY@3", "index:orders:idx_total@3", "sequences:orders@3", "table:orders@1" },
+                names(items));
+        assertEquals(Long.valueOf(801), items.get(3).getRangeStart());
+        assertEquals(Long.valueOf(1001), items.get(3).getRangeEnd());
+    }
+
+    @Test public void planIndexesOnly() {
+        assertArrayEquals(new String[] { "index:orders:PRIMARY@3", "index:orders:idx_total@3" },
+                names(worker("--indexes-only").plan()));
+    }
+
+    @Test public void planAnalyzesLast() {
+        assertArrayEquals(new String[] { "analyze:orders@4", "index:orders:PRIMARY@3", "index:orders:idx_total@3",
+                "table:orders@1" }, names(worker("--analyze").plan()));
+    }
+
+    @Test public void unknownItemKind() {
+        assertEquals("Unknown work item kind vacuum",
+                worker().execute(new WorkItem("vacuum:orders", 3, "vacuum", "orders", null, null, null)));
+    }
+
+    @Test public void retriedShardChunkWithoutShardColumnDeletesNothing() throws SQLException {
+        final Worker worker = worker("--merge-shards", "shard_1,shard_2", "--copy-data", "--chunk-rows", "400");
+        final String error = worker.execute(new WorkItem("data:orders:shard_2:401", 2, "data", "orders", "shard_2",
+                401L, 801L, 2));
+
+        assertTrue(error.startsWith("Cannot retry the copy from shard_2 without --shard-column"));
+        verify(pgConnectionManager, never()).openConnection();
+        verify(pgStatement, never()).execute(anyString());
+    }
+
+    @Test public void retriedShardChunkDeletesOnlyItsShard() throws SQLException {
+        final Worker worker = worker("--merge-shards", "shard_1,shard_2", "--shard-column", "shard", "--copy-data",
+                "--chunk-rows", "400");
+
+        worker.execute(new WorkItem("data:orders:shard_2:401", 2, "data", "orders", "shard_2", 401L, 801L, 2));
+        verify(pgStatement).execute(
+                "DELETE FROM orders WHERE order_sk >= 401 AND order_sk < 801 AND shard = 'shard_2'");
+    }
+}
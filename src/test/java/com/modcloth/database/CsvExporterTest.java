@@ -0,0 +1,155 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.ExportManifest.FileEntry;
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CsvExporterTest {
+    private File directory;
+    private TableDefinition table;
+
+    @Mock private ConnectionManager sourceManager;
+    @Mock private Connection source;
+    @Mock private Statement statement;
+    @Mock private ResultSet resultSet;
+
+    @Before public void setUp() throws IOException, SQLException {
+        directory = File.createTempFile("export", "");
+        directory.delete();
+        directory.mkdirs();
+
+        table = new TableDefinition("orders", ".*_sk$");
+        table.addColumnDefinition(new ColumnDefinition("order_sk", Types.BIGINT, "NO", 0, 0, null, "YES"));
+        table.addColumnDefinition(new ColumnDefinition("note", Types.VARCHAR, "YES", 0, 0, null, "NO"));
+        table.addColumnDefinition(new ColumnDefinition("flag", Types.BIT, "YES", 0, 0, null, "NO"));
+        table.addColumnDefinition(new ColumnDefinition("data", Types.VARBINARY, "YES", 0, 0, null, "NO"));
+        table.addColumnDefinition(new ColumnDefinition("total", Types.DECIMAL, "YES", 10, 2, null, "NO"));
+
+        when(sourceManager.openConnection()).thenReturn(source);
+        when(source.createStatement(anyInt(), anyInt())).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+    }
+
+    @After public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test public void writesQuotedRowsWithHeader() throws IOException, SQLException {
+        final CsvExporter exporter = new CsvExporter(sourceManager, directory, 1 << 20);
+
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getLong(1)).thenReturn(1L, 2L);
+        when(resultSet.getString(2)).thenReturn("say \"hi\", then", "");
+        when(resultSet.getBoolean(3)).thenReturn(true);
+        when(resultSet.getBytes(4)).thenReturn(new byte[] { 0x01, (byte) 0xff }, new byte[][] { null });
+        when(resultSet.getBigDecimal(5)).thenReturn(new BigDecimal("12.50"), new BigDecimal[] { null });
+        when(resultSet.wasNull()).thenReturn(false, false, false, false, false, false, false, true, true, true);
+
+        assertTrue(exporter.export(table, "shop", 1L, 101L, "orders.00001"));
+        verify(statement).executeQuery(
+                "SELECT order_sk, note, flag, data, total FROM shop.orders WHERE order_sk >= 1 AND order_sk < 101");
+        assertEquals("order_sk,note,flag,data,total\r\n1,\"say \"\"hi\"\", then\",true,01ff,12.50\r\n2,\"\",,,\r\n",
+                read(new File(directory, "orders.00001.0001.csv")));
+        assertEquals(1, exporter.getFiles().size());
+        assertEquals("orders.00001.0001.csv", exporter.getFiles().get(0).getName());
+        assertEquals(2, exporter.getFiles().get(0).getRows());
+        assertEquals(new File(directory, "orders.00001.0001.csv").length(), exporter.getFiles().get(0).getBytes());
+        assertEquals(2, exporter.getRows());
+        verify(sourceManager).closeConnection(source);
+    }
+
+    @Test public void rollsFilesAtSizeLimit() throws SQLException {
+        final CsvExporter exporter = new CsvExporter(sourceManager, directory, 1);
+        final String note = StringUtils.repeat('x', CsvExporter.CHUNK_SIZE * 2 / 3);
+
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        when(resultSet.getString(2)).thenReturn(note);
+
+        assertTrue(exporter.export(table, "shop", null, null, "orders"));
+
+        final List<FileEntry> files = exporter.getFiles();
+
+        assertEquals(2, files.size());
+        assertEquals("orders.0001.csv", files.get(0).getName());
+        assertEquals(2, files.get(0).getRows());
+        assertEquals("orders.0002.csv", files.get(1).getName());
+        assertEquals(1, files.get(1).getRows());
+        assertArrayEquals(new String[] { "orders.0001.csv", "orders.0002.csv" }, sortedNames());
+    }
+
+    @Test public void failedExportDeletesFiles() throws SQLException {
+        final CsvExporter exporter = new CsvExporter(sourceManager, directory, 1);
+
+        when(resultSet.next()).thenReturn(true, true).thenThrow(new SQLException("Lost connection"));
+        when(resultSet.getString(2)).thenReturn(StringUtils.repeat('x', CsvExporter.CHUNK_SIZE));
+
+        assertFalse(exporter.export(table, "shop", null, null, "orders"));
+        assertEquals("Lost connection", exporter.getLastError());
+        assertTrue(exporter.getFiles().isEmpty());
+        assertEquals(0, directory.listFiles().length);
+        verify(sourceManager).closeConnection(source);
+    }
+
+    @Test public void emptyRangeWritesNoFile() {
+        final CsvExporter exporter = new CsvExporter(sourceManager, directory, 1 << 20);
+
+        assertTrue(exporter.export(table, "shop", 500L, 600L, "orders.00006"));
+        assertTrue(exporter.getFiles().isEmpty());
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    private String[] sortedNames() {
+        final String[] names = directory.list();
+
+        Arrays.sort(names);
+        return names;
+    }
+
+    private String read(File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        byte[] bytes = new byte[(int) file.length()];
+
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                offset += input.read(bytes, offset, bytes.length - offset);
+            }
+        } finally {
+            input.close();
+        }
+        return new String(bytes, "UTF-8");
+    }
+}
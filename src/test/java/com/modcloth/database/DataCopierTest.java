@@ -0,0 +1,198 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DataCopierTest {
+    private DataCopier copier;
+    private TableDefinition table;
+    private Connection destination;
+
+    @Mock private ConnectionManager sourceManager;
+    @Mock private ConnectionManager destinationManager;
+    @Mock private Connection source;
+    @Mock private Statement statement;
+    @Mock private ResultSet resultSet;
+    @Mock private CopyManager copyManager;
+    @Mock private CopyIn copyIn;
+
+    @Before public void setUp() throws SQLException {
+        copier = new DataCopier(sourceManager, destinationManager);
+        table = new TableDefinition("table_one", ".*_sk$");
+        table.addColumnDefinition(new ColumnDefinition("table_sk", Types.INTEGER, "NO", 0, 0, null, "YES"));
+        table.addColumnDefinition(new ColumnDefinition("c_text", Types.VARCHAR, "YES", 10, 0, null, "NO"));
+        table.addColumnDefinition(new ColumnDefinition("c_flag", Types.BIT, "YES", 0, 0, null, "NO"));
+        table.addColumnDefinition(new ColumnDefinition("c_blob", Types.LONGVARBINARY, "YES", 0, 0, null, "NO"));
+        destination = mock(Connection.class, withSettings().extraInterfaces(PGConnection.class));
+
+        when(sourceManager.openConnection()).thenReturn(source);
+        when(destinationManager.openConnection()).thenReturn(destination);
+        when(source.createStatement(anyInt(), anyInt())).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(((PGConnection) destination).getCopyAPI()).thenReturn(copyManager);
+        when(copyManager.copyIn(anyString())).thenReturn(copyIn);
+    }
+
+    @Test public void copiesRowsInTextFormat() throws SQLException {
+        ArgumentCaptor<byte[]> data = ArgumentCaptor.forClass(byte[].class);
+
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString(1)).thenReturn("1", "2");
+        when(resultSet.getString(2)).thenReturn("tab\there", new String[] { null });
+        when(resultSet.getBoolean(3)).thenReturn(true, false);
+        when(resultSet.wasNull()).thenReturn(false, true);
+        when(resultSet.getBytes(4)).thenReturn(new byte[] { 0x01, (byte) 0xff }, new byte[][] { null });
+
+        assertTrue(copier.copy(table, "shard_1", "shard", "shard_1"));
+        verify(statement).executeQuery("SELECT table_sk, c_text, c_flag, c_blob FROM shard_1.table_one");
+        verify(copyManager).copyIn("COPY table_one (shard, table_sk, c_text, c_flag, c_blob) FROM STDIN");
+        verify(copyIn).writeToCopy(data.capture(), eq(0), anyInt());
+        verify(copyIn).endCopy();
+        assertEquals("shard_1\t1\ttab\\there\tt\t\\\\x01ff\nshard_1\t2\t\\N\t\\N\t\\N\n",
+                new String(data.getValue()));
+        assertEquals(2, copier.getRows());
+        assertEquals(data.getValue().length, copier.getBytes());
+        verify(sourceManager).closeConnection(source);
+        verify(destinationManager).closeConnection(destination);
+    }
+
+    @Test public void failedReadCancelsCopy() throws SQLException {
+        when(resultSet.next()).thenThrow(new SQLException("Lost connection"));
+        when(copyIn.isActive()).thenReturn(true);
+
+        assertFalse(copier.copy(table, "shard_1"));
+        assertEquals("Lost connection", copier.getLastError());
+        verify(copyIn).cancelCopy();
+        verify(copyIn, never()).endCopy();
+        verify(destinationManager).closeConnection(destination);
+    }
+
+    @Test public void destinationMustBePostgres() {
+        when(destinationManager.openConnection()).thenReturn(mock(Connection.class));
+
+        assertFalse(copier.copy(table, "shard_1"));
+        assertEquals("Destination is not a PostgreSQL connection", copier.getLastError());
+    }
+
+    @Test public void escapesSpecialCharacters() {
+        assertEquals("a\\\\b\\nc\\rd\\te", DataCopier.escape("a\\b\nc\rd\te"));
+        assertEquals("plain", DataCopier.escape("plain"));
+    }
+
+    @Test public void copyStatementWithoutExtraColumn() {
+        assertEquals("COPY table_one (table_sk, c_text, c_flag, c_blob) FROM STDIN",
+                DataCopier.toCopyStatement(table, null));
+    }
+
+    @Test public void copyStatementWithDestinationTable() {
+        assertEquals("COPY table_one__staging (shard, table_sk, c_text, c_flag, c_blob) FROM STDIN",
+                DataCopier.toCopyStatement(table, "shard", "table_one__staging"));
+    }
+
+    @Test public void largeTablesAreCopiedInChunks() throws SQLException {
+        final StringBuilder value = new StringBuilder();
+
+        while (value.length() < DataCopier.CHUNK_SIZE / 4) {
+            value.append("0123456789");
+        }
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        when(resultSet.getString(anyInt())).thenReturn(value.toString());
+
+        assertTrue(copier.copy(table, null));
+        verify(copyIn, times(2)).writeToCopy(any(byte[].class), eq(0), anyInt());
+        assertEquals(3, copier.getRows());
+    }
+
+    @Test public void insertsRowsWhenCopyIsNotAvailable() throws SQLException {
+        final Connection plain = mock(Connection.class);
+        final PreparedStatement full = mock(PreparedStatement.class);
+        final PreparedStatement last = mock(PreparedStatement.class);
+
+        when(destinationManager.openConnection()).thenReturn(plain);
+        when(plain.prepareStatement("INSERT INTO table_one (table_sk, c_text, c_flag, c_blob) VALUES " +
+                "(?, ?, ?, ?), (?, ?, ?, ?)")).thenReturn(full);
+        when(plain.prepareStatement("INSERT INTO table_one (table_sk, c_text, c_flag, c_blob) VALUES " +
+                "(?, ?, ?, ?)")).thenReturn(last);
+        when(resultSet.next()).thenReturn(true, true, true, true, true, false);
+        when(resultSet.getLong(1)).thenReturn(1L, 2L, 3L, 4L, 5L);
+        copier.setInsertBatches(2, 1);
+
+        assertTrue(copier.copy(table, null));
+        verify(full, times(2)).executeUpdate();
+        verify(last).executeUpdate();
+        verify(full).setLong(1, 3L);
+        verify(full).setLong(5, 4L);
+        verify(last).setLong(1, 5L);
+        verify(plain, times(4)).commit();
+        verify(copyManager, never()).copyIn(anyString());
+        assertEquals(5, copier.getRows());
+        verify(destinationManager).closeConnection(plain);
+    }
+
+    @Test public void failedInsertRollsBack() throws SQLException {
+        final Connection plain = mock(Connection.class);
+        final PreparedStatement insert = mock(PreparedStatement.class);
+
+        when(destinationManager.openConnection()).thenReturn(plain);
+        when(plain.prepareStatement(anyString())).thenReturn(insert);
+        when(insert.executeUpdate()).thenThrow(new SQLException("permission denied"));
+        when(resultSet.next()).thenReturn(true, false);
+        copier.setInsertBatches(100, 10);
+
+        assertFalse(copier.copy(table, null));
+        assertEquals("permission denied", copier.getLastError());
+        verify(plain).rollback();
+        verify(plain, never()).commit();
+        verify(plain).setAutoCommit(true);
+        verify(insert).close();
+    }
+
+    @Test public void cleanedValuesAreCounted() throws SQLException {
+        ArgumentCaptor<byte[]> data = ArgumentCaptor.forClass(byte[].class);
+
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getLong(1)).thenReturn(4294967295L);
+        when(resultSet.getString(2)).thenReturn("a\0b");
+        when(resultSet.getBoolean(3)).thenReturn(true);
+        copier.setCleanValues(true);
+
+        assertTrue(copier.copy(table, null));
+        verify(copyIn).writeToCopy(data.capture(), eq(0), anyInt());
+        assertEquals("2147483647\tab\tt\t\\N\n", new String(data.getValue()));
+        assertEquals(2, copier.getTransformed().size());
+        assertEquals(Long.valueOf(1), copier.getTransformed().get("table_sk"));
+        assertEquals(Long.valueOf(1), copier.getTransformed().get("c_text"));
+    }
+}
@@ -0,0 +1,61 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.modcloth.database.ExportManifest.FileEntry;
+import com.modcloth.database.ExportManifest.TableEntry;
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+
+public class ExportManifestTest {
+    private ExportManifest manifest;
+    private TableDefinition table;
+
+    @Before public void setUp() {
+        manifest = new ExportManifest("csv");
+        table = new TableDefinition("orders", ".*_sk$");
+        table.addColumnDefinition(new ColumnDefinition("order_sk", Types.BIGINT, "NO", 0, 0, null, "YES"));
+        table.addColumnDefinition(new ColumnDefinition("flag", Types.TINYINT, "YES", 0, 0, null, "NO"));
+    }
+
+    @Test public void filesAreSummedAndOrdered() {
+        final TableEntry entry = manifest.table(table);
+
+        entry.addFiles(Arrays.asList(new FileEntry("orders.00002.0001.csv", 101L, 201L, 5, 50)));
+        entry.addFiles(Arrays.asList(new FileEntry("orders.00001.0001.csv", 1L, 101L, 7, 70),
+                new FileEntry("orders.00001.0002.csv", 1L, 101L, 3, 30)));
+
+        final String json = manifest.toJson();
+
+        assertEquals(15, entry.getRows());
+        assertTrue(entry.getComplete());
+        assertTrue(json.indexOf("orders.00001.0001.csv") < json.indexOf("orders.00001.0002.csv"));
+        assertTrue(json.indexOf("orders.00001.0002.csv") < json.indexOf("orders.00002.0001.csv"));
+        assertTrue(json.contains("\"keyName\": \"order_sk\""));
+        assertTrue(json.contains("\"type\": \"BOOLEAN\""));
+        assertTrue(json.contains("\"type\": \"BIGINT\""));
+    }
+
+    @Test public void failedTablesAreIncomplete() throws IOException {
+        final File directory = File.createTempFile("export", "");
+
+        directory.delete();
+        directory.mkdirs();
+        manifest.table(table).failed();
+
+        assertFalse(manifest.getTables().get("orders").getComplete());
+        assertTrue(manifest.write(directory));
+        assertTrue(new File(directory, ExportManifest.FILE_NAME).length() > 0);
+        new File(directory, ExportManifest.FILE_NAME).delete();
+        directory.delete();
+    }
+}
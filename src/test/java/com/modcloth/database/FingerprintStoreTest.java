@@ -0,0 +1,75 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FingerprintStoreTest {
+    private FingerprintStore store;
+    private TableDefinition tableOne;
+    private TableDefinition tableTwo;
+
+    @Mock private ConnectionManager manager;
+    @Mock private Connection connection;
+    @Mock private Statement statement;
+    @Mock private ResultSet resultSet;
+
+    @Before public void setUp() throws SQLException {
+        store = new FingerprintStore(manager);
+
+        tableOne = new TableDefinition("table_one", ".*_sk$");
+        tableOne.addColumnDefinition(new ColumnDefinition("c_one", Types.INTEGER, "NO", 0, 0, "", "NO"));
+        tableTwo = new TableDefinition("table_two", ".*_sk$");
+        tableTwo.addColumnDefinition(new ColumnDefinition("c_one", Types.VARCHAR, "NO", 10, 0, "", "NO"));
+
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+    }
+
+    @Test public void removeUnchangedTables() throws SQLException {
+        when(statement.executeQuery(org.mockito.Matchers.anyString())).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        when(resultSet.getString("relname")).thenReturn("table_one", "table_two", "table_three");
+        when(resultSet.getString("description")).thenReturn(
+                FingerprintStore.COMMENT_PREFIX + tableOne.getFingerprint(),
+                FingerprintStore.COMMENT_PREFIX + "0123",
+                "some other comment");
+
+        List<TableDefinition> tables = new LinkedList<TableDefinition>();
+        tables.add(tableOne);
+        tables.add(tableTwo);
+
+        assertArrayEquals(new TableDefinition[] { tableTwo },
+                store.removeUnchanged(tables).toArray(new TableDefinition[0]));
+        verify(manager).closeConnection(connection);
+    }
+
+    @Test public void recordFingerprint() throws SQLException {
+        String comment = "COMMENT ON TABLE table_one IS '" +
+                FingerprintStore.COMMENT_PREFIX + tableOne.getFingerprint() + "'";
+
+        assertEquals(comment, FingerprintStore.toCommentStatement(tableOne));
+
+        store.record(tableOne);
+        verify(statement).execute(comment);
+    }
+}
@@ -0,0 +1,64 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IndexCardinalityReaderTest {
+    private IndexCardinalityReader reader;
+
+    @Mock private ConnectionManager manager;
+    @Mock private Connection connection;
+    @Mock private PreparedStatement statement;
+    @Mock private ResultSet resultSet;
+
+    @Before public void setUp() throws SQLException {
+        reader = new IndexCardinalityReader(manager, "shard_002");
+
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.prepareStatement(Matchers.anyString())).thenReturn(statement);
+    }
+
+    @Test public void readTest() throws SQLException {
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        when(resultSet.getString("TABLE_NAME")).thenReturn("table_one", "table_one", "table_two");
+        when(resultSet.getString("INDEX_NAME")).thenReturn("PRIMARY", "idx_one", "PRIMARY");
+        when(resultSet.getInt("SEQ_IN_INDEX")).thenReturn(1, 2, 1);
+        when(resultSet.getLong("CARDINALITY")).thenReturn(1000L, 30L, 5L);
+
+        Map<String, Map<String, Long>> cardinalities = reader.read();
+
+        verify(statement).setString(1, "shard_002");
+        verify(manager).closeConnection(connection);
+        assertEquals(2, cardinalities.size());
+        assertEquals(Long.valueOf(30),
+                cardinalities.get("table_one").get(TableDefinition.cardinalityKey("idx_one", 2)));
+        assertEquals(Long.valueOf(5),
+                cardinalities.get("table_two").get(TableDefinition.cardinalityKey("PRIMARY", 1)));
+    }
+
+    @Test public void readFailsTest() throws SQLException {
+        when(statement.executeQuery()).thenThrow(new SQLException("Access denied"));
+
+        assertNull(reader.read());
+        verify(manager).closeConnection(connection);
+    }
+}
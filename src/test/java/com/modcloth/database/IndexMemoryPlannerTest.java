@@ -0,0 +1,93 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+import com.modcloth.database.TableStatisticsReader.TableStatistics;
+
+public class IndexMemoryPlannerTest {
+    private TableDefinition table;
+    private Map<String, TableStatistics> statistics;
+
+    @Before public void setUp() {
+        table = new TableDefinition("users", ".*_sk$");
+        table.addColumnDefinition(new ColumnDefinition("id", Types.INTEGER, "NO", 0, 0, null, "YES"));
+        table.addColumnDefinition(new ColumnDefinition("email", Types.VARCHAR, "NO", 255, 0, null, "NO"));
+        table.addColumnDefinition(new ColumnDefinition("status", Types.VARCHAR, "NO", 20, 0, null, "NO"));
+        table.addIndexDefinition(new IndexDefinition("PRIMARY", "id", false, 1));
+        table.addIndexDefinition(new IndexDefinition("idx_email", "email", true, 1));
+
+        statistics = new HashMap<String, TableStatistics>();
+        statistics.put("users", new TableStatistics(1000000, 100000000, 0));
+    }
+
+    @Test public void capTest() {
+        assertEquals(Long.MAX_VALUE, IndexMemoryPlanner.getCap(Arrays.asList(100L, 50L, 10L), 2, 200));
+        assertEquals(100, IndexMemoryPlanner.getCap(Arrays.asList(10L, 300L, 100L), 2, 200));
+        assertEquals(100, IndexMemoryPlanner.getCap(Arrays.asList(300L, 300L), 2, 200));
+        assertEquals(70, IndexMemoryPlanner.getCap(Arrays.asList(10L, 500L, 20L), 3, 100));
+        assertEquals(0, IndexMemoryPlanner.getCap(Arrays.asList(2L, 2L), 2, 0));
+    }
+
+    @Test public void columnWidthsTest() {
+        final Map<String, Long> widths = IndexMemoryPlanner.estimateColumnWidths(table, statistics.get("users"));
+
+        assertEquals(Long.valueOf(4), widths.get("id"));
+        assertEquals(Long.valueOf(89), widths.get("email"));
+        assertEquals(Long.valueOf(6), widths.get("status"));
+        assertEquals(Long.valueOf(32), IndexMemoryPlanner.estimateColumnWidths(table, null).get("email"));
+    }
+
+    @Test public void planTest() {
+        final IndexMemoryPlanner planner = new IndexMemoryPlanner(128, 4, 2);
+
+        planner.plan(Collections.singletonList(table), Collections.singletonList("users"), statistics);
+
+        assertEquals(52000000, planner.getBudget("users", "PRIMARY").getEstimatedBytes());
+        assertEquals(50, planner.getBudget("users", "PRIMARY").getMemoryMegabytes());
+        assertEquals(0, planner.getBudget("users", "PRIMARY").getParallelWorkers());
+        assertEquals(137000000, planner.getBudget("users", "idx_email").getEstimatedBytes());
+        assertEquals(78, planner.getBudget("users", "idx_email").getMemoryMegabytes());
+        assertEquals(1, planner.getBudget("users", "idx_email").getParallelWorkers());
+        assertArrayEquals(new String[] { "SET LOCAL maintenance_work_mem = '78MB'",
+                "SET LOCAL max_parallel_maintenance_workers = 1", "CREATE INDEX idx_email ON users (email)" },
+                planner.toBuildStatements("users", "idx_email", "CREATE INDEX idx_email ON users (email)")
+                .toArray(new String[0]));
+    }
+
+    @Test public void planFromCardinalityTest() {
+        final IndexMemoryPlanner planner = new IndexMemoryPlanner(1024, -1, 4);
+
+        table.addIndexDefinition(new IndexDefinition("idx_status", "status", true, 1, 100000));
+        planner.plan(Collections.singletonList(table), Collections.singletonList("users"),
+                new HashMap<String, TableStatistics>());
+
+        assertEquals(100000 * (48 + 20), planner.getBudget("users", "idx_status").getEstimatedBytes());
+        assertEquals(7, planner.getBudget("users", "idx_status").getMemoryMegabytes());
+        assertEquals(-1, planner.getBudget("users", "idx_status").getParallelWorkers());
+        assertArrayEquals(new String[] { "SET LOCAL maintenance_work_mem = '7MB'", "CREATE INDEX s" },
+                planner.toBuildStatements("users", "idx_status", "CREATE INDEX s").toArray(new String[0]));
+    }
+
+    @Test public void unplannedIndexTest() {
+        final IndexMemoryPlanner planner = new IndexMemoryPlanner(128, 4, 2);
+
+        planner.plan(Collections.singletonList(table), Collections.<String>emptyList(), statistics);
+
+        assertNull(planner.getBudget("users", "PRIMARY"));
+        assertArrayEquals(new String[] { "CREATE INDEX i" },
+                planner.toBuildStatements("users", "PRIMARY", "CREATE INDEX i").toArray(new String[0]));
+    }
+}
@@ -0,0 +1,121 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.postgresql.PGStatement;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InsertWriterTest {
+    private TableDefinition table;
+
+    @Mock private Connection connection;
+    @Mock private PreparedStatement statement;
+    @Mock private ResultSet resultSet;
+
+    @Before public void setUp() throws SQLException {
+        table = new TableDefinition("orders", ".*_sk$");
+        table.addColumnDefinition(new ColumnDefinition("order_sk", Types.BIGINT, "NO", 0, 0, null, "YES"));
+        table.addColumnDefinition(new ColumnDefinition("total", Types.DECIMAL, "YES", 10, 2, null, "NO"));
+        table.addColumnDefinition(new ColumnDefinition("placed_at", Types.TIMESTAMP, "YES", 0, 0, null, "NO"));
+        table.addColumnDefinition(new ColumnDefinition("status", Types.VARCHAR, "YES", 20, 0, null, "NO"));
+
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+    }
+
+    @Test public void insertStatementTest() {
+        assertEquals("INSERT INTO orders (order_sk, status) VALUES (?, ?), (?, ?), (?, ?)",
+                InsertWriter.toInsertStatement("orders", Arrays.asList("order_sk", "status"), 3));
+    }
+
+    @Test public void bindsValuesByColumnType() throws SQLException {
+        final InsertWriter writer = new InsertWriter(connection, table, "shard", "orders__staging", 10, 5);
+
+        when(resultSet.getLong(1)).thenReturn(7L);
+        when(resultSet.getBigDecimal(2)).thenReturn(new BigDecimal("12.50"));
+        when(resultSet.getString(3)).thenReturn("2020-03-08 02:30:00");
+        when(resultSet.getString(4)).thenReturn(null);
+        when(resultSet.wasNull()).thenReturn(false, false, false, true);
+
+        assertFalse(writer.addRow("shard_1", resultSet));
+        assertEquals(1, writer.flush());
+        verify(connection).setAutoCommit(false);
+        verify(connection).prepareStatement(
+                "INSERT INTO orders__staging (shard, order_sk, total, placed_at, status) VALUES (?, ?, ?, ?, ?)");
+        verify(statement).setString(1, "shard_1");
+        verify(statement).setLong(2, 7L);
+        verify(statement).setBigDecimal(3, new BigDecimal("12.50"));
+        verify(statement).setObject(4, "2020-03-08 02:30:00", Types.OTHER);
+        verify(statement).setNull(5, Types.OTHER);
+        verify(connection, never()).commit();
+    }
+
+    @Test public void reusesStatementAndCommitsEveryFewBatches() throws SQLException {
+        final InsertWriter writer = new InsertWriter(connection, table, null, null, 2, 2);
+
+        when(resultSet.getString(4)).thenReturn("new");
+        for (int i = 0; i < 8; i++) {
+            if (writer.addRow(null, resultSet)) {
+                writer.flush();
+            }
+        }
+        writer.finish();
+        verify(connection, times(1)).prepareStatement(anyString());
+        verify(statement, times(4)).executeUpdate();
+        verify(connection, times(3)).commit();
+        verify(statement).close();
+        verify(connection).setAutoCommit(true);
+    }
+
+    @Test public void statementsStayUnnamedForPoolers() throws SQLException {
+        final PreparedStatement pgStatement = mock(PreparedStatement.class,
+                withSettings().extraInterfaces(PGStatement.class));
+        final InsertWriter writer = new InsertWriter(connection, table, null, null, 1, 1);
+
+        when(connection.prepareStatement(anyString())).thenReturn(pgStatement);
+        writer.addRow(null, resultSet);
+        writer.flush();
+        verify((PGStatement) pgStatement).setPrepareThreshold(0);
+    }
+
+    @Test public void batchesStayWithinParameterLimit() throws SQLException {
+        assertEquals(InsertWriter.MAX_PARAMETERS / 4,
+                new InsertWriter(connection, table, null, null, 100000, 1).getBatchRows());
+        assertEquals(1, new InsertWriter(connection, table, null, null, 0, 1).getBatchRows());
+        assertTrue(new InsertWriter(connection, table, null, null, 1, 1).addRow(null, resultSet));
+    }
+
+    @Test public void abortRollsBack() throws SQLException {
+        final InsertWriter writer = new InsertWriter(connection, table, null, null, 10, 1);
+
+        writer.addRow(null, resultSet);
+        writer.flush();
+        writer.abort();
+        verify(connection).rollback();
+        verify(statement).close();
+        verify(connection).setAutoCommit(true);
+    }
+}
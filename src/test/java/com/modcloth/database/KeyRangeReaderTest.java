@@ -0,0 +1,82 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KeyRangeReaderTest {
+    private KeyRangeReader reader;
+    private TableDefinition table;
+
+    @Mock private ConnectionManager manager;
+    @Mock private Connection connection;
+    @Mock private Statement statement;
+    @Mock private ResultSet resultSet;
+
+    @Before public void setUp() throws SQLException {
+        reader = new KeyRangeReader(manager);
+        table = new TableDefinition("orders", ".*_sk$");
+        table.addColumnDefinition(new ColumnDefinition("order_id", Types.BIGINT, "NO", 0, 0, null, "YES"));
+        table.addColumnDefinition(new ColumnDefinition("name", Types.VARCHAR, "NO", 10, 0, null, "NO"));
+        table.addIndexDefinition(new IndexDefinition("PRIMARY", "order_id", false, 1));
+
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+    }
+
+    @Test public void readsPrimaryKeyRange() throws SQLException {
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getLong(1)).thenReturn(5L);
+        when(resultSet.getLong(2)).thenReturn(900L);
+
+        assertArrayEquals(new long[] { 5, 900 }, reader.read(table, "shard_1"));
+        verify(statement).executeQuery("SELECT MIN(order_id), MAX(order_id) FROM shard_1.orders");
+        verify(manager).closeConnection(connection);
+    }
+
+    @Test public void emptyTable() throws SQLException {
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.wasNull()).thenReturn(true);
+
+        assertEquals(0, reader.read(table, "shard_1").length);
+    }
+
+    @Test public void surrogateKeyWithoutPrimaryKey() {
+        TableDefinition keyless = new TableDefinition("items", ".*_sk$");
+
+        keyless.addColumnDefinition(new ColumnDefinition("item_sk", Types.INTEGER, "NO", 0, 0, null, "NO"));
+
+        assertEquals("item_sk", KeyRangeReader.getIntegerKeyName(keyless));
+    }
+
+    @Test public void noIntegerKey() {
+        TableDefinition textKey = new TableDefinition("codes", ".*_sk$");
+
+        textKey.addColumnDefinition(new ColumnDefinition("code", Types.VARCHAR, "NO", 10, 0, null, "NO"));
+        textKey.addIndexDefinition(new IndexDefinition("PRIMARY", "code", false, 1));
+
+        assertNull(KeyRangeReader.getIntegerKeyName(textKey));
+        assertNull(reader.read(textKey, "shard_1"));
+    }
+}
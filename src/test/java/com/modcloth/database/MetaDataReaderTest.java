@@ -1,6 +1,8 @@
 package com.modcloth.database;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
 import java.sql.Connection;
@@ -34,6 +36,9 @@ public class MetaDataReaderTest {
     @Mock private ResultSet inRs1;
     @Mock private ResultSet inRs2;
 
+    @Mock private ResultSet fkRs1;
+    @Mock private ResultSet fkRs2;
+
     @Before public void setUp() {
         reader = new MetaDataReader(manager, "db_name", "^t1_c1$");
     }
@@ -52,6 +57,9 @@ public class MetaDataReaderTest {
         when(metaData.getIndexInfo("db_name", null, "tb_1", false, true)).thenReturn(inRs1);
         when(metaData.getIndexInfo("db_name", null, "tb_2", false, true)).thenReturn(inRs2);
 
+        when(metaData.getImportedKeys("db_name", null, "tb_1")).thenReturn(fkRs1);
+        when(metaData.getImportedKeys("db_name", null, "tb_2")).thenReturn(fkRs2);
+
         // read first table
         when(tbRs1.next()).thenReturn(true, true, false);
         when(tbRs1.getString("COLUMN_NAME")).thenReturn("t1_c1", "t1_c2");
@@ -85,10 +93,22 @@ public class MetaDataReaderTest {
         when(inRs2.getString("COLUMN_NAME")).thenReturn("t2_c1");
         when(inRs2.getBoolean("NON_UNIQUE")).thenReturn(false);
         when(inRs2.getInt("ORDINAL_POSITION")).thenReturn(1);
+        when(inRs2.getLong("CARDINALITY")).thenReturn(42L);
+
+        // read second table foreign keys
+        when(fkRs2.next()).thenReturn(true, false);
+        when(fkRs2.getString("FK_NAME")).thenReturn("fk_tb_1");
+        when(fkRs2.getString("FKCOLUMN_NAME")).thenReturn("t2_c1");
+        when(fkRs2.getString("PKTABLE_NAME")).thenReturn("tb_1");
+        when(fkRs2.getString("PKCOLUMN_NAME")).thenReturn("t1_c1");
+        when(fkRs2.getInt("KEY_SEQ")).thenReturn(1);
+        when(fkRs2.getInt("UPDATE_RULE")).thenReturn(DatabaseMetaData.importedKeyNoAction);
+        when(fkRs2.getInt("DELETE_RULE")).thenReturn(DatabaseMetaData.importedKeyCascade);
 
         List<String> creates = new LinkedList<String>();
         List<String> indexes = new LinkedList<String>();
-        for (TableDefinition t: reader.read()) {
+        List<TableDefinition> read = reader.read();
+        for (TableDefinition t: read) {
             creates.add(t.toPostgresCreateSyntax().replaceAll("\\n", ""));
             indexes.addAll(t.toPostgresIndexSyntax());
         }
@@ -104,5 +124,15 @@ public class MetaDataReaderTest {
                 "ALTER TABLE tb_1 ADD PRIMARY KEY (t1_c1)",
                 "CREATE UNIQUE INDEX t2_in1 ON tb_2 (t2_c1)"
         });
+
+        assertEquals(0, read.get(0).getIndexDefinitions().get(0).getCardinality());
+        assertEquals(42, read.get(1).getIndexDefinitions().get(0).getCardinality());
+
+        assertTrue(read.get(0).toPostgresForeignKeySyntaxByName().isEmpty());
+        assertEquals("ALTER TABLE tb_2 ADD CONSTRAINT fk_tb_1 FOREIGN KEY (t2_c1) REFERENCES tb_1 (t1_c1) " +
+                "ON DELETE CASCADE NOT VALID", read.get(1).toPostgresForeignKeySyntaxByName().get("fk_tb_1"));
+
+        assertArrayEquals(reader.getReadMillis().keySet().toArray(new String[0]),
+            new String[] { "tb_1", "tb_2" });
     }
 }
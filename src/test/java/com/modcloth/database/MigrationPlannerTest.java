@@ -0,0 +1,126 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.modcloth.database.MigrationPlanner.Plan;
+import com.modcloth.database.MigrationPlanner.TablePlan;
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableStatisticsReader.TableStatistics;
+import com.modcloth.database.managers.ConnectionManager;
+
+public class MigrationPlannerTest {
+    private TableDefinition orders;
+    private TableDefinition customers;
+    private Map<String, TableStatistics> statistics;
+
+    @Before public void setUp() {
+        orders = new TableDefinition("orders", ".*_sk$");
+        orders.addColumnDefinition(new ColumnDefinition("order_sk", Types.BIGINT, "NO", 0, 0, null, "YES"));
+        customers = new TableDefinition("customers", ".*_sk$");
+        customers.addColumnDefinition(new ColumnDefinition("customer_sk", Types.BIGINT, "NO", 0, 0, null, "YES"));
+
+        statistics = new HashMap<String, TableStatistics>();
+        statistics.put("orders", new TableStatistics(100000, 0, 0));
+        statistics.put("customers", new TableStatistics(1000, 0, 0));
+    }
+
+    @Test public void scheduleGivesLongestItemsToFreeThreads() {
+        assertEquals(0, MigrationPlanner.schedule(Collections.<Long>emptyList(), 4));
+        assertEquals(60, MigrationPlanner.schedule(Arrays.asList(10L, 20L, 30L), 1));
+        assertEquals(30, MigrationPlanner.schedule(Arrays.asList(10L, 20L, 30L), 2));
+        assertEquals(50, MigrationPlanner.schedule(Arrays.asList(50L, 10L, 10L, 10L), 3));
+    }
+
+    @Test public void sampleFiguresScaleToTableRows() {
+        assertEquals(1000, MigrationPlanner.scale(10, 100, 10000));
+        assertEquals(10, MigrationPlanner.scale(10, 0, 10000));
+        assertEquals(2000, MigrationPlanner.scaleSort(10, 100, 10000));
+        assertEquals(5, MigrationPlanner.scaleSort(10, 100, 50));
+    }
+
+    @Test public void copyStartupIsNotScaled() {
+        final long millis = 1000000;
+
+        assertEquals(10049, MigrationPlanner.scaleCopy(50 * millis, 1 * millis, 100, 1000000));
+        assertEquals(50, MigrationPlanner.scaleCopy(50 * millis, 1 * millis, 100, 100));
+        assertEquals(50, MigrationPlanner.scaleCopy(50 * millis, 0, 0, 1000000));
+    }
+
+    @Test public void timingsUnderAMillisecondAreScaled() {
+        assertEquals(4000, MigrationPlanner.scaleCopy(400000, 400000, 100, 1000000));
+        assertEquals(4000000000L, MigrationPlanner.scale(400000, 100, 1000000));
+    }
+
+    @Test public void phasesAreSpreadOverThreadsAndShards() {
+        final MigrationPlanner planner = new TrialPlanner();
+        final Plan plan = planner.plan(Arrays.asList(orders, customers), Arrays.asList("orders", "customers"),
+                statistics, Arrays.asList("shard_1", "shard_2"), 2, 1);
+        final TablePlan table = plan.getTables().get("orders");
+
+        assertEquals(200000, table.getRows());
+        assertEquals(2000, table.getDataMillis());
+        assertEquals(Long.valueOf(10), plan.getPhaseMillis().get("tables"));
+        assertEquals(Long.valueOf(1010), plan.getPhaseMillis().get("data"));
+        assertEquals(Long.valueOf(101), plan.getPhaseMillis().get("indexes"));
+        assertEquals(1121, plan.getTotalMillis());
+        assertEquals(200000 + 2000 + 2000 + 20, plan.getDiskBytes());
+        assertTrue(plan.toText().contains("data phase: 1010 ms"));
+    }
+
+    @Test public void sampleIsSpreadOverTheKeyRange() {
+        final List<String> conditions = MigrationPlanner.toSampleConditions("order_sk", new long[] { 1, 1000000 },
+                100);
+
+        assertEquals(MigrationPlanner.SAMPLE_BLOCKS, conditions.size());
+        assertEquals("order_sk >= 1 AND order_sk < 100001", conditions.get(0));
+        assertEquals("order_sk >= 500001 AND order_sk < 600001", conditions.get(5));
+        assertEquals("order_sk >= 900001", conditions.get(9));
+    }
+
+    @Test public void smallOrKeylessTablesAreSampledFromTheStart() {
+        assertEquals(Arrays.asList((String) null), MigrationPlanner.toSampleConditions(null, null, 100));
+        assertEquals(Arrays.asList((String) null), MigrationPlanner.toSampleConditions("order_sk", new long[0],
+                100));
+        assertEquals(Arrays.asList((String) null), MigrationPlanner.toSampleConditions("order_sk",
+                new long[] { 1, 50 }, 100));
+        assertEquals(3, MigrationPlanner.toSampleConditions("order_sk", new long[] { Long.MIN_VALUE,
+                Long.MAX_VALUE }, 3).size());
+    }
+
+    @Test public void unknownTablesAreSkipped() {
+        final Plan plan = new TrialPlanner().plan(Arrays.asList(orders), Arrays.asList("customers"), statistics,
+                Collections.<String>emptyList(), 4, 1);
+
+        assertTrue(plan.getTables().isEmpty());
+        assertEquals(0, plan.getTotalMillis());
+    }
+
+    /**
+     * Planner whose trial takes a millisecond per hundred rows and a
+     * byte per row, and builds a single index.
+     */
+    private static class TrialPlanner extends MigrationPlanner {
+        public TrialPlanner() {
+            super(null, mock(ConnectionManager.class), 100);
+        }
+
+        @Override
+        protected TablePlan tryTable(TableDefinition tableDefinition, long rows, String sourceDbName) {
+            assertTrue(sourceDbName == null || sourceDbName.equals("shard_1"));
+            return new TablePlan(rows, 100, 5, rows / 100, Collections.singletonMap("PRIMARY", rows / 1000 / 2),
+                    rows, rows / 100, null);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Types;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.CopyOut;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MysqlDataLoaderTest {
+    private MysqlDataLoader loader;
+    private TableDefinition table;
+    private Connection source;
+    private ByteArrayOutputStream loaded;
+
+    @Mock private ConnectionManager sourceManager;
+    @Mock private ConnectionManager destinationManager;
+    @Mock private Connection destination;
+    @Mock private com.mysql.jdbc.Statement statement;
+    @Mock private CopyManager copyManager;
+    @Mock private CopyOut copyOut;
+
+    @Before public void setUp() throws SQLException {
+        loader = new MysqlDataLoader(sourceManager, destinationManager);
+        table = new TableDefinition("table_one", ".*_sk$");
+        table.addColumnDefinition(new ColumnDefinition("table_sk", Types.INTEGER, "NO", 0, 0, null, "YES"));
+        table.addColumnDefinition(new ColumnDefinition("c_flag", Types.BOOLEAN, "YES", 0, 0, null, "NO"));
+        table.addColumnDefinition(new ColumnDefinition("c_blob", Types.BINARY, "YES", 0, 0, null, "NO"));
+        source = mock(Connection.class, withSettings().extraInterfaces(PGConnection.class));
+        loaded = new ByteArrayOutputStream();
+
+        when(sourceManager.openConnection()).thenReturn(source);
+        when(destinationManager.openConnection()).thenReturn(destination);
+        when(destination.createStatement()).thenReturn(statement);
+        when(((PGConnection) source).getCopyAPI()).thenReturn(copyManager);
+        when(copyManager.copyOut(anyString())).thenReturn(copyOut);
+    }
+
+    @Test public void copyOutStatementTest() {
+        assertEquals("COPY (SELECT table_sk, c_flag::int, encode(c_blob, 'hex') FROM sales.table_one) TO STDOUT",
+                MysqlDataLoader.toCopyOutStatement(table, "sales"));
+    }
+
+    @Test public void loadStatementTest() {
+        assertEquals("LOAD DATA LOCAL INFILE 'stdin' INTO TABLE shop.table_one CHARACTER SET utf8mb4 " +
+                "(table_sk, c_flag, @c_blob) SET c_blob = UNHEX(@c_blob)",
+                MysqlDataLoader.toLoadStatement(table, "shop.table_one"));
+    }
+
+    @Test public void rewritesEscapesMysqlDoesNotKnow() {
+        final byte[] plain = "a\\tb\\\\f\n".getBytes();
+
+        assertTrue(plain == MysqlDataLoader.toMysqlEscapes(plain));
+        assertArrayEquals("a\fb\u000bc\\\\v\n".getBytes(),
+                MysqlDataLoader.toMysqlEscapes("a\\fb\\vc\\\\v\n".getBytes()));
+    }
+
+    @Test public void streamsCopyIntoLoadData() throws SQLException {
+        final ArgumentCaptor<InputStream> stream = ArgumentCaptor.forClass(InputStream.class);
+
+        when(copyOut.readFromCopy()).thenReturn("1\t1\t01ff\n".getBytes(), "2\t\\N\t\\N\n".getBytes(), null);
+        doAnswer(new Answer<Boolean>() {
+            public Boolean answer(InvocationOnMock invocation) throws IOException {
+                final byte[] buffer = new byte[4];
+                int count;
+
+                verify(statement).setLocalInfileInputStream(stream.capture());
+                while ((count = stream.getValue().read(buffer, 0, buffer.length)) >= 0) {
+                    loaded.write(buffer, 0, count);
+                }
+                return false;
+            }
+        }).when(statement).execute(anyString());
+        when(statement.getUpdateCount()).thenReturn(2);
+
+        assertTrue(loader.load(table, "public", "shop.table_one"));
+        verify(copyManager).copyOut(
+                "COPY (SELECT table_sk, c_flag::int, encode(c_blob, 'hex') FROM public.table_one) TO STDOUT");
+        assertEquals("1\t1\t01ff\n2\t\\N\t\\N\n", loaded.toString());
+        assertEquals(2, loader.getRows());
+        assertEquals(loaded.size(), loader.getBytes());
+        verify(statement).close();
+        verify(sourceManager).closeConnection(source);
+        verify(destinationManager).closeConnection(destination);
+    }
+
+    @Test public void rowsSkippedByMysqlFailTheLoad() throws SQLException {
+        final SQLWarning warning = new SQLWarning("Duplicate entry '1' for key 'PRIMARY'");
+
+        warning.setNextWarning(new SQLWarning("Data truncated for column 'c_flag' at row 2"));
+        assertNull(MysqlDataLoader.checkLoad(2, 2, null));
+        assertEquals("Loaded 1 of 2 rows: Duplicate entry '1' for key 'PRIMARY'",
+                MysqlDataLoader.checkLoad(1, 2, warning));
+        assertEquals("Loaded 2 rows with 2 warnings: Duplicate entry '1' for key 'PRIMARY'",
+                MysqlDataLoader.checkLoad(2, 2, warning));
+
+        when(statement.getWarnings()).thenReturn(warning);
+        assertFalse(loader.load(table, null, "table_one"));
+        assertEquals("Loaded 0 rows with 2 warnings: Duplicate entry '1' for key 'PRIMARY'", loader.getLastError());
+        verify(statement).close();
+    }
+
+    @Test public void failedLoadCancelsCopy() throws SQLException {
+        when(statement.execute(anyString())).thenThrow(new SQLException("Loading local data is disabled"));
+        when(copyOut.isActive()).thenReturn(true);
+
+        assertFalse(loader.load(table, null, "table_one"));
+        assertEquals("Loading local data is disabled", loader.getLastError());
+        verify(copyOut).cancelCopy();
+        verify(destinationManager).closeConnection(destination);
+    }
+
+    @Test public void destinationMustBeMysql() throws SQLException {
+        when(destination.createStatement()).thenReturn(mock(java.sql.Statement.class));
+
+        assertFalse(loader.load(table, null, "table_one"));
+        assertEquals("Destination is not a MySQL connection", loader.getLastError());
+        verify(copyManager, never()).copyOut(any(String.class));
+    }
+}
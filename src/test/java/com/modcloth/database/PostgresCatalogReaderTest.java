@@ -0,0 +1,121 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PostgresCatalogReaderTest {
+    private PostgresCatalogReader reader;
+
+    @Mock private ConnectionManager manager;
+    @Mock private Connection connection;
+    @Mock private DatabaseMetaData metaData;
+    @Mock private PreparedStatement columnStatement;
+    @Mock private PreparedStatement indexStatement;
+    @Mock private ResultSet columnRs;
+    @Mock private ResultSet indexRs;
+
+    @Before public void setUp() {
+        reader = new PostgresCatalogReader(manager, "public", "^t1_c1$");
+    }
+
+    @Test public void testEndToEndRead() throws SQLException {
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.getMetaData()).thenReturn(metaData);
+        when(metaData.getDatabaseMajorVersion()).thenReturn(12);
+        when(connection.prepareStatement(contains("pg_attribute a ON a.attrelid = c.oid"))).thenReturn(columnStatement);
+        when(connection.prepareStatement(contains("x.indnkeyatts - 1"))).thenReturn(indexStatement);
+        when(columnStatement.executeQuery()).thenReturn(columnRs);
+        when(indexStatement.executeQuery()).thenReturn(indexRs);
+
+        when(columnRs.next()).thenReturn(true, true, true, false);
+        when(columnRs.getString("relname")).thenReturn("tb_1", "tb_1", "tb_2");
+        when(columnRs.getString("attname")).thenReturn("t1_c1", "t1_c2", "t2_c1");
+        when(columnRs.getString("typname")).thenReturn("int4", "varchar", "numeric");
+        when(columnRs.getInt("atttypmod")).thenReturn(-1, 24, (8 << 16) + 2 + 4);
+        when(columnRs.getBoolean("attnotnull")).thenReturn(true, false, true);
+        when(columnRs.getString("column_default")).thenReturn(
+                "nextval('tb_1_t1_c1_seq'::regclass)", null, "0.0");
+
+        when(indexRs.next()).thenReturn(true, true, false);
+        when(indexRs.getString("relname")).thenReturn("tb_1", "tb_2");
+        when(indexRs.getString("index_name")).thenReturn("tb_1_pkey", "t2_in1");
+        when(indexRs.getString("attname")).thenReturn("t1_c1", "t2_c1");
+        when(indexRs.getBoolean("indisunique")).thenReturn(true, true);
+        when(indexRs.getBoolean("indisprimary")).thenReturn(true, false);
+        when(indexRs.getInt("ordinal_position")).thenReturn(1, 1);
+
+        List<String> creates = new LinkedList<String>();
+        List<String> indexes = new LinkedList<String>();
+        for (TableDefinition t: reader.read()) {
+            creates.add(t.toPostgresCreateSyntax().replaceAll("\\n", ""));
+            indexes.addAll(t.toPostgresIndexSyntax());
+        }
+
+        assertArrayEquals(new String[] {
+                "CREATE TABLE tb_1(t1_c1 SERIAL,t1_c2 VARCHAR(20))",
+                "CREATE TABLE tb_2(t2_c1 DECIMAL(8,2) NOT NULL DEFAULT '0.0')"
+            }, creates.toArray(new String[0]));
+
+        assertArrayEquals(new String[] {
+                "ALTER TABLE tb_1 ADD PRIMARY KEY (t1_c1)",
+                "CREATE UNIQUE INDEX t2_in1 ON tb_2 (t2_c1)"
+            }, indexes.toArray(new String[0]));
+
+        verify(columnStatement).setString(1, "public");
+        verify(indexStatement).setString(1, "public");
+        verify(manager).closeConnection(connection);
+    }
+
+    @Test public void includeColumnsAreNotKeyColumns() {
+        assertTrue(PostgresCatalogReader.toIndexQuery(11).contains("generate_series(0, x.indnkeyatts - 1)"));
+        assertTrue(PostgresCatalogReader.toIndexQuery(10).contains("generate_series(0, x.indnatts - 1)"));
+    }
+
+    @Test public void nullConnectionTest() {
+        when(manager.openConnection()).thenReturn(null);
+
+        assertTrue(reader.read().isEmpty());
+    }
+
+    @Test public void quotedDefaultIsUnwrapped() {
+        ColumnDefinition cd = PostgresCatalogReader.toColumnDefinition(
+                "c_one", "varchar", 14, false, "'it''s'::character varying");
+
+        assertEquals("it's", cd.getDefaultValue());
+        assertEquals(10, cd.getColumnSize());
+        assertTrue(cd.getIsNullable());
+    }
+
+    @Test public void unknownTypeIsOther() {
+        ColumnDefinition cd = PostgresCatalogReader.toColumnDefinition("c_one", "uuid", -1, true, null);
+
+        assertEquals(Types.OTHER, cd.getType());
+        assertNull(cd.getDefaultValue());
+        assertFalse(cd.getIsAutoIncrement());
+    }
+}
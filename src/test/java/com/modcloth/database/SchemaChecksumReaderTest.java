@@ -0,0 +1,90 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SchemaChecksumReaderTest {
+    private SchemaChecksumReader reader;
+
+    @Mock private ConnectionManager manager;
+    @Mock private Connection connection;
+    @Mock private PreparedStatement statement;
+    @Mock private ResultSet resultSet;
+
+    @Before public void setUp() throws SQLException {
+        reader = new SchemaChecksumReader(manager, "shard_001");
+
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+    }
+
+    @Test public void sameStructureSameChecksum() throws SQLException {
+        when(resultSet.next()).thenReturn(true, false, true, false, true, false, true, false,
+                true, false, true, false, true, false, true, false);
+        when(resultSet.getString(anyInt())).thenReturn("table_one");
+        String first = reader.read();
+        String second = reader.read();
+
+        assertEquals(32, first.length());
+        assertEquals(first, second);
+        verify(statement, org.mockito.Mockito.times(8)).setString(1, "shard_001");
+    }
+
+    @Test public void differentStructureDifferentChecksum() throws SQLException {
+        when(resultSet.next()).thenReturn(true, false, false, false, false, true, false);
+        when(resultSet.getString(anyInt())).thenReturn("table_one", "c_one", "1", "int(11)", "NO", null, "",
+                "table_one", "c_one", "1", "bigint(20)", "NO", null, "");
+
+        assertFalse(reader.read().equals(reader.read()));
+    }
+
+    @Test public void foreignKeysAreChecksummed() throws SQLException {
+        when(resultSet.next()).thenReturn(false, false, true, false, false, false, false, true, false);
+        when(resultSet.getString(anyInt())).thenReturn("table_one", "fk_parent", "parent", "CASCADE", "RESTRICT",
+                "table_one", "fk_parent", "parent", "SET NULL", "RESTRICT");
+
+        assertFalse(reader.read().equals(reader.read()));
+    }
+
+    @Test public void failedQuery() throws SQLException {
+        when(statement.executeQuery()).thenThrow(new SQLException("Access denied"));
+
+        assertNull(reader.read());
+        verify(manager).closeConnection(connection);
+    }
+
+    @Test public void otherTablesIgnored() throws SQLException {
+        reader.setTableNames(Arrays.asList("table_one"));
+        when(resultSet.next()).thenReturn(true, true, false, false);
+        when(resultSet.getString(anyInt())).thenReturn("table_one", "table_one", "c_one", "1", "int(11)", "NO",
+                null, "", "table_two");
+        String withOtherTable = reader.read();
+
+        when(resultSet.next()).thenReturn(true, false, false);
+        when(resultSet.getString(anyInt())).thenReturn("table_one", "table_one", "c_one", "1", "int(11)", "NO",
+                null, "");
+
+        assertEquals(withOtherTable, reader.read());
+    }
+}
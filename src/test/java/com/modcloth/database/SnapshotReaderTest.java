@@ -0,0 +1,119 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.DatabaseMetaData;
+import java.sql.Types;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+
+public class SnapshotReaderTest {
+    private File file;
+    private List<TableDefinition> tables;
+
+    @Before public void setUp() throws IOException {
+        file = File.createTempFile("snapshot", ".txt");
+        tables = new LinkedList<TableDefinition>();
+
+        TableDefinition tableOne = new TableDefinition("table_one", ".*_sk$");
+        tableOne.addColumnDefinition(new ColumnDefinition("table_sk", Types.INTEGER, "NO", 0, 0, null, "YES"));
+        tableOne.addColumnDefinition(new ColumnDefinition("c_one", Types.VARCHAR, "YES", 40, 0, "a\tb\\c\nd", "NO"));
+        tableOne.addColumnDefinition(new ColumnDefinition("c_two", Types.DECIMAL, "NO", 8, 2, "0.0", "NO"));
+        tableOne.addIndexDefinition(new IndexDefinition("PRIMARY", "table_sk", false, 1));
+        tableOne.addIndexDefinition(new IndexDefinition("idx_one", "c_one", true, 1, 250));
+        tableOne.addIndexDefinition(new IndexDefinition("idx_one", "c_two", true, 2, 1000));
+        tableOne.addForeignKeyDefinition(new ForeignKeyDefinition("fk_two", "c_one", "table_two", "c_one", 1,
+                DatabaseMetaData.importedKeyCascade, DatabaseMetaData.importedKeyNoAction));
+        tables.add(tableOne);
+
+        TableDefinition tableTwo = new TableDefinition("table_two", ".*_sk$");
+        tableTwo.addColumnDefinition(new ColumnDefinition("c_one", Types.LONGVARCHAR, "YES", 0, 0, null, "NO"));
+        tableTwo.addColumnDefinition(new ColumnDefinition("c_two", Types.BIGINT, "NO", 0, 0, null, "NO", true));
+        tables.add(tableTwo);
+    }
+
+    @After public void tearDown() {
+        file.delete();
+    }
+
+    @Test public void roundTripTest() {
+        assertTrue(new SnapshotWriter(file).write(tables));
+
+        List<TableDefinition> read = new SnapshotReader(file, ".*_sk$").read();
+
+        assertEquals(2, read.size());
+        for (int i = 0; i < tables.size(); i++) {
+            assertEquals(tables.get(i).getName(), read.get(i).getName());
+            assertEquals(tables.get(i).toPostgresCreateSyntax(), read.get(i).toPostgresCreateSyntax());
+            assertArrayEquals(tables.get(i).toPostgresIndexSyntax().toArray(new String[0]),
+                read.get(i).toPostgresIndexSyntax().toArray(new String[0]));
+            assertEquals(tables.get(i).getFingerprint(), read.get(i).getFingerprint());
+        }
+        assertEquals("a\tb\\c\nd", read.get(0).getColumnDefinitions().get(1).getDefaultValue());
+        assertNull(read.get(1).getColumnDefinitions().get(0).getDefaultValue());
+        assertFalse(read.get(1).getColumnDefinitions().get(0).getIsUnsigned());
+        assertTrue(read.get(1).getColumnDefinitions().get(1).getIsUnsigned());
+        assertEquals("table_sk", read.get(0).getSurrogateKeyName());
+        assertEquals(250, read.get(0).getIndexDefinitions().get(1).getCardinality());
+        assertEquals(1000, read.get(0).getIndexDefinitions().get(2).getCardinality());
+        assertEquals(tables.get(0).toPostgresForeignKeySyntaxByName(), read.get(0).toPostgresForeignKeySyntaxByName());
+        assertTrue(read.get(1).getForeignKeyDefinitions().isEmpty());
+    }
+
+    @Test public void withoutCardinalityTest() throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        output.write((SnapshotWriter.HEADER + "\nT\ttable_one\nC\tc_one\t4\tNO\t0\t0\t\\N\tNO\n" +
+                "I\tidx_one\tc_one\ttrue\t1\n").getBytes("UTF-8"));
+        output.close();
+
+        List<TableDefinition> read = new SnapshotReader(file, ".*_sk$").read();
+
+        assertEquals(1, read.size());
+        assertEquals("c_one", read.get(0).getIndexDefinitions().get(0).getColumnName());
+        assertEquals(0, read.get(0).getIndexDefinitions().get(0).getCardinality());
+        assertFalse(read.get(0).getColumnDefinitions().get(0).getIsUnsigned());
+    }
+
+    @Test public void emptySnapshotTest() {
+        assertTrue(new SnapshotWriter(file).write(new LinkedList<TableDefinition>()));
+
+        assertTrue(new SnapshotReader(file, ".*_sk$").read().isEmpty());
+    }
+
+    @Test public void missingHeaderTest() throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        output.write("T\ttable_one\n".getBytes("UTF-8"));
+        output.close();
+
+        assertTrue(new SnapshotReader(file, ".*_sk$").read().isEmpty());
+    }
+
+    @Test public void malformedLineTest() throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        output.write((SnapshotWriter.HEADER + "\nT\ttable_one\nC\tc_one\tnot_a_type\n").getBytes("UTF-8"));
+        output.close();
+
+        assertTrue(new SnapshotReader(file, ".*_sk$").read().isEmpty());
+    }
+
+    @Test public void missingFileTest() {
+        file.delete();
+
+        assertTrue(new SnapshotReader(file, ".*_sk$").read().isEmpty());
+    }
+}
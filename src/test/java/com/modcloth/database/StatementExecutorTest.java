@@ -1,21 +1,29 @@
 package com.modcloth.database;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import com.modcloth.database.managers.ConnectionManager;
+import com.modcloth.metrics.MetricsRegistry;
 
 @RunWith(MockitoJUnitRunner.class)
 public class StatementExecutorTest {
@@ -92,4 +100,68 @@ public class StatementExecutorTest {
         executor.executeStatement("statement");
         verify(manager).closeConnection(connection);
     }
+
+    @Test public void executedStatementReturnsTrue() throws SQLException {
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+
+        assertTrue(executor.executeStatement("statement"));
+    }
+
+    @Test public void failedStatementReturnsFalse() throws SQLException {
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.execute("statement")).thenThrow(new SQLException(""));
+
+        assertFalse(executor.executeStatement("statement"));
+    }
+
+    @Test public void executedStatementIsTimed() throws SQLException {
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        long before = MetricsRegistry.getDefault().timer("ddl.statement").getCount();
+
+        executor.executeStatement("statement");
+        assertEquals(before + 1, MetricsRegistry.getDefault().timer("ddl.statement").getCount());
+    }
+
+    @Test public void failedStatementIsTimed() throws SQLException {
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.execute("statement")).thenThrow(new SQLException("canceling statement due to timeout"));
+        long before = MetricsRegistry.getDefault().timer("ddl.statement").getCount();
+
+        assertFalse(executor.executeStatement("statement"));
+        assertEquals(before + 1, MetricsRegistry.getDefault().timer("ddl.statement").getCount());
+    }
+
+    @Test public void executeStatementsInTransaction() throws SQLException {
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+
+        assertTrue(executor.executeStatements(Arrays.asList("first", "second"), "table"));
+        InOrder order = inOrder(connection, statement);
+        order.verify(connection).setAutoCommit(false);
+        order.verify(statement).execute("first");
+        order.verify(statement).execute("second");
+        order.verify(connection).commit();
+        order.verify(connection).setAutoCommit(true);
+        verify(connection, never()).rollback();
+        verify(manager, never()).startOperation();
+        verify(manager).closeConnection(connection);
+    }
+
+    @Test public void failedStatementsRollBack() throws SQLException {
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.execute("first")).thenThrow(new SQLException("failed"));
+
+        assertFalse(executor.executeStatements(Arrays.asList("first", "second"), "table"));
+        assertEquals("failed", executor.getLastError());
+        verify(statement, never()).execute("second");
+        verify(connection, never()).commit();
+        verify(connection).rollback();
+        verify(connection).setAutoCommit(true);
+        verify(manager).closeConnection(connection);
+    }
 }
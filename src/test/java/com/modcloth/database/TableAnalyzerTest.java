@@ -0,0 +1,96 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TableAnalyzerTest {
+    private TableDefinition table;
+
+    @Mock private ConnectionManager manager;
+    @Mock private Connection connection;
+    @Mock private Statement statement;
+
+    @Before public void setUp() throws SQLException {
+        table = new TableDefinition("orders", ".*_sk$");
+        table.addColumnDefinition(new ColumnDefinition("order_sk", Types.INTEGER, "NO", 0, 0, null, "YES"));
+        table.addColumnDefinition(new ColumnDefinition("customer_id", Types.INTEGER, "NO", 0, 0, null, "NO"));
+        table.addColumnDefinition(new ColumnDefinition("status", Types.VARCHAR, "NO", 20, 0, null, "NO"));
+        table.addColumnDefinition(new ColumnDefinition("email", Types.VARCHAR, "NO", 80, 0, null, "NO"));
+        table.addIndexDefinition(new IndexDefinition("PRIMARY", "order_sk", false, 1, 1000000));
+        table.addIndexDefinition(new IndexDefinition("idx_customer", "customer_id", true, 1, 200000));
+        table.addIndexDefinition(new IndexDefinition("idx_customer", "status", true, 2, 600000));
+        table.addIndexDefinition(new IndexDefinition("idx_status", "status", true, 1, 5));
+        table.addIndexDefinition(new IndexDefinition("idx_email", "email", false, 1, 990000));
+
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+    }
+
+    @Test public void selectiveColumnsTest() {
+        assertArrayEquals(new String[] { "customer_id" },
+                TableAnalyzer.getSelectiveColumnNames(table).toArray(new String[0]));
+    }
+
+    @Test public void multiColumnUniqueIndexTest() {
+        table.addIndexDefinition(new IndexDefinition("idx_email_status", "email", false, 1, 990000));
+        table.addIndexDefinition(new IndexDefinition("idx_email_status", "status", false, 2, 1000000));
+
+        assertArrayEquals(new String[] { "customer_id", "email" },
+                TableAnalyzer.getSelectiveColumnNames(table).toArray(new String[0]));
+    }
+
+    @Test public void smallTableTest() {
+        final TableDefinition small = new TableDefinition("small", ".*_sk$");
+
+        small.addIndexDefinition(new IndexDefinition("idx_customer", "customer_id", true, 1, 20000));
+
+        assertTrue(TableAnalyzer.getSelectiveColumnNames(small).isEmpty());
+        assertArrayEquals(new String[] { "ANALYZE small" },
+                TableAnalyzer.toAnalyzeStatements(small).toArray(new String[0]));
+    }
+
+    @Test public void analyzeTest() throws SQLException {
+        final TableAnalyzer analyzer = new TableAnalyzer(manager);
+        final InOrder order = inOrder(statement);
+
+        assertTrue(analyzer.analyze(table));
+        assertNull(analyzer.getLastError());
+        order.verify(statement).execute("ALTER TABLE orders ALTER COLUMN customer_id SET STATISTICS 1000");
+        order.verify(statement).execute("ANALYZE orders");
+    }
+
+    @Test public void failedAnalyzeTest() throws SQLException {
+        final TableAnalyzer analyzer = new TableAnalyzer(manager);
+
+        when(statement.execute("ALTER TABLE orders ALTER COLUMN customer_id SET STATISTICS 1000"))
+                .thenThrow(new SQLException("no such column"));
+
+        assertFalse(analyzer.analyze(table));
+        assertEquals("no such column", analyzer.getLastError());
+        verify(statement, never()).execute("ANALYZE orders");
+    }
+}
@@ -5,7 +5,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.sql.DatabaseMetaData;
 import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -13,6 +16,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
 import com.modcloth.database.TableDefinition.IndexDefinition;
 
 public class TableDefinitionTest {
@@ -102,4 +106,119 @@ public class TableDefinitionTest {
         assertArrayEquals(new IndexDefinition[] { idxTwo, idxThree },
             indexes.get("idx_two").toArray(new IndexDefinition[0]));
     }
+
+    @Test public void fingerprintIsStable() {
+        TableDefinition copy = new TableDefinition("table_one", ".*_sk$");
+
+        for (ColumnDefinition cd : table.getColumnDefinitions()) {
+            copy.addColumnDefinition(cd);
+        }
+        copy.addIndexDefinition(idxOne);
+        copy.addIndexDefinition(idxTwo);
+        copy.addIndexDefinition(idxThree);
+
+        assertEquals(32, table.getFingerprint().length());
+        assertEquals(table.getFingerprint(), copy.getFingerprint());
+    }
+
+    @Test public void fingerprintChangesWithColumns() {
+        String before = table.getFingerprint();
+
+        table.addColumnDefinition(
+            new ColumnDefinition("c_three", Types.INTEGER, "YES", 0, 0, "", "NO"));
+
+        assertFalse(before.equals(table.getFingerprint()));
+    }
+
+    @Test public void fingerprintChangesWithForeignKeys() {
+        String before = table.getFingerprint();
+        table.addForeignKeyDefinition(new ForeignKeyDefinition("fk_parent", "c_one", "parent", "a", 1,
+                DatabaseMetaData.importedKeyCascade, DatabaseMetaData.importedKeySetNull));
+
+        assertFalse(before.equals(table.getFingerprint()));
+    }
+
+    @Test public void foreignKeysReferencingTables() {
+        table.addForeignKeyDefinition(new ForeignKeyDefinition("fk_parent", "c_one", "parent", "a", 1,
+                DatabaseMetaData.importedKeyCascade, DatabaseMetaData.importedKeySetNull));
+        table.addForeignKeyDefinition(new ForeignKeyDefinition("fk_other", "c_two", "other", "b", 1,
+                DatabaseMetaData.importedKeyCascade, DatabaseMetaData.importedKeySetNull));
+
+        TableDefinition referencing = table.withForeignKeysReferencing(Arrays.asList("parent"));
+
+        assertEquals(1, referencing.getForeignKeyDefinitions().size());
+        assertEquals("fk_parent", referencing.getForeignKeyDefinitions().get(0).getName());
+        assertEquals(table.toPostgresCreateSyntax(), referencing.toPostgresCreateSyntax());
+        assertEquals(2, table.getForeignKeyDefinitions().size());
+    }
+
+    @Test public void postgresSyntaxIsCachedUntilChanged() {
+        String create = table.toPostgresCreateSyntax();
+        Map<String, String> indexes = table.toPostgresIndexSyntaxByName();
+
+        assertTrue(create == table.toPostgresCreateSyntax());
+        assertTrue(indexes == table.toPostgresIndexSyntaxByName());
+
+        table.addColumnDefinition(new ColumnDefinition("c_three", Types.INTEGER, "YES", 0, 0, null, "NO"));
+        table.addIndexDefinition(new IndexDefinition("idx_three", "c_three", true, 1));
+
+        assertTrue(table.toPostgresCreateSyntax().contains("c_three"));
+        assertEquals(3, table.toPostgresIndexSyntaxByName().size());
+    }
+
+    @Test public void cardinalitiesAreReplacedAndStatementsKept() {
+        String create = table.toPostgresCreateSyntax();
+        Map<String, String> indexes = table.toPostgresIndexSyntaxByName();
+        Map<String, Long> cardinalities = new HashMap<String, Long>();
+        cardinalities.put(TableDefinition.cardinalityKey("idx_two", 1), 40L);
+        cardinalities.put(TableDefinition.cardinalityKey("idx_two", 2), 900L);
+
+        TableDefinition copy = table.withCardinalities(cardinalities);
+
+        assertEquals(0, copy.getIndexAsSortedMultiColumnIndex("idx_one").get(0).getCardinality());
+        assertEquals(40, copy.getIndexAsSortedMultiColumnIndex("idx_two").get(0).getCardinality());
+        assertEquals(900, copy.getIndexAsSortedMultiColumnIndex("idx_two").get(1).getCardinality());
+        assertEquals(0, idxThree.getCardinality());
+        assertTrue(create == copy.toPostgresCreateSyntax());
+        assertTrue(indexes == copy.toPostgresIndexSyntaxByName());
+    }
+
+    @Test public void shardColumnLeadsColumnsAndUniqueIndexes() {
+        TableDefinition merged = table.withShardColumn("shard");
+
+        assertArrayEquals(new String[] { "shard", "c_one", "table_sk", "c_two" },
+            merged.getColumnNames().toArray(new String[0]));
+        assertEquals("idx_one", merged.getIndexAsMultiColumnIndex("idx_one").get(0).getName());
+        assertEquals(1, merged.getIndexAsMultiColumnIndex("idx_one").size());
+        assertEquals("shard", merged.getIndexAsMultiColumnIndex("idx_two").get(0).getColumnName());
+        assertEquals(3, merged.getIndexAsMultiColumnIndex("idx_two").size());
+        assertTrue(merged.toPostgresIndexSyntaxByName().get("idx_two").contains("(shard,c_one,c_two)"));
+        assertEquals(3, table.getColumnNames().size());
+    }
+
+    @Test public void foreignKeySyntax() {
+        table.addForeignKeyDefinition(new ForeignKeyDefinition("fk_parent", "c_two", "parent", "b", 2,
+                DatabaseMetaData.importedKeyCascade, DatabaseMetaData.importedKeySetNull));
+        table.addForeignKeyDefinition(new ForeignKeyDefinition("fk_parent", "c_one", "parent", "a", 1,
+                DatabaseMetaData.importedKeyCascade, DatabaseMetaData.importedKeySetNull));
+        table.addForeignKeyDefinition(new ForeignKeyDefinition("fk_other", "table_sk", "other", "other_sk", 1,
+                DatabaseMetaData.importedKeyNoAction, DatabaseMetaData.importedKeyRestrict));
+
+        assertArrayEquals(new String[] { "fk_parent", "fk_other" },
+            table.toPostgresForeignKeySyntaxByName().keySet().toArray(new String[0]));
+        assertEquals("ALTER TABLE table_one ADD CONSTRAINT fk_parent FOREIGN KEY (c_one,c_two) REFERENCES parent (a,b)" +
+            " ON UPDATE CASCADE ON DELETE SET NULL NOT VALID", table.toPostgresForeignKeySyntaxByName().get("fk_parent"));
+        assertEquals("ALTER TABLE table_one ADD CONSTRAINT fk_other FOREIGN KEY (table_sk) REFERENCES other (other_sk)" +
+            " ON DELETE RESTRICT NOT VALID", table.toPostgresForeignKeySyntaxByName().get("fk_other"));
+        assertEquals("ALTER TABLE table_one VALIDATE CONSTRAINT fk_other",
+            table.toPostgresValidateForeignKeySyntax("fk_other"));
+    }
+
+    @Test public void shardColumnLeadsForeignKeys() {
+        table.addForeignKeyDefinition(new ForeignKeyDefinition("fk_parent", "c_one", "parent", "a", 1,
+                DatabaseMetaData.importedKeyNoAction, DatabaseMetaData.importedKeyNoAction));
+
+        assertEquals("ALTER TABLE table_one ADD CONSTRAINT fk_parent FOREIGN KEY (shard,c_one) REFERENCES parent " +
+            "(shard,a) NOT VALID", table.withShardColumn("shard").toPostgresForeignKeySyntaxByName().get("fk_parent"));
+    }
 }
@@ -0,0 +1,77 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.modcloth.database.TableExporter.KeyRanges;
+import com.modcloth.database.TableExporter.Range;
+import com.modcloth.database.TableExporter.RangeQueue;
+
+public class TableExporterTest {
+    private TableDefinition orders;
+    private TableDefinition customers;
+
+    @Before public void setUp() {
+        orders = new TableDefinition("orders", ".*_sk$");
+        customers = new TableDefinition("customers", ".*_sk$");
+    }
+
+    @Test public void rangesSplitTheKeysInOrder() {
+        final KeyRanges ranges = new KeyRanges(orders, new long[] { 1, 250 }, 100);
+
+        assertRange(1L, 101L, "orders.00001", ranges.next());
+        assertRange(101L, 201L, "orders.00002", ranges.next());
+        assertRange(201L, 251L, "orders.00003", ranges.next());
+        assertNull(ranges.next());
+    }
+
+    @Test public void tableWithoutKeyRangeIsOneRange() {
+        final KeyRanges withoutKey = new KeyRanges(orders, null, 100);
+        final KeyRanges empty = new KeyRanges(customers, new long[0], 100);
+        final KeyRanges small = new KeyRanges(orders, new long[] { 5, 104 }, 100);
+
+        assertRange(null, null, "orders", withoutKey.next());
+        assertNull(withoutKey.next());
+        assertRange(null, null, "customers", empty.next());
+        assertNull(empty.next());
+        assertRange(5L, 105L, "orders", small.next());
+        assertNull(small.next());
+    }
+
+    @Test public void rangesAreProducedWithoutHoldingThemAll() {
+        final KeyRanges ranges = new KeyRanges(orders, new long[] { Long.MIN_VALUE, Long.MAX_VALUE - 1 },
+                Long.MAX_VALUE);
+
+        assertRange(Long.MIN_VALUE, -1L, "orders.00001", ranges.next());
+        assertRange(-1L, Long.MAX_VALUE - 1, "orders.00002", ranges.next());
+        assertRange(Long.MAX_VALUE - 1, Long.MAX_VALUE, "orders.00003", ranges.next());
+        assertNull(ranges.next());
+    }
+
+    @Test public void queueHandsOutEveryTableInTurn() {
+        final RangeQueue queue = new RangeQueue(Arrays.asList(new KeyRanges(orders, new long[] { 1, 150 }, 100),
+                new KeyRanges(customers, null, 100)));
+
+        assertRange(1L, 101L, "orders.00001", queue.next());
+        assertRange(101L, 151L, "orders.00002", queue.next());
+        assertRange(null, null, "customers", queue.next());
+        assertNull(queue.next());
+    }
+
+    /**
+     * @param startKey the expected smallest key
+     * @param endKey the expected key after the largest key
+     * @param fileName the expected file name
+     * @param range the range
+     */
+    private static void assertRange(Long startKey, Long endKey, String fileName, Range range) {
+        assertEquals(startKey, range.getStartKey());
+        assertEquals(endKey, range.getEndKey());
+        assertEquals(fileName, range.getFileName());
+    }
+}
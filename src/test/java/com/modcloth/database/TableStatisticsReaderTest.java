@@ -0,0 +1,64 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.TableStatisticsReader.TableStatistics;
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TableStatisticsReaderTest {
+    private TableStatisticsReader reader;
+
+    @Mock private ConnectionManager manager;
+    @Mock private Connection connection;
+    @Mock private PreparedStatement statement;
+    @Mock private ResultSet resultSet;
+
+    @Before public void setUp() throws SQLException {
+        reader = new TableStatisticsReader(manager, "source_db");
+
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.prepareStatement(Matchers.anyString())).thenReturn(statement);
+    }
+
+    @Test public void readTest() throws SQLException {
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString("TABLE_NAME")).thenReturn("table_one", "table_two");
+        when(resultSet.getLong("TABLE_ROWS")).thenReturn(10L, 20L);
+        when(resultSet.getLong("DATA_LENGTH")).thenReturn(1000L, 2000L);
+        when(resultSet.getLong("INDEX_LENGTH")).thenReturn(100L, 200L);
+
+        Map<String, TableStatistics> statistics = reader.read();
+
+        verify(statement).setString(1, "source_db");
+        verify(manager).closeConnection(connection);
+        assertEquals(2, statistics.size());
+        assertEquals(20, statistics.get("table_two").getRows());
+        assertEquals(2000, statistics.get("table_two").getDataLength());
+        assertEquals(100, statistics.get("table_one").getIndexLength());
+    }
+
+    @Test public void readFailsTest() throws SQLException {
+        when(statement.executeQuery()).thenThrow(new SQLException("Access denied"));
+
+        assertTrue(reader.read().isEmpty());
+        verify(manager).closeConnection(connection);
+    }
+}
@@ -0,0 +1,145 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+import com.modcloth.database.TableDefinition.ForeignKeyDefinition;
+import com.modcloth.database.TableDefinition.IndexDefinition;
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TableSwapperTest {
+    private TableDefinition table;
+
+    @Mock private ConnectionManager manager;
+    @Mock private Connection connection;
+    @Mock private Statement statement;
+
+    @Before public void setUp() throws SQLException {
+        table = new TableDefinition("orders", ".*_sk$");
+        table.addColumnDefinition(new ColumnDefinition("order_sk", Types.INTEGER, "NO", 0, 0, null, "YES"));
+        table.addColumnDefinition(new ColumnDefinition("status", Types.VARCHAR, "NO", 20, 0, null, "NO"));
+        table.addIndexDefinition(new IndexDefinition("PRIMARY", "order_sk", false, 1));
+        table.addIndexDefinition(new IndexDefinition("idx_status", "status", true, 1, 5));
+
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+    }
+
+    @Test public void stagingDefinitionTest() {
+        final TableDefinition staging = TableSwapper.toStagingDefinition(table);
+
+        assertEquals("orders__staging", staging.getName());
+        assertEquals("orders__staging", TableSwapper.toStagingName("orders"));
+        assertEquals(5, staging.getIndexAsMultiColumnIndex("idx_status__staging").get(0).getCardinality());
+        assertTrue(staging.toPostgresIndexSyntax().contains("ALTER TABLE orders__staging ADD PRIMARY KEY (order_sk)"));
+        assertTrue(staging.toPostgresIndexSyntax().contains(
+                "CREATE INDEX idx_status__staging ON orders__staging (status)"));
+    }
+
+    @Test public void swapStatementsTest() {
+        assertArrayEquals(new String[] {
+                "ALTER TABLE IF EXISTS orders RENAME TO orders__old",
+                "ALTER INDEX IF EXISTS orders_pkey RENAME TO orders__old_pkey",
+                "ALTER INDEX IF EXISTS idx_status RENAME TO idx_status__old",
+                "ALTER SEQUENCE IF EXISTS orders_order_sk_seq RENAME TO orders__old_order_sk_seq",
+                "ALTER TABLE orders__staging RENAME TO orders",
+                "ALTER INDEX orders__staging_pkey RENAME TO orders_pkey",
+                "ALTER INDEX idx_status__staging RENAME TO idx_status",
+                "ALTER SEQUENCE orders__staging_order_sk_seq RENAME TO orders_order_sk_seq" },
+                TableSwapper.toSwapStatements(table).toArray(new String[0]));
+    }
+
+    @Test public void dropForeignKeyStatementsTest() {
+        final TableDefinition lines = new TableDefinition("order_lines", ".*_sk$");
+        lines.addForeignKeyDefinition(new ForeignKeyDefinition("fk_order", "order_sk", "orders", "order_sk", 1,
+                DatabaseMetaData.importedKeyCascade, DatabaseMetaData.importedKeyRestrict));
+        lines.addForeignKeyDefinition(new ForeignKeyDefinition("fk_item", "item_sk", "items", "item_sk", 1,
+                DatabaseMetaData.importedKeyCascade, DatabaseMetaData.importedKeyRestrict));
+        table.addForeignKeyDefinition(new ForeignKeyDefinition("fk_parent", "parent_sk", "orders", "order_sk", 1,
+                DatabaseMetaData.importedKeyCascade, DatabaseMetaData.importedKeyRestrict));
+
+        assertEquals(Arrays.asList("ALTER TABLE IF EXISTS order_lines DROP CONSTRAINT IF EXISTS fk_order"),
+                TableSwapper.toDropForeignKeyStatements("orders", Arrays.asList(table, lines)));
+    }
+
+    @Test public void swapTest() throws SQLException {
+        final TableSwapper swapper = new TableSwapper(manager, new LinkedList<TableDefinition>());
+        final InOrder order = inOrder(connection, statement);
+
+        assertTrue(swapper.swap(table));
+        assertNull(swapper.getLastError());
+        order.verify(statement).execute("DROP TABLE IF EXISTS orders__old");
+        order.verify(connection).setAutoCommit(false);
+        order.verify(statement).execute("SET LOCAL lock_timeout = 5000");
+        order.verify(statement).execute(TableSwapper.toCheckDependentsStatement("orders"));
+        order.verify(statement).execute("ALTER TABLE IF EXISTS orders RENAME TO orders__old");
+        order.verify(statement).execute("ALTER TABLE orders__staging RENAME TO orders");
+        order.verify(connection).commit();
+        order.verify(statement).execute("DROP TABLE IF EXISTS orders__old");
+        verify(statement, never()).execute(contains("CASCADE"));
+    }
+
+    @Test public void lockTimeoutIsRetried() throws SQLException {
+        final TableSwapper swapper = new TableSwapper(manager, new LinkedList<TableDefinition>());
+
+        when(statement.execute("ALTER TABLE IF EXISTS orders RENAME TO orders__old"))
+                .thenThrow(new SQLException("canceling statement due to lock timeout", "55P03"))
+                .thenReturn(false);
+
+        assertTrue(swapper.swap(table));
+        verify(connection).rollback();
+        verify(connection).commit();
+        verify(statement, times(2)).execute("SET LOCAL lock_timeout = 5000");
+    }
+
+    @Test public void failedSwapTest() throws SQLException {
+        final TableSwapper swapper = new TableSwapper(manager, new LinkedList<TableDefinition>());
+
+        when(statement.execute("ALTER TABLE orders__staging RENAME TO orders"))
+                .thenThrow(new SQLException("relation \"orders__staging\" does not exist"));
+
+        assertFalse(swapper.swap(table));
+        assertEquals("relation \"orders__staging\" does not exist", swapper.getLastError());
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+        verify(statement, times(1)).execute("DROP TABLE IF EXISTS orders__old");
+    }
+
+    @Test public void leftoverOldTableThatCannotBeDroppedFailsTheSwap() throws SQLException {
+        final TableSwapper swapper = new TableSwapper(manager, new LinkedList<TableDefinition>());
+
+        when(statement.execute("DROP TABLE IF EXISTS orders__old"))
+                .thenThrow(new SQLException("cannot drop table orders__old because other objects depend on it"));
+
+        assertFalse(swapper.swap(table));
+        assertEquals("orders__old is left from an earlier swap and could not be dropped: " +
+                "cannot drop table orders__old because other objects depend on it", swapper.getLastError());
+        verify(connection, never()).setAutoCommit(false);
+    }
+}
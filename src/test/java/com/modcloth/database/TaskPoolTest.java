@@ -0,0 +1,54 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TaskPoolTest {
+    @Test public void awaitRunsEveryTask() {
+        final TaskPool pool = new TaskPool(2);
+        final AtomicInteger ran = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    ran.incrementAndGet();
+                }
+            });
+        }
+        pool.await();
+
+        assertEquals(5, ran.get());
+        assertNull(pool.getFailure());
+    }
+
+    @Test public void failedTaskIsThrownOnceTheOthersFinish() {
+        final TaskPool pool = new TaskPool(1);
+        final AtomicInteger ran = new AtomicInteger();
+        final IllegalStateException failure = new IllegalStateException("export failed");
+
+        pool.execute(new Runnable() {
+            public void run() {
+                throw failure;
+            }
+        });
+        pool.execute(new Runnable() {
+            public void run() {
+                ran.incrementAndGet();
+            }
+        });
+
+        try {
+            pool.await();
+            fail("Expected the task's exception");
+        } catch (IllegalStateException ise) {
+            assertSame(failure, ise);
+        }
+        assertEquals(1, ran.get());
+    }
+}
@@ -0,0 +1,132 @@
+package com.modcloth.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.WorkQueue.WorkItem;
+import com.modcloth.database.managers.ConnectionManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WorkQueueTest {
+    private WorkQueue queue;
+
+    @Mock private ConnectionManager manager;
+    @Mock private Connection connection;
+    @Mock private PreparedStatement statement;
+    @Mock private ResultSet resultSet;
+
+    @Before public void setUp() throws SQLException {
+        queue = new WorkQueue(manager, "run_1", 3);
+
+        when(manager.openConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+    }
+
+    @Test public void claimSkipsLockedItems() throws SQLException {
+        PreparedStatement claim = mock(PreparedStatement.class);
+
+        when(connection.prepareStatement(startsWith("UPDATE schema_convert_work SET status = 'running'")))
+                .thenReturn(claim);
+        when(claim.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getString("item")).thenReturn("data:orders:shard_1:0");
+        when(resultSet.getString("kind")).thenReturn("data");
+        when(resultSet.getString("table_name")).thenReturn("orders");
+        when(resultSet.getString("target")).thenReturn("shard_1");
+        when(resultSet.getInt("phase")).thenReturn(2);
+        when(resultSet.getInt("attempts")).thenReturn(2);
+        when(resultSet.getLong("range_start")).thenReturn(0L);
+        when(resultSet.getLong("range_end")).thenReturn(1000L);
+
+        WorkItem item = queue.claim("worker_1", 60);
+
+        verify(connection).prepareStatement(contains("FOR UPDATE SKIP LOCKED"));
+        verify(claim).setString(1, "worker_1");
+        verify(claim).setInt(2, 60);
+        verify(claim).setString(3, "run_1");
+        assertEquals("data:orders:shard_1:0", item.getName());
+        assertEquals("shard_1", item.getTarget());
+        assertEquals(Long.valueOf(1000), item.getRangeEnd());
+        assertEquals(2, item.getAttempt());
+        verify(manager).closeConnection(connection);
+    }
+
+    @Test public void claimExpiresLeasesAndSkipsDependents() throws SQLException {
+        when(statement.executeUpdate()).thenReturn(1, 2, 0);
+
+        assertNull(queue.claim("worker_1", 60));
+        verify(connection).prepareStatement(contains("lease_until < now() AND attempts >= ?"));
+        verify(connection).prepareStatement(contains("SET status = 'skipped'"));
+        verify(statement, times(3)).executeUpdate();
+    }
+
+    @Test public void seedOnlyOnce() throws SQLException {
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getLong(1)).thenReturn(5L);
+
+        assertTrue(queue.seed(Arrays.asList(new WorkItem("table:orders", 1, "table", "orders", null, null, null))));
+        verify(connection).setAutoCommit(false);
+        verify(statement).setLong(1, "run_1".hashCode());
+        verify(statement, never()).executeBatch();
+        verify(connection).commit();
+    }
+
+    @Test public void seedInsertsItems() throws SQLException {
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getLong(1)).thenReturn(0L);
+
+        assertTrue(queue.seed(Arrays.asList(new WorkItem("table:orders", 1, "table", "orders", null, null, null),
+                new WorkItem("index:orders:PRIMARY", 3, "index", "orders", "PRIMARY", null, null))));
+        verify(statement, times(2)).addBatch();
+        verify(statement).executeBatch();
+        verify(connection).commit();
+    }
+
+    @Test public void failedSeedRollsBack() throws SQLException {
+        when(statement.executeQuery()).thenThrow(new SQLException("Lock timeout"));
+
+        assertFalse(queue.seed(Arrays.asList(new WorkItem("table:orders", 1, "table", "orders", null, null, null))));
+        verify(connection).rollback();
+        verify(manager).closeConnection(connection);
+    }
+
+    @Test public void completeRequiresLease() throws SQLException {
+        WorkItem item = new WorkItem("table:orders", 1, "table", "orders", null, null, null);
+
+        when(statement.executeUpdate()).thenReturn(0);
+
+        assertFalse(queue.complete(item, "worker_1"));
+        verify(statement).setString(3, "worker_1");
+    }
+
+    @Test public void countUnfinished() throws SQLException {
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getLong(1)).thenReturn(7L);
+
+        assertEquals(7, queue.countUnfinished());
+        verify(connection).prepareStatement(contains("status IN ('pending', 'running')"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.modcloth.database.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.modcloth.database.managers.ConnectionManager.Operation;
+
+public class AdaptiveConnectionManagerTest {
+    private ConnectionManager delegate;
+    private AdaptiveLimiter limiter;
+    private AdaptiveConnectionManager manager;
+
+    @Before public void setUp() {
+        delegate = mock(ConnectionManager.class);
+        when(delegate.getConnectionUrl()).thenReturn("jdbc:fake:db");
+        limiter = new AdaptiveLimiter("test", 100, 4);
+        manager = new AdaptiveConnectionManager(delegate, limiter);
+    }
+
+    @Test public void connectionsDoNotHoldPermits() {
+        final Connection connection = mock(Connection.class);
+
+        when(delegate.openConnection()).thenReturn(connection);
+
+        assertSame(connection, manager.openConnection());
+        assertEquals("jdbc:fake:db", manager.getConnectionUrl());
+        assertEquals(0, limiter.getInUse());
+        manager.closeConnection(connection);
+        verify(delegate).closeConnection(connection);
+    }
+
+    @Test public void operationsHoldPermits() {
+        final Operation operation = new Operation(manager);
+
+        assertEquals(1, limiter.getInUse());
+        operation.end();
+        operation.end();
+        assertEquals(0, limiter.getInUse());
+    }
+
+    @Test public void latencyReachesLimiter() {
+        for (int i = 0; i < AdaptiveLimiter.WINDOW; i++) {
+            new Operation(manager).end(1000);
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test public void twoConnectionsOfOneCallerDoNotDeadlockAtLimitOne() throws InterruptedException {
+        final CountDownLatch copied = new CountDownLatch(1);
+
+        when(delegate.openConnection()).thenReturn(mock(Connection.class), mock(Connection.class));
+        assertEquals(1, limiter.getLimit());
+
+        final Thread copier = new Thread(new Runnable() {
+            public void run() {
+                final Connection source = manager.openConnection();
+                final Connection destination = manager.openConnection();
+
+                for (int i = 0; i < 3; i++) {
+                    new Operation(manager).end();
+                    new Operation(manager).end();
+                }
+                manager.closeConnection(destination);
+                manager.closeConnection(source);
+                copied.countDown();
+            }
+        });
+
+        copier.setDaemon(true);
+        copier.start();
+        assertTrue(copied.await(5, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getInUse());
+    }
+
+    @Test public void interruptedWaitStillTakesPermit() throws InterruptedException {
+        final Operation held = new Operation(manager);
+        final CountDownLatch started = new CountDownLatch(1);
+        final boolean[] interrupted = new boolean[1];
+        final Thread waiter = new Thread(new Runnable() {
+            public void run() {
+                final Operation operation = new Operation(manager);
+
+                interrupted[0] = Thread.currentThread().isInterrupted();
+                operation.end();
+                started.countDown();
+            }
+        });
+
+        waiter.start();
+        Thread.sleep(50);
+        waiter.interrupt();
+        Thread.sleep(50);
+        assertEquals(1, started.getCount());
+        held.end();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        assertTrue(interrupted[0]);
+        assertEquals(0, limiter.getInUse());
+    }
+}
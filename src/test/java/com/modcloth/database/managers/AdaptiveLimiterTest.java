@@ -0,0 +1,89 @@
+package com.modcloth.database.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdaptiveLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private AdaptiveLimiter limiter;
+
+    @Before public void setUp() {
+        limiter = new AdaptiveLimiter("test", 100, 3);
+    }
+
+    private void recordWindow(long nanos) {
+        for (int i = 0; i < AdaptiveLimiter.WINDOW; i++) {
+            limiter.record(nanos);
+        }
+    }
+
+    @Test public void limitGrowsWhileLatencyHolds() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire();
+            recordWindow(FAST);
+        }
+
+        assertEquals(3, limiter.getLimit());
+        assertEquals(3, limiter.getInUse());
+    }
+
+    @Test public void limitDoesNotGrowWhenUnused() {
+        recordWindow(FAST);
+
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test public void limitIsHalvedWhenLatencyDegrades() throws InterruptedException {
+        limiter = new AdaptiveLimiter("test", 100, 8);
+        for (int i = 0; i < 6; i++) {
+            limiter.acquire();
+            recordWindow(FAST);
+        }
+        assertEquals(7, limiter.getLimit());
+
+        recordWindow(SLOW);
+        assertEquals(3, limiter.getLimit());
+        recordWindow(SLOW);
+        recordWindow(SLOW);
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test public void medianIgnoresSingleLongOperation() throws InterruptedException {
+        limiter.acquire();
+        limiter.record(TimeUnit.MINUTES.toNanos(5));
+        for (int i = 1; i < AdaptiveLimiter.WINDOW; i++) {
+            limiter.record(FAST);
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test public void callersWaitForPermit() throws InterruptedException {
+        final CountDownLatch acquired = new CountDownLatch(1);
+
+        limiter.acquire();
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    limiter.acquire();
+                    acquired.countDown();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }).start();
+
+        Thread.sleep(50);
+        assertEquals(1, acquired.getCount());
+        limiter.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,157 @@
+package com.modcloth.database.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class PooledConnectionManagerTest {
+    private static final FakeDriver driver = new FakeDriver();
+
+    private PooledConnectionManager manager;
+
+    @BeforeClass public static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(driver);
+    }
+
+    @AfterClass public static void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    @Before public void setUp() {
+        driver.opened = 0;
+        manager = new PooledConnectionManager(FakeDriver.class.getName(), "jdbc:fake:db", 2);
+    }
+
+    @Test public void connectionsAreReused() throws SQLException {
+        Connection first = manager.openConnection();
+        manager.closeConnection(first);
+        Connection second = manager.openConnection();
+
+        assertSame(first, second);
+        assertEquals(1, driver.opened);
+    }
+
+    @Test public void concurrentUsersGetSeparateConnections() {
+        Connection first = manager.openConnection();
+        Connection second = manager.openConnection();
+
+        assertNotSame(first, second);
+        assertEquals(2, driver.opened);
+    }
+
+    @Test public void transactionsAreRolledBack() throws SQLException {
+        Connection connection = manager.openConnection();
+        when(connection.getAutoCommit()).thenReturn(false);
+        manager.closeConnection(connection);
+
+        verify(connection).rollback();
+        verify(connection).setAutoCommit(true);
+        assertEquals(1, manager.getIdleCount());
+    }
+
+    @Test public void closedConnectionsAreDiscarded() throws SQLException {
+        Connection connection = manager.openConnection();
+        manager.closeConnection(connection);
+        when(connection.isClosed()).thenReturn(true);
+
+        assertNotSame(connection, manager.openConnection());
+        assertEquals(2, driver.opened);
+    }
+
+    @Test public void brokenConnectionsAreClosedAndDiscarded() throws SQLException {
+        Connection connection = manager.openConnection();
+        manager.closeConnection(connection);
+        when(connection.isValid(anyInt())).thenReturn(false);
+
+        assertNotSame(connection, manager.openConnection());
+        verify(connection).close();
+        assertEquals(2, driver.opened);
+    }
+
+    @Test public void connectionsAreValidatedWithAQueryIfIsValidIsNotSupported() throws SQLException {
+        Connection connection = manager.openConnection();
+        Statement statement = mock(Statement.class);
+        manager.closeConnection(connection);
+        when(connection.isValid(anyInt())).thenThrow(new SQLException("Not implemented", "0A000"));
+        when(connection.createStatement()).thenReturn(statement);
+
+        assertSame(connection, manager.openConnection());
+        verify(statement).execute("SELECT 1");
+
+        manager.closeConnection(connection);
+        when(statement.execute("SELECT 1")).thenThrow(new SQLException("Connection reset"));
+
+        assertNotSame(connection, manager.openConnection());
+        assertEquals(2, driver.opened);
+    }
+
+    @Test public void closeClosesIdleConnections() throws SQLException {
+        Connection connection = manager.openConnection();
+        manager.closeConnection(connection);
+        manager.close();
+
+        verify(connection).close();
+        assertEquals(0, manager.getIdleCount());
+    }
+
+    public static class FakeDriver implements Driver {
+        private int opened;
+
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            opened++;
+            Connection connection = mock(Connection.class);
+            try {
+                when(connection.getAutoCommit()).thenReturn(true);
+                when(connection.isValid(anyInt())).thenReturn(true);
+            } catch (SQLException sqe) {
+                throw new IllegalStateException(sqe);
+            }
+            return connection;
+        }
+
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:fake:");
+        }
+
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        public Logger getParentLogger() {
+            return Logger.getLogger("fake");
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.modcloth.database.transforms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.modcloth.database.TableDefinition.ColumnDefinition;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ValueTransformTest {
+    private StringBuilder row;
+
+    @Mock private ResultSet resultSet;
+
+    @Before public void setUp() {
+        row = new StringBuilder();
+    }
+
+    @Test public void chosenOncePerColumn() {
+        assertEquals(ValueTransform.class, ValueTransform.forColumn(column(Types.DATE, "YES"), false).getClass());
+        assertEquals(ZeroDateTransform.class,
+                ValueTransform.forColumn(column(Types.TIMESTAMP, "YES"), true).getClass());
+        assertEquals(TextTransform.class, ValueTransform.forColumn(column(Types.VARCHAR, "YES"), true).getClass());
+        assertEquals(BooleanTransform.class,
+                ValueTransform.forColumn(column(Types.TINYINT, "YES"), true).getClass());
+        assertEquals(IntegerRangeTransform.class,
+                ValueTransform.forColumn(column(Types.INTEGER, "YES"), true).getClass());
+        assertEquals(ValueTransform.class, ValueTransform.forColumn(new ColumnDefinition("c", Types.INTEGER, "YES",
+                0, 0, null, "NO", true), true).getClass());
+        assertEquals(ValueTransform.class, ValueTransform.forColumn(column(Types.DECIMAL, "YES"), true).getClass());
+        assertNull(ValueTransform.forColumn(column(Types.DECIMAL, "YES"), true).getRule());
+    }
+
+    @Test public void rawValuesAreEscaped() throws SQLException {
+        final ValueTransform transform = ValueTransform.forColumn(column(Types.VARCHAR, "YES"), false);
+
+        when(resultSet.getString(1)).thenReturn("a\\b\tc", new String[] { null });
+        transform.append(row, resultSet, 1);
+        row.append('|');
+        transform.append(row, resultSet, 1);
+        assertEquals("a\\\\b\\tc|\\N", row.toString());
+        assertEquals(0, transform.getChanged());
+    }
+
+    @Test public void zeroDatesBecomeNullOrInfinity() throws SQLException {
+        final ValueTransform nullable = new ZeroDateTransform(column(Types.DATE, "YES"));
+        final ValueTransform notNull = new ZeroDateTransform(column(Types.TIMESTAMP, "NO"));
+
+        when(resultSet.getString(1)).thenReturn("0000-00-00", "2014-03-00", "2014-03-01");
+        when(resultSet.getString(2)).thenReturn("0000-00-00 00:00:00");
+        nullable.append(row, resultSet, 1);
+        nullable.append(row, resultSet, 1);
+        nullable.append(row, resultSet, 1);
+        notNull.append(row, resultSet, 2);
+        assertEquals("\\N\\N2014-03-01-infinity", row.toString());
+        assertEquals(2, nullable.getChanged());
+        assertEquals(1, notNull.getChanged());
+        assertEquals("zero_date", nullable.getRule());
+    }
+
+    @Test public void textLosesNulsAndLoneSurrogates() throws SQLException {
+        final ValueTransform transform = new TextTransform(column(Types.VARCHAR, "YES"));
+
+        when(resultSet.getString(1)).thenReturn("a\0b\tc", "x\ud83dy", "ok \ud83d\ude00", "x\ud83dy");
+        transform.append(row, resultSet, 1);
+        row.append('|');
+        transform.append(row, resultSet, 1);
+        row.append('|');
+        transform.append(row, resultSet, 1);
+        assertEquals("ab\\tc|x\ufffdy|ok \ud83d\ude00", row.toString());
+        assertEquals("x\ufffdy", transform.read(resultSet, 1));
+        assertEquals(3, transform.getChanged());
+        assertTrue(TextTransform.isClean("ok \ud83d\ude00"));
+        assertFalse(TextTransform.isClean("\ude00"));
+    }
+
+    @Test public void tinyintsBecomeBooleans() throws SQLException {
+        final ValueTransform transform = new BooleanTransform(column(Types.TINYINT, "YES"));
+
+        when(resultSet.getInt(1)).thenReturn(0, 1, 7, 0);
+        when(resultSet.wasNull()).thenReturn(false, false, false, true);
+        transform.append(row, resultSet, 1);
+        transform.append(row, resultSet, 1);
+        transform.append(row, resultSet, 1);
+        transform.append(row, resultSet, 1);
+        assertEquals("ftt\\N", row.toString());
+        assertEquals(1, transform.getChanged());
+    }
+
+    @Test public void unsignedIntegersAreClamped() throws SQLException {
+        final ValueTransform integer = new IntegerRangeTransform(column(Types.INTEGER, "YES"));
+        final ValueTransform bigint = new IntegerRangeTransform(column(Types.BIGINT, "YES"));
+
+        when(resultSet.getLong(1)).thenReturn(4294967295L, 42L);
+        when(resultSet.getString(2)).thenReturn("18446744073709551615", "9223372036854775807");
+        integer.append(row, resultSet, 1);
+        row.append('|');
+        integer.append(row, resultSet, 1);
+        row.append('|');
+        bigint.append(row, resultSet, 2);
+        row.append('|');
+        bigint.append(row, resultSet, 2);
+        assertEquals("2147483647|42|9223372036854775807|9223372036854775807", row.toString());
+        assertEquals(1, integer.getChanged());
+        assertEquals(1, bigint.getChanged());
+    }
+
+    @Test public void negativeBigintsAreNotClamped() throws SQLException {
+        final ValueTransform bigint = new IntegerRangeTransform(column(Types.BIGINT, "YES"));
+
+        when(resultSet.getString(1)).thenReturn("-1000000000000000000", "-9223372036854775808");
+        bigint.append(row, resultSet, 1);
+        row.append('|');
+        assertEquals(Long.MIN_VALUE, bigint.read(resultSet, 1));
+        assertEquals("-1000000000000000000|", row.toString());
+        assertEquals(0, bigint.getChanged());
+    }
+
+    @Test public void unsignedColumnsAreCopiedAsTheyAre() throws SQLException {
+        final ColumnDefinition column = new ColumnDefinition("c", Types.BIGINT, "YES", 0, 0, null, "NO", true);
+        final ValueTransform bigint = ValueTransform.forColumn(column, true);
+
+        when(resultSet.getString(1)).thenReturn("18446744073709551615");
+        when(resultSet.getBigDecimal(1)).thenReturn(new BigDecimal("18446744073709551615"));
+        bigint.append(row, resultSet, 1);
+        assertEquals("18446744073709551615", row.toString());
+        assertEquals(new BigDecimal("18446744073709551615"), bigint.read(resultSet, 1));
+        assertEquals(0, bigint.getChanged());
+    }
+
+    /**
+     * @param type the SQL type of the column
+     * @param nullable YES if the column is nullable, else NO
+     * @return the definition of a column of the given type
+     */
+    private static ColumnDefinition column(int type, String nullable) {
+        return new ColumnDefinition("c", type, nullable, 0, 0, null, "NO");
+    }
+}
@@ -0,0 +1,44 @@
+package com.modcloth.metrics;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class EventsTest {
+    private File recording;
+
+    @After public void tearDown() {
+        Events.stopRecording();
+        if (recording != null) {
+            recording.delete();
+        }
+    }
+
+    @Test public void disabledEventsAreShared() {
+        assertSame(Events.statement("t", "select 1"), Events.tableRead("t"));
+        assertSame(Events.connection("open", "jdbc:x"), Events.copyChunk("t"));
+    }
+
+    @Test public void flightRecordingIsWritten() throws IOException {
+        recording = File.createTempFile("run", ".jfr");
+        recording.delete();
+
+        if (Events.startFlightRecording(recording)) {
+            Events.Span span = Events.copyChunk("t");
+
+            span.setRows(10);
+            span.setBytes(100);
+            span.end(true);
+            Events.statement("t", "CREATE TABLE t(id INTEGER)").end(true);
+            Events.connection("open", "jdbc:postgresql://host/db?password=secret").end(false);
+            Events.stopRecording();
+
+            assertTrue(recording.length() > 0);
+        }
+    }
+}
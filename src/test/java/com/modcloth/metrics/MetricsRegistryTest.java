@@ -0,0 +1,114 @@
+package com.modcloth.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeNotFoundException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.modcloth.metrics.MetricsRegistry.Timer;
+
+public class MetricsRegistryTest {
+    private MetricsRegistry registry;
+
+    @Before public void setUp() {
+        registry = new MetricsRegistry();
+    }
+
+    @Test public void metricsAreCreatedOnce() {
+        assertSame(registry.counter("c"), registry.counter("c"));
+        assertSame(registry.timer("t"), registry.timer("t"));
+        assertSame(registry.meter("m"), registry.meter("m"));
+    }
+
+    @Test public void counterTest() {
+        registry.counter("c").increment();
+        registry.counter("c").add(4);
+
+        assertEquals(5, registry.counter("c").getCount());
+    }
+
+    @Test public void timerTest() {
+        Timer timer = registry.timer("t");
+
+        for (int i = 1; i <= 100; i++) {
+            timer.update(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(100, timer.getCount());
+        assertEquals(5050, timer.getTotalMillis());
+        assertEquals(50, timer.getMeanMillis());
+        assertEquals(100, timer.getMaxMillis());
+        assertEquals(64, timer.getPercentileMillis(0.5));
+        assertEquals(100, timer.getPercentileMillis(0.99));
+    }
+
+    @Test public void emptyTimerTest() {
+        Timer timer = registry.timer("t");
+
+        assertEquals(0, timer.getMeanMillis());
+        assertEquals(0, timer.getPercentileMillis(0.99));
+    }
+
+    @Test public void meterTest() {
+        assertEquals(0, registry.meter("m").getRatePerSecond());
+
+        registry.meter("m").mark(10);
+        registry.meter("m").mark(5);
+
+        assertEquals(15, registry.meter("m").getCount());
+    }
+
+    @Test public void dumpTest() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        registry.counter("c").increment();
+        registry.timer("t").update(TimeUnit.MILLISECONDS.toNanos(3));
+        registry.dump(new PrintStream(out));
+
+        assertTrue(out.toString().contains("c count=1"));
+        assertTrue(out.toString().contains("t count=1 totalMs=3 meanMs=3"));
+    }
+
+    @Test public void mbeanTest() throws Exception {
+        ObjectName name = new ObjectName("com.modcloth:type=MetricsTest");
+
+        registry.counter("c").add(7);
+        registry.timer("t").update(TimeUnit.MILLISECONDS.toNanos(3));
+
+        assertTrue(registry.registerMBean(name.toString()));
+        assertEquals(7L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "c.count"));
+        assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "t.maxMillis"));
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    @Test public void mbeanIsReadOnly() throws Exception {
+        final MetricsMBean mbean = new MetricsMBean(registry);
+
+        registry.counter("c").add(7);
+        try {
+            mbean.invoke("reset", new Object[0], new String[0]);
+            fail("invoke should fail");
+        } catch (ReflectionException re) {
+            assertTrue(re.getTargetException() instanceof NoSuchMethodException);
+        }
+        try {
+            mbean.setAttribute(new Attribute("c.count", 0L));
+            fail("setAttribute should fail");
+        } catch (AttributeNotFoundException anfe) {
+            assertEquals(7L, mbean.getAttribute("c.count"));
+        }
+    }
+}
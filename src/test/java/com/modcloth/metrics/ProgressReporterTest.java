@@ -0,0 +1,79 @@
+package com.modcloth.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.modcloth.core.Main;
+import com.modcloth.database.TableDefinition;
+import com.modcloth.database.TableStatisticsReader.TableStatistics;
+import com.modcloth.metrics.ProgressReporter.Phase;
+
+public class ProgressReporterTest {
+    private ByteArrayOutputStream output;
+    private ProgressReporter progress;
+
+    @Before public void setUp() {
+        output = new ByteArrayOutputStream();
+        progress = new ProgressReporter(new PrintStream(output));
+    }
+
+    @Test public void advanceTest() {
+        progress.setTotal(Phase.TABLES, 4);
+        progress.addTotal(Phase.TABLES, 6);
+        progress.advance(Phase.TABLES, 3);
+
+        assertEquals(10, progress.getTotal(Phase.TABLES));
+        assertEquals(3, progress.getDone(Phase.TABLES));
+        assertTrue(progress.format(Phase.TABLES).startsWith("Progress tables: 30.0% (3 of 10 tables)"));
+    }
+
+    @Test public void weightedWorkTest() {
+        progress.addWork(Phase.INDEXES, "t.PRIMARY", 100);
+        progress.addWork(Phase.INDEXES, "t.idx", 300);
+        progress.complete(Phase.INDEXES, "t.idx");
+        progress.complete(Phase.INDEXES, "t.idx");
+
+        assertEquals(400, progress.getTotal(Phase.INDEXES));
+        assertEquals(301, progress.getDone(Phase.INDEXES));
+    }
+
+    @Test public void onlyRunningPhasesArePrinted() {
+        progress.setTotal(Phase.METADATA, 2);
+        progress.setTotal(Phase.TABLES, 2);
+        progress.advance(Phase.METADATA, 2);
+        progress.advance(Phase.TABLES, 1);
+        progress.print();
+
+        assertNull(progress.format(Phase.METADATA));
+        assertNull(progress.format(Phase.DATA));
+        assertTrue(output.toString().startsWith("Progress tables: 50.0%"));
+        assertEquals(1, output.toString().split("\n").length);
+    }
+
+    @Test public void dataIsEstimatedInRows() {
+        final Map<String, TableStatistics> statistics = Collections.singletonMap("orders",
+                new TableStatistics(1000, 65536, 0));
+
+        Main.estimateProgress(progress, Arrays.asList(new TableDefinition("orders", ".*_sk$")),
+                Arrays.asList("orders"), statistics, 2);
+        progress.advance(Phase.DATA, 500);
+
+        assertEquals(2000, progress.getTotal(Phase.DATA));
+        assertTrue(progress.format(Phase.DATA).startsWith("Progress data: 25.0% (500 of 2000 rows)"));
+    }
+
+    @Test public void formatDurationTest() {
+        assertEquals("0:00:59", ProgressReporter.formatDuration(59));
+        assertEquals("2:01:05", ProgressReporter.formatDuration(7265));
+    }
+}
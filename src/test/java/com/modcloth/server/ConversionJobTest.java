@@ -0,0 +1,37 @@
+package com.modcloth.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.modcloth.core.OptionParser;
+
+public class ConversionJobTest {
+    @Test public void errorFailsTheJob() {
+        OptionParser optionParser = mock(OptionParser.class, new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) {
+                if (invocation.getMethod().getName().equals("getConfiguration")) {
+                    return Collections.emptyMap();
+                }
+                throw new OutOfMemoryError("Java heap space");
+            }
+        });
+        ConversionJob job = new ConversionJob("1", optionParser, null, null);
+
+        try {
+            job.run();
+            fail("The error was not rethrown");
+        } catch (OutOfMemoryError e) {
+            assertEquals(ConversionJob.Status.FAILED, job.getStatus());
+            assertTrue(job.isFinished());
+            assertEquals("java.lang.OutOfMemoryError: Java heap space", job.getSummary().get("error"));
+        }
+    }
+}
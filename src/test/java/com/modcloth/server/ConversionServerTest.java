@@ -0,0 +1,137 @@
+package com.modcloth.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class ConversionServerTest {
+    private ConversionServer server;
+    private File output;
+    private File snapshot;
+    private File scripts;
+
+    @Before public void setUp() throws IOException {
+        ServerOptions options = new ServerOptions();
+
+        output = File.createTempFile("output", "");
+        output.delete();
+        output.mkdirs();
+        snapshot = new File(output, "snapshot.txt");
+        scripts = new File(output, "scripts");
+
+        assertTrue(options.parse(new String[] {"--port", "0", "--max-jobs", "2", "--output-dir", output.getPath()}));
+        server = new ConversionServer(options);
+        server.start();
+
+        OutputStream out = new FileOutputStream(snapshot);
+        out.write(("schema-convert snapshot 1\nT\ttable_one\nC\ttable_sk\t4\tNO\t0\t0\t\\N\tYES\n" +
+                "I\tPRIMARY\ttable_sk\tfalse\t1\n").getBytes("UTF-8"));
+        out.close();
+    }
+
+    @After public void tearDown() {
+        server.stop(5);
+        snapshot.delete();
+        new File(scripts, "01_tables.sql").delete();
+        new File(scripts, "02_primary_keys.sql").delete();
+        new File(scripts, "03_indexes.sql").delete();
+        scripts.delete();
+        output.delete();
+    }
+
+    private HttpURLConnection request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path)
+                .openConnection();
+
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.getOutputStream().write(body.getBytes("UTF-8"));
+        }
+        return connection;
+    }
+
+    private static JsonObject read(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+
+        for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+            body.write(buffer, 0, n);
+        }
+        in.close();
+        return new JsonParser().parse(body.toString("UTF-8")).getAsJsonObject();
+    }
+
+    @Test public void jobRunsToCompletion() throws Exception {
+        HttpURLConnection submit = request("POST", "/jobs", "[\"--from-snapshot\", \"snapshot.txt\", " +
+                "\"--script-dir\", \"scripts\", \"--key-pattern\", \".*_sk$\", \"table_one\"]");
+
+        assertEquals(202, submit.getResponseCode());
+        String id = read(submit).get("id").getAsString();
+
+        JsonObject status = null;
+        for (int i = 0; i < 100; i++) {
+            status = read(request("GET", "/jobs/" + id, null));
+            if (!status.get("status").getAsString().matches("queued|running")) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+
+        assertEquals("succeeded", status.get("status").getAsString());
+        assertNotNull(status.get("report").getAsJsonObject().get("totals"));
+        assertTrue(new File(scripts, "01_tables.sql").length() > 0);
+    }
+
+    @Test public void invalidOptionsAreRejected() throws IOException {
+        assertEquals(400, request("POST", "/jobs", "[\"--tables-only\"]").getResponseCode());
+        assertEquals(400, request("POST", "/jobs", "{\"not\": \"an array\"}").getResponseCode());
+    }
+
+    @Test public void jobFilesAreConfinedToOutputDirectory() throws IOException {
+        assertEquals(400, request("POST", "/jobs", "[\"--from-snapshot\", \"snapshot.txt\", \"--report\", " +
+                "\"../report.json\", \"--key-pattern\", \".*_sk$\", \"table_one\"]").getResponseCode());
+        assertEquals(400, request("POST", "/jobs", "[\"--from-snapshot\", \"snapshot.txt\", \"--jfr\", " +
+                "\"run.jfr\", \"--key-pattern\", \".*_sk$\", \"table_one\"]").getResponseCode());
+    }
+
+    @Test public void confinedPathsAreResolvedInOutputDirectory() throws IOException {
+        String[] confined = ConversionServer.confine(new String[] {"--report", "/etc/report.json", "--copy-data"},
+                output);
+
+        assertEquals(new File(output.getCanonicalFile(), "etc/report.json").getPath(), confined[1]);
+        assertEquals("--copy-data", confined[2]);
+        assertNull(ConversionServer.confine(new String[] {"--script-dir", "."}, output));
+        assertNull(ConversionServer.confine(new String[] {"--report=report.json"}, output));
+        assertNull(ConversionServer.confine(new String[] {"--export-dir", "export"}, null));
+    }
+
+    @Test public void unknownJob() throws IOException {
+        assertEquals(404, request("GET", "/jobs/42", null).getResponseCode());
+    }
+
+    @Test public void metrics() throws IOException {
+        JsonObject metrics = read(request("GET", "/metrics", null));
+
+        assertTrue(metrics.has("counters"));
+        assertTrue(metrics.has("timers"));
+    }
+}